@@ -0,0 +1,90 @@
+package com.majoinen.d.database.benchmark;
+
+import com.majoinen.d.database.BatchQuery;
+import com.majoinen.d.database.DatabaseController;
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting many rows at once, with Query.executeBatch() and with a
+ * BatchQuery built with addBatch(), for a varying number of rows and
+ * parameters per row.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 16/10/17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    @Param({"100", "10000"})
+    private int rows;
+
+    @Param({"1", "16"})
+    private int parameters;
+
+    private BenchmarkDatabase database;
+    private DatabaseController controller;
+    private String insertSql;
+    private List<Map<String, Object>> parameterSets;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.create();
+        controller = database.getController();
+        insertSql = BenchmarkDatabase.insertSql(parameters);
+        parameterSets = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            parameterSets.add(BenchmarkDatabase.row(parameters, i));
+    }
+
+    // Keep the table from growing across iterations
+    @Setup(Level.Iteration)
+    public void deleteRows() throws Exception {
+        database.deleteRows();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public int[] executeBatch() throws DBUtilsException {
+        return controller.prepareQuery(insertSql).executeBatch(parameterSets);
+    }
+
+    @Benchmark
+    public int batchQuery() throws DBUtilsException {
+        BatchQuery batch = controller.prepareBatchQuery(insertSql);
+        for (int i = 0; i < rows; i++) {
+            if(i > 0)
+                batch.addBatch();
+            for (Map.Entry<String, Object> parameter :
+              parameterSets.get(i).entrySet())
+                batch.setParameter(parameter.getKey(), parameter.getValue());
+        }
+        return batch.executeUpdate();
+    }
+}
@@ -0,0 +1,134 @@
+package com.majoinen.d.database.benchmark;
+
+import com.majoinen.d.database.DatabaseController;
+import com.majoinen.d.database.DatabaseControllerFactory;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.util.PropertiesHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A temporary SQLite database for benchmarks, accessed through a controller
+ * configured by resources/config/benchmark.properties. It holds an item
+ * table with an integer primary key and MAX_COLUMNS integer columns.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 16/10/17
+ */
+final class BenchmarkDatabase {
+
+    static final String NAME = "benchmark";
+
+    static final int MAX_COLUMNS = 16;
+
+    private final File directory;
+    private final DatabaseController controller;
+
+    private BenchmarkDatabase(File directory, DatabaseController controller) {
+        this.directory = directory;
+        this.controller = controller;
+    }
+
+    /**
+     * Create an empty database in a new temporary directory.
+     *
+     * @param metrics Whether the controller records query metrics.
+     * @return The database.
+     * @throws DBUtilsException If the database cannot be created.
+     * @throws IOException If the temporary directory cannot be created.
+     */
+    static BenchmarkDatabase create(boolean metrics) throws DBUtilsException,
+      IOException {
+        File directory = Files.createTempDirectory("dbutils-jmh").toFile();
+        PropertiesHandler.setProperty(NAME, "database.directory",
+          directory.getAbsolutePath());
+        PropertiesHandler.setProperty(NAME, "database.metrics.enabled",
+          String.valueOf(metrics));
+        DatabaseController controller =
+          DatabaseControllerFactory.getController(NAME);
+        StringBuilder sql = new StringBuilder(
+          "CREATE TABLE item (id INTEGER PRIMARY KEY");
+        for (int i = 1; i <= MAX_COLUMNS; i++)
+            sql.append(", c").append(i).append(" INTEGER");
+        controller.prepareQuery(sql.append(")").toString()).executeUpdate();
+        return new BenchmarkDatabase(directory, controller);
+    }
+
+    static BenchmarkDatabase create() throws DBUtilsException, IOException {
+        return create(true);
+    }
+
+    DatabaseController getController() {
+        return controller;
+    }
+
+    /**
+     * @param columns The number of columns to insert, up to MAX_COLUMNS.
+     * @return An insert into the item table with a named parameter for each
+     * column.
+     */
+    static String insertSql(int columns) {
+        StringBuilder names = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (int i = 1; i <= columns; i++) {
+            if(i > 1) {
+                names.append(", ");
+                values.append(", ");
+            }
+            names.append('c').append(i);
+            values.append(":c").append(i);
+        }
+        return "INSERT INTO item (" + names + ") VALUES (" + values + ")";
+    }
+
+    /**
+     * @param columns The number of columns to set.
+     * @param value The value of each column.
+     * @return The parameters of insertSql(columns).
+     */
+    static Map<String, Object> row(int columns, long value) {
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 1; i <= columns; i++)
+            row.put(":c" + i, value + i);
+        return row;
+    }
+
+    /**
+     * Insert rows into the item table, setting every column.
+     *
+     * @param rows The number of rows to insert.
+     * @throws DBUtilsException If the rows cannot be inserted.
+     */
+    void insertRows(int rows) throws DBUtilsException {
+        List<Map<String, Object>> parameterSets = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            parameterSets.add(row(MAX_COLUMNS, i));
+        controller.prepareQuery(insertSql(MAX_COLUMNS))
+          .executeBatch(parameterSets, 10000);
+    }
+
+    void deleteRows() throws DBUtilsException {
+        controller.prepareQuery("DELETE FROM item").executeUpdate();
+    }
+
+    /**
+     * Close the controller and delete the database.
+     *
+     * @throws DBUtilsException If a connection cannot be closed.
+     */
+    void close() throws DBUtilsException {
+        DatabaseControllerFactory.closeController(NAME);
+        File[] files = directory.listFiles();
+        if(files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+}
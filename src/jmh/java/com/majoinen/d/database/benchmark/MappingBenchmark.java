@@ -0,0 +1,174 @@
+package com.majoinen.d.database.benchmark;
+
+import com.majoinen.d.database.DatabaseController;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.util.ResultSetIterator;
+import com.majoinen.d.database.util.RowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reading and mapping every row of a table with executeAndMapAll(), stream()
+ * and iterate(), for a varying number of rows. Mapping by column index is
+ * compared with mapping by column label and with RowMappers, and boxed
+ * values with primitive arrays.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 16/10/17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    private static final String SELECT_ALL = "SELECT id, c1, c2 FROM item";
+
+    private static final String SELECT_COLUMN = "SELECT c1 FROM item";
+
+    @Param({"10", "1000", "100000"})
+    private int rows;
+
+    private BenchmarkDatabase database;
+    private DatabaseController controller;
+    private RowMapper<Row> constructorMapper;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.create();
+        database.insertRows(rows);
+        controller = database.getController();
+        constructorMapper = RowMapper.of(Row.class.getDeclaredConstructor(
+          long.class, long.class, long.class), "id", "c1", "c2");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Item> executeAndMapAll() throws DBUtilsException {
+        return controller.prepareQuery(SELECT_ALL).executeAndMapAll(Item::map);
+    }
+
+    @Benchmark
+    public List<Row> executeAndMapAllByLabel() throws DBUtilsException {
+        return controller.prepareQuery(SELECT_ALL).executeAndMapAll(result ->
+          new Row(result.getLong("id"), result.getLong("c1"),
+            result.getLong("c2")));
+    }
+
+    @Benchmark
+    public List<Row> executeAndMapAllRowMapper() throws DBUtilsException {
+        return controller.prepareQuery(SELECT_ALL)
+          .executeAndMapAll(RowMapper.of(Row.class));
+    }
+
+    @Benchmark
+    public List<Row> executeAndMapAllConstructorMapper()
+      throws DBUtilsException {
+        return controller.prepareQuery(SELECT_ALL)
+          .executeAndMapAll(constructorMapper);
+    }
+
+    @Benchmark
+    public List<Long> executeAndMapAllBoxed() throws DBUtilsException {
+        return controller.prepareQuery(SELECT_COLUMN).executeAndMapAll(result ->
+          result.getLong(1));
+    }
+
+    @Benchmark
+    public long[] executeForLongs() throws DBUtilsException {
+        return controller.prepareQuery(SELECT_COLUMN).executeForLongs();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Item> executeAndMapAllConcurrent() throws DBUtilsException {
+        return controller.prepareQuery(SELECT_ALL).executeAndMapAll(Item::map);
+    }
+
+    @Benchmark
+    public long stream() throws DBUtilsException {
+        try(Stream<Item> items = controller.prepareQuery(SELECT_ALL)
+          .stream(Item::map)) {
+            return items.mapToLong(item -> item.total).sum();
+        }
+    }
+
+    @Benchmark
+    public long iterate() throws DBUtilsException {
+        long total = 0;
+        try(ResultSetIterator<Item> items = controller.prepareQuery(SELECT_ALL)
+          .iterate(Item::map)) {
+            while(items.hasNext())
+                total += items.next().total;
+        }
+        return total;
+    }
+
+    /* A row mapped by its columns, with setters or its constructor */
+    public static final class Row {
+
+        private long id;
+        private long c1;
+        private long c2;
+
+        public Row() { }
+
+        public Row(long id, long c1, long c2) {
+            this.id = id;
+            this.c1 = c1;
+            this.c2 = c2;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public void setC1(long c1) {
+            this.c1 = c1;
+        }
+
+        public void setC2(long c2) {
+            this.c2 = c2;
+        }
+    }
+
+    /* A mapped row */
+    public static final class Item {
+
+        private final long id;
+        private final long total;
+
+        private Item(long id, long total) {
+            this.id = id;
+            this.total = total;
+        }
+
+        private static Item map(ResultSet result) throws SQLException {
+            return new Item(result.getLong(1), result.getLong(2) +
+              result.getLong(3));
+        }
+    }
+}
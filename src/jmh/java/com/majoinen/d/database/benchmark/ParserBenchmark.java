@@ -0,0 +1,85 @@
+package com.majoinen.d.database.benchmark;
+
+import com.majoinen.d.database.util.SQLParameterParser;
+import com.majoinen.d.database.util.SQLTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiling sql with named parameters: fetching a cached SQLTemplate, and
+ * compiling sql which has not been seen before, for a varying number of
+ * parameters.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 16/10/17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    // More distinct queries than SQLParameterParser caches
+    private static final int DISTINCT_QUERIES = 4096;
+
+    @Param({"1", "8", "64"})
+    private int parameters;
+
+    private String cachedSql;
+    private String[] uncachedSql;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cachedSql = sql(parameters, 0);
+        uncachedSql = new String[DISTINCT_QUERIES];
+        for (int i = 0; i < uncachedSql.length; i++)
+            uncachedSql[i] = sql(parameters, i + 1);
+    }
+
+    @Benchmark
+    public SQLTemplate compileCached() {
+        return SQLParameterParser.compile(cachedSql);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SQLTemplate compileCachedConcurrent() {
+        return SQLParameterParser.compile(cachedSql);
+    }
+
+    @Benchmark
+    public SQLTemplate compileUncached() {
+        String sql = uncachedSql[next];
+        next = (next + 1) % uncachedSql.length;
+        return SQLParameterParser.compile(sql);
+    }
+
+    @Benchmark
+    public String shape() {
+        return SQLParameterParser.compile(cachedSql).getShape();
+    }
+
+    /* A select with the given number of parameters, a literal and a comment */
+    private static String sql(int parameters, int variant) {
+        StringBuilder sql = new StringBuilder("SELECT id, 'literal :x' /* " +
+          variant + " */ FROM item WHERE id > 0");
+        for (int i = 1; i <= parameters; i++)
+            sql.append(" AND c").append(i).append(" = :c").append(i);
+        return sql.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package com.majoinen.d.database.benchmark;
+
+import com.majoinen.d.database.DatabaseController;
+import com.majoinen.d.database.Query;
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single queries through a DatabaseController: Query.executeUpdate() with a
+ * varying number of parameters, and selects by primary key from one and
+ * several threads, with and without metrics being recorded.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 16/10/17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final String SELECT_BY_ID =
+      "SELECT * FROM item WHERE id = :id";
+
+    private static final int ROWS = 10000;
+
+    @Param({"1", "4", "16"})
+    private int parameters;
+
+    @Param({"true", "false"})
+    private boolean metrics;
+
+    private BenchmarkDatabase database;
+    private DatabaseController controller;
+    private String insertSql;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.create(metrics);
+        database.insertRows(ROWS);
+        controller = database.getController();
+        insertSql = BenchmarkDatabase.insertSql(parameters);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public int executeUpdate() throws DBUtilsException {
+        Query query = controller.prepareQuery(insertSql);
+        for (int i = 1; i <= parameters; i++)
+            query.setParameter(":c" + i, i);
+        return query.executeUpdate();
+    }
+
+    @Benchmark
+    public long selectById() throws DBUtilsException {
+        return select();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long selectByIdConcurrent() throws DBUtilsException {
+        return select();
+    }
+
+    private long select() throws DBUtilsException {
+        return controller.prepareQuery(SELECT_BY_ID)
+          .setParameter(":id", ThreadLocalRandom.current().nextInt(ROWS) + 1)
+          .executeAndMap(result -> result.getLong(parameters + 1));
+    }
+}
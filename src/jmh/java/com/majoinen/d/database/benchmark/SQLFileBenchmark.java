@@ -0,0 +1,56 @@
+package com.majoinen.d.database.benchmark;
+
+import com.majoinen.d.database.SQLDatabaseController;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.util.SQLFileExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading, splitting and executing resources/sql/benchmark.sql, a script of
+ * about a hundred statements, with SQLFileExecutor.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 16/10/17
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SQLFileBenchmark {
+
+    private static final String SCRIPT = "benchmark";
+
+    private BenchmarkDatabase database;
+    private SQLFileExecutor executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.create();
+        executor = SQLFileExecutor.getInstance(
+          (SQLDatabaseController) database.getController());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public boolean executeFile() throws DBUtilsException {
+        return executor.executeRequiredFile(SCRIPT);
+    }
+}
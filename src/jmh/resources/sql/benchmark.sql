@@ -0,0 +1,103 @@
+CREATE TABLE IF NOT EXISTS script (id INTEGER PRIMARY KEY, name TEXT, amount INTEGER);
+INSERT INTO script (name, amount) VALUES ('name 0', 0);
+INSERT INTO script (name, amount) VALUES ('name 1', 7);
+INSERT INTO script (name, amount) VALUES ('name 2', 14);
+INSERT INTO script (name, amount) VALUES ('name 3', 21);
+INSERT INTO script (name, amount) VALUES ('name 4', 28);
+INSERT INTO script (name, amount) VALUES ('name 5', 35);
+INSERT INTO script (name, amount) VALUES ('name 6', 42);
+INSERT INTO script (name, amount) VALUES ('name 7', 49);
+INSERT INTO script (name, amount) VALUES ('name 8', 56);
+INSERT INTO script (name, amount) VALUES ('name 9', 63);
+INSERT INTO script (name, amount) VALUES ('name 10', 70);
+INSERT INTO script (name, amount) VALUES ('name 11', 77);
+INSERT INTO script (name, amount) VALUES ('name 12', 84);
+INSERT INTO script (name, amount) VALUES ('name 13', 91);
+INSERT INTO script (name, amount) VALUES ('name 14', 98);
+INSERT INTO script (name, amount) VALUES ('name 15', 105);
+INSERT INTO script (name, amount) VALUES ('name 16', 112);
+INSERT INTO script (name, amount) VALUES ('name 17', 119);
+INSERT INTO script (name, amount) VALUES ('name 18', 126);
+INSERT INTO script (name, amount) VALUES ('name 19', 133);
+INSERT INTO script (name, amount) VALUES ('name 20', 140);
+INSERT INTO script (name, amount) VALUES ('name 21', 147);
+INSERT INTO script (name, amount) VALUES ('name 22', 154);
+INSERT INTO script (name, amount) VALUES ('name 23', 161);
+INSERT INTO script (name, amount) VALUES ('name 24', 168);
+INSERT INTO script (name, amount) VALUES ('name 25', 175);
+INSERT INTO script (name, amount) VALUES ('name 26', 182);
+INSERT INTO script (name, amount) VALUES ('name 27', 189);
+INSERT INTO script (name, amount) VALUES ('name 28', 196);
+INSERT INTO script (name, amount) VALUES ('name 29', 203);
+INSERT INTO script (name, amount) VALUES ('name 30', 210);
+INSERT INTO script (name, amount) VALUES ('name 31', 217);
+INSERT INTO script (name, amount) VALUES ('name 32', 224);
+INSERT INTO script (name, amount) VALUES ('name 33', 231);
+INSERT INTO script (name, amount) VALUES ('name 34', 238);
+INSERT INTO script (name, amount) VALUES ('name 35', 245);
+INSERT INTO script (name, amount) VALUES ('name 36', 252);
+INSERT INTO script (name, amount) VALUES ('name 37', 259);
+INSERT INTO script (name, amount) VALUES ('name 38', 266);
+INSERT INTO script (name, amount) VALUES ('name 39', 273);
+INSERT INTO script (name, amount) VALUES ('name 40', 280);
+INSERT INTO script (name, amount) VALUES ('name 41', 287);
+INSERT INTO script (name, amount) VALUES ('name 42', 294);
+INSERT INTO script (name, amount) VALUES ('name 43', 301);
+INSERT INTO script (name, amount) VALUES ('name 44', 308);
+INSERT INTO script (name, amount) VALUES ('name 45', 315);
+INSERT INTO script (name, amount) VALUES ('name 46', 322);
+INSERT INTO script (name, amount) VALUES ('name 47', 329);
+INSERT INTO script (name, amount) VALUES ('name 48', 336);
+INSERT INTO script (name, amount) VALUES ('name 49', 343);
+INSERT INTO script (name, amount) VALUES ('name 50', 350);
+INSERT INTO script (name, amount) VALUES ('name 51', 357);
+INSERT INTO script (name, amount) VALUES ('name 52', 364);
+INSERT INTO script (name, amount) VALUES ('name 53', 371);
+INSERT INTO script (name, amount) VALUES ('name 54', 378);
+INSERT INTO script (name, amount) VALUES ('name 55', 385);
+INSERT INTO script (name, amount) VALUES ('name 56', 392);
+INSERT INTO script (name, amount) VALUES ('name 57', 399);
+INSERT INTO script (name, amount) VALUES ('name 58', 406);
+INSERT INTO script (name, amount) VALUES ('name 59', 413);
+INSERT INTO script (name, amount) VALUES ('name 60', 420);
+INSERT INTO script (name, amount) VALUES ('name 61', 427);
+INSERT INTO script (name, amount) VALUES ('name 62', 434);
+INSERT INTO script (name, amount) VALUES ('name 63', 441);
+INSERT INTO script (name, amount) VALUES ('name 64', 448);
+INSERT INTO script (name, amount) VALUES ('name 65', 455);
+INSERT INTO script (name, amount) VALUES ('name 66', 462);
+INSERT INTO script (name, amount) VALUES ('name 67', 469);
+INSERT INTO script (name, amount) VALUES ('name 68', 476);
+INSERT INTO script (name, amount) VALUES ('name 69', 483);
+INSERT INTO script (name, amount) VALUES ('name 70', 490);
+INSERT INTO script (name, amount) VALUES ('name 71', 497);
+INSERT INTO script (name, amount) VALUES ('name 72', 504);
+INSERT INTO script (name, amount) VALUES ('name 73', 511);
+INSERT INTO script (name, amount) VALUES ('name 74', 518);
+INSERT INTO script (name, amount) VALUES ('name 75', 525);
+INSERT INTO script (name, amount) VALUES ('name 76', 532);
+INSERT INTO script (name, amount) VALUES ('name 77', 539);
+INSERT INTO script (name, amount) VALUES ('name 78', 546);
+INSERT INTO script (name, amount) VALUES ('name 79', 553);
+INSERT INTO script (name, amount) VALUES ('name 80', 560);
+INSERT INTO script (name, amount) VALUES ('name 81', 567);
+INSERT INTO script (name, amount) VALUES ('name 82', 574);
+INSERT INTO script (name, amount) VALUES ('name 83', 581);
+INSERT INTO script (name, amount) VALUES ('name 84', 588);
+INSERT INTO script (name, amount) VALUES ('name 85', 595);
+INSERT INTO script (name, amount) VALUES ('name 86', 602);
+INSERT INTO script (name, amount) VALUES ('name 87', 609);
+INSERT INTO script (name, amount) VALUES ('name 88', 616);
+INSERT INTO script (name, amount) VALUES ('name 89', 623);
+INSERT INTO script (name, amount) VALUES ('name 90', 630);
+INSERT INTO script (name, amount) VALUES ('name 91', 637);
+INSERT INTO script (name, amount) VALUES ('name 92', 644);
+INSERT INTO script (name, amount) VALUES ('name 93', 651);
+INSERT INTO script (name, amount) VALUES ('name 94', 658);
+INSERT INTO script (name, amount) VALUES ('name 95', 665);
+INSERT INTO script (name, amount) VALUES ('name 96', 672);
+INSERT INTO script (name, amount) VALUES ('name 97', 679);
+INSERT INTO script (name, amount) VALUES ('name 98', 686);
+INSERT INTO script (name, amount) VALUES ('name 99', 693);
+UPDATE script SET amount = amount + 1 WHERE amount > 350;
+DELETE FROM script;
@@ -1,11 +1,26 @@
 package com.majoinen.d.database;
 
 import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.util.SQLTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Provide ability to do batch queries. A batch query requires all queries to
  * succeed for any to apply, failure of any query will rollback the database.
  *
+ * Consecutive queries with the same sql are added to a single JDBC batch on
+ * one prepared statement, and only sent to the database when a different
+ * query is prepared or the batch query is executed.
+ *
+ * When the connection has a WriteExecutor, each step is recorded instead and
+ * the whole batch query is replayed by the WriteExecutor when executed.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 11/7/17
  */
@@ -13,31 +28,90 @@ public class BatchQuery extends Query {
 
     private int affectedRows;
 
+    // The prepared sql of the pending JDBC batch
+    private String batchSql;
+
+    // The number of parameter sets in the pending JDBC batch
+    private int pending;
+
+    // Whether the current query was added to the batch by addBatch() and
+    // has not been given new parameters since
+    private boolean currentQueued;
+
+    // The sql of the first query and each step since, recorded when the
+    // batch query is replayed by a WriteExecutor
+    private final String firstSql;
+    private final List<Step> steps;
+
+    // The tables every query prepared writes, for invalidating cached results
+    private final Set<String> tables = new HashSet<>();
+    private boolean unknownTables;
+
     public BatchQuery(DBUtilsConnection connection, String sql) throws
       DBUtilsException {
         super(connection, sql);
-        connection.disableAutoCommit();
+        recordTables();
+        if(connection.getWriteExecutor() != null) {
+            this.firstSql = sql;
+            this.steps = new ArrayList<>();
+        } else {
+            this.firstSql = null;
+            this.steps = null;
+            connection.disableAutoCommit();
+        }
     }
 
     /**
-     * Set a parameter by providing its substring in the sql and its
-     * desired value.
+     * Set a parameter by providing its key in the sql and its desired value.
      *
-     * @param key a substring within the sql query which will be replaced
-     * with the supplied value using setObject().
+     * @param key a named parameter within the sql query, such as :name, which
+     * will be replaced with the supplied value using setObject().
      * @param value the value for the supplied key.
      * @param <T> The type of the value.
      * @return the BatchQuery with the parameter added.
      */
     @Override
     public <T> BatchQuery setParameter(String key, T value) {
+        if(steps != null) {
+            steps.add(batch -> batch.setParameter(key, value));
+            return this;
+        }
         super.setParameter(key, value);
+        currentQueued = false;
+        return this;
+    }
+
+    /**
+     * Add the current query and its parameters to the JDBC batch, ready for
+     * the same query to be given another set of parameters. Unless it is
+     * given new parameters, the current query is not added again when the
+     * next query is prepared or the batch query is executed.
+     *
+     * @return The BatchQuery, ready for the next set of parameters.
+     * @throws DBUtilsException If an SQLException occurs preparing the
+     * statement or adding to the batch.
+     */
+    public BatchQuery addBatch() throws DBUtilsException {
+        if(steps != null) {
+            steps.add(BatchQuery::addBatch);
+            return this;
+        }
+        try {
+            queueCurrentQuery();
+            currentQueued = true;
+        } catch(DBUtilsException e) {
+            super.getDBUtilsConnection().rollback();
+            super.getDBUtilsConnection().close();
+            throw new DBUtilsException("Error executing batch update", e);
+        }
         return this;
     }
 
     /**
      * Execute the current query, and prepare a new query. This method is
-     * only accessible after a query has already been prepared.
+     * only accessible after a query has already been prepared. If the new
+     * query has the same sql as the current query, the current query is added
+     * to a JDBC batch rather than executed straight away.
      *
      * @param sql The next query to prepare for execution.
      * @return The BatchQuery with the new query prepared for execution.
@@ -45,10 +119,26 @@ public class BatchQuery extends Query {
      * statement with the provided query.
      */
     public BatchQuery prepareBatchQuery(String sql) throws DBUtilsException {
+        if(steps != null) {
+            steps.add(batch -> batch.prepareBatchQuery(sql));
+            super.setSql(sql);
+            recordTables();
+            return this;
+        }
         try {
-            super.prepareStatementWithParameters();
-            affectedRows += super.getDBUtilsConnection().executeUpdate();
+            boolean sameSql = sql != null && sql.equals(super.getSql());
+            if(pending > 0 || sameSql) {
+                if(!currentQueued)
+                    queueCurrentQuery();
+                if(!sameSql)
+                    flushBatch();
+            } else {
+                super.prepareStatementWithParameters();
+                affectedRows += super.getDBUtilsConnection().executeUpdate();
+            }
             super.setSql(sql);
+            recordTables();
+            currentQueued = false;
         } catch(DBUtilsException e) {
             super.getDBUtilsConnection().rollback();
             super.getDBUtilsConnection().close();
@@ -68,14 +158,143 @@ public class BatchQuery extends Query {
     @Override
     public int executeUpdate() throws DBUtilsException {
         try {
-            super.prepareStatementWithParameters();
-            return affectedRows + super.getDBUtilsConnection().executeUpdate();
-        } catch(DBUtilsException e) {
-            super.getDBUtilsConnection().rollback();
-            throw new DBUtilsException("Error executing batch update", e);
+            if(steps != null)
+                return super.getDBUtilsConnection().getWriteExecutor().execute(
+                  writer -> replay(writer).executeUpdate());
+            try {
+                if(pending > 0) {
+                    if(!currentQueued)
+                        queueCurrentQuery();
+                    flushBatch();
+                } else {
+                    super.prepareStatementWithParameters();
+                    affectedRows +=
+                      super.getDBUtilsConnection().executeUpdate();
+                }
+                return affectedRows;
+            } catch(DBUtilsException e) {
+                super.getDBUtilsConnection().rollback();
+                throw new DBUtilsException("Error executing batch update", e);
+            } finally {
+                super.getDBUtilsConnection().commit();
+                super.getDBUtilsConnection().close();
+            }
         } finally {
-            super.getDBUtilsConnection().commit();
-            super.getDBUtilsConnection().close();
+            invalidateWrittenTables();
         }
     }
+
+    /**
+     * Execute the current query once for each set of parameters, after any
+     * queries already prepared, and commit the batch query. If any query
+     * fails the connection will be rolled back. The connection and prepared
+     * statement are then closed on return.
+     *
+     * @param parameterSets The parameters for each execution of the current
+     * query, mapping parameter keys to their values.
+     * @param chunkSize The number of parameter sets to send at once.
+     * @return The total affected rows of each chunk sent to the database.
+     * @throws DBUtilsException If any SQLException occurs executing the batch.
+     */
+    @Override
+    public int[] executeBatch(Iterable<Map<String, Object>> parameterSets,
+      int chunkSize) throws DBUtilsException {
+        if(chunkSize < 1)
+            throw new IllegalArgumentException("Invalid chunk size: " +
+              chunkSize);
+        try {
+            if(steps != null)
+                return super.getDBUtilsConnection().getWriteExecutor().execute(
+                  writer -> replay(writer).executeBatch(parameterSets,
+                    chunkSize));
+            try {
+                flushBatch();
+                int[] counts = super.executeChunks(parameterSets, chunkSize);
+                super.getDBUtilsConnection().commit();
+                return counts;
+            } catch(DBUtilsException e) {
+                super.getDBUtilsConnection().rollback();
+                throw new DBUtilsException("Error executing batch update", e);
+            } finally {
+                super.getDBUtilsConnection().close();
+            }
+        } finally {
+            invalidateWrittenTables();
+        }
+    }
+
+    /**
+     * Add the current query to the pending JDBC batch. If the pending batch is
+     * for different sql it is executed first.
+     *
+     * @throws DBUtilsException If an SQLException occurs preparing the
+     * statement, binding parameters or executing the pending batch.
+     */
+    private void queueCurrentQuery() throws DBUtilsException {
+        SQLTemplate compiled = super.getTemplate();
+        String sql = compiled == null ? null : compiled.getPreparedSql();
+        if(pending > 0 && !batchSql.equals(sql))
+            flushBatch();
+        if(pending == 0) {
+            super.getDBUtilsConnection().prepareStatement(sql);
+            batchSql = sql;
+        }
+        super.bindParameters(compiled);
+        super.getDBUtilsConnection().addBatch();
+        pending++;
+    }
+
+    /**
+     * Execute the pending JDBC batch, if any.
+     *
+     * @throws DBUtilsException If an SQLException occurs executing the batch.
+     */
+    private void flushBatch() throws DBUtilsException {
+        if(pending == 0)
+            return;
+        affectedRows += sumUpdateCounts(
+          super.getDBUtilsConnection().executeBatch());
+        pending = 0;
+        batchSql = null;
+    }
+
+    /* Remember the tables the current query writes */
+    private void recordTables() {
+        SQLTemplate compiled = super.getTemplate();
+        if(compiled == null || compiled.getTables().isEmpty())
+            unknownTables = true;
+        else
+            tables.addAll(compiled.getTables());
+    }
+
+    private void invalidateWrittenTables() {
+        super.invalidateCachedResults(unknownTables ?
+          Collections.<String>emptySet() : tables);
+    }
+
+    /**
+     * Replay the recorded steps on a new batch query, which runs them
+     * immediately on the provided connection.
+     *
+     * @param connection The connection the steps are run on.
+     * @return The new batch query, ready to be executed.
+     * @throws DBUtilsException If an SQLException occurs running a step.
+     */
+    private BatchQuery replay(DBUtilsConnection connection) throws
+      DBUtilsException {
+        connection.setMetricsRecorder(
+          super.getDBUtilsConnection().getMetricsRecorder());
+        connection.setSlowQueryLog(
+          super.getDBUtilsConnection().getSlowQueryLog());
+        BatchQuery batch = new BatchQuery(connection, firstSql);
+        for (Step step : steps)
+            step.apply(batch);
+        return batch;
+    }
+
+    /* A step recorded to be replayed by a WriteExecutor */
+    @FunctionalInterface
+    private interface Step {
+        void apply(BatchQuery batch) throws DBUtilsException;
+    }
 }
@@ -3,16 +3,24 @@ package com.majoinen.d.database;
 import com.majoinen.d.database.exception.DBUtilsException;
 import com.majoinen.d.database.log.Logger;
 import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.metrics.MetricsRecorder;
+import com.majoinen.d.database.metrics.QueryPhase;
+import com.majoinen.d.database.pool.CachedPreparedStatement;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 /**
  * Holds reference to the Connection and PreparedStatement. Used by
  * DatabaseController and AbstractQuery types.
  *
+ * Preparing and executing statements is timed, and rows, connections and
+ * statement cache hits are counted, by the connection's MetricsRecorder.
+ * Executions which take too long are given to its SlowQueryLog, if any.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 11/7/17
  */
@@ -25,8 +33,82 @@ public class DBUtilsConnection {
     private Connection connection;
     private PreparedStatement statement;
 
+    // The sql the current statement was prepared with
+    private String sql;
+
+    // Records the timings and counts of this connection's statements
+    private MetricsRecorder metrics = MetricsRecorder.NONE;
+
+    // Logs executions of the current statement which take too long, if set
+    private SlowQueryLog slowQueryLog;
+
+    // How long (ns) the current statement took to prepare and execute
+    private long prepareNanos;
+    private long executeNanos;
+
+    // The class of each value bound to the current statement, only kept
+    // when there is a slow query log
+    private Class<?>[] parameterTypes;
+    private int parameterCount;
+
+    // Runs updates on behalf of this connection, or null to run them here
+    private final WriteExecutor writeExecutor;
+
+    // Set once cancel() is called, after which nothing more is executed
+    private volatile boolean cancelled;
+
     public DBUtilsConnection(DatabaseConnectionProvider connectionProvider) {
+        this(connectionProvider, null);
+    }
+
+    /**
+     * Create a connection whose updates are handed to a WriteExecutor, while
+     * reads are run on connections from the provider.
+     *
+     * @param connectionProvider Provides connections for reads.
+     * @param writeExecutor Runs updates, or null to run them on connections
+     * from the provider.
+     */
+    public DBUtilsConnection(DatabaseConnectionProvider connectionProvider,
+      WriteExecutor writeExecutor) {
         this.connectionProvider = connectionProvider;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * @return The WriteExecutor updates should be handed to, or null if they
+     * are run on this connection.
+     */
+    public WriteExecutor getWriteExecutor() {
+        return writeExecutor;
+    }
+
+    public MetricsRecorder getMetricsRecorder() {
+        return metrics;
+    }
+
+    /**
+     * Set the recorder the timings and counts of this connection's
+     * statements are given to.
+     *
+     * @param metrics The recorder, or null to not record metrics.
+     */
+    public void setMetricsRecorder(MetricsRecorder metrics) {
+        this.metrics = metrics != null ? metrics : MetricsRecorder.NONE;
+    }
+
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Set the log executions of this connection's statements which take
+     * too long are given to.
+     *
+     * @param slowQueryLog The log, or null to not log slow queries.
+     */
+    public void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
     }
 
     /**
@@ -55,13 +137,58 @@ public class DBUtilsConnection {
      * prepared statement.
      */
     public int executeUpdate() throws DBUtilsException {
+        checkCancelled();
+        long start = System.nanoTime();
         try {
-            return statement.executeUpdate();
+            int rows = statement.executeUpdate();
+            recordExecuted(start);
+            metrics.recordRowsWritten(sql, rows);
+            recordSlowQuery(0, rows);
+            return rows;
         } catch (SQLException e) {
+            metrics.recordError(sql, QueryPhase.EXECUTE);
             throw new DBUtilsException("Error executing update", e);
         }
     }
 
+    /**
+     * Adds the current parameters of the prepared statement to its batch.
+     *
+     * @throws DBUtilsException if any SQLException occurs adding to the
+     * batch.
+     */
+    public void addBatch() throws DBUtilsException {
+        try {
+            statement.addBatch();
+        } catch (SQLException e) {
+            throw new DBUtilsException("Error adding to batch", e);
+        }
+    }
+
+    /**
+     * Executes every set of parameters added to the prepared statement's
+     * batch.
+     *
+     * @return the update count of each set of parameters in the batch.
+     * @throws DBUtilsException if any SQLException occurs executing the
+     * batch.
+     */
+    public int[] executeBatch() throws DBUtilsException {
+        checkCancelled();
+        long start = System.nanoTime();
+        try {
+            int[] counts = statement.executeBatch();
+            recordExecuted(start);
+            int rows = Query.sumUpdateCounts(counts);
+            metrics.recordRowsWritten(sql, rows);
+            recordSlowQuery(0, rows);
+            return counts;
+        } catch (SQLException e) {
+            metrics.recordError(sql, QueryPhase.EXECUTE);
+            throw new DBUtilsException("Error executing batch", e);
+        }
+    }
+
     /**
      * Executes a query and provides the resulting values from the database.
      *
@@ -69,13 +196,62 @@ public class DBUtilsConnection {
      * @throws DBUtilsException If any SQLException occurs executing the query.
      */
     public ResultSet executeQuery() throws DBUtilsException {
+        checkCancelled();
+        long start = System.nanoTime();
         try {
-            return statement.executeQuery();
+            ResultSet resultSet = statement.executeQuery();
+            recordExecuted(start);
+            return resultSet;
         } catch (SQLException e) {
+            metrics.recordError(sql, QueryPhase.EXECUTE);
             throw new DBUtilsException("Error executing query", e);
         }
     }
 
+    /**
+     * Record how long it took to read and map the results of the current
+     * statement.
+     *
+     * @param nanos How long reading and mapping took (ns).
+     * @param rows The number of rows read.
+     */
+    public void recordMapped(long nanos, long rows) {
+        metrics.recordLatency(sql, QueryPhase.MAP, nanos);
+        metrics.recordRowsRead(sql, rows);
+        recordSlowQuery(nanos, rows);
+    }
+
+    /**
+     * Record that reading or mapping the results of the current statement
+     * failed.
+     */
+    public void recordMapFailed() {
+        metrics.recordError(sql, QueryPhase.MAP);
+    }
+
+    private void recordExecuted(long start) {
+        executeNanos = System.nanoTime() - start;
+        metrics.recordLatency(sql, QueryPhase.EXECUTE, executeNanos);
+    }
+
+    private void recordSlowQuery(long mapNanos, long rows) {
+        if(slowQueryLog != null)
+            slowQueryLog.record(sql, parameterTypes, parameterCount,
+              prepareNanos, executeNanos, mapNanos, rows);
+    }
+
+    /* Keep the class of a bound value for the slow query log. Parameters
+     * skipped before it are left null */
+    private void recordParameterType(int index, Object object) {
+        if(parameterTypes == null || parameterTypes.length < index)
+            parameterTypes = Arrays.copyOf(parameterTypes == null ?
+              new Class<?>[0] : parameterTypes, Math.max(index, 8));
+        for(int i = parameterCount; i < index - 1; i++)
+            parameterTypes[i] = null;
+        parameterTypes[index - 1] = object == null ? null : object.getClass();
+        parameterCount = Math.max(parameterCount, index);
+    }
+
     /**
      * Allow the option to open a connection without enabling auto commit.
      * This is used when inserting multiple queries at the same time that are
@@ -99,7 +275,9 @@ public class DBUtilsConnection {
     }
 
     /**
-     * Prepare a statement for execution, using the provided query.
+     * Prepare a statement for execution, using the provided query. Any
+     * statement previously prepared by this connection is closed first, which
+     * returns it to the statement cache when the connection is pooled.
      *
      * @param sql The query to prepare the statement with.
      * @return True if the statement is successfully prepared.
@@ -111,13 +289,55 @@ public class DBUtilsConnection {
         if(sql == null || sql.length() == 0)
             throw new DBUtilsException("Null or empty query");
         openConnection();
+        synchronized(this) {
+            checkCancelled();
+            closeStatement();
+            this.sql = sql;
+            executeNanos = 0;
+            parameterCount = 0;
+            long start = System.nanoTime();
+            try {
+                statement = connection.prepareStatement(sql);
+            } catch(SQLException e) {
+                metrics.recordError(sql, QueryPhase.PREPARE);
+                throw new DBUtilsException("Error preparing statement",
+                  e);
+            }
+            prepareNanos = System.nanoTime() - start;
+            metrics.recordLatency(sql, QueryPhase.PREPARE, prepareNanos);
+            if(statement instanceof CachedPreparedStatement)
+                metrics.recordStatementCache(
+                  ((CachedPreparedStatement) statement).isCacheHit());
+        }
+        return true;
+    }
+
+    /**
+     * Cancel the statement if it is executing, and refuse to prepare or
+     * execute any further statements. This may be called from another
+     * thread, such as when an asynchronous query times out.
+     *
+     * @throws DBUtilsException If any SQLException occurs cancelling the
+     * statement.
+     */
+    public synchronized void cancel() throws DBUtilsException {
+        logger.debug("Cancelling statement");
+        cancelled = true;
         try {
-            statement = connection.prepareStatement(sql);
+            if(statement != null && !statement.isClosed())
+                statement.cancel();
         } catch(SQLException e) {
-            throw new DBUtilsException("Error preparing statement",
-              e);
+            throw new DBUtilsException("Error cancelling statement", e);
         }
-        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void checkCancelled() throws DBUtilsException {
+        if(cancelled)
+            throw new DBUtilsException("Statement was cancelled");
     }
 
     /**
@@ -128,21 +348,24 @@ public class DBUtilsConnection {
      */
     private void openConnection() throws DBUtilsException {
         try {
-            if (connection == null || connection.isClosed())
+            if (connection == null || connection.isClosed()) {
                 connection = connectionProvider.openConnection();
+                metrics.recordConnectionOpened();
+            }
         } catch(SQLException e) {
             throw new DBUtilsException("Error opening connection", e);
         }
     }
 
     /**
-     * Close the prepared statement and connection.
+     * Close the prepared statement and connection. When the connection came
+     * from a ConnectionPool, closing it returns it to the pool.
      *
      * @return True if both successfully close, or false otherwise.
      * @throws DBUtilsException If any SQLException occurs when closing the
      * statement or connection.
      */
-    public boolean close() throws DBUtilsException {
+    public synchronized boolean close() throws DBUtilsException {
         logger.debug("Closing connection to the database");
         return closeStatement() && closeConnection();
     }
@@ -180,6 +403,7 @@ public class DBUtilsConnection {
             if (connection != null && !connection.isClosed()) {
                 logger.debug("Connection OPEN: Closing connection");
                 connection.close();
+                metrics.recordConnectionClosed();
             }
         } catch(SQLException e) {
             logger.error("SQLException closing connection");
@@ -189,6 +413,23 @@ public class DBUtilsConnection {
         return true;
     }
 
+    /**
+     * Gives the driver a hint of how many rows to fetch at a time when
+     * reading the results of the prepared statement.
+     *
+     * @param rows the number of rows to fetch at a time, or 0 to use the
+     * driver's default.
+     * @throws DBUtilsException if any SQLException occurs setting the fetch
+     * size.
+     */
+    public void setFetchSize(int rows) throws DBUtilsException {
+        try {
+            statement.setFetchSize(rows);
+        } catch(SQLException e) {
+            throw new DBUtilsException("Error setting fetch size", e);
+        }
+    }
+
     /**
      * Sets the value of the designated parameter using the given object.
      *
@@ -200,6 +441,8 @@ public class DBUtilsConnection {
     public void setObject(int index, Object object) throws DBUtilsException {
         try {
             statement.setObject(index, object);
+            if(slowQueryLog != null)
+                recordParameterType(index, object);
         } catch(SQLException e) {
             logger.error("[DBUtils] SQLException setting object");
             throw new DBUtilsException("[DBUtils] Error setting object", e);
@@ -222,12 +465,15 @@ public class DBUtilsConnection {
     }
 
     /**
-     * Rollback the connection, providing exception handling.
+     * Rollback the connection, providing exception handling. If no
+     * connection has been opened there is nothing to roll back.
      *
      * @throws DBUtilsException If any SQLException occurs rolling back the
      * connection.
      */
     protected void rollback() throws DBUtilsException {
+        if(connection == null)
+            return;
         try {
             connection.rollback();
         } catch(SQLException e) {
@@ -13,4 +13,13 @@ import java.sql.Connection;
 @FunctionalInterface
 public interface DatabaseConnectionProvider {
     Connection openConnection() throws DBUtilsException;
+
+    /**
+     * Release any connections held by the provider, such as a pool's idle
+     * connections. By default there is nothing to release.
+     *
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection.
+     */
+    default void close() throws DBUtilsException { }
 }
@@ -1,36 +1,102 @@
 package com.majoinen.d.database;
 
 import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.pool.ConnectionPool;
 import com.majoinen.d.database.sqlite.SQLiteConnectionProvider;
-
-import java.util.HashMap;
-import java.util.Map;
+import com.majoinen.d.database.util.Registry;
 
 /**
+ * Provides the connection provider for each database. Unless disabled in the
+ * database config file, connections are pooled and each pooled connection
+ * caches its prepared statements.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 23/7/17
  */
 public final class DatabaseConnectionProviderFactory {
 
-    private static Map<String, DatabaseConnectionProvider> providers;
+    private static final Registry<String, DatabaseConnectionProvider>
+      providers = new Registry<>();
 
     private DatabaseConnectionProviderFactory() { }
 
     public static DatabaseConnectionProvider getConnectionProvider(
       String databaseName, String filename) throws DBUtilsException {
-        if(providers == null)
-            providers = new HashMap<>();
-        else if(providers.containsKey(databaseName))
-            return providers.get(databaseName);
+        return providers.getOrCreate(databaseName,
+          name -> createConnectionProvider(name, filename));
+    }
 
+    /**
+     * Close the connection provider of a database, such as its pool. A new
+     * provider is created if the database is connected to again.
+     *
+     * @param databaseName The name of the database.
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection.
+     */
+    public static void closeConnectionProvider(String databaseName)
+      throws DBUtilsException {
+        DatabaseConnectionProvider provider = providers.remove(databaseName);
+        if(provider != null)
+            provider.close();
+    }
+
+    /**
+     * Close the connection providers of every database.
+     *
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection. Every provider is closed regardless.
+     */
+    public static void closeAll() throws DBUtilsException {
+        DBUtilsException failure = null;
+        for (DatabaseConnectionProvider provider : providers.removeAll()) {
+            try {
+                provider.close();
+            } catch(DBUtilsException e) {
+                failure = e;
+            }
+        }
+        if(failure != null)
+            throw failure;
+    }
+
+    private static DatabaseConnectionProvider createConnectionProvider(
+      String databaseName, String filename) throws DBUtilsException {
         DatabaseConnectionProvider provider = null;
         DatabaseType type = DatabaseProperties.getDatabaseType(filename);
 
         if(type.equals(DatabaseType.SQLITE))
             provider = new SQLiteConnectionProvider(databaseName, filename);
 
-        providers.put(databaseName, provider);
+        if(provider != null)
+            provider = pool(provider, filename);
+
         return provider;
     }
 
+    /**
+     * Pool the connections of a provider, unless pooling is disabled in the
+     * database config file. The provider returned is not registered, so
+     * must be closed by the caller.
+     *
+     * @param provider The provider of the connections to pool.
+     * @param filename The database config file.
+     * @return A ConnectionPool of the provider's connections, or the
+     * provider if pooling is disabled.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public static DatabaseConnectionProvider pool(
+      DatabaseConnectionProvider provider, String filename)
+      throws DBUtilsException {
+        if(!DatabaseProperties.isPoolEnabled(filename))
+            return provider;
+        return new ConnectionPool(provider,
+          DatabaseProperties.getPoolMinSize(filename),
+          DatabaseProperties.getPoolMaxSize(filename),
+          DatabaseProperties.getPoolIdleTimeout(filename),
+          DatabaseProperties.getPoolAcquireTimeout(filename),
+          DatabaseProperties.getPoolValidationTimeout(filename),
+          DatabaseProperties.getStatementCacheSize(filename));
+    }
 }
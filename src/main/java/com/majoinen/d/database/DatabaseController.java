@@ -1,6 +1,7 @@
 package com.majoinen.d.database;
 
 import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.metrics.MetricsSnapshot;
 
 import java.util.List;
 
@@ -60,4 +61,23 @@ public interface DatabaseController {
     boolean databaseExists() throws DBUtilsException;
 
     void setProperty(String key, String value) throws DBUtilsException;
+
+    /**
+     * Summarise the timings and counts of the queries executed on this
+     * database, grouped by the shape of their sql.
+     *
+     * @return A snapshot of the metrics, or null if metrics are disabled.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    MetricsSnapshot getMetrics() throws DBUtilsException;
+
+    /**
+     * Wait for any queued writes, then close the connections held for this
+     * database. Preparing another query reopens them.
+     *
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection.
+     */
+    void close() throws DBUtilsException;
 }
@@ -1,21 +1,45 @@
 package com.majoinen.d.database;
 
 import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
 import com.majoinen.d.database.sqlite.SQLiteDatabaseController;
+import com.majoinen.d.database.sqlite.SQLiteDatabaseProperties;
+import com.majoinen.d.database.sqlite.ShardedDatabaseController;
+import com.majoinen.d.database.util.Registry;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A factory to create an appropriate database controller for the desired
  * database implementation type.
  *
+ * A database split across several SQLite files, by setting
+ * database.shard.count in its config file, is controlled by a
+ * ShardedDatabaseController from getShardedController(). getController()
+ * ignores the shard count, as its queries are prepared without a shard key.
+ *
+ * The first time a controller is created a shutdown hook is registered,
+ * which closes every controller and connection provider when the JVM exits.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 5/7/17
  */
 public final class DatabaseControllerFactory {
 
-    private static Map<String, DatabaseController> controllers;
+    private static final Logger logger =
+      LogManager.getLogger(DatabaseControllerFactory.class);
+
+    private static final Registry<String, DatabaseController> controllers =
+      new Registry<>();
+
+    private static final Registry<String, ShardedDatabaseController>
+      shardedControllers = new Registry<>();
+
+    private static final AtomicBoolean shutdownHookRegistered =
+      new AtomicBoolean();
 
     private DatabaseControllerFactory() { }
 
@@ -26,24 +50,139 @@ public final class DatabaseControllerFactory {
 
     public static DatabaseController getController(String databaseName,
       String filename) throws DBUtilsException {
-        DatabaseController controller = getIfExists(databaseName);
+        return controllers.getOrCreate(databaseName,
+          name -> createController(name, filename));
+    }
+
+    public static ShardedDatabaseController getShardedController(
+      String databaseName) throws DBUtilsException {
+        return getShardedController(databaseName, databaseName);
+    }
+
+    /**
+     * Get the controller of a database split across the number of shards
+     * set by database.shard.count in its config file.
+     *
+     * @param databaseName The name of the database, which each shard is
+     * named after.
+     * @param filename The config file of every shard.
+     * @return The sharded controller of the database.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing it; if the number of shards is
+     * not a positive number or if the database is not an SQLite database.
+     */
+    public static ShardedDatabaseController getShardedController(
+      String databaseName, String filename) throws DBUtilsException {
+        return shardedControllers.getOrCreate(databaseName,
+          name -> createShardedController(name, filename));
+    }
+
+    /**
+     * @return Every controller created and not yet closed, such as to run a
+     * ScatterGatherQuery across every database.
+     */
+    public static List<DatabaseController> getControllers() {
+        return new ArrayList<>(controllers.values());
+    }
+
+    /**
+     * Prepare a query to run across every controller created and not yet
+     * closed.
+     *
+     * @param query The query to run on every database.
+     * @return A ScatterGatherQuery across every controller.
+     */
+    public static ScatterGatherQuery prepareScatterGatherQuery(String query) {
+        return new ScatterGatherQuery(getControllers(), query);
+    }
+
+    /**
+     * Close the controller of a database and remove it, so the next call to
+     * getController creates a new one.
+     *
+     * @param databaseName The name of the database.
+     * @throws DBUtilsException If any SQLException occurs closing the
+     * controller's connections.
+     */
+    public static void closeController(String databaseName)
+      throws DBUtilsException {
+        DatabaseController controller = controllers.remove(databaseName);
         if(controller != null)
-            return controller;
+            controller.close();
+        ShardedDatabaseController sharded =
+          shardedControllers.remove(databaseName);
+        if(sharded != null)
+            sharded.close();
+    }
+
+    /**
+     * Close every controller, waiting for queued writes, then close every
+     * connection provider.
+     *
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection. Every controller and provider is closed regardless.
+     */
+    public static void shutdown() throws DBUtilsException {
+        DBUtilsException failure = null;
+        for (DatabaseController controller : controllers.removeAll()) {
+            try {
+                controller.close();
+            } catch(DBUtilsException e) {
+                failure = e;
+            }
+        }
+        for (ShardedDatabaseController controller :
+          shardedControllers.removeAll()) {
+            try {
+                controller.close();
+            } catch(DBUtilsException e) {
+                failure = e;
+            }
+        }
+        try {
+            DatabaseConnectionProviderFactory.closeAll();
+        } catch(DBUtilsException e) {
+            failure = e;
+        }
+        if(failure != null)
+            throw failure;
+    }
 
+    private static DatabaseController createController(String databaseName,
+      String filename) throws DBUtilsException {
+        DatabaseController controller = null;
         DatabaseType type = DatabaseProperties.getDatabaseType(filename);
-        if(type.equals(DatabaseType.SQLITE))
+        if(type.equals(DatabaseType.SQLITE)) {
+            if(SQLiteDatabaseProperties.getShardCount(filename) > 1)
+                logger.info("Shard count of {} ignored, see " +
+                  "getShardedController()", databaseName);
             controller = new SQLiteDatabaseController(databaseName, filename);
-
-        controllers.put(databaseName, controller);
+        }
+        registerShutdownHook();
         return controller;
+    }
 
+    private static ShardedDatabaseController createShardedController(
+      String databaseName, String filename) throws DBUtilsException {
+        DatabaseType type = DatabaseProperties.getDatabaseType(filename);
+        if(!type.equals(DatabaseType.SQLITE))
+            throw new DBUtilsException("Only SQLite databases can be " +
+              "sharded: " + databaseName);
+        ShardedDatabaseController controller = new ShardedDatabaseController(
+          databaseName, filename);
+        registerShutdownHook();
+        return controller;
     }
 
-    private static DatabaseController getIfExists(String databaseName) {
-        if(controllers == null)
-            controllers = new HashMap<>();
-        else if(controllers.containsKey(databaseName))
-            return controllers.get(databaseName);
-        return null;
+    private static void registerShutdownHook() {
+        if(!shutdownHookRegistered.compareAndSet(false, true))
+            return;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                shutdown();
+            } catch(DBUtilsException e) {
+                logger.error("Error closing databases on shutdown", e);
+            }
+        }, "DBUtils-shutdown"));
     }
 }
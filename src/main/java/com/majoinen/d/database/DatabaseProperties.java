@@ -1,6 +1,7 @@
 package com.majoinen.d.database;
 
 import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.metrics.InMemoryMetricsRecorder;
 import com.majoinen.d.database.util.PropertiesHandler;
 
 import java.util.Arrays;
@@ -24,6 +25,79 @@ public abstract class DatabaseProperties {
     // The key for the tables delimiter
     private static final String TABLES_DELIMITER_KEY = "table.names.delimiter";
 
+    // The key for whether connections should be pooled
+    private static final String POOL_ENABLED_KEY = "database.pool.enabled";
+
+    // The key for the number of idle connections which are never evicted
+    private static final String POOL_MIN_SIZE_KEY = "database.pool.min.size";
+
+    // The key for the maximum number of open connections
+    private static final String POOL_MAX_SIZE_KEY = "database.pool.max.size";
+
+    // The key for how long (ms) a connection may be idle before eviction
+    private static final String POOL_IDLE_TIMEOUT_KEY =
+      "database.pool.idle.timeout";
+
+    // The key for how long (ms) to wait for a connection from the pool
+    private static final String POOL_ACQUIRE_TIMEOUT_KEY =
+      "database.pool.acquire.timeout";
+
+    // The key for how long (s) to wait when validating an idle connection
+    private static final String POOL_VALIDATION_TIMEOUT_KEY =
+      "database.pool.validation.timeout";
+
+    // The key for how many prepared statements to cache per connection
+    private static final String STATEMENT_CACHE_SIZE_KEY =
+      "database.statement.cache.size";
+
+    // The key for the most updates committed together, or 0 to not group
+    private static final String GROUP_COMMIT_SIZE_KEY =
+      "database.group.commit.size";
+
+    // The key for how long (ms) an update waits for others to join its group
+    private static final String GROUP_COMMIT_DELAY_KEY =
+      "database.group.commit.delay";
+
+    // The key for whether query metrics are recorded
+    private static final String METRICS_ENABLED_KEY =
+      "database.metrics.enabled";
+
+    // The key for the most query shapes metrics are kept for
+    private static final String METRICS_MAX_SHAPES_KEY =
+      "database.metrics.max.shapes";
+
+    // The key for the most query results cached, where 0 disables caching
+    private static final String RESULT_CACHE_SIZE_KEY =
+      "database.result.cache.size";
+
+    // The key for how long (ms) a cached query result may be kept
+    private static final String RESULT_CACHE_TTL_KEY =
+      "database.result.cache.ttl";
+
+    // The key for how long (ms) a query may take before it is logged, where
+    // 0 disables the slow query log
+    private static final String SLOW_QUERY_THRESHOLD_KEY =
+      "database.slow.query.threshold";
+
+    // The key for how long (ms) before the same slow query is logged again
+    private static final String SLOW_QUERY_SAMPLE_INTERVAL_KEY =
+      "database.slow.query.sample.interval";
+
+    private static final int DEFAULT_POOL_MIN_SIZE = 1;
+    private static final int DEFAULT_POOL_MAX_SIZE = 10;
+    private static final long DEFAULT_POOL_IDLE_TIMEOUT = 60000;
+    private static final long DEFAULT_POOL_ACQUIRE_TIMEOUT = 30000;
+    private static final int DEFAULT_POOL_VALIDATION_TIMEOUT = 5;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    private static final int DEFAULT_GROUP_COMMIT_SIZE = 0;
+    private static final long DEFAULT_GROUP_COMMIT_DELAY = 2;
+    private static final int DEFAULT_METRICS_MAX_SHAPES =
+      InMemoryMetricsRecorder.DEFAULT_MAX_SHAPES;
+    private static final int DEFAULT_RESULT_CACHE_SIZE = 0;
+    private static final long DEFAULT_RESULT_CACHE_TTL = 60000;
+    private static final long DEFAULT_SLOW_QUERY_THRESHOLD = 0;
+    private static final long DEFAULT_SLOW_QUERY_SAMPLE_INTERVAL = 60000;
+
     protected DatabaseProperties() {}
 
     /**
@@ -59,4 +133,155 @@ public abstract class DatabaseProperties {
           .getRequiredProperty(databaseName, TABLE_NAMES_KEY);
         return Arrays.asList(tables.split(delimiter));
     }
+
+    /**
+     * Whether the config file lists the tables meant to be in the database.
+     *
+     * @param filename the filename of the .properties file.
+     * @return True if table.names is set.
+     * @throws DBUtilsException If the config file is not found or if there are
+     * any permission issues when accessing the config file.
+     */
+    public static boolean hasTableNames(String filename)
+      throws DBUtilsException {
+        String tables = PropertiesHandler.getProperty(filename,
+          TABLE_NAMES_KEY);
+        return tables != null && tables.trim().length() > 0;
+    }
+
+    /**
+     * Whether connections to the database should be pooled. Pooling is
+     * enabled unless the config file sets database.pool.enabled to false.
+     *
+     * @param filename the filename of the .properties file.
+     * @return True if connections should be pooled.
+     * @throws DBUtilsException If the config file is not found or if there are
+     * any permission issues when accessing the config file.
+     */
+    public static boolean isPoolEnabled(String filename)
+      throws DBUtilsException {
+        String enabled = PropertiesHandler.getProperty(filename,
+          POOL_ENABLED_KEY);
+        return enabled == null || Boolean.parseBoolean(enabled.trim());
+    }
+
+    public static int getPoolMinSize(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, POOL_MIN_SIZE_KEY,
+          DEFAULT_POOL_MIN_SIZE);
+    }
+
+    public static int getPoolMaxSize(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, POOL_MAX_SIZE_KEY,
+          DEFAULT_POOL_MAX_SIZE);
+    }
+
+    public static long getPoolIdleTimeout(String filename)
+      throws DBUtilsException {
+        return getNumericProperty(filename, POOL_IDLE_TIMEOUT_KEY,
+          DEFAULT_POOL_IDLE_TIMEOUT);
+    }
+
+    public static long getPoolAcquireTimeout(String filename)
+      throws DBUtilsException {
+        return getNumericProperty(filename, POOL_ACQUIRE_TIMEOUT_KEY,
+          DEFAULT_POOL_ACQUIRE_TIMEOUT);
+    }
+
+    public static int getPoolValidationTimeout(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, POOL_VALIDATION_TIMEOUT_KEY,
+          DEFAULT_POOL_VALIDATION_TIMEOUT);
+    }
+
+    public static int getStatementCacheSize(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, STATEMENT_CACHE_SIZE_KEY,
+          DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    public static int getGroupCommitSize(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, GROUP_COMMIT_SIZE_KEY,
+          DEFAULT_GROUP_COMMIT_SIZE);
+    }
+
+    public static long getGroupCommitDelay(String filename)
+      throws DBUtilsException {
+        return getNumericProperty(filename, GROUP_COMMIT_DELAY_KEY,
+          DEFAULT_GROUP_COMMIT_DELAY);
+    }
+
+    /**
+     * Whether the timings and counts of queries should be recorded. Metrics
+     * are enabled unless the config file sets database.metrics.enabled to
+     * false.
+     *
+     * @param filename the filename of the .properties file.
+     * @return True if metrics should be recorded.
+     * @throws DBUtilsException If the config file is not found or if there are
+     * any permission issues when accessing the config file.
+     */
+    public static boolean isMetricsEnabled(String filename)
+      throws DBUtilsException {
+        String enabled = PropertiesHandler.getProperty(filename,
+          METRICS_ENABLED_KEY);
+        return enabled == null || Boolean.parseBoolean(enabled.trim());
+    }
+
+    public static int getMetricsMaxShapes(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, METRICS_MAX_SHAPES_KEY,
+          DEFAULT_METRICS_MAX_SHAPES);
+    }
+
+    public static int getResultCacheSize(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, RESULT_CACHE_SIZE_KEY,
+          DEFAULT_RESULT_CACHE_SIZE);
+    }
+
+    public static long getResultCacheTtl(String filename)
+      throws DBUtilsException {
+        return getNumericProperty(filename, RESULT_CACHE_TTL_KEY,
+          DEFAULT_RESULT_CACHE_TTL);
+    }
+
+    public static long getSlowQueryThreshold(String filename)
+      throws DBUtilsException {
+        return getNumericProperty(filename, SLOW_QUERY_THRESHOLD_KEY,
+          DEFAULT_SLOW_QUERY_THRESHOLD);
+    }
+
+    public static long getSlowQuerySampleInterval(String filename)
+      throws DBUtilsException {
+        return getNumericProperty(filename, SLOW_QUERY_SAMPLE_INTERVAL_KEY,
+          DEFAULT_SLOW_QUERY_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Get an optional numeric property, falling back to a default when the
+     * key is missing or empty.
+     *
+     * @param filename the filename of the .properties file.
+     * @param key the property key.
+     * @param defaultValue the value to use when the key is not set.
+     * @return the value of the property.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the value
+     * is not a number.
+     */
+    protected static long getNumericProperty(String filename, String key,
+      long defaultValue) throws DBUtilsException {
+        String value = PropertiesHandler.getProperty(filename, key);
+        if(value == null || value.trim().length() == 0)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch(NumberFormatException e) {
+            throw new DBUtilsException("Invalid number for property: " + key,
+              e);
+        }
+    }
 }
@@ -0,0 +1,355 @@
+package com.majoinen.d.database;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.pool.DelegatingConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces single updates submitted by many threads into shared
+ * transactions, so a group of updates costs one commit rather than one
+ * each. A group is committed once it reaches the maximum group size, or the
+ * maximum delay has passed since its first update was submitted. The delay
+ * is cut short once every update which has been submitted and not yet
+ * committed is in the group, as no other caller can join it.
+ *
+ * Each update runs within its own savepoint, so an update which fails is
+ * rolled back on its own and the rest of its group is still committed. Each
+ * caller's future is completed with its own result once the group commits.
+ *
+ * Only executeUpdate() is grouped. Other work, such as batch queries, which
+ * manages its own transaction, is run straight away.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 28/9/17
+ */
+public class GroupCommitter implements WriteExecutor {
+
+    private static final Logger logger =
+      LogManager.getLogger(GroupCommitter.class);
+
+    // How long (ms) the flusher waits for an update before checking whether
+    // it has been closed
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final DatabaseConnectionProvider connectionProvider;
+    private final WriteExecutor downstream;
+    private final int maxGroupSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Item<?>> queue;
+    private final Thread flusher;
+    private final AtomicLong groupsCommitted;
+    private final AtomicLong updatesCommitted;
+
+    // Updates submitted whose futures have not yet been completed
+    private final AtomicInteger inFlight;
+    private volatile boolean closed;
+
+    /**
+     * Create a group committer which writes using connections from the
+     * provider, or by handing each group to another WriteExecutor.
+     *
+     * @param name The name of the database, used to name the flusher thread.
+     * @param connectionProvider Provides the connection each group is
+     * committed on, when there is no downstream WriteExecutor.
+     * @param downstream Runs each group, such as on a dedicated writer
+     * thread, or null to run groups on the flusher thread.
+     * @param maxGroupSize The most updates committed in one transaction.
+     * @param maxDelayMillis The longest an update waits for others to join
+     * its group.
+     */
+    public GroupCommitter(String name,
+      DatabaseConnectionProvider connectionProvider, WriteExecutor downstream,
+      int maxGroupSize, long maxDelayMillis) {
+        if(maxGroupSize < 1 || maxDelayMillis < 0)
+            throw new IllegalArgumentException("Invalid group commit: " +
+              maxGroupSize + " updates, " + maxDelayMillis + "ms");
+        this.connectionProvider = connectionProvider;
+        this.downstream = downstream;
+        this.maxGroupSize = maxGroupSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new LinkedBlockingQueue<>();
+        this.groupsCommitted = new AtomicLong();
+        this.updatesCommitted = new AtomicLong();
+        this.inFlight = new AtomicInteger();
+        this.flusher = new Thread(this::flushGroups,
+          "DBUtils-group-commit-" + name);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Run work which manages its own transaction straight away, on the
+     * downstream WriteExecutor if there is one.
+     *
+     * @param work The work to run, given a connection to write with.
+     * @param <T> The type of result of the work.
+     * @return The result of the work.
+     * @throws DBUtilsException If the work fails.
+     */
+    @Override
+    public <T> T execute(Work<T> work) throws DBUtilsException {
+        if(downstream != null)
+            return downstream.execute(work);
+        return work.execute(new DBUtilsConnection(connectionProvider));
+    }
+
+    /**
+     * Submit a single update to the next group, and wait for the group to
+     * commit.
+     *
+     * @param work The update, given a connection within the group's
+     * transaction.
+     * @return The update's own affected rows.
+     * @throws DBUtilsException If the update fails; if its group fails to
+     * commit or if the calling thread is interrupted while waiting.
+     */
+    @Override
+    public int executeUpdate(Work<Integer> work) throws DBUtilsException {
+        try {
+            return submit(work).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBUtilsException("Interrupted waiting for commit", e);
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof DBUtilsException)
+                throw (DBUtilsException) cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if(cause instanceof Error)
+                throw (Error) cause;
+            throw new DBUtilsException("Error executing update", e);
+        }
+    }
+
+    /**
+     * Submit a single update to the next group without waiting.
+     *
+     * @param work The update, given a connection within the group's
+     * transaction.
+     * @param <T> The type of result of the update.
+     * @return A future completed with the update's result once its group
+     * commits, or exceptionally if the update or its group fails.
+     */
+    public <T> CompletableFuture<T> submit(Work<T> work) {
+        Item<T> item = new Item<>(work);
+        inFlight.incrementAndGet();
+        item.future.whenComplete((result, e) -> inFlight.decrementAndGet());
+        if(closed) {
+            item.future.completeExceptionally(
+              new DBUtilsException("Group committer is closed"));
+            return item.future;
+        }
+        queue.add(item);
+        // close() may have drained the queue between the check and the add,
+        // in which case the item is taken back and failed here instead
+        if(closed && queue.remove(item))
+            item.future.completeExceptionally(
+              new DBUtilsException("Group committer is closed"));
+        return item.future;
+    }
+
+    /**
+     * @return The number of groups committed.
+     */
+    public long getGroupsCommitted() {
+        return groupsCommitted.get();
+    }
+
+    /**
+     * @return The number of updates committed, across all groups.
+     */
+    public long getUpdatesCommitted() {
+        return updatesCommitted.get();
+    }
+
+    /**
+     * Refuse further updates, and wait for those already submitted to be
+     * committed.
+     */
+    public void close() {
+        closed = true;
+        try {
+            flusher.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Item<?> item;
+        while((item = queue.poll()) != null)
+            item.future.completeExceptionally(
+              new DBUtilsException("Group committer is closed"));
+    }
+
+    boolean writesTo(DatabaseConnectionProvider connectionProvider,
+      WriteExecutor downstream) {
+        return this.downstream == downstream && (downstream != null ||
+          this.connectionProvider == connectionProvider);
+    }
+
+    /* Collect and commit groups until closed and the queue is drained */
+    private void flushGroups() {
+        List<Item<?>> group = new ArrayList<>(maxGroupSize);
+        while(!closed || !queue.isEmpty()) {
+            try {
+                collectGroup(group);
+            } catch(InterruptedException e) {
+                closed = true;
+            }
+            queue.drainTo(group, maxGroupSize - group.size());
+            if(!group.isEmpty())
+                commitGroup(group);
+            group.clear();
+        }
+    }
+
+    /* Wait for the first update, then for others until the group is full,
+     * the delay since the first update has passed or there are no other
+     * updates in flight to wait for */
+    private void collectGroup(List<Item<?>> group) throws
+      InterruptedException {
+        Item<?> first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if(first == null)
+            return;
+        group.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while(group.size() < maxGroupSize) {
+            queue.drainTo(group, maxGroupSize - group.size());
+            long remaining = deadline - System.nanoTime();
+            if(group.size() >= maxGroupSize || remaining <= 0 ||
+              group.size() >= inFlight.get())
+                return;
+            Item<?> item = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if(item == null)
+                return;
+            group.add(item);
+        }
+    }
+
+    private void commitGroup(List<Item<?>> group) {
+        try {
+            if(downstream != null)
+                downstream.execute(connection -> runGroup(connection, group));
+            else
+                runGroup(new DBUtilsConnection(connectionProvider), group);
+        } catch(DBUtilsException | RuntimeException e) {
+            logger.error("Error committing group of " + group.size() +
+              " updates", e);
+            for (Item<?> item : group)
+                item.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Run each update of a group within its own savepoint on one connection,
+     * then commit them together and complete their futures.
+     *
+     * @param connection The connection to commit the group on.
+     * @param group The updates to commit.
+     * @return The number of updates committed.
+     * @throws DBUtilsException If the group could not be committed, in which
+     * case none of its updates are applied.
+     */
+    private Integer runGroup(DBUtilsConnection connection,
+      List<Item<?>> group) throws DBUtilsException {
+        int succeeded = 0;
+        try {
+            connection.disableAutoCommit();
+            Connection shared = connection.getConnection();
+            DatabaseConnectionProvider view = () ->
+              new GroupConnection(shared);
+            for (Item<?> item : group) {
+                if(item.run(shared, view))
+                    succeeded++;
+            }
+            connection.commit();
+        } catch(SQLException e) {
+            connection.rollback();
+            throw new DBUtilsException("Error running group", e);
+        } catch(DBUtilsException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.close();
+        }
+        groupsCommitted.incrementAndGet();
+        updatesCommitted.addAndGet(succeeded);
+        for (Item<?> item : group)
+            item.complete();
+        return succeeded;
+    }
+
+    /* An update waiting to be committed, and its result once it has run */
+    private static final class Item<T> {
+
+        private final Work<T> work;
+        private final CompletableFuture<T> future;
+        private T result;
+
+        private Item(Work<T> work) {
+            this.work = work;
+            this.future = new CompletableFuture<>();
+        }
+
+        /**
+         * Run the update within a savepoint, rolling back to it and failing
+         * the future if the update fails.
+         *
+         * @return True if the update succeeded.
+         * @throws SQLException If the savepoint could not be set, released
+         * or rolled back to.
+         */
+        private boolean run(Connection shared, DatabaseConnectionProvider
+          view) throws SQLException {
+            Savepoint savepoint = shared.setSavepoint();
+            try {
+                result = work.execute(new DBUtilsConnection(view));
+                shared.releaseSavepoint(savepoint);
+                return true;
+            } catch(DBUtilsException | RuntimeException e) {
+                shared.rollback(savepoint);
+                shared.releaseSavepoint(savepoint);
+                future.completeExceptionally(e);
+                return false;
+            }
+        }
+
+        private void complete() {
+            future.complete(result);
+        }
+    }
+
+    /* The group's connection, which each update may close without ending
+     * the group's transaction */
+    private static final class GroupConnection extends DelegatingConnection {
+
+        private boolean closed;
+
+        private GroupConnection(Connection connection) {
+            super(connection);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -1,21 +1,48 @@
 package com.majoinen.d.database;
 
+import com.majoinen.d.database.cache.QueryResultCache;
+import com.majoinen.d.database.cache.ResultKey;
 import com.majoinen.d.database.exception.DBUtilsException;
 import com.majoinen.d.database.log.LogManager;
 import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.util.AsyncExecutors;
+import com.majoinen.d.database.util.LongLongMap;
 import com.majoinen.d.database.util.ObjectMapper;
 import com.majoinen.d.database.util.ResultSetHandler;
+import com.majoinen.d.database.util.ResultSetIterator;
 import com.majoinen.d.database.util.SQLParameterParser;
+import com.majoinen.d.database.util.SQLTemplate;
 
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Adds ability to add parameters to a query, execute an update or execute
  * and map results to an object.
  *
+ * An asynchronous execution reads the sql and parameters of the query, and
+ * uses its connection, when it runs on the executor rather than when it is
+ * started. The query must not be changed or executed again until the
+ * returned future completes; prepare another query for each execution which
+ * may overlap.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 10/7/17
  */
@@ -23,9 +50,24 @@ public class Query {
 
     private static final Logger logger = LogManager.getLogger(Query.class);
 
+    // The number of parameter sets sent to the database at once by default
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 1000;
+
     private final DBUtilsConnection connection;
     private String sql;
+    private SQLTemplate template;
     private Map<String, Object> parameters;
+    private int fetchSize;
+
+    // Asynchronous executions run on this executor, or the default if null
+    private Executor executor;
+
+    // How long (ms) an asynchronous execution may run, or 0 for no limit
+    private long timeoutMillis;
+
+    // Cached results are looked up in, and writes invalidate, this cache
+    private QueryResultCache resultCache;
+    private boolean cacheable;
 
     public Query(DBUtilsConnection connection, String sql) {
         this.connection = connection;
@@ -59,6 +101,19 @@ public class Query {
      */
     public void setSql(String sql) {
         this.sql = sql;
+        this.template = null;
+    }
+
+    /**
+     * Getter for the compiled form of the sql query, which is compiled the
+     * first time it is needed.
+     *
+     * @return the compiled sql template, or null if there is no sql.
+     */
+    protected SQLTemplate getTemplate() {
+        if(template == null && sql != null)
+            template = SQLParameterParser.compile(sql);
+        return template;
     }
 
     /**
@@ -71,10 +126,85 @@ public class Query {
     }
 
     /**
-     * Set a parameter by providing its substring in the sql and its value.
+     * Set how many rows the driver should fetch at a time when streaming or
+     * iterating over the results of this query.
+     *
+     * @param fetchSize the number of rows to fetch at a time, or 0 to use
+     * the driver's default.
+     * @return the Query with the fetch size set.
+     */
+    public Query setFetchSize(int fetchSize) {
+        if(fetchSize < 0)
+            throw new IllegalArgumentException("Invalid fetch size: " +
+              fetchSize);
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Set the executor asynchronous executions of this query run on. By
+     * default they run on AsyncExecutors.getDefault().
+     *
+     * @param executor the executor, or null to use the default.
+     * @return the Query with the executor set.
+     */
+    public Query setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Set the cache results of this query are kept in, if it is cacheable,
+     * and which is told of the tables this query writes. Set by the
+     * controller which prepared the query.
+     *
+     * @param resultCache the cache, or null for none.
+     * @return the Query with the cache set.
+     */
+    public Query setResultCache(QueryResultCache resultCache) {
+        this.resultCache = resultCache;
+        return this;
+    }
+
+    /**
+     * Set whether the results of executeAndMap() and executeAndMapAll() may
+     * be served from, and kept in, the result cache. Results are cached by
+     * the sql, the parameter values and the mapping key of the mapper, which
+     * is the mapper itself unless it overrides ObjectMapper.getMappingKey(),
+     * so a lambda capturing values only hits results it mapped itself.
+     * Cached lists are unmodifiable and cached results are shared by every
+     * caller, so should not be modified. Has no effect if the controller has
+     * no result cache.
+     *
+     * @param cacheable whether the results may be cached.
+     * @return the Query with the option set.
+     */
+    public Query setCacheable(boolean cacheable) {
+        this.cacheable = cacheable;
+        return this;
+    }
+
+    /**
+     * Set how long an asynchronous execution of this query may run. Once
+     * the timeout passes its future fails with a TimeoutException and the
+     * statement is cancelled.
      *
-     * @param key a substring within the sql query which will be replaced
-     * with the supplied value using setObject().
+     * @param timeout how long the execution may run, or 0 for no limit.
+     * @param unit the unit of the timeout.
+     * @return the Query with the timeout set.
+     */
+    public Query setTimeout(long timeout, TimeUnit unit) {
+        if(timeout < 0)
+            throw new IllegalArgumentException("Invalid timeout: " + timeout);
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Set a parameter by providing its key in the sql and its value.
+     *
+     * @param key a named parameter within the sql query, such as :name, which
+     * will be replaced with the supplied value using setObject().
      * @param value the value for the supplied key.
      * @param <T> The type of the value.
      * @return the Query with the parameter added.
@@ -97,19 +227,187 @@ public class Query {
     }
 
     /**
-     * Execute an update query, returning the value of affected rows.
+     * Execute an update query, returning the value of affected rows. If the
+     * connection has a WriteExecutor the update is handed to it.
      *
      * @return The amount of affected rows caused by the query.
      * @throws DBUtilsException If any SQLException occurs during the
      * execution of the query.
      */
     public int executeUpdate() throws DBUtilsException {
-        prepareStatementWithParameters();
         try {
-            return connection.executeUpdate();
+            WriteExecutor writeExecutor = connection.getWriteExecutor();
+            if(writeExecutor != null) {
+                Map<String, Object> values = takeParameters();
+                return writeExecutor.executeUpdate(writer ->
+                  copyTo(writer, values).executeUpdate());
+            }
+            prepareStatementWithParameters();
+            try {
+                return connection.executeUpdate();
+            } finally {
+                connection.close();
+            }
         } finally {
-            connection.close();
+            invalidateCachedResults();
+        }
+    }
+
+    /**
+     * Execute the query once for each set of parameters, using a single
+     * prepared statement and JDBC batching. The parameter sets are sent to
+     * the database DEFAULT_BATCH_CHUNK_SIZE at a time, all within one
+     * transaction.
+     *
+     * @param parameterSets The parameters for each execution, mapping
+     * parameter keys to their values.
+     * @return The total affected rows of each chunk sent to the database.
+     * @throws DBUtilsException If any SQLException occurs executing the
+     * batch, in which case no changes are applied.
+     */
+    public int[] executeBatch(Iterable<Map<String, Object>> parameterSets)
+      throws DBUtilsException {
+        return executeBatch(parameterSets, DEFAULT_BATCH_CHUNK_SIZE);
+    }
+
+    /**
+     * Execute the query once for each set of parameters, using a single
+     * prepared statement and JDBC batching. The parameter sets are sent to
+     * the database chunkSize at a time, all within one transaction.
+     *
+     * @param parameterSets The parameters for each execution, mapping
+     * parameter keys to their values.
+     * @param chunkSize The number of parameter sets to send at once.
+     * @return The total affected rows of each chunk sent to the database.
+     * @throws DBUtilsException If any SQLException occurs executing the
+     * batch, in which case no changes are applied.
+     */
+    public int[] executeBatch(Iterable<Map<String, Object>> parameterSets,
+      int chunkSize) throws DBUtilsException {
+        if(chunkSize < 1)
+            throw new IllegalArgumentException("Invalid chunk size: " +
+              chunkSize);
+        try {
+            WriteExecutor writeExecutor = connection.getWriteExecutor();
+            if(writeExecutor != null) {
+                Map<String, Object> values = takeParameters();
+                return writeExecutor.execute(writer -> copyTo(writer, values)
+                  .executeBatch(parameterSets, chunkSize));
+            }
+            try {
+                connection.disableAutoCommit();
+                int[] counts = executeChunks(parameterSets, chunkSize);
+                connection.commit();
+                return counts;
+            } catch(DBUtilsException e) {
+                connection.rollback();
+                throw new DBUtilsException("Error executing batch", e);
+            } finally {
+                connection.close();
+            }
+        } finally {
+            invalidateCachedResults();
+        }
+    }
+
+    /**
+     * Bind each set of parameters to the prepared statement and add it to the
+     * JDBC batch, sending the batch every chunkSize sets. Transaction handling
+     * is left to the caller.
+     *
+     * @param parameterSets The parameters for each execution.
+     * @param chunkSize The number of parameter sets to send at once.
+     * @return The total affected rows of each chunk.
+     * @throws DBUtilsException If any SQLException occurs preparing the
+     * statement, binding parameters or executing a chunk.
+     */
+    protected int[] executeChunks(Iterable<Map<String, Object>> parameterSets,
+      int chunkSize) throws DBUtilsException {
+        SQLTemplate compiled = getTemplate();
+        connection.prepareStatement(compiled == null ? null :
+          compiled.getPreparedSql());
+        List<Integer> chunkCounts = new ArrayList<>();
+        int pending = 0;
+        for (Map<String, Object> parameterSet : parameterSets) {
+            setParameters(compiled, parameterSet);
+            connection.addBatch();
+            if(++pending == chunkSize) {
+                chunkCounts.add(sumUpdateCounts(connection.executeBatch()));
+                pending = 0;
+            }
+        }
+        if(pending > 0)
+            chunkCounts.add(sumUpdateCounts(connection.executeBatch()));
+        int[] counts = new int[chunkCounts.size()];
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = chunkCounts.get(i);
+        return counts;
+    }
+
+    /**
+     * Make cached results which read any of the given tables stale, after
+     * this query has written to them.
+     *
+     * @param tables The tables written, or an empty collection if unknown.
+     */
+    protected void invalidateCachedResults(Collection<String> tables) {
+        if(resultCache != null)
+            resultCache.invalidate(tables);
+    }
+
+    private void invalidateCachedResults() {
+        if(resultCache != null) {
+            SQLTemplate compiled = getTemplate();
+            resultCache.invalidate(compiled == null ?
+              Collections.<String>emptySet() : compiled.getTables());
+        }
+    }
+
+    /**
+     * Take the parameters set on this query, clearing them as executing the
+     * query would.
+     *
+     * @return The parameters which were set.
+     */
+    private Map<String, Object> takeParameters() {
+        Map<String, Object> taken = new HashMap<>(parameters);
+        parameters.clear();
+        return taken;
+    }
+
+    /**
+     * Create the same query with the provided parameters, which uses another
+     * connection. Used to hand a query to a WriteExecutor.
+     *
+     * @param other The connection the copy will use.
+     * @param values The parameters of the copy.
+     * @return The copy of this query.
+     */
+    private Query copyTo(DBUtilsConnection other, Map<String, Object> values) {
+        other.setMetricsRecorder(connection.getMetricsRecorder());
+        other.setSlowQueryLog(connection.getSlowQueryLog());
+        Query copy = new Query(other, sql);
+        copy.parameters.putAll(values);
+        copy.fetchSize = fetchSize;
+        return copy;
+    }
+
+    /**
+     * Total the update counts returned by executing a JDBC batch. Statements
+     * which succeeded without reporting a count are not included.
+     *
+     * @param updateCounts The update counts of each statement in the batch.
+     * @return The total affected rows.
+     */
+    protected static int sumUpdateCounts(int[] updateCounts) {
+        int total = 0;
+        if(updateCounts != null) {
+            for (int count : updateCounts) {
+                if(count > 0)
+                    total += count;
+            }
         }
+        return total;
     }
 
     /**
@@ -130,25 +428,64 @@ public class Query {
      * statement or setting parameters.
      */
     protected void prepareStatementWithParameters() throws DBUtilsException {
-        connection.prepareStatement(SQLParameterParser
-          .removeParameterKeys(sql, parameters));
-        if(!parameters.isEmpty())
-            setParameters(SQLParameterParser.getParameterKeys(sql, parameters));
+        SQLTemplate compiled = getTemplate();
+        connection.prepareStatement(compiled == null ? null :
+          compiled.getPreparedSql());
+        bindParameters(compiled);
+    }
+
+    /**
+     * Bind the parameters set on this query to the prepared statement, then
+     * clear them ready for the next statement.
+     *
+     * @param compiled the compiled sql the statement was prepared with.
+     * @throws DBUtilsException If any SQLException occurs while setting
+     * parameters.
+     */
+    protected void bindParameters(SQLTemplate compiled)
+      throws DBUtilsException {
+        if(compiled != null && !parameters.isEmpty())
+            setParameters(compiled);
         parameters.clear();
     }
 
     /**
-     * Method which actually sets the parameters in the query, used by all
-     * addParameters methods.
+     * Method which actually sets the parameters in the query, binding each
+     * position of the template to the value of its key. Positions whose key
+     * has not been set are left unbound.
      *
+     * @param compiled the compiled sql the statement was prepared with.
+     * @return True once all parameters are set.
      * @throws DBUtilsException If any SQLException occurs while adding
      * parameters.
      */
-    protected boolean setParameters(List<String> parameterKeys) throws
+    protected boolean setParameters(SQLTemplate compiled) throws
       DBUtilsException {
-        int i = 1;
-        for (String parameter : parameterKeys)
-            connection.setObject(i++, parameters.get(parameter));
+        return setParameters(compiled, parameters);
+    }
+
+    /**
+     * Bind each position of the template to the value of its key in the
+     * provided parameters. Positions whose key is not present are left
+     * unbound.
+     *
+     * @param compiled the compiled sql the statement was prepared with.
+     * @param values the parameter values, mapped by their keys.
+     * @return True once all parameters are set.
+     * @throws DBUtilsException If any SQLException occurs while adding
+     * parameters.
+     */
+    protected boolean setParameters(SQLTemplate compiled,
+      Map<String, Object> values) throws DBUtilsException {
+        int count = compiled.getParameterCount();
+        for (int i = 0; i < count; i++) {
+            String key = compiled.getParameterKey(i);
+            if(key == null)
+                continue;
+            Object value = values.get(key);
+            if(value != null || values.containsKey(key))
+                connection.setObject(i + 1, value);
+        }
         return true;
     }
 
@@ -162,8 +499,27 @@ public class Query {
      */
     public <T> T executeAndMap(ObjectMapper<T> mapper) throws DBUtilsException {
         logger.debug("Executing query and mapping to object");
+        if(isCached()) {
+            try {
+                return resultCache.get(cacheKey(mapper, false),
+                  getTemplate().getTables(), () ->
+                    executeAndMapUncached(mapper));
+            } finally {
+                // Cleared as executing would, even if the query did not run
+                parameters.clear();
+            }
+        }
+        return executeAndMapUncached(mapper);
+    }
+
+    private <T> T executeAndMapUncached(ObjectMapper<T> mapper) throws
+      DBUtilsException {
         try {
-            return ResultSetHandler.handle(executeQuery(), mapper);
+            ResultSet resultSet = executeQuery();
+            long start = System.nanoTime();
+            T result = map(() -> ResultSetHandler.handle(resultSet, mapper));
+            connection.recordMapped(System.nanoTime() - start, 1);
+            return result;
         } finally {
             connection.close();
         }
@@ -180,10 +536,323 @@ public class Query {
      */
     public <T> List<T> executeAndMapAll(ObjectMapper<T> mapper) throws
       DBUtilsException {
+        if(isCached()) {
+            try {
+                return resultCache.get(cacheKey(mapper, true),
+                  getTemplate().getTables(), () -> Collections
+                    .unmodifiableList(executeAndMapAllUncached(mapper)));
+            } finally {
+                parameters.clear();
+            }
+        }
+        return executeAndMapAllUncached(mapper);
+    }
+
+    private <T> List<T> executeAndMapAllUncached(ObjectMapper<T> mapper)
+      throws DBUtilsException {
+        try {
+            ResultSet resultSet = executeQuery();
+            long start = System.nanoTime();
+            List<T> results = map(() ->
+              ResultSetHandler.handleAll(resultSet, mapper));
+            connection.recordMapped(System.nanoTime() - start, results.size());
+            return results;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Executes a query and reads the first column of every row as a long,
+     * into a primitive array rather than boxing each value. NULL is read as
+     * 0.
+     *
+     * @return The value of each row, in order.
+     * @throws DBUtilsException If any SQLException occurs executing the
+     * query or reading the results.
+     */
+    public long[] executeForLongs() throws DBUtilsException {
+        try {
+            ResultSet resultSet = executeQuery();
+            long start = System.nanoTime();
+            long[] values = map(() -> ResultSetHandler.handleLongs(resultSet));
+            connection.recordMapped(System.nanoTime() - start, values.length);
+            return values;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Executes a query and reads the first column of every row as a double,
+     * into a primitive array rather than boxing each value. NULL is read as
+     * 0.
+     *
+     * @return The value of each row, in order.
+     * @throws DBUtilsException If any SQLException occurs executing the
+     * query or reading the results.
+     */
+    public double[] executeForDoubles() throws DBUtilsException {
+        try {
+            ResultSet resultSet = executeQuery();
+            long start = System.nanoTime();
+            double[] values = map(() ->
+              ResultSetHandler.handleDoubles(resultSet));
+            connection.recordMapped(System.nanoTime() - start, values.length);
+            return values;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Executes a query and maps the first column of every row to the second,
+     * both read as longs, in a primitive map rather than boxing each key and
+     * value. NULL is read as 0, and a key which appears in more than one row
+     * is mapped to its last value.
+     *
+     * @return The first column of each row mapped to its second.
+     * @throws DBUtilsException If any SQLException occurs executing the
+     * query or reading the results.
+     */
+    public LongLongMap executeForLongToLongMap() throws DBUtilsException {
         try {
-            return ResultSetHandler.handleAll(executeQuery(), mapper);
+            ResultSet resultSet = executeQuery();
+            long start = System.nanoTime();
+            LongLongMap values = map(() ->
+              ResultSetHandler.handleLongToLongMap(resultSet));
+            connection.recordMapped(System.nanoTime() - start, values.size());
+            return values;
         } finally {
             connection.close();
         }
     }
+
+    /**
+     * Executes a query and provides an iterator which maps each row as it
+     * is read, so the results are never held in memory all at once. The
+     * connection is held until the iterator is exhausted or closed, so it
+     * should be used in a try-with-resources block.
+     *
+     * @return An iterator over the queries results, handled by the
+     * ObjectMapper provided.
+     * @throws DBUtilsException If any SQLException occurs executing the
+     * query.
+     */
+    public <T> ResultSetIterator<T> iterate(ObjectMapper<T> mapper) throws
+      DBUtilsException {
+        try {
+            prepareStatementWithParameters();
+            if(fetchSize > 0)
+                connection.setFetchSize(fetchSize);
+            return new ResultSetIterator<>(connection.executeQuery(), mapper,
+              connection);
+        } catch(DBUtilsException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a query and provides a lazily populated stream of the results,
+     * each row being mapped as the stream pulls it. The connection is held
+     * until the stream is exhausted or closed, so it should be used in a
+     * try-with-resources block. Any SQLException while reading is thrown as
+     * an UncheckedDBUtilsException.
+     *
+     * @return A sequential stream of the queries results, handled by the
+     * ObjectMapper provided.
+     * @throws DBUtilsException If any SQLException occurs executing the
+     * query.
+     */
+    public <T> Stream<T> stream(ObjectMapper<T> mapper) throws
+      DBUtilsException {
+        ResultSetIterator<T> iterator = iterate(mapper);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+          iterator, Spliterator.ORDERED), false).onClose(iterator::close);
+    }
+
+    /**
+     * Execute an update query asynchronously. The query must not be changed
+     * until the future completes.
+     *
+     * @return A future completed with the amount of affected rows, or
+     * exceptionally with a DBUtilsException if the update fails.
+     * @see #executeUpdate()
+     */
+    public CompletableFuture<Integer> executeUpdateAsync() {
+        return executeAsync(this::executeUpdate);
+    }
+
+    /**
+     * Execute the query once for each set of parameters asynchronously. The
+     * query must not be changed until the future completes.
+     *
+     * @param parameterSets The parameters for each execution, mapping
+     * parameter keys to their values.
+     * @param chunkSize The number of parameter sets to send at once.
+     * @return A future completed with the total affected rows of each chunk,
+     * or exceptionally with a DBUtilsException if the batch fails.
+     * @see #executeBatch(Iterable, int)
+     */
+    public CompletableFuture<int[]> executeBatchAsync(
+      Iterable<Map<String, Object>> parameterSets, int chunkSize) {
+        return executeAsync(() -> executeBatch(parameterSets, chunkSize));
+    }
+
+    /**
+     * Execute a query asynchronously and map the result to an object. The
+     * query must not be changed until the future completes.
+     *
+     * @return A future completed with the mapped result, or exceptionally
+     * with a DBUtilsException if the query or mapping fails.
+     * @see #executeAndMap(ObjectMapper)
+     */
+    public <T> CompletableFuture<T> executeAndMapAsync(
+      ObjectMapper<T> mapper) {
+        return executeAsync(() -> executeAndMap(mapper));
+    }
+
+    /**
+     * Execute a query asynchronously and map every result to an object.
+     * The query must not be changed until the future completes.
+     *
+     * @return A future completed with the mapped results, or exceptionally
+     * with a DBUtilsException if the query or mapping fails.
+     * @see #executeAndMapAll(ObjectMapper)
+     */
+    public <T> CompletableFuture<List<T>> executeAndMapAllAsync(
+      ObjectMapper<T> mapper) {
+        return executeAsync(() -> executeAndMapAll(mapper));
+    }
+
+    /**
+     * Execute a query asynchronously and move to its first row, so the work
+     * of the query is done before the future completes and only the rows
+     * are left to be read. The connection is held until the iterator is
+     * exhausted or closed. An iterator which is only ready once the future
+     * has timed out or been cancelled is closed. The query must not be
+     * changed until the future completes.
+     *
+     * @return A future completed with an iterator over the results, or
+     * exceptionally if the query fails.
+     * @see #iterate(ObjectMapper)
+     */
+    public <T> CompletableFuture<ResultSetIterator<T>> iterateAsync(
+      ObjectMapper<T> mapper) {
+        return executeAsync(() -> {
+            ResultSetIterator<T> iterator = iterate(mapper);
+            iterator.hasNext();
+            return iterator;
+        });
+    }
+
+    /**
+     * Run an execution of this query on its executor. If the returned future
+     * is cancelled, or the timeout passes, the statement is cancelled.
+     * Updates handed to a WriteExecutor are not interrupted once they have
+     * started.
+     *
+     * @param execution The blocking execution to run.
+     * @param <T> The type of result of the execution.
+     * @return A future completed with the result of the execution.
+     */
+    private <T> CompletableFuture<T> executeAsync(Execution<T> execution) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Executor target = executor != null ? executor :
+          AsyncExecutors.getDefault();
+        try {
+            target.execute(() -> {
+                try {
+                    if(!future.isDone()) {
+                        T result = execution.execute();
+                        if(!future.complete(result))
+                            closeLate(result);
+                    }
+                } catch(DBUtilsException | RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            future.completeExceptionally(new DBUtilsException(
+              "Query rejected by executor", e));
+            return future;
+        }
+        if(timeoutMillis > 0) {
+            ScheduledFuture<?> timeout = AsyncExecutors.schedule(() ->
+              future.completeExceptionally(new TimeoutException(
+                "Query timed out after " + timeoutMillis + "ms")),
+              timeoutMillis);
+            future.whenComplete((result, e) -> timeout.cancel(false));
+        }
+        future.whenComplete((result, e) -> {
+            if(e instanceof CancellationException ||
+              e instanceof TimeoutException)
+                cancelStatement();
+        });
+        return future;
+    }
+
+    /**
+     * Map the results of this query, recording if mapping fails.
+     *
+     * @param mapping Reads and maps the results.
+     * @param <T> The type of the mapped results.
+     * @return The mapped results.
+     * @throws DBUtilsException If any SQLException occurs mapping.
+     */
+    private <T> T map(Execution<T> mapping) throws DBUtilsException {
+        try {
+            return mapping.execute();
+        } catch(DBUtilsException | RuntimeException e) {
+            connection.recordMapFailed();
+            throw e;
+        }
+    }
+
+    private boolean isCached() {
+        return cacheable && resultCache != null && getTemplate() != null;
+    }
+
+    /**
+     * Create the key of this query's results with the current parameters.
+     *
+     * @param mapper The mapper the results are mapped with.
+     * @param all Whether every row is mapped, or only the first.
+     * @return The key of the results.
+     */
+    private ResultKey cacheKey(ObjectMapper<?> mapper, boolean all) {
+        SQLTemplate compiled = getTemplate();
+        Object[] values = new Object[compiled.getParameterCount()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = parameters.get(compiled.getParameterKey(i));
+        return new ResultKey(compiled.getPreparedSql(), values,
+          Arrays.asList(mapper.getMappingKey(), all));
+    }
+
+    /* A result which holds the connection, such as an iterator, is closed
+     * if nobody is left to receive it */
+    private void closeLate(Object result) {
+        if(!(result instanceof AutoCloseable))
+            return;
+        try {
+            ((AutoCloseable) result).close();
+        } catch(Exception e) {
+            logger.error("Error closing result of cancelled query", e);
+        }
+    }
+
+    private void cancelStatement() {
+        try {
+            connection.cancel();
+        } catch(DBUtilsException e) {
+            logger.error("Error cancelling statement", e);
+        }
+    }
+
+    /* A blocking execution of this query, run asynchronously */
+    @FunctionalInterface
+    private interface Execution<T> {
+        T execute() throws DBUtilsException;
+    }
 }
@@ -1,10 +1,16 @@
 package com.majoinen.d.database;
 
+import com.majoinen.d.database.cache.QueryResultCache;
 import com.majoinen.d.database.exception.DBUtilsException;
 import com.majoinen.d.database.log.Logger;
 import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.metrics.InMemoryMetricsRecorder;
+import com.majoinen.d.database.metrics.MetricsRecorder;
+import com.majoinen.d.database.metrics.MetricsSnapshot;
+import com.majoinen.d.database.util.SQLFileExecutor;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * @author Daniel Majoinen
@@ -18,6 +24,35 @@ public abstract class SQLDatabaseController implements DatabaseController {
     private final String databaseName;
     private final String configFilename;
 
+    // The group size and delay (ms) of group commit, read from the config
+    // file unless set. A group size of 0 disables group commit.
+    // The fields read each time a query is prepared are volatile, so
+    // preparing a query only locks this controller to create them the first
+    // time they are needed
+    private volatile int groupCommitSize = -1;
+    private long groupCommitDelay;
+    private volatile GroupCommitter groupCommitter;
+
+    // Asynchronous executions of prepared queries run on this executor, or
+    // the default if null
+    private volatile Executor asyncExecutor;
+
+    // Records the metrics of every query, created on first use. Only a
+    // recorder this controller created is unregistered by it, as one which
+    // was set may be shared, such as by the shards of a database
+    private volatile MetricsRecorder metricsRecorder;
+    private boolean metricsRecorderCreated;
+
+    // Caches the results of cacheable queries, read from the config file
+    // unless set. Null until read, and resultCacheDisabled if none is used
+    private volatile QueryResultCache resultCache;
+    private volatile boolean resultCacheDisabled;
+
+    // Logs queries which take too long, read from the config file unless
+    // set. Null until read, and slowQueryLogDisabled if none is used
+    private volatile SlowQueryLog slowQueryLog;
+    private volatile boolean slowQueryLogDisabled;
+
     public SQLDatabaseController(String databaseName, String filename) {
         this.databaseName = databaseName;
         this.configFilename = filename;
@@ -31,6 +66,15 @@ public abstract class SQLDatabaseController implements DatabaseController {
         return configFilename;
     }
 
+    /**
+     * @return The name of the database, such as to report which database a
+     * query failed on.
+     */
+    @Override
+    public String toString() {
+        return databaseName;
+    }
+
     /**
      * Prepare a provided single query for execution.
      *
@@ -44,8 +88,8 @@ public abstract class SQLDatabaseController implements DatabaseController {
     @Override
     public Query prepareQuery(String query) throws DBUtilsException {
         logger.debug("Preparing single query");
-        return new Query(new DBUtilsConnection(DatabaseConnectionProviderFactory
-            .getConnectionProvider(databaseName, configFilename)), query);
+        return new Query(newConnection(), query).setExecutor(asyncExecutor)
+          .setResultCache(getResultCache());
     }
 
     /**
@@ -79,12 +123,355 @@ public abstract class SQLDatabaseController implements DatabaseController {
     public BatchQuery prepareBatchQuery(String... queries) throws
       DBUtilsException {
         logger.debug("Preparing batch queries");
-        DBUtilsConnection connection = new DBUtilsConnection(
-          DatabaseConnectionProviderFactory.getConnectionProvider(databaseName,
-            configFilename));
-        BatchQuery batchQuery = new BatchQuery(connection, queries[0]);
-        for (int i = 1; i < queries.length - 1; i++)
+        BatchQuery batchQuery = new BatchQuery(newConnection(), queries[0]);
+        batchQuery.setExecutor(asyncExecutor)
+          .setResultCache(getResultCache());
+        for (int i = 1; i < queries.length; i++)
             batchQuery.prepareBatchQuery(queries[i]);
         return batchQuery;
     }
+
+    /**
+     * Set the executor asynchronous executions of queries prepared from now
+     * on run on, such as Query.executeUpdateAsync().
+     *
+     * @param asyncExecutor The executor, or null to use
+     * AsyncExecutors.getDefault().
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Get the recorder given the metrics of queries on this database. Unless
+     * disabled in the config file, this is an InMemoryMetricsRecorder which
+     * is published through JMX.
+     *
+     * @return The recorder, or MetricsRecorder.NONE if metrics are disabled.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public MetricsRecorder getMetricsRecorder() throws DBUtilsException {
+        MetricsRecorder recorder = metricsRecorder;
+        if(recorder != null)
+            return recorder;
+        synchronized(this) {
+            if(metricsRecorder == null) {
+                if(DatabaseProperties.isMetricsEnabled(configFilename)) {
+                    InMemoryMetricsRecorder created =
+                      new InMemoryMetricsRecorder(databaseName,
+                      DatabaseProperties.getMetricsMaxShapes(configFilename));
+                    created.registerMBean();
+                    metricsRecorder = created;
+                    metricsRecorderCreated = true;
+                } else {
+                    metricsRecorder = MetricsRecorder.NONE;
+                }
+            }
+            return metricsRecorder;
+        }
+    }
+
+    /**
+     * Replace the recorder given the metrics of queries prepared from now
+     * on, such as to forward them to another metrics library. The caller
+     * remains responsible for the recorder, which this controller does not
+     * unregister when closed.
+     *
+     * @param metricsRecorder The recorder, or null to stop recording.
+     */
+    public synchronized void setMetricsRecorder(
+      MetricsRecorder metricsRecorder) {
+        unregisterMetrics();
+        this.metricsRecorderCreated = false;
+        this.metricsRecorder = metricsRecorder != null ? metricsRecorder :
+          MetricsRecorder.NONE;
+    }
+
+    /**
+     * Summarise the timings and counts of the queries executed on this
+     * database, grouped by the shape of their sql.
+     *
+     * @return A snapshot of the metrics, or null if metrics are disabled or
+     * recorded by a recorder which does not keep them.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    @Override
+    public MetricsSnapshot getMetrics() throws DBUtilsException {
+        MetricsRecorder recorder = getMetricsRecorder();
+        if(recorder instanceof InMemoryMetricsRecorder)
+            return ((InMemoryMetricsRecorder) recorder).snapshot();
+        return null;
+    }
+
+    /**
+     * Cache the results of queries prepared from now on which are set as
+     * cacheable, replacing any existing cache. Cached results are
+     * invalidated by updates made through this controller to the tables
+     * they read.
+     *
+     * @param maxEntries The most results to keep.
+     * @param ttlMillis How long (ms) a result may be kept, or 0 until it is
+     * invalidated or evicted.
+     */
+    public synchronized void enableResultCache(int maxEntries,
+      long ttlMillis) {
+        this.resultCache = new QueryResultCache(maxEntries, ttlMillis);
+        this.resultCacheDisabled = false;
+    }
+
+    /**
+     * Stop caching the results of queries prepared from now on.
+     */
+    public synchronized void disableResultCache() {
+        if(resultCache != null)
+            resultCache.clear();
+        this.resultCache = null;
+        this.resultCacheDisabled = true;
+    }
+
+    /**
+     * Get the cache of query results, which is created from the config file
+     * the first time it is needed.
+     *
+     * @return The cache, or null if results are not cached.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public QueryResultCache getResultCache() throws DBUtilsException {
+        QueryResultCache cache = resultCache;
+        if(cache != null || resultCacheDisabled)
+            return cache;
+        synchronized(this) {
+            if(resultCache == null && !resultCacheDisabled) {
+                int size = DatabaseProperties.getResultCacheSize(
+                  configFilename);
+                if(size > 0) {
+                    resultCache = new QueryResultCache(size,
+                      DatabaseProperties.getResultCacheTtl(configFilename));
+                } else {
+                    resultCacheDisabled = true;
+                }
+            }
+            return resultCache;
+        }
+    }
+
+    /**
+     * Log queries prepared from now on which take longer than a threshold,
+     * replacing any existing log. Each query is logged at most once per
+     * sample interval, and the plan of each logged query is read with
+     * EXPLAIN QUERY PLAN on a background thread.
+     *
+     * @param thresholdMillis How long (ms) a query may take before it is
+     * logged.
+     * @param sampleIntervalMillis How long (ms) to wait before logging the
+     * same query again, or 0 to log every slow execution.
+     */
+    public synchronized void enableSlowQueryLog(long thresholdMillis,
+      long sampleIntervalMillis) {
+        this.slowQueryLog = new SlowQueryLog(databaseName, thresholdMillis,
+          sampleIntervalMillis, () -> getExplainProvider().openConnection());
+        this.slowQueryLogDisabled = false;
+    }
+
+    /**
+     * Stop logging slow queries prepared from now on.
+     */
+    public synchronized void disableSlowQueryLog() {
+        this.slowQueryLog = null;
+        this.slowQueryLogDisabled = true;
+    }
+
+    /**
+     * Get the log of slow queries, which is created from the config file
+     * the first time it is needed.
+     *
+     * @return The log, or null if slow queries are not logged.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public SlowQueryLog getSlowQueryLog() throws DBUtilsException {
+        SlowQueryLog log = slowQueryLog;
+        if(log != null || slowQueryLogDisabled)
+            return log;
+        synchronized(this) {
+            if(slowQueryLog == null && !slowQueryLogDisabled) {
+                long threshold = DatabaseProperties.getSlowQueryThreshold(
+                  configFilename);
+                if(threshold > 0)
+                    enableSlowQueryLog(threshold, DatabaseProperties
+                      .getSlowQuerySampleInterval(configFilename));
+                else
+                    slowQueryLogDisabled = true;
+            }
+            return slowQueryLog;
+        }
+    }
+
+    /**
+     * Coalesce concurrent single updates, made with Query.executeUpdate(),
+     * into shared transactions. This applies to queries prepared from now on.
+     *
+     * @param maxGroupSize The most updates committed in one transaction.
+     * @param maxDelayMillis The longest an update waits for others to join
+     * its group.
+     */
+    public synchronized void enableGroupCommit(int maxGroupSize,
+      long maxDelayMillis) {
+        if(maxGroupSize < 1 || maxDelayMillis < 0)
+            throw new IllegalArgumentException("Invalid group commit: " +
+              maxGroupSize + " updates, " + maxDelayMillis + "ms");
+        closeGroupCommitter();
+        this.groupCommitSize = maxGroupSize;
+        this.groupCommitDelay = maxDelayMillis;
+    }
+
+    /**
+     * Stop coalescing updates into shared transactions, waiting for any
+     * already submitted to be committed.
+     */
+    public synchronized void disableGroupCommit() {
+        this.groupCommitSize = 0;
+        closeGroupCommitter();
+    }
+
+    /**
+     * @return The group committer used by queries, or null if group commit
+     * is disabled or no update has been prepared since enabling it.
+     */
+    public GroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+
+    /**
+     * Wait for any updates queued for group commit, then close the
+     * connection provider of this database, stop publishing its metrics and
+     * clear its cached results. Preparing another query reopens it, with new
+     * metrics.
+     *
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection.
+     */
+    @Override
+    public void close() throws DBUtilsException {
+        logger.debug("Closing database controller");
+        synchronized(this) {
+            closeGroupCommitter();
+            unregisterMetrics();
+            metricsRecorder = null;
+            metricsRecorderCreated = false;
+            if(resultCache != null)
+                resultCache.clear();
+        }
+        SQLFileExecutor.removeInstance(this);
+        DatabaseConnectionProviderFactory.closeConnectionProvider(databaseName);
+    }
+
+    /**
+     * Create the connection a new Query or BatchQuery will use.
+     *
+     * @return A connection to the database which has not yet been opened.
+     * @throws DBUtilsException If the database config file is not found or
+     * if there are any permission issues when accessing the file.
+     */
+    protected DBUtilsConnection newConnection() throws DBUtilsException {
+        return newConnection(DatabaseConnectionProviderFactory
+          .getConnectionProvider(databaseName, configFilename), null);
+    }
+
+    /**
+     * Create a connection which reads using connections from the provider,
+     * and hands updates to the WriteExecutor. When group commit is enabled,
+     * updates are coalesced before being run on the WriteExecutor, or on
+     * connections from the provider if there is none.
+     *
+     * @param connectionProvider Provides connections for reads.
+     * @param writeExecutor Runs updates, or null to run them on connections
+     * from the provider.
+     * @return A connection to the database which has not yet been opened.
+     * @throws DBUtilsException If the database config file is not found or
+     * if there are any permission issues when accessing the file.
+     */
+    protected DBUtilsConnection newConnection(DatabaseConnectionProvider
+      connectionProvider, WriteExecutor writeExecutor) throws
+      DBUtilsException {
+        GroupCommitter committer = getGroupCommitter(connectionProvider,
+          writeExecutor);
+        DBUtilsConnection connection = new DBUtilsConnection(
+          connectionProvider, committer != null ? committer : writeExecutor);
+        connection.setMetricsRecorder(getMetricsRecorder());
+        connection.setSlowQueryLog(getSlowQueryLog());
+        return connection;
+    }
+
+    /**
+     * Get the provider of the connections the plans of slow queries are
+     * read with, which are used alongside the connections of queries.
+     *
+     * @return The provider of connections to read plans with.
+     * @throws DBUtilsException If the database config file is not found or
+     * if there are any permission issues when accessing the file.
+     */
+    protected DatabaseConnectionProvider getExplainProvider()
+      throws DBUtilsException {
+        return DatabaseConnectionProviderFactory.getConnectionProvider(
+          databaseName, configFilename);
+    }
+
+    private GroupCommitter getGroupCommitter(
+      DatabaseConnectionProvider connectionProvider,
+      WriteExecutor writeExecutor) throws DBUtilsException {
+        if(groupCommitSize == 0)
+            return null;
+        GroupCommitter committer = groupCommitter;
+        if(committer != null &&
+          committer.writesTo(connectionProvider, writeExecutor))
+            return committer;
+        synchronized(this) {
+            return createGroupCommitter(connectionProvider, writeExecutor);
+        }
+    }
+
+    /* Read the group commit config if not yet set, and start a group
+     * committer writing as given unless one is running. Called holding the
+     * lock of this controller */
+    private GroupCommitter createGroupCommitter(
+      DatabaseConnectionProvider connectionProvider,
+      WriteExecutor writeExecutor) throws DBUtilsException {
+        if(groupCommitSize < 0) {
+            groupCommitSize = DatabaseProperties.getGroupCommitSize(
+              configFilename);
+            groupCommitDelay = DatabaseProperties.getGroupCommitDelay(
+              configFilename);
+        }
+        if(groupCommitSize == 0)
+            return null;
+        if(groupCommitter == null ||
+          !groupCommitter.writesTo(connectionProvider, writeExecutor)) {
+            closeGroupCommitter();
+            logger.debug("Starting group commit");
+            groupCommitter = new GroupCommitter(databaseName,
+              connectionProvider, writeExecutor, groupCommitSize,
+              groupCommitDelay);
+        }
+        return groupCommitter;
+    }
+
+    private void unregisterMetrics() {
+        if(metricsRecorderCreated &&
+          metricsRecorder instanceof InMemoryMetricsRecorder)
+            ((InMemoryMetricsRecorder) metricsRecorder).unregisterMBean();
+    }
+
+    /* Stop handing out the group committer before closing it, so fewer
+     * queries prepared meanwhile are given one which refuses updates */
+    private void closeGroupCommitter() {
+        GroupCommitter committer = groupCommitter;
+        if(committer != null) {
+            groupCommitter = null;
+            committer.close();
+        }
+    }
 }
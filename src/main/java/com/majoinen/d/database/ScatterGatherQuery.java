@@ -0,0 +1,347 @@
+package com.majoinen.d.database;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.exception.UncheckedDBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.util.ObjectMapper;
+import com.majoinen.d.database.util.ResultSetIterator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs one query across several databases at once, such as a database per
+ * customer or the shards of a ShardedDatabaseController, and gathers their
+ * results. The query is prepared on each database and executed
+ * asynchronously, on virtual threads when the runtime supports them, so the
+ * whole query takes about as long as the slowest database rather than the
+ * sum of them all.
+ *
+ * A database which fails, or does not answer within the timeout, is left out
+ * of the result and its failure reported alongside it, so one database being
+ * unavailable does not fail the whole query.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 20/11/17
+ */
+public class ScatterGatherQuery {
+
+    private static final Logger logger =
+      LogManager.getLogger(ScatterGatherQuery.class);
+
+    private final List<DatabaseController> controllers;
+    private final String sql;
+    private final Map<String, Object> parameters;
+
+    // Each database's query runs on this executor, or its default if null
+    private Executor executor;
+
+    // How long (ms) each database may take to answer, or 0 for no limit
+    private long timeoutMillis;
+
+    /**
+     * @param controllers The databases to query. To query the shards of a
+     * ShardedDatabaseController, see its prepareScatterGatherQuery().
+     * @param sql The query to run on every database.
+     */
+    public ScatterGatherQuery(Collection<? extends DatabaseController>
+      controllers, String sql) {
+        this.controllers = new ArrayList<>(controllers);
+        this.sql = sql;
+        this.parameters = new HashMap<>();
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return The databases queried.
+     */
+    public List<DatabaseController> getControllers() {
+        return controllers;
+    }
+
+    /**
+     * Set a parameter of the query on every database.
+     *
+     * @param key a named parameter within the sql query, such as :name.
+     * @param value the value of the parameter.
+     * @return the ScatterGatherQuery with the parameter set.
+     */
+    public <T> ScatterGatherQuery setParameter(String key, T value) {
+        parameters.put(key, value);
+        return this;
+    }
+
+    /**
+     * Run each database's query on the given executor, such as a
+     * ForkJoinPool, rather than the executor of its controller.
+     *
+     * @param executor the executor to run each query on.
+     * @return the ScatterGatherQuery with the executor set.
+     */
+    public ScatterGatherQuery setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Set how long each database may take to answer. A database which takes
+     * longer fails with a TimeoutException and its statement is cancelled.
+     *
+     * @param timeout how long each database may take, or 0 for no limit.
+     * @param unit the unit of the timeout.
+     * @return the ScatterGatherQuery with the timeout set.
+     */
+    public ScatterGatherQuery setTimeout(long timeout, TimeUnit unit) {
+        if(timeout < 0)
+            throw new IllegalArgumentException("Invalid timeout: " + timeout);
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Execute the query on every database and map every result to an
+     * object.
+     *
+     * @return The results of every database which answered, in the order
+     * the databases were given, and the failure of each which did not.
+     */
+    public <T> ScatterGatherResult<List<T>> executeAndMapAll(
+      ObjectMapper<T> mapper) {
+        Gathered<List<T>> gathered = scatter(query ->
+          query.executeAndMapAllAsync(mapper));
+        List<T> results = new ArrayList<>();
+        for(List<T> result : gathered.results)
+            results.addAll(result);
+        return gathered.toResult(results);
+    }
+
+    /**
+     * Execute an aggregate query, such as a count, on every database and
+     * combine their results into one, such as by adding the counts of every
+     * database together. Combining is left to the caller as only it knows
+     * how, for example an average must be combined from a sum and a count.
+     *
+     * @param mapper Maps the first row of each database's results.
+     * @param combiner Combines the results of two databases.
+     * @return The combined result of every database which answered, or null
+     * if none had a row, and the failure of each which did not.
+     */
+    public <T> ScatterGatherResult<T> executeAndCombine(
+      ObjectMapper<T> mapper, BinaryOperator<T> combiner) {
+        Gathered<T> gathered = scatter(query ->
+          query.executeAndMapAsync(mapper));
+        T combined = null;
+        for(T result : gathered.results) {
+            if(result == null)
+                continue;
+            combined = combined == null ? result :
+              combiner.apply(combined, result);
+        }
+        return gathered.toResult(combined);
+    }
+
+    /**
+     * Execute an ordered query on every database and merge their results
+     * into a single ordered stream, such as the most recent orders of every
+     * customer. The query of each database must be ordered the same way as
+     * the comparator, usually with ORDER BY.
+     *
+     * The query runs on every database at once, up to its first row, within
+     * the timeout. The rows are then read as the stream pulls them, each
+     * from the database whose next row comes first, so only one row of each
+     * database is held at a time. A LIMIT on the query limits the rows of
+     * each database, not of the stream. The connection of each database is
+     * held until the stream is exhausted or closed, so it should be used in
+     * a try-with-resources block. Any failure while reading rows is thrown
+     * as an UncheckedDBUtilsException.
+     *
+     * @param mapper Maps each row.
+     * @param order The order the rows of every database are in.
+     * @return A stream of the rows of every database which answered, and
+     * the failure of each which did not.
+     */
+    public <T> ScatterGatherResult<Stream<T>> stream(ObjectMapper<T> mapper,
+      Comparator<? super T> order) {
+        Gathered<ResultSetIterator<T>> gathered = scatter(query ->
+          query.iterateAsync(mapper));
+        MergingIterator<T> merged = new MergingIterator<>(gathered.results,
+          order);
+        Stream<T> stream = StreamSupport.stream(Spliterators
+          .spliteratorUnknownSize(merged, Spliterator.ORDERED), false)
+          .onClose(merged::close);
+        return gathered.toResult(stream);
+    }
+
+    /**
+     * Start the query on every database, then wait for each to answer or
+     * fail. Each query times out on its own, so this waits no longer than
+     * the timeout.
+     *
+     * @param execution Starts the query prepared on a database.
+     * @param <R> The type of result of each database.
+     * @return The result of each database which answered, and the failure
+     * of each which did not.
+     */
+    private <R> Gathered<R> scatter(Function<Query, CompletableFuture<R>>
+      execution) {
+        logger.debug("Scattering query across {} databases",
+          controllers.size());
+        List<CompletableFuture<R>> futures = new ArrayList<>();
+        for(DatabaseController controller : controllers) {
+            CompletableFuture<R> future;
+            try {
+                future = execution.apply(prepare(controller));
+            } catch(DBUtilsException | RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            futures.add(future);
+        }
+        Gathered<R> gathered = new Gathered<>();
+        for(int i = 0; i < futures.size(); i++) {
+            DatabaseController controller = controllers.get(i);
+            try {
+                gathered.results.add(futures.get(i).join());
+                gathered.succeeded.add(controller);
+            } catch(CompletionException e) {
+                gathered.fail(controller, e.getCause() != null ?
+                  e.getCause() : e);
+            } catch(CancellationException e) {
+                gathered.fail(controller, e);
+            }
+        }
+        return gathered;
+    }
+
+    private Query prepare(DatabaseController controller)
+      throws DBUtilsException {
+        Query query = controller.prepareQuery(sql);
+        for(Map.Entry<String, Object> parameter : parameters.entrySet())
+            query.setParameter(parameter.getKey(), parameter.getValue());
+        if(executor != null)
+            query.setExecutor(executor);
+        return query.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /* The results of the databases which answered, and the failures of the
+     * databases which did not */
+    private static final class Gathered<R> {
+
+        private final List<R> results = new ArrayList<>();
+        private final List<DatabaseController> succeeded = new ArrayList<>();
+        private final Map<DatabaseController, Throwable> failures =
+          new LinkedHashMap<>();
+
+        private void fail(DatabaseController controller, Throwable failure) {
+            logger.error("Scattered query failed on " + controller, failure);
+            failures.put(controller, failure);
+        }
+
+        private <T> ScatterGatherResult<T> toResult(T result) {
+            return new ScatterGatherResult<>(result, succeeded, failures);
+        }
+    }
+
+    /* A k-way merge of ordered iterators. The next row of each iterator is
+     * kept in a heap, so each row is found in O(log k). Rows which compare
+     * equal are taken in the order the databases were given */
+    private static final class MergingIterator<T> implements Iterator<T>,
+      AutoCloseable {
+
+        private final List<ResultSetIterator<T>> iterators;
+        private final PriorityQueue<Head<T>> heads;
+
+        private MergingIterator(List<ResultSetIterator<T>> iterators,
+          Comparator<? super T> order) {
+            this.iterators = iterators;
+            this.heads = new PriorityQueue<>(Math.max(1, iterators.size()),
+              (a, b) -> {
+                  int compared = order.compare(a.value, b.value);
+                  return compared != 0 ? compared :
+                    Integer.compare(a.index, b.index);
+              });
+            try {
+                for(int i = 0; i < iterators.size(); i++)
+                    advance(i);
+            } catch(RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            Head<T> head = heads.poll();
+            if(head == null)
+                throw new NoSuchElementException();
+            try {
+                advance(head.index);
+            } catch(RuntimeException e) {
+                close();
+                throw e;
+            }
+            return head.value;
+        }
+
+        /* Every iterator is closed, even if closing one fails */
+        @Override
+        public void close() {
+            heads.clear();
+            UncheckedDBUtilsException failure = null;
+            for(ResultSetIterator<T> iterator : iterators) {
+                try {
+                    iterator.close();
+                } catch(UncheckedDBUtilsException e) {
+                    failure = e;
+                }
+            }
+            if(failure != null)
+                throw failure;
+        }
+
+        private void advance(int index) {
+            ResultSetIterator<T> iterator = iterators.get(index);
+            if(iterator.hasNext())
+                heads.add(new Head<>(iterator.next(), index));
+        }
+    }
+
+    private static final class Head<T> {
+
+        private final T value;
+        private final int index;
+
+        private Head(T value, int index) {
+            this.value = value;
+            this.index = index;
+        }
+    }
+}
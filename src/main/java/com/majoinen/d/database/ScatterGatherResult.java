@@ -0,0 +1,64 @@
+package com.majoinen.d.database;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The gathered result of a query run across several databases, and the
+ * failure of each database which did not answer, so a caller can decide
+ * whether a partial result is good enough.
+ *
+ * @param <T> The type of the gathered result.
+ * @author Daniel Majoinen
+ * @version 1.0, 20/11/17
+ */
+public final class ScatterGatherResult<T> {
+
+    private final T result;
+    private final List<DatabaseController> succeeded;
+    private final Map<DatabaseController, Throwable> failures;
+
+    ScatterGatherResult(T result, List<DatabaseController> succeeded,
+      Map<DatabaseController, Throwable> failures) {
+        this.result = result;
+        this.succeeded = Collections.unmodifiableList(succeeded);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return The result gathered from every database which answered.
+     */
+    public T getResult() {
+        return result;
+    }
+
+    /**
+     * @return Each database which answered, in the order they were given.
+     */
+    public List<DatabaseController> getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @return The failure of each database which did not answer, in the
+     * order they were given. A database which did not answer in time fails
+     * with a TimeoutException.
+     */
+    public Map<DatabaseController, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return True if every database answered.
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ScatterGatherResult{succeeded=" + succeeded.size() +
+          ", failed=" + failures.size() + "}";
+    }
+}
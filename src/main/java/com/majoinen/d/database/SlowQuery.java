@@ -0,0 +1,110 @@
+package com.majoinen.d.database;
+
+import com.majoinen.d.database.sqlite.SQLiteQueryPlan;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An execution of a query which took longer than the slow query threshold,
+ * as logged by a SlowQueryLog.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 27/11/17
+ */
+public final class SlowQuery {
+
+    private final String shape;
+    private final List<String> parameterTypes;
+    private final long prepareNanos;
+    private final long executeNanos;
+    private final long mapNanos;
+    private final long rows;
+    private final long suppressed;
+    private final CompletableFuture<SQLiteQueryPlan> plan =
+      new CompletableFuture<>();
+
+    SlowQuery(String shape, List<String> parameterTypes, long prepareNanos,
+      long executeNanos, long mapNanos, long rows, long suppressed) {
+        this.shape = shape;
+        this.parameterTypes = parameterTypes;
+        this.prepareNanos = prepareNanos;
+        this.executeNanos = executeNanos;
+        this.mapNanos = mapNanos;
+        this.rows = rows;
+        this.suppressed = suppressed;
+    }
+
+    /**
+     * @return The sql of the query with every literal value and parameter
+     * replaced by a ?.
+     */
+    public String getShape() {
+        return shape;
+    }
+
+    /**
+     * @return The simple class name of the value bound to each parameter,
+     * or null where NULL or nothing was bound.
+     */
+    public List<String> getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public long getPrepareNanos() {
+        return prepareNanos;
+    }
+
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /**
+     * @return How long (ns) reading and mapping the rows took, or 0 for an
+     * update.
+     */
+    public long getMapNanos() {
+        return mapNanos;
+    }
+
+    public long getTotalNanos() {
+        return prepareNanos + executeNanos + mapNanos;
+    }
+
+    /**
+     * @return The rows read, or for an update the rows written.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of slow executions of the same query which were
+     * not logged since it was last logged.
+     */
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    /**
+     * @return A future completed with the plan of the query once it has been
+     * explained, or exceptionally if it could not be.
+     */
+    public CompletableFuture<SQLiteQueryPlan> getPlan() {
+        return plan;
+    }
+
+    @Override
+    public String toString() {
+        return "Slow query (" + millis(getTotalNanos()) + "ms: prepare " +
+          millis(prepareNanos) + "ms, execute " + millis(executeNanos) +
+          "ms, map " + millis(mapNanos) + "ms, " + rows + " rows" +
+          (suppressed > 0 ? ", " + suppressed + " more not logged" : "") +
+          "): " + shape + " " + parameterTypes;
+    }
+
+    private static String millis(long nanos) {
+        return String.valueOf(TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0);
+    }
+}
@@ -0,0 +1,191 @@
+package com.majoinen.d.database;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.sqlite.SQLiteQueryPlan;
+import com.majoinen.d.database.util.SQLParameterParser;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs the executions of queries which take longer than a threshold, with
+ * their normalised sql, the types of their parameters, how long each phase
+ * took and the rows they read or wrote. The plan of each logged query is
+ * then read with EXPLAIN QUERY PLAN on a background thread, using another
+ * connection, and logged with any full table scans flagged.
+ *
+ * Checking the threshold is a single comparison, so queries under it cost
+ * nothing more. Each query is logged at most once per sample interval, and
+ * the executions in between are counted, so a query which is always slow
+ * does not flood the log or explain itself on every execution. Plans
+ * waiting to be read are bounded, and the plan of any query beyond that is
+ * completed exceptionally without being read.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 27/11/17
+ */
+public final class SlowQueryLog {
+
+    private static final Logger logger =
+      LogManager.getLogger(SlowQueryLog.class);
+
+    // The most queries sampled on their own, beyond which the rest share a
+    // sample
+    private static final int MAX_SAMPLED_QUERIES = 1024;
+
+    // The most plans waiting to be read
+    private static final int MAX_QUEUED_PLANS = 16;
+
+    private final String databaseName;
+    private final long thresholdNanos;
+    private final long sampleIntervalNanos;
+    private final DatabaseConnectionProvider explainProvider;
+
+    // When each query may next be logged, by the sql it was prepared with
+    private final ConcurrentHashMap<String, Sample> samples =
+      new ConcurrentHashMap<>();
+    private final Sample sharedSample = new Sample();
+
+    // Reads plans one at a time, its thread stopping when idle
+    private final ThreadPoolExecutor explainer;
+
+    /**
+     * @param databaseName The name of the database, which is logged.
+     * @param thresholdMillis How long (ms) a query may take before it is
+     * logged.
+     * @param sampleIntervalMillis How long (ms) to wait before logging the
+     * same query again, or 0 to log every slow execution.
+     * @param explainProvider Provides the connections plans are read with.
+     */
+    public SlowQueryLog(String databaseName, long thresholdMillis,
+      long sampleIntervalMillis, DatabaseConnectionProvider explainProvider) {
+        if(thresholdMillis <= 0 || sampleIntervalMillis < 0)
+            throw new IllegalArgumentException("Invalid slow query " +
+              "threshold or sample interval");
+        this.databaseName = databaseName;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+          sampleIntervalMillis);
+        this.explainProvider = explainProvider;
+        this.explainer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<>(MAX_QUEUED_PLANS), runnable -> {
+              Thread thread = new Thread(runnable, "DBUtils-explain-" +
+                databaseName);
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+          }, new ThreadPoolExecutor.AbortPolicy());
+        explainer.allowCoreThreadTimeOut(true);
+    }
+
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public long getSampleIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(sampleIntervalNanos);
+    }
+
+    /**
+     * Log an execution of a query if it took longer than the threshold and
+     * the query has not been logged within the sample interval.
+     *
+     * @param sql The sql the statement was prepared with.
+     * @param parameterTypes The class of the value bound to each parameter,
+     * or null where NULL or nothing was bound.
+     * @param parameterCount The number of parameters bound.
+     * @param prepareNanos How long (ns) preparing the statement took.
+     * @param executeNanos How long (ns) executing the statement took.
+     * @param mapNanos How long (ns) reading and mapping the rows took.
+     * @param rows The rows read or written.
+     * @return The slow query logged, or null if it was not slow or not
+     * sampled.
+     */
+    SlowQuery record(String sql, Class<?>[] parameterTypes,
+      int parameterCount, long prepareNanos, long executeNanos,
+      long mapNanos, long rows) {
+        if(prepareNanos + executeNanos + mapNanos < thresholdNanos ||
+          sql == null)
+            return null;
+        long suppressed = sample(sql).take(System.nanoTime(),
+          sampleIntervalNanos);
+        if(suppressed < 0)
+            return null;
+        List<String> types = new ArrayList<>(parameterCount);
+        for(int i = 0; i < parameterCount; i++)
+            types.add(parameterTypes[i] == null ? null :
+              parameterTypes[i].getSimpleName());
+        SlowQuery query = new SlowQuery(SQLParameterParser.compile(sql)
+          .getShape(), Collections.unmodifiableList(types), prepareNanos,
+          executeNanos, mapNanos, rows, suppressed);
+        logger.info("{} on {}", query, databaseName);
+        try {
+            explainer.execute(() -> explain(sql, query));
+        } catch(RejectedExecutionException e) {
+            logger.debug("Explain queue full, not explaining: {}",
+              query.getShape());
+            query.getPlan().completeExceptionally(new DBUtilsException(
+              "Explain queue full", e));
+        }
+        return query;
+    }
+
+    /* Runs on the explainer thread */
+    private void explain(String sql, SlowQuery query) {
+        try(Connection connection = explainProvider.openConnection()) {
+            SQLiteQueryPlan plan = SQLiteQueryPlan.explain(connection, sql);
+            if(plan.hasFullTableScan())
+                logger.info(() -> LogManager.format("Plan of slow query, " +
+                  "with a full table scan of {}: {} for {}",
+                  plan.getFullTableScans(), plan, query.getShape()));
+            else
+                logger.info("Plan of slow query: {} for {}", plan,
+                  query.getShape());
+            query.getPlan().complete(plan);
+        } catch(DBUtilsException | SQLException | RuntimeException e) {
+            logger.error("Error explaining slow query: " + query.getShape(),
+              e);
+            query.getPlan().completeExceptionally(e);
+        }
+    }
+
+    private Sample sample(String sql) {
+        Sample sample = samples.get(sql);
+        if(sample != null)
+            return sample;
+        if(samples.size() >= MAX_SAMPLED_QUERIES)
+            return sharedSample;
+        return samples.computeIfAbsent(sql, key -> new Sample());
+    }
+
+    /* When a query may next be logged, and its slow executions since it was
+     * last logged */
+    private static final class Sample {
+
+        private final AtomicLong next = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong suppressed = new AtomicLong();
+
+        /* Take the right to log, returning the executions not logged since
+         * the last, or -1 if it is not yet time to log again */
+        private long take(long now, long intervalNanos) {
+            long due = next.get();
+            if((due != Long.MIN_VALUE && now - due < 0) ||
+              !next.compareAndSet(due, now + intervalNanos)) {
+                suppressed.incrementAndGet();
+                return -1;
+            }
+            return suppressed.getAndSet(0);
+        }
+    }
+}
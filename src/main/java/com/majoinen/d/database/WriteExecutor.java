@@ -0,0 +1,51 @@
+package com.majoinen.d.database;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+
+/**
+ * Runs work which modifies the database on behalf of queries, such as on a
+ * dedicated writer connection. When a DBUtilsConnection has a WriteExecutor,
+ * updates are handed to it rather than run on the connection itself, which is
+ * then only used for reads.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 25/9/17
+ */
+public interface WriteExecutor {
+
+    /**
+     * Run work which modifies the database, waiting for it to complete.
+     * Work must not itself call execute on the same WriteExecutor.
+     *
+     * @param work The work to run, given a connection to write with.
+     * @param <T> The type of result of the work.
+     * @return The result of the work.
+     * @throws DBUtilsException If the work fails, or could not be run.
+     */
+    <T> T execute(Work<T> work) throws DBUtilsException;
+
+    /**
+     * Run a single update, waiting for it to complete. Unlike work passed to
+     * execute, the update must not manage its own transaction, so it may be
+     * combined with other updates.
+     *
+     * @param work The update to run, given a connection to write with.
+     * @return The affected rows of the update.
+     * @throws DBUtilsException If the update fails, or could not be run.
+     */
+    default int executeUpdate(Work<Integer> work) throws DBUtilsException {
+        return execute(work);
+    }
+
+    /**
+     * Work to be run with a connection which may modify the database. The
+     * work is responsible for closing the connection, as Query and BatchQuery
+     * do on completion.
+     *
+     * @param <T> The type of result of the work.
+     */
+    @FunctionalInterface
+    interface Work<T> {
+        T execute(DBUtilsConnection connection) throws DBUtilsException;
+    }
+}
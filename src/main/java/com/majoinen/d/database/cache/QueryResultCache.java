@@ -0,0 +1,230 @@
+package com.majoinen.d.database.cache;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least recently used cache of mapped query results, bounded by a maximum
+ * number of results and how long each may be kept.
+ *
+ * Each table has a generation which is advanced after every write to it.
+ * A result remembers the generations of the tables its query read, as they
+ * were before the query executed, and is stale once any of them has
+ * advanced. A write whose tables are not known advances every table, and a
+ * result whose tables are not known is stale after any write. Only writes
+ * reported with invalidate() are seen, so results read through views or
+ * changed by triggers or other processes are only bounded by the time to
+ * live.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 19/10/17
+ */
+public class QueryResultCache {
+
+    private static final Logger logger =
+      LogManager.getLogger(QueryResultCache.class);
+
+    private static final String[] NO_TABLES = new String[0];
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final ResultCacheStats stats = new ResultCacheStats();
+
+    // Results, least recently used first
+    private final LinkedHashMap<ResultKey, Entry> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+    // The generation of each table which has been written
+    private final Map<String, AtomicLong> generations =
+      new ConcurrentHashMap<>();
+
+    // Advanced by writes to unknown tables, making every result stale
+    private final AtomicLong globalGeneration = new AtomicLong();
+
+    // Advanced by every write, making results of unknown tables stale
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    /**
+     * @param maxEntries The most results to keep.
+     * @param ttlMillis How long (ms) a result may be kept, or 0 to keep it
+     * until it is invalidated or evicted.
+     */
+    public QueryResultCache(int maxEntries, long ttlMillis) {
+        if(maxEntries < 1)
+            throw new IllegalArgumentException("Invalid max entries: " +
+              maxEntries);
+        if(ttlMillis < 0)
+            throw new IllegalArgumentException("Invalid ttl: " + ttlMillis);
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis == 0 ? Long.MAX_VALUE :
+          TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Get the cached result for a key, or load and cache it if there is no
+     * current result. The cache is not locked while loading, so concurrent
+     * misses for the same key each load the result.
+     *
+     * @param key The query and parameters the result is for.
+     * @param tables The tables the query reads, which may be empty if they
+     * are not known.
+     * @param loader Executes the query and maps its result.
+     * @param <T> The type of the result.
+     * @return The cached or loaded result, which may be null.
+     * @throws DBUtilsException If loading the result fails, in which case
+     * nothing is cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ResultKey key, Set<String> tables, Loader<T> loader)
+      throws DBUtilsException {
+        long now = System.nanoTime();
+        synchronized(entries) {
+            Entry entry = entries.get(key);
+            if(entry != null) {
+                if(now - entry.createdAt > ttlNanos) {
+                    stats.recordExpiration();
+                    entries.remove(key);
+                } else if(!isCurrent(entry)) {
+                    stats.recordInvalidation();
+                    entries.remove(key);
+                } else {
+                    stats.recordHit();
+                    return (T) entry.value;
+                }
+            }
+        }
+        stats.recordMiss();
+        Entry entry = snapshot(tables);
+        entry.value = loader.load();
+        entry.createdAt = now;
+        synchronized(entries) {
+            entries.put(key, entry);
+            if(entries.size() > maxEntries) {
+                Iterator<ResultKey> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                stats.recordEviction();
+            }
+        }
+        return (T) entry.value;
+    }
+
+    /**
+     * Make every result which read any of the given tables stale. Called
+     * after a write to the tables has completed, whether or not it
+     * succeeded.
+     *
+     * @param tables The lower cased names of the tables written, or an empty
+     * collection if they are not known.
+     */
+    public void invalidate(Collection<String> tables) {
+        if(tables.isEmpty()) {
+            invalidateAll();
+            return;
+        }
+        for (String table : tables)
+            generations.computeIfAbsent(table, name -> new AtomicLong())
+              .incrementAndGet();
+        writeGeneration.incrementAndGet();
+        logger.debug("Invalidated results of tables: {}", tables);
+    }
+
+    /**
+     * Make every cached result stale.
+     */
+    public void invalidateAll() {
+        globalGeneration.incrementAndGet();
+        writeGeneration.incrementAndGet();
+        logger.debug("Invalidated all results");
+    }
+
+    /**
+     * Remove every cached result.
+     */
+    public void clear() {
+        synchronized(entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return The number of results held, including any which are stale but
+     * have not yet been looked up.
+     */
+    public int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public ResultCacheStats getStats() {
+        return stats;
+    }
+
+    /* Capture the current generations of the tables, before a query reads */
+    private Entry snapshot(Set<String> tables) {
+        Entry entry = new Entry();
+        entry.globalGeneration = globalGeneration.get();
+        if(tables.isEmpty()) {
+            entry.tables = NO_TABLES;
+            entry.tableGenerations = new long[] { writeGeneration.get() };
+            return entry;
+        }
+        entry.tables = tables.toArray(new String[tables.size()]);
+        entry.tableGenerations = new long[entry.tables.length];
+        for (int i = 0; i < entry.tables.length; i++)
+            entry.tableGenerations[i] = generationOf(entry.tables[i]);
+        return entry;
+    }
+
+    private boolean isCurrent(Entry entry) {
+        if(entry.globalGeneration != globalGeneration.get())
+            return false;
+        if(entry.tables.length == 0)
+            return entry.tableGenerations[0] == writeGeneration.get();
+        for (int i = 0; i < entry.tables.length; i++) {
+            if(entry.tableGenerations[i] != generationOf(entry.tables[i]))
+                return false;
+        }
+        return true;
+    }
+
+    private long generationOf(String table) {
+        AtomicLong generation = generations.get(table);
+        return generation == null ? 0 : generation.get();
+    }
+
+    /**
+     * Executes a query and maps its result, on a cache miss.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws DBUtilsException;
+    }
+
+    private static final class Entry {
+        private Object value;
+        private long createdAt;
+        private long globalGeneration;
+        private String[] tables;
+
+        // The generation of each table, or the write generation if no tables
+        private long[] tableGenerations;
+    }
+}
@@ -0,0 +1,90 @@
+package com.majoinen.d.database.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of how a QueryResultCache has been used.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 19/10/17
+ */
+public final class ResultCacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    void recordExpiration() {
+        expirations.increment();
+    }
+
+    void recordInvalidation() {
+        invalidations.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups which executed the query, including
+     * those which found an expired or invalidated result.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of results removed to keep the cache within its
+     * maximum size.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The number of results found to be older than the time to live.
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return The number of results found to be stale because a table they
+     * read has since been written.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return The fraction of lookups served from the cache, or 0 if nothing
+     * has been looked up yet.
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses() +
+          ", evictions=" + getEvictions() + ", expirations=" +
+          getExpirations() + ", invalidations=" + getInvalidations();
+    }
+}
@@ -0,0 +1,59 @@
+package com.majoinen.d.database.cache;
+
+import java.util.Arrays;
+
+/**
+ * Identifies one cached result: the prepared sql, the values bound to each of
+ * its parameters in order, and what the results were mapped with. Array
+ * values, such as byte[], are compared by their contents.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 19/10/17
+ */
+public final class ResultKey {
+
+    private final String sql;
+    private final Object[] values;
+    private final Object mapping;
+    private final int hash;
+
+    /**
+     * @param sql The prepared sql.
+     * @param values The value bound to each parameter, in order. The array is
+     * kept, so must not be modified afterwards.
+     * @param mapping Whatever distinguishes how the results were mapped, such
+     * as the class of the mapper and whether every row was mapped.
+     */
+    public ResultKey(String sql, Object[] values, Object mapping) {
+        this.sql = sql;
+        this.values = values;
+        this.mapping = mapping;
+        this.hash = 31 * (31 * sql.hashCode() + Arrays.deepHashCode(values)) +
+          mapping.hashCode();
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other)
+            return true;
+        if(!(other instanceof ResultKey))
+            return false;
+        ResultKey key = (ResultKey) other;
+        return hash == key.hash && sql.equals(key.sql) &&
+          mapping.equals(key.mapping) && Arrays.deepEquals(values, key.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return sql + " " + Arrays.deepToString(values);
+    }
+}
@@ -16,4 +16,8 @@ public class BackupDatabaseException extends DBUtilsException {
     public BackupDatabaseException(Exception e) {
         super(e);
     }
+
+    public BackupDatabaseException(String message, Exception e) {
+        super(message, e);
+    }
 }
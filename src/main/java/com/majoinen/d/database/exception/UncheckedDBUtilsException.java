@@ -0,0 +1,27 @@
+package com.majoinen.d.database.exception;
+
+/**
+ * Wraps a DBUtilsException where a checked exception cannot be thrown, such
+ * as from an Iterator or Stream of results.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 22/9/17
+ */
+public class UncheckedDBUtilsException extends RuntimeException {
+
+    public UncheckedDBUtilsException(DBUtilsException e) {
+        super(e);
+    }
+
+    public UncheckedDBUtilsException(String message, DBUtilsException e) {
+        super(message, e);
+    }
+
+    /**
+     * @return The DBUtilsException wrapped by this exception.
+     */
+    @Override
+    public synchronized DBUtilsException getCause() {
+        return (DBUtilsException) super.getCause();
+    }
+}
@@ -0,0 +1,27 @@
+package com.majoinen.d.database.log;
+
+/**
+ * Writes log messages which have passed the level check somewhere, such as
+ * stdout.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 9/10/17
+ */
+public interface Appender {
+
+    /**
+     * Write a log message.
+     *
+     * @param level The level of the message.
+     * @param source The class which logged the message.
+     * @param message The message.
+     * @param throwable The cause to print with the message, or null.
+     */
+    void append(LogLevel level, Class source, String message,
+      Throwable throwable);
+
+    /**
+     * Write any messages which are buffered, waiting until they are.
+     */
+    default void flush() { }
+}
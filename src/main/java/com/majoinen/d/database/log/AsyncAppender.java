@@ -0,0 +1,198 @@
+package com.majoinen.d.database.log;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands log messages to a background thread which writes them to another
+ * appender, so logging never blocks on the console.
+ *
+ * Messages are passed through a ring buffer of slots allocated up front.
+ * Each caller claims the next sequence number, fills in the slot for it and
+ * publishes it; the writer thread follows behind, writing each slot in order
+ * once it has been published. When the buffer is full messages are dropped
+ * rather than making the caller wait, and the number dropped is reported
+ * once there is room again.
+ *
+ * When there is nothing to write the writer thread parks until a caller
+ * publishes a message and unparks it, so an idle appender costs nothing.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 9/10/17
+ */
+public class AsyncAppender implements Appender {
+
+    // How long (ns) flush() sleeps between checks the writer has caught up
+    private static final long FLUSH_PARK_NANOS = 100000;
+
+    private final Appender delegate;
+
+    // Where errors writing messages are reported
+    private final PrintStream err;
+    private final Slot[] slots;
+    private final int mask;
+
+    // The last sequence claimed by a caller
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    // The last sequence written, only advanced by the writer thread
+    private final AtomicLong written = new AtomicLong(-1);
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+
+    // Set by the writer before it parks, so callers know to unpark it
+    private volatile boolean parked;
+    private volatile boolean closed;
+
+    /**
+     * Create an appender with a ring buffer of at least the given size,
+     * rounded up to a power of two.
+     *
+     * @param delegate The appender messages are written to.
+     * @param bufferSize The number of messages which may be waiting.
+     */
+    public AsyncAppender(Appender delegate, int bufferSize) {
+        if(bufferSize < 1)
+            throw new IllegalArgumentException("Invalid buffer size: " +
+              bufferSize);
+        int capacity = Integer.highestOneBit(bufferSize);
+        if(capacity < bufferSize)
+            capacity <<= 1;
+        this.delegate = delegate;
+        this.err = delegate instanceof ConsoleAppender ?
+          ((ConsoleAppender) delegate).getErr() : System.err;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++)
+            slots[i] = new Slot(i - capacity);
+        this.mask = capacity - 1;
+        this.writer = new Thread(this::writeMessages, "DBUtils-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Place a message in the ring buffer, or drop it if the buffer is full.
+     * This never blocks.
+     */
+    @Override
+    public void append(LogLevel level, Class source, String message,
+      Throwable throwable) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if(sequence - written.get() >= slots.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while(!claimed.compareAndSet(sequence, sequence + 1));
+        sequence++;
+        Slot slot = slots[(int) sequence & mask];
+        slot.level = level;
+        slot.source = source;
+        slot.message = message;
+        slot.throwable = throwable;
+        slot.published = sequence;
+        if(parked)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Wait until every message claimed so far has been written.
+     */
+    @Override
+    public void flush() {
+        long target = claimed.get();
+        while(written.get() < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FLUSH_PARK_NANOS);
+        }
+        delegate.flush();
+    }
+
+    /**
+     * @return The number of messages dropped because the buffer was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write the messages already buffered, then stop the writer thread.
+     * Messages appended afterwards are dropped.
+     */
+    public void close() {
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* Write each published slot in order, parking when caught up */
+    private void writeMessages() {
+        long next = 0;
+        long reportedDropped = 0;
+        boolean unflushed = false;
+        while(!closed || next <= claimed.get()) {
+            Slot slot = slots[(int) next & mask];
+            if(slot.published != next) {
+                if(closed && next > claimed.get())
+                    break;
+                if(unflushed) {
+                    delegate.flush();
+                    unflushed = false;
+                }
+                // A caller publishing after parked is set sees it and
+                // unparks; one publishing before is seen by the re-check
+                parked = true;
+                if(slot.published != next && !closed)
+                    LockSupport.park(this);
+                parked = false;
+                continue;
+            }
+            LogLevel level = slot.level;
+            Class source = slot.source;
+            String message = slot.message;
+            Throwable throwable = slot.throwable;
+            slot.message = null;
+            slot.throwable = null;
+            try {
+                delegate.append(level, source, message, throwable);
+                long totalDropped = dropped.get();
+                if(totalDropped != reportedDropped) {
+                    delegate.append(LogLevel.ERROR, AsyncAppender.class,
+                      "Dropped " + (totalDropped - reportedDropped) +
+                      " log messages, buffer full", null);
+                    reportedDropped = totalDropped;
+                }
+            } catch(RuntimeException e) {
+                e.printStackTrace(err);
+            }
+            // The slot may only be reused once its message has been written
+            written.set(next++);
+            unflushed = true;
+        }
+        delegate.flush();
+    }
+
+    /* A preallocated message, reused each time the ring wraps around */
+    private static final class Slot {
+
+        // The sequence whose message this slot currently holds
+        private volatile long published;
+
+        private LogLevel level;
+        private Class source;
+        private String message;
+        private Throwable throwable;
+
+        private Slot(long published) {
+            this.published = published;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.majoinen.d.database.log;
+
+import java.io.PrintStream;
+
+/**
+ * Writes log messages to stdout, and the stack trace of any cause to stderr.
+ * Each message is built in a single reused buffer.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 9/10/17
+ */
+public class ConsoleAppender implements Appender {
+
+    private static final String PREFIX = "[DBUtils]";
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    public ConsoleAppender() {
+        this(System.out, System.err);
+    }
+
+    public ConsoleAppender(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    @Override
+    public synchronized void append(LogLevel level, Class source,
+      String message, Throwable throwable) {
+        buffer.setLength(0);
+        buffer.append(PREFIX)
+          .append(" - [")
+          .append(level.name())
+          .append("] - ")
+          .append(source.getSimpleName())
+          .append(" - ")
+          .append(message);
+        if(throwable != null)
+            buffer.append(" :: ").append(throwable.getMessage());
+        out.println(buffer);
+        if(throwable != null)
+            throwable.printStackTrace(err);
+    }
+
+    /**
+     * @return The stream stack traces are written to.
+     */
+    PrintStream getErr() {
+        return err;
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+        err.flush();
+    }
+}
@@ -0,0 +1,35 @@
+package com.majoinen.d.database.log;
+
+/**
+ * The levels messages are logged at, from least to most severe. Messages
+ * below the level set with the dbutils.log.level system property, or
+ * LogManager.setLevel(), are discarded before they are built.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 9/10/17
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    ERROR,
+    FATAL,
+
+    // Discards every message
+    OFF;
+
+    /**
+     * Get the level with the given name, ignoring case.
+     *
+     * @param name The name of the level, such as debug.
+     * @param defaultLevel The level to use if the name is null or unknown.
+     * @return The level with the given name.
+     */
+    public static LogLevel parse(String name, LogLevel defaultLevel) {
+        if(name != null) {
+            for (LogLevel level : values())
+                if(level.name().equalsIgnoreCase(name.trim()))
+                    return level;
+        }
+        return defaultLevel;
+    }
+}
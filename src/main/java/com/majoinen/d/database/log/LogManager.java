@@ -1,74 +1,149 @@
 package com.majoinen.d.database.log;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.majoinen.d.database.util.Registry;
 
 /**
+ * Provides the logger of each class. Every logger shares one level, read
+ * from the dbutils.log.level system property and INFO by default, and one
+ * appender.
+ *
+ * Unless the dbutils.log.async system property is false, messages are
+ * written to the console by an AsyncAppender whose buffer size is set by
+ * dbutils.log.buffer.size, so logging never blocks the caller. Buffered
+ * messages are written when the JVM exits.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 14/8/17
  */
 public class LogManager implements Logger {
 
-    private static final String PREFIX = "[DBUtils]";
+    // The system property for the level messages are logged at
+    private static final String LEVEL_PROPERTY = "dbutils.log.level";
 
-    private Class classType;
+    // The system property for whether messages are written asynchronously
+    private static final String ASYNC_PROPERTY = "dbutils.log.async";
+
+    // The system property for the number of messages which may be buffered
+    private static final String BUFFER_SIZE_PROPERTY =
+      "dbutils.log.buffer.size";
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final Registry<Class, LogManager> loggers =
+      new Registry<>();
+
+    private static volatile LogLevel level =
+      LogLevel.parse(System.getProperty(LEVEL_PROPERTY), LogLevel.INFO);
 
-    private static Map<Class, LogManager> map;
+    private static volatile Appender appender = createAppender();
+
+    private Class classType;
 
     private LogManager(Class classType) {
         this.classType = classType;
     }
 
     public static LogManager getLogger(Class classType) {
-        if(map == null)
-            map = new HashMap<>();
-        else if(map.containsKey(classType))
-            return map.get(classType);
-        LogManager logger = new LogManager(classType);
-        map.put(classType, logger);
-        return logger;
+        return loggers.computeIfAbsent(classType, LogManager::new);
+    }
+
+    public static LogLevel getLevel() {
+        return level;
+    }
+
+    public static void setLevel(LogLevel level) {
+        LogManager.level = level;
+    }
+
+    /**
+     * Replace the appender every logger writes to. Messages already buffered
+     * by the previous appender are written first.
+     *
+     * @param appender The new appender.
+     */
+    public static void setAppender(Appender appender) {
+        Appender previous = LogManager.appender;
+        LogManager.appender = appender;
+        if(previous instanceof AsyncAppender)
+            ((AsyncAppender) previous).close();
+    }
+
+    /**
+     * Replace each {} in a message with the next argument.
+     *
+     * @param format The message, containing a {} for each argument.
+     * @param arguments The arguments to place in the message.
+     * @return The formatted message.
+     */
+    public static String format(String format, Object... arguments) {
+        StringBuilder builder = new StringBuilder(format.length() + 32);
+        int start = 0;
+        for (Object argument : arguments) {
+            int index = format.indexOf("{}", start);
+            if(index < 0)
+                break;
+            builder.append(format, start, index).append(argument);
+            start = index + 2;
+        }
+        return builder.append(format, start, format.length()).toString();
+    }
+
+    @Override
+    public boolean isEnabled(LogLevel messageLevel) {
+        return messageLevel.compareTo(level) >= 0 &&
+          messageLevel != LogLevel.OFF;
     }
 
     @Override
     public void info(String message) {
-        output("INFO", message);
+        output(LogLevel.INFO, message, null);
     }
 
     @Override
     public void debug(String message) {
-        output("DEBUG", message);
+        output(LogLevel.DEBUG, message, null);
     }
 
     @Override
     public void error(String message) {
-        output("ERROR", message);
+        output(LogLevel.ERROR, message, null);
     }
 
     @Override
     public void error(String message, Throwable throwable) {
-        output("ERROR", message + " :: " + throwable.getMessage());
-        throwable.printStackTrace();
+        output(LogLevel.ERROR, message, throwable);
     }
 
     @Override
     public void fatal(String message) {
-        output("FATAL", message);
+        output(LogLevel.FATAL, message, null);
     }
 
     @Override
     public void fatal(String message, Throwable throwable) {
-        output("FATAL", message + " :: " + throwable.getMessage());
-        throwable.printStackTrace();
+        output(LogLevel.FATAL, message, throwable);
+    }
+
+    private void output(LogLevel messageLevel, String message,
+      Throwable throwable) {
+        if(isEnabled(messageLevel))
+            appender.append(messageLevel, classType, message, throwable);
     }
 
-    private void output(String level, String message) {
-        String output = PREFIX
-          .concat(" - [")
-          .concat(level.toUpperCase())
-          .concat("] - ")
-          .concat(classType.getSimpleName())
-          .concat(" - ")
-          .concat(message);
-        System.out.println(output);
+    private static Appender createAppender() {
+        Appender console = new ConsoleAppender();
+        if("false".equalsIgnoreCase(System.getProperty(ASYNC_PROPERTY)))
+            return console;
+        int bufferSize = DEFAULT_BUFFER_SIZE;
+        try {
+            bufferSize = Integer.parseInt(System.getProperty(
+              BUFFER_SIZE_PROPERTY, String.valueOf(DEFAULT_BUFFER_SIZE)));
+        } catch(NumberFormatException e) {
+            // Fall back to the default size
+        }
+        AsyncAppender async = new AsyncAppender(console, bufferSize);
+        Runtime.getRuntime().addShutdownHook(new Thread(async::close,
+          "DBUtils-log-flush"));
+        return async;
     }
 }
@@ -1,6 +1,13 @@
 package com.majoinen.d.database.log;
 
+import java.util.function.Supplier;
+
 /**
+ * Messages below the logger's level are discarded. The Supplier and
+ * parameterised overloads only build the message once it is known to be
+ * enabled, where parameterised messages replace each {} with the next
+ * argument.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 14/8/17
  */
@@ -11,4 +18,44 @@ public interface Logger {
     void error(String message, Throwable throwable);
     void fatal(String message);
     void fatal(String message, Throwable throwable);
+
+    boolean isEnabled(LogLevel level);
+
+    default boolean isDebugEnabled() {
+        return isEnabled(LogLevel.DEBUG);
+    }
+
+    default boolean isInfoEnabled() {
+        return isEnabled(LogLevel.INFO);
+    }
+
+    default void debug(Supplier<String> message) {
+        if(isDebugEnabled())
+            debug(message.get());
+    }
+
+    default void debug(String format, Object argument) {
+        if(isDebugEnabled())
+            debug(LogManager.format(format, argument));
+    }
+
+    default void debug(String format, Object first, Object second) {
+        if(isDebugEnabled())
+            debug(LogManager.format(format, first, second));
+    }
+
+    default void info(Supplier<String> message) {
+        if(isInfoEnabled())
+            info(message.get());
+    }
+
+    default void info(String format, Object argument) {
+        if(isInfoEnabled())
+            info(LogManager.format(format, argument));
+    }
+
+    default void info(String format, Object first, Object second) {
+        if(isInfoEnabled())
+            info(LogManager.format(format, first, second));
+    }
 }
@@ -0,0 +1,46 @@
+package com.majoinen.d.database.metrics;
+
+import java.util.List;
+
+/**
+ * The metrics of a database, as published through JMX under the name
+ * com.majoinen.d.database:type=Metrics,name=[database name]. Latencies are
+ * in nanoseconds.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public interface DatabaseMetricsMXBean {
+
+    String getDatabaseName();
+
+    long getExecutions();
+
+    long getErrors();
+
+    long getRowsRead();
+
+    long getRowsWritten();
+
+    long getConnectionsOpened();
+
+    long getConnectionsClosed();
+
+    long getOpenConnections();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+
+    double getExecutionsPerSecond();
+
+    /**
+     * @return A summary of each query shape, the most time consuming first.
+     */
+    List<QueryShapeSnapshot> getQueries();
+
+    /**
+     * Discard every metric recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,87 @@
+package com.majoinen.d.database.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable summary of a LatencyHistogram. Every value is in
+ * nanoseconds.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public final class HistogramSnapshot {
+
+    static final HistogramSnapshot EMPTY =
+      new HistogramSnapshot(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long count;
+    private final long min;
+    private final long max;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+
+    HistogramSnapshot(long count, long min, long max, double mean, long p50,
+      long p90, long p99, long p999) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    /**
+     * @return The total time recorded (ns), estimated from the mean.
+     */
+    public long getTotal() {
+        return Math.round(mean * count);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + micros(Math.round(mean)) +
+          "us, p50=" + micros(p50) + "us, p99=" + micros(p99) +
+          "us, max=" + micros(max) + "us";
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,286 @@
+package com.majoinen.d.database.metrics;
+
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.util.Registry;
+import com.majoinen.d.database.util.SQLParameterParser;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The default MetricsRecorder, which keeps the metrics of one database in
+ * memory. Each query shape has a LatencyHistogram for each QueryPhase, and
+ * counts of its errors and rows. Recording never allocates once a shape has
+ * been seen, and never locks.
+ *
+ * To bound memory, at most maxShapes shapes are tracked; executions of any
+ * further shapes are recorded under OTHER_SHAPE.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public class InMemoryMetricsRecorder implements MetricsRecorder,
+  DatabaseMetricsMXBean {
+
+    private static final Logger logger =
+      LogManager.getLogger(InMemoryMetricsRecorder.class);
+
+    public static final int DEFAULT_MAX_SHAPES = 256;
+
+    // The shape executions are recorded under once maxShapes is reached
+    public static final String OTHER_SHAPE = "(other)";
+
+    private static final String OBJECT_NAME_PREFIX =
+      "com.majoinen.d.database:type=Metrics,name=";
+
+    private final String databaseName;
+    private final int maxShapes;
+    private final Registry<String, ShapeMetrics> shapes = new Registry<>();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private volatile long startNanos = System.nanoTime();
+
+    // Set while the recorder is registered with the platform MBean server
+    private ObjectName objectName;
+
+    public InMemoryMetricsRecorder(String databaseName) {
+        this(databaseName, DEFAULT_MAX_SHAPES);
+    }
+
+    public InMemoryMetricsRecorder(String databaseName, int maxShapes) {
+        if(maxShapes < 1)
+            throw new IllegalArgumentException("Invalid max shapes: " +
+              maxShapes);
+        this.databaseName = databaseName;
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    public void recordLatency(String sql, QueryPhase phase, long nanos) {
+        metricsOf(sql).latencies[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void recordError(String sql, QueryPhase phase) {
+        metricsOf(sql).errors.increment();
+    }
+
+    @Override
+    public void recordRowsRead(String sql, long rows) {
+        metricsOf(sql).rowsRead.add(rows);
+    }
+
+    @Override
+    public void recordRowsWritten(String sql, long rows) {
+        metricsOf(sql).rowsWritten.add(rows);
+    }
+
+    @Override
+    public void recordConnectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    @Override
+    public void recordConnectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    @Override
+    public void recordStatementCache(boolean hit) {
+        if(hit)
+            statementCacheHits.increment();
+        else
+            statementCacheMisses.increment();
+    }
+
+    /**
+     * Summarise every metric recorded so far.
+     *
+     * @return An immutable snapshot of the metrics.
+     */
+    public MetricsSnapshot snapshot() {
+        List<QueryShapeSnapshot> queries = getQueries();
+        return new MetricsSnapshot(databaseName, System.currentTimeMillis(),
+          getElapsedMillis(), connectionsOpened.sum(),
+          connectionsClosed.sum(), statementCacheHits.sum(),
+          statementCacheMisses.sum(), queries);
+    }
+
+    @Override
+    public List<QueryShapeSnapshot> getQueries() {
+        List<QueryShapeSnapshot> queries = new ArrayList<>();
+        for (ShapeMetrics metrics : shapes.values())
+            queries.add(metrics.snapshot());
+        queries.sort(Comparator.comparingLong(
+          QueryShapeSnapshot::getTotalTime).reversed());
+        return queries;
+    }
+
+    @Override
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    @Override
+    public long getExecutions() {
+        long executions = 0;
+        for (ShapeMetrics metrics : shapes.values())
+            executions += metrics.latencies[QueryPhase.EXECUTE.ordinal()]
+              .getCount();
+        return executions;
+    }
+
+    @Override
+    public long getErrors() {
+        long errors = 0;
+        for (ShapeMetrics metrics : shapes.values())
+            errors += metrics.errors.sum();
+        return errors;
+    }
+
+    @Override
+    public long getRowsRead() {
+        long rows = 0;
+        for (ShapeMetrics metrics : shapes.values())
+            rows += metrics.rowsRead.sum();
+        return rows;
+    }
+
+    @Override
+    public long getRowsWritten() {
+        long rows = 0;
+        for (ShapeMetrics metrics : shapes.values())
+            rows += metrics.rowsWritten.sum();
+        return rows;
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    @Override
+    public long getConnectionsClosed() {
+        return connectionsClosed.sum();
+    }
+
+    @Override
+    public long getOpenConnections() {
+        return connectionsOpened.sum() - connectionsClosed.sum();
+    }
+
+    @Override
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    @Override
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    @Override
+    public double getExecutionsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getExecutions() * 1000.0 / elapsed;
+    }
+
+    /**
+     * Discard the metrics of every query shape and restart the clock used
+     * for throughput. Connection counts are kept, so the number of open
+     * connections remains correct.
+     */
+    @Override
+    public void reset() {
+        shapes.removeAll();
+        statementCacheHits.reset();
+        statementCacheMisses.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Publish these metrics through JMX. If they cannot be registered, such
+     * as when another recorder is already registered for the database, the
+     * error is logged and metrics are still recorded.
+     */
+    public synchronized void registerMBean() {
+        if(objectName != null)
+            return;
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME_PREFIX +
+              ObjectName.quote(databaseName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+              name);
+            objectName = name;
+        } catch(JMException e) {
+            logger.error("Error registering metrics MBean", e);
+        }
+    }
+
+    /**
+     * Stop publishing these metrics through JMX.
+     */
+    public synchronized void unregisterMBean() {
+        if(objectName == null)
+            return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+        } catch(JMException e) {
+            logger.error("Error unregistering metrics MBean", e);
+        }
+        objectName = null;
+    }
+
+    private long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /* Get the metrics of the shape of an sql query, creating them if needed */
+    private ShapeMetrics metricsOf(String sql) {
+        String shape = sql == null ? OTHER_SHAPE :
+          SQLParameterParser.compile(sql).getShape();
+        ShapeMetrics metrics = shapes.get(shape);
+        if(metrics != null)
+            return metrics;
+        if(shapes.size() >= maxShapes)
+            shape = OTHER_SHAPE;
+        return shapes.computeIfAbsent(shape, ShapeMetrics::new);
+    }
+
+    /* The histograms and counters of one query shape */
+    private static final class ShapeMetrics {
+
+        private final String shape;
+        private final LatencyHistogram[] latencies =
+          new LatencyHistogram[QueryPhase.values().length];
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder rowsWritten = new LongAdder();
+
+        private ShapeMetrics(String shape) {
+            this.shape = shape;
+            for (int i = 0; i < latencies.length; i++)
+                latencies[i] = new LatencyHistogram();
+        }
+
+        private QueryShapeSnapshot snapshot() {
+            return new QueryShapeSnapshot(shape, errors.sum(), rowsRead.sum(),
+              rowsWritten.sum(),
+              latencies[QueryPhase.PREPARE.ordinal()].snapshot(),
+              latencies[QueryPhase.EXECUTE.ordinal()].snapshot(),
+              latencies[QueryPhase.MAP.ordinal()].snapshot());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.majoinen.d.database.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size histogram of latencies, in the style of an HdrHistogram.
+ * Values below 128ns are counted exactly. Above that each power of two is
+ * split into 64 equal buckets, so a recorded value is only ever reported to
+ * within 1/64 (about 1.6%) of its true value, whatever its magnitude.
+ *
+ * Recording is a few arithmetic operations and an atomic increment, with no
+ * allocation or locking, so it is safe to call from many threads at once.
+ * Values above MAX_VALUE, about 18 minutes, are counted as MAX_VALUE.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public final class LatencyHistogram {
+
+    // The number of bits of each value which are kept exactly
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+
+    // The largest value (ns) which is tracked
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts =
+      new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency (ns). Negative values are counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        total.add(value);
+        long current;
+        while(value < (current = min.get()) &&
+          !min.compareAndSet(current, value)) { }
+        while(value > (current = max.get()) &&
+          !max.compareAndSet(current, value)) { }
+    }
+
+    /**
+     * @return The number of latencies recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * Copy the counts and summarise them. Recording may continue while the
+     * snapshot is taken, in which case it may include some of those values.
+     *
+     * @return The count, mean and percentiles of the recorded latencies.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        if(count == 0)
+            return HistogramSnapshot.EMPTY;
+        long highest = max.get();
+        return new HistogramSnapshot(count, min.get(), highest,
+          (double) total.sum() / count,
+          valueAtPercentile(copy, count, 50, highest),
+          valueAtPercentile(copy, count, 90, highest),
+          valueAtPercentile(copy, count, 99, highest),
+          valueAtPercentile(copy, count, 99.9, highest));
+    }
+
+    /* The highest value equivalent to the value at the given percentile */
+    private static long valueAtPercentile(long[] counts, long count,
+      double percentile, long highest) {
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= target)
+                return Math.min(highestEquivalentValue(i), highest);
+        }
+        return highest;
+    }
+
+    /**
+     * Get the bucket of a value. The first 128 buckets hold a single value
+     * each; after that every power of two has 64 buckets.
+     *
+     * @param value The value, between 0 and MAX_VALUE.
+     * @return The index of its bucket.
+     */
+    static int indexOf(long value) {
+        if(value < 2 * SUB_BUCKET_HALF)
+            return (int) value;
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index The index of a bucket.
+     * @return The highest value counted in the bucket.
+     */
+    static long highestEquivalentValue(int index) {
+        if(index < 2 * SUB_BUCKET_HALF)
+            return index;
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (index - shift * SUB_BUCKET_HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+package com.majoinen.d.database.metrics;
+
+/**
+ * Receives the timings and counts of the queries executed on a database.
+ * Every method does nothing by default, so a recorder only needs to
+ * implement what it is interested in. Methods are called on the thread
+ * executing the query, so they should return quickly.
+ *
+ * The sql passed to a recorder is the sql which was prepared, where each
+ * parameter is a ?. Recorders wanting to group it by shape can use
+ * SQLParameterParser.compile(sql).getShape().
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public interface MetricsRecorder {
+
+    // A recorder which discards everything, used when metrics are disabled
+    MetricsRecorder NONE = new MetricsRecorder() { };
+
+    /**
+     * Record how long a phase of a query took.
+     *
+     * @param sql The sql of the query.
+     * @param phase The phase which was timed.
+     * @param nanos How long the phase took (ns).
+     */
+    default void recordLatency(String sql, QueryPhase phase, long nanos) { }
+
+    /**
+     * Record that a phase of a query failed.
+     *
+     * @param sql The sql of the query.
+     * @param phase The phase which failed.
+     */
+    default void recordError(String sql, QueryPhase phase) { }
+
+    default void recordRowsRead(String sql, long rows) { }
+
+    default void recordRowsWritten(String sql, long rows) { }
+
+    default void recordConnectionOpened() { }
+
+    default void recordConnectionClosed() { }
+
+    /**
+     * Record whether a statement prepared on a pooled connection came from
+     * its statement cache.
+     *
+     * @param hit True if the statement was cached.
+     */
+    default void recordStatementCache(boolean hit) { }
+}
@@ -0,0 +1,145 @@
+package com.majoinen.d.database.metrics;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable summary of the metrics of a database, taken by
+ * InMemoryMetricsRecorder.snapshot().
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public final class MetricsSnapshot {
+
+    private final String databaseName;
+    private final long timestamp;
+    private final long elapsedMillis;
+    private final long connectionsOpened;
+    private final long connectionsClosed;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+    private final List<QueryShapeSnapshot> queries;
+
+    MetricsSnapshot(String databaseName, long timestamp, long elapsedMillis,
+      long connectionsOpened, long connectionsClosed, long statementCacheHits,
+      long statementCacheMisses, List<QueryShapeSnapshot> queries) {
+        this.databaseName = databaseName;
+        this.timestamp = timestamp;
+        this.elapsedMillis = elapsedMillis;
+        this.connectionsOpened = connectionsOpened;
+        this.connectionsClosed = connectionsClosed;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+        this.queries = Collections.unmodifiableList(queries);
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return When the snapshot was taken, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return How long (ms) metrics had been recorded for when the snapshot
+     * was taken.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    public long getConnectionsClosed() {
+        return connectionsClosed;
+    }
+
+    /**
+     * @return The number of connections opened and not yet closed.
+     */
+    public long getOpenConnections() {
+        return connectionsOpened - connectionsClosed;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    public long getExecutions() {
+        long executions = 0;
+        for (QueryShapeSnapshot query : queries)
+            executions += query.getExecutions();
+        return executions;
+    }
+
+    public long getErrors() {
+        long errors = 0;
+        for (QueryShapeSnapshot query : queries)
+            errors += query.getErrors();
+        return errors;
+    }
+
+    public long getRowsRead() {
+        long rows = 0;
+        for (QueryShapeSnapshot query : queries)
+            rows += query.getRowsRead();
+        return rows;
+    }
+
+    public long getRowsWritten() {
+        long rows = 0;
+        for (QueryShapeSnapshot query : queries)
+            rows += query.getRowsWritten();
+        return rows;
+    }
+
+    /**
+     * @return The mean number of executions per second since metrics began
+     * being recorded.
+     */
+    public double getExecutionsPerSecond() {
+        return elapsedMillis == 0 ? 0 : getExecutions() * 1000.0 /
+          elapsedMillis;
+    }
+
+    /**
+     * @return A summary of each query shape, the most time consuming first.
+     */
+    public List<QueryShapeSnapshot> getQueries() {
+        return queries;
+    }
+
+    /**
+     * Get the summary of one query shape.
+     *
+     * @param shape The normalised sql, as returned by SQLTemplate.getShape().
+     * @return The summary, or null if the shape has not been executed.
+     */
+    public QueryShapeSnapshot getQuery(String shape) {
+        for (QueryShapeSnapshot query : queries) {
+            if(query.getShape().equals(shape))
+                return query;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return databaseName + " [executions=" + getExecutions() +
+          ", errors=" + getErrors() + ", rowsRead=" + getRowsRead() +
+          ", rowsWritten=" + getRowsWritten() + ", openConnections=" +
+          getOpenConnections() + ", statementCacheHits=" +
+          statementCacheHits + "]";
+    }
+}
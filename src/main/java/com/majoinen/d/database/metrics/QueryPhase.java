@@ -0,0 +1,19 @@
+package com.majoinen.d.database.metrics;
+
+/**
+ * The phases of executing a query which are timed separately.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public enum QueryPhase {
+
+    // Preparing the statement, or fetching it from the statement cache
+    PREPARE,
+
+    // Executing the statement, until its update count or results are ready
+    EXECUTE,
+
+    // Reading the results and mapping each row
+    MAP
+}
@@ -0,0 +1,81 @@
+package com.majoinen.d.database.metrics;
+
+/**
+ * An immutable summary of every execution of one query shape.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public final class QueryShapeSnapshot {
+
+    private final String shape;
+    private final long errors;
+    private final long rowsRead;
+    private final long rowsWritten;
+    private final HistogramSnapshot prepare;
+    private final HistogramSnapshot execute;
+    private final HistogramSnapshot map;
+
+    QueryShapeSnapshot(String shape, long errors, long rowsRead,
+      long rowsWritten, HistogramSnapshot prepare, HistogramSnapshot execute,
+      HistogramSnapshot map) {
+        this.shape = shape;
+        this.errors = errors;
+        this.rowsRead = rowsRead;
+        this.rowsWritten = rowsWritten;
+        this.prepare = prepare;
+        this.execute = execute;
+        this.map = map;
+    }
+
+    /**
+     * @return The normalised sql of the query.
+     */
+    public String getShape() {
+        return shape;
+    }
+
+    /**
+     * @return The number of times the query was executed.
+     */
+    public long getExecutions() {
+        return execute.getCount();
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public HistogramSnapshot getPrepare() {
+        return prepare;
+    }
+
+    public HistogramSnapshot getExecute() {
+        return execute;
+    }
+
+    public HistogramSnapshot getMap() {
+        return map;
+    }
+
+    /**
+     * @return The total time (ns) spent in every phase of the query.
+     */
+    public long getTotalTime() {
+        return prepare.getTotal() + execute.getTotal() + map.getTotal();
+    }
+
+    @Override
+    public String toString() {
+        return shape + " [executions=" + getExecutions() + ", errors=" +
+          errors + ", execute: " + execute + "]";
+    }
+}
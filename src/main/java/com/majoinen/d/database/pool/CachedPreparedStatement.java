@@ -0,0 +1,89 @@
+package com.majoinen.d.database.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The PreparedStatement handed out by a StatementCache. Closing it clears
+ * its parameters and returns the underlying statement to the cache rather
+ * than finalising it, so the sql is never compiled twice on one connection.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 14/9/17
+ */
+public class CachedPreparedStatement extends DelegatingPreparedStatement {
+
+    private final StatementCache cache;
+    private final PooledConnection connection;
+    private final String sql;
+    private final PreparedStatement statement;
+    private final boolean cacheHit;
+    private ResultSet resultSet;
+    private boolean closed;
+
+    CachedPreparedStatement(StatementCache cache, PooledConnection connection,
+      String sql, PreparedStatement statement, boolean cacheHit) {
+        super(statement);
+        this.cache = cache;
+        this.connection = connection;
+        this.sql = sql;
+        this.statement = statement;
+        this.cacheHit = cacheHit;
+    }
+
+    /**
+     * @return True if the statement was taken from the cache, or false if it
+     * was prepared when it was checked out.
+     */
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    @Override
+    protected PreparedStatement getDelegate() throws SQLException {
+        if(closed || connection.isClosed())
+            throw new SQLException("Statement has been returned to the cache");
+        return statement;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        resultSet = getDelegate().executeQuery();
+        return resultSet;
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Reset the statement and return it to the cache. If it cannot be reset
+     * it is closed instead. Calling close more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if(closed)
+            return;
+        closed = true;
+        connection.statementClosed(this);
+        try {
+            if(statement.isClosed())
+                return;
+            if(resultSet != null && !resultSet.isClosed())
+                resultSet.close();
+            statement.clearParameters();
+            statement.clearBatch();
+            cache.release(sql, statement);
+        } catch(SQLException e) {
+            StatementCache.closeQuietly(statement);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+}
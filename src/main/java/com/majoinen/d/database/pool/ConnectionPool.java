@@ -0,0 +1,298 @@
+package com.majoinen.d.database.pool;
+
+import com.majoinen.d.database.DatabaseConnectionProvider;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of connections opened by another DatabaseConnectionProvider.
+ * Connections handed out by openConnection() are returned to the pool when
+ * they are closed, rather than being physically closed.
+ *
+ * The pool never opens connections ahead of demand, as opening an SQLite
+ * connection creates the database file and would prevent the initialiser
+ * from provisioning it. The minimum size is instead the number of idle
+ * connections which are protected from eviction.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 11/9/17
+ */
+public class ConnectionPool implements DatabaseConnectionProvider {
+
+    private static final Logger logger =
+      LogManager.getLogger(ConnectionPool.class);
+
+    // Idle connections are only validated when borrowed after this long
+    private static final long VALIDATION_INTERVAL_MILLIS = 1000;
+
+    // Shared by all pools to evict connections which have been idle too long
+    private static final ScheduledExecutorService evictor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "DBUtils-pool-evictor");
+          thread.setDaemon(true);
+          return thread;
+      });
+
+    private final DatabaseConnectionProvider connectionProvider;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long acquireTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+    private final StatementCacheStats statementCacheStats;
+
+    // One permit per connection which may be lent out
+    private final Semaphore permits;
+
+    // Most recently released connections are kept at the head
+    private final LinkedBlockingDeque<PoolEntry> idle;
+
+    // Physical connections currently open, whether idle or lent out
+    private final AtomicInteger size;
+
+    private final ScheduledFuture<?> eviction;
+    private volatile boolean closed;
+
+    /**
+     * Create a pool of connections opened by the provided connection provider.
+     *
+     * @param connectionProvider Opens the physical connections.
+     * @param minSize The number of idle connections which are never evicted.
+     * @param maxSize The maximum number of connections open at once.
+     * @param idleTimeoutMillis How long a connection may be idle before it
+     * is evicted, or 0 to never evict.
+     * @param acquireTimeoutMillis How long to wait for a connection when all
+     * are in use before giving up.
+     * @param validationTimeoutSeconds How long to wait when validating an
+     * idle connection before discarding it.
+     */
+    public ConnectionPool(DatabaseConnectionProvider connectionProvider,
+      int minSize, int maxSize, long idleTimeoutMillis,
+      long acquireTimeoutMillis, int validationTimeoutSeconds) {
+        this(connectionProvider, minSize, maxSize, idleTimeoutMillis,
+          acquireTimeoutMillis, validationTimeoutSeconds, 0);
+    }
+
+    /**
+     * Create a pool of connections opened by the provided connection
+     * provider, caching up to statementCacheSize prepared statements on each
+     * connection.
+     *
+     * @param connectionProvider Opens the physical connections.
+     * @param minSize The number of idle connections which are never evicted.
+     * @param maxSize The maximum number of connections open at once.
+     * @param idleTimeoutMillis How long a connection may be idle before it
+     * is evicted, or 0 to never evict.
+     * @param acquireTimeoutMillis How long to wait for a connection when all
+     * are in use before giving up.
+     * @param validationTimeoutSeconds How long to wait when validating an
+     * idle connection before discarding it.
+     * @param statementCacheSize The number of statements to cache on each
+     * connection, or 0 to disable caching.
+     */
+    public ConnectionPool(DatabaseConnectionProvider connectionProvider,
+      int minSize, int maxSize, long idleTimeoutMillis,
+      long acquireTimeoutMillis, int validationTimeoutSeconds,
+      int statementCacheSize) {
+        if(maxSize < 1 || minSize < 0 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid pool size: " +
+              minSize + " - " + maxSize);
+        this.connectionProvider = connectionProvider;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.statementCacheStats = new StatementCacheStats();
+        this.permits = new Semaphore(maxSize, true);
+        this.idle = new LinkedBlockingDeque<>();
+        this.size = new AtomicInteger();
+        if(idleTimeoutMillis > 0) {
+            long period = Math.max(idleTimeoutMillis / 2, 100);
+            this.eviction = evictor.scheduleWithFixedDelay(this::evictIdle,
+              period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.eviction = null;
+        }
+    }
+
+    /**
+     * Borrow a connection from the pool, opening a new one if none are idle
+     * and the pool is not full. Closing the returned connection returns it
+     * to the pool.
+     *
+     * @return A connection which is not in use by anybody else.
+     * @throws DBUtilsException If the pool is closed; if no connection
+     * becomes available within the acquire timeout or if opening a new
+     * connection fails.
+     */
+    @Override
+    public Connection openConnection() throws DBUtilsException {
+        if(closed)
+            throw new DBUtilsException("Connection pool is closed");
+        acquirePermit();
+        try {
+            PoolEntry entry;
+            while((entry = idle.pollFirst()) != null) {
+                if(isValid(entry))
+                    return new PooledConnection(this, entry);
+                destroy(entry);
+            }
+            entry = new PoolEntry(connectionProvider.openConnection(),
+              statementCacheSize, statementCacheStats);
+            size.incrementAndGet();
+            logger.debug("Opened pooled connection, pool size: {}", size.get());
+            return new PooledConnection(this, entry);
+        } catch(DBUtilsException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close all idle connections and refuse any further borrowing.
+     * Connections which are currently lent out are closed as they are
+     * returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if(eviction != null)
+            eviction.cancel(false);
+        PoolEntry entry;
+        while((entry = idle.pollFirst()) != null)
+            destroy(entry);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of physical connections open, idle or lent out.
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * @return The hit, miss and eviction counts of the statement caches of
+     * all connections in this pool.
+     */
+    public StatementCacheStats getStatementCacheStats() {
+        return statementCacheStats;
+    }
+
+    /**
+     * Return a connection to the pool. It is rolled back if it was left in a
+     * transaction, and closed if it can no longer be used.
+     *
+     * @param entry The physical connection being returned.
+     */
+    void release(PoolEntry entry) {
+        try {
+            if(!closed && reset(entry.getConnection())) {
+                entry.markReleased();
+                idle.offerFirst(entry);
+                // close() may have drained the idle connections between the
+                // check and the offer, in which case this one is closed here
+                if(closed && idle.remove(entry))
+                    destroy(entry);
+            } else {
+                destroy(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquirePermit() throws DBUtilsException {
+        try {
+            if(!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS))
+                throw new DBUtilsException("Timed out after " +
+                  acquireTimeoutMillis + "ms waiting for a connection");
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBUtilsException("Interrupted waiting for a connection",
+              e);
+        }
+    }
+
+    private boolean isValid(PoolEntry entry) {
+        try {
+            Connection connection = entry.getConnection();
+            if(connection.isClosed())
+                return false;
+            long idleMillis = System.currentTimeMillis() -
+              entry.getLastReleased();
+            return idleMillis < VALIDATION_INTERVAL_MILLIS ||
+              connection.isValid(validationTimeoutSeconds);
+        } catch(SQLException e) {
+            logger.debug("Discarding invalid connection: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean reset(Connection connection) {
+        try {
+            if(connection.isClosed())
+                return false;
+            if(!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+            return true;
+        } catch(SQLException e) {
+            logger.error("Error resetting pooled connection", e);
+            return false;
+        }
+    }
+
+    private void destroy(PoolEntry entry) {
+        size.decrementAndGet();
+        try {
+            entry.close();
+        } catch(SQLException e) {
+            logger.error("Error closing pooled connection", e);
+        }
+    }
+
+    /* Close connections idle for too long, oldest first, keeping minSize */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        PoolEntry entry;
+        while(idle.size() > minSize && (entry = idle.peekLast()) != null &&
+          now - entry.getLastReleased() >= idleTimeoutMillis) {
+            if(idle.removeLastOccurrence(entry)) {
+                logger.debug("Evicting idle pooled connection");
+                destroy(entry);
+            }
+        }
+    }
+}
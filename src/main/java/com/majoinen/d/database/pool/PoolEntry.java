@@ -0,0 +1,57 @@
+package com.majoinen.d.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A physical connection owned by a ConnectionPool, along with the
+ * bookkeeping the pool needs to validate and evict it.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 11/9/17
+ */
+final class PoolEntry {
+
+    private final Connection connection;
+
+    // Statements prepared on this connection, or null if not caching
+    private final StatementCache statementCache;
+
+    // When the connection was last returned to the pool
+    private volatile long lastReleased;
+
+    PoolEntry(Connection connection, int statementCacheSize,
+      StatementCacheStats stats) {
+        this.connection = connection;
+        this.statementCache = statementCacheSize > 0 ?
+          new StatementCache(connection, statementCacheSize, stats) : null;
+        this.lastReleased = System.currentTimeMillis();
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    long getLastReleased() {
+        return lastReleased;
+    }
+
+    void markReleased() {
+        lastReleased = System.currentTimeMillis();
+    }
+
+    /**
+     * Close any cached statements and the physical connection.
+     *
+     * @throws SQLException If closing the connection fails.
+     */
+    void close() throws SQLException {
+        if(statementCache != null)
+            statementCache.close();
+        connection.close();
+    }
+}
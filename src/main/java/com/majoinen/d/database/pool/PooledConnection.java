@@ -0,0 +1,76 @@
+package com.majoinen.d.database.pool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Connection handed out by a ConnectionPool. A new handle is created for
+ * every borrow, so a holder which has closed its handle can never reach a
+ * physical connection which has since been lent to somebody else. Closing
+ * the handle returns the physical connection to the pool.
+ *
+ * When the pool caches statements, prepareStatement(String) checks out a
+ * statement from the physical connection's cache. Any statements still
+ * checked out when the handle is closed are returned to the cache first.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 11/9/17
+ */
+public class PooledConnection extends DelegatingConnection {
+
+    private final ConnectionPool pool;
+    private final PoolEntry entry;
+    private final List<CachedPreparedStatement> statements;
+    private boolean closed;
+
+    PooledConnection(ConnectionPool pool, PoolEntry entry) {
+        super(entry.getConnection());
+        this.pool = pool;
+        this.entry = entry;
+        this.statements = new ArrayList<>(2);
+    }
+
+    @Override
+    protected Connection getDelegate() throws SQLException {
+        if(closed)
+            throw new SQLException("Connection has been returned to the pool");
+        return super.getDelegate();
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        StatementCache cache = entry.getStatementCache();
+        if(cache == null)
+            return getDelegate().prepareStatement(sql);
+        getDelegate();
+        PreparedStatement statement = cache.prepare(this, sql);
+        statements.add((CachedPreparedStatement) statement);
+        return statement;
+    }
+
+    /**
+     * Return the physical connection to the pool. Calling close more than
+     * once has no effect.
+     */
+    @Override
+    public void close() {
+        if(closed)
+            return;
+        while(!statements.isEmpty())
+            statements.get(statements.size() - 1).close();
+        closed = true;
+        pool.release(entry);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    void statementClosed(CachedPreparedStatement statement) {
+        statements.remove(statement);
+    }
+}
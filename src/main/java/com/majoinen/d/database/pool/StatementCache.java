@@ -0,0 +1,108 @@
+package com.majoinen.d.database.pool;
+
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of PreparedStatements for one physical
+ * connection, keyed by their sql. A statement is removed from the cache while
+ * it is checked out, so two users of the same sql never share a statement.
+ *
+ * A physical connection is only ever used by the thread which borrowed it,
+ * so the cache is not synchronised.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 14/9/17
+ */
+final class StatementCache {
+
+    private static final Logger logger =
+      LogManager.getLogger(StatementCache.class);
+
+    private final Connection connection;
+    private final int maxSize;
+    private final StatementCacheStats stats;
+
+    // Statements which are not checked out, least recently returned first
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    StatementCache(Connection connection, int maxSize,
+      StatementCacheStats stats) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.stats = stats;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Check out a statement for the provided sql, preparing one if none is
+     * cached.
+     *
+     * @param handle The pooled connection the statement is being prepared on.
+     * @param sql The sql to prepare.
+     * @return A statement which returns itself to the cache when closed.
+     * @throws SQLException If preparing a new statement fails.
+     */
+    PreparedStatement prepare(PooledConnection handle, String sql)
+      throws SQLException {
+        PreparedStatement statement = statements.remove(sql);
+        boolean hit = statement != null && !statement.isClosed();
+        if(hit) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+            statement = connection.prepareStatement(sql);
+        }
+        return new CachedPreparedStatement(this, handle, sql, statement, hit);
+    }
+
+    /**
+     * Return a checked out statement to the cache, evicting the least
+     * recently used statement if the cache is full.
+     *
+     * @param sql The sql the statement was prepared with.
+     * @param statement The statement being returned.
+     */
+    void release(String sql, PreparedStatement statement) {
+        PreparedStatement replaced = statements.put(sql, statement);
+        if(replaced != null && replaced != statement)
+            closeQuietly(replaced);
+        if(statements.size() > maxSize) {
+            Iterator<Map.Entry<String, PreparedStatement>> eldest =
+              statements.entrySet().iterator();
+            PreparedStatement evicted = eldest.next().getValue();
+            eldest.remove();
+            stats.recordEviction();
+            closeQuietly(evicted);
+        }
+    }
+
+    /**
+     * Close every cached statement, used when the physical connection is
+     * being closed.
+     */
+    void close() {
+        for (PreparedStatement statement : statements.values())
+            closeQuietly(statement);
+        statements.clear();
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch(SQLException e) {
+            logger.debug("Error closing cached statement: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.majoinen.d.database.pool;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by the statement caches of every connection in a
+ * ConnectionPool.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 14/9/17
+ */
+public final class StatementCacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The fraction of prepares served from a cache, or 0 if nothing
+     * has been prepared yet.
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses() +
+          ", evictions=" + getEvictions();
+    }
+}
@@ -0,0 +1 @@
+package com.majoinen.d.database.pool;
@@ -0,0 +1,20 @@
+package com.majoinen.d.database.sqlite;
+
+/**
+ * Notified of the progress of a backup.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 6/11/17
+ */
+@FunctionalInterface
+public interface BackupListener {
+
+    /**
+     * Called when a backup starts, after each step it copies and when it
+     * completes, with no pages remaining.
+     *
+     * @param remainingPages The number of pages still to copy.
+     * @param pageCount The number of pages in the database.
+     */
+    void progress(int remainingPages, int pageCount);
+}
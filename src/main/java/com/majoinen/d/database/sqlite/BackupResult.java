@@ -0,0 +1,71 @@
+package com.majoinen.d.database.sqlite;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable summary of a completed backup.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 6/11/17
+ */
+public final class BackupResult {
+
+    private final Path target;
+    private final int pageCount;
+    private final long bytes;
+    private final long durationNanos;
+
+    BackupResult(Path target, int pageCount, long bytes, long durationNanos) {
+        this.target = target;
+        this.pageCount = pageCount;
+        this.bytes = bytes;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * @return The file the database was backed up to.
+     */
+    public Path getTarget() {
+        return target;
+    }
+
+    /**
+     * @return The number of pages copied.
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return The size of the backup in bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @param unit The unit of the returned duration.
+     * @return How long the backup took.
+     */
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The number of bytes copied per second.
+     */
+    public double getThroughput() {
+        if(durationNanos == 0)
+            return 0;
+        return bytes * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "BackupResult{target=" + target + ", pages=" + pageCount +
+          ", bytes=" + bytes + ", duration=" +
+          getDuration(TimeUnit.MILLISECONDS) + "ms, throughput=" +
+          Math.round(getThroughput() / 1024) + "KiB/s}";
+    }
+}
@@ -0,0 +1,103 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The indexes an SQLiteIndexAdvisor found for a workload. Those advised
+ * save more rows visited by the queries they help than they cost the
+ * queries which write them, and those rejected save no more. Both are
+ * ordered by their benefit, the greatest first.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 30/11/17
+ */
+public final class IndexAdvice {
+
+    private final int shapes;
+    private final List<IndexRecommendation> recommendations;
+    private final List<IndexRecommendation> rejected;
+
+    IndexAdvice(int shapes, List<IndexRecommendation> recommendations,
+      List<IndexRecommendation> rejected) {
+        this.shapes = shapes;
+        this.recommendations = recommendations;
+        this.rejected = rejected;
+    }
+
+    /**
+     * @return The number of query shapes in the workload.
+     */
+    public int getShapes() {
+        return shapes;
+    }
+
+    /**
+     * @return The indexes which save the workload more than they cost.
+     */
+    public List<IndexRecommendation> getRecommendations() {
+        return recommendations;
+    }
+
+    /**
+     * @return The indexes which change the plans of queries of the
+     * workload, but save no more than they cost its writes.
+     */
+    public List<IndexRecommendation> getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Write the advice as an sql script, with a CREATE INDEX IF NOT EXISTS
+     * statement for each advised index and the estimates behind it as
+     * comments. Rejected indexes are listed in comments. The script can be
+     * reviewed, then run with SQLFileExecutor.
+     *
+     * @return The sql script.
+     */
+    public String toScript() {
+        String newLine = System.lineSeparator();
+        StringBuilder script = new StringBuilder();
+        script.append("-- ").append(recommendations.size())
+          .append(" indexes advised for a workload of ").append(shapes)
+          .append(" query shapes, checked with EXPLAIN QUERY PLAN")
+          .append(newLine);
+        for(IndexRecommendation index : recommendations)
+            script.append(newLine).append(index.describe())
+              .append(index.getCreateStatement()).append(";").append(newLine);
+        if(!rejected.isEmpty()) {
+            script.append(newLine).append("-- Not advised, as they save " +
+              "no more than they cost:").append(newLine);
+            for(IndexRecommendation index : rejected)
+                script.append(index.describe()).append("-- ")
+                  .append(index.getCreateStatement()).append(";")
+                  .append(newLine);
+        }
+        return script.toString();
+    }
+
+    /**
+     * Write the advice as an sql script to a file. See toScript().
+     *
+     * @param file The file to write, which is replaced if it exists.
+     * @throws DBUtilsException If any IOException occurs writing the file.
+     */
+    public void writeScript(Path file) throws DBUtilsException {
+        try {
+            Files.write(file, toScript().getBytes(StandardCharsets.UTF_8));
+        } catch(IOException e) {
+            throw new DBUtilsException("Error writing index advice to: " +
+              file, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toScript();
+    }
+}
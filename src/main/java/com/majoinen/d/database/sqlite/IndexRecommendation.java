@@ -0,0 +1,229 @@
+package com.majoinen.d.database.sqlite;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * An index the SQLiteIndexAdvisor found would stop the queries of a
+ * workload scanning a table, with its estimated cost and benefit. Costs are
+ * measured in rows visited: a full table scan visits every row of the
+ * table, a search of an index visits log2 of its rows and then each row it
+ * finds, and each row written to the table writes an entry of the index,
+ * which is found the same way.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 30/11/17
+ */
+public final class IndexRecommendation {
+
+    // A name which does not need quoting
+    private static final Pattern PLAIN_NAME = Pattern.compile(
+      "[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String name;
+    private final String table;
+    private final List<String> columns;
+    private final List<String> queries;
+    private final long executions;
+    private final long tableRows;
+    private final double rowsReadBefore;
+    private final double rowsReadAfter;
+    private final long timeSavedNanos;
+    private final List<String> writeQueries;
+    private final long indexWrites;
+    private final int existingIndexes;
+
+    IndexRecommendation(String name, String table, List<String> columns,
+      List<String> queries, long executions, long tableRows,
+      double rowsReadBefore, double rowsReadAfter, long timeSavedNanos,
+      List<String> writeQueries, long indexWrites, int existingIndexes) {
+        this.name = name;
+        this.table = table;
+        this.columns = columns;
+        this.queries = queries;
+        this.executions = executions;
+        this.tableRows = tableRows;
+        this.rowsReadBefore = rowsReadBefore;
+        this.rowsReadAfter = rowsReadAfter;
+        this.timeSavedNanos = timeSavedNanos;
+        this.writeQueries = writeQueries;
+        this.indexWrites = indexWrites;
+        this.existingIndexes = existingIndexes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return The columns of the index: those compared to a value, then
+     * one compared to a range or those ordered by.
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return The shape of each query which no longer scans the table with
+     * the index.
+     */
+    public List<String> getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return The executions of the queries which no longer scan the
+     * table.
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * @return The estimated rows of the table.
+     */
+    public long getTableRows() {
+        return tableRows;
+    }
+
+    /**
+     * @return The estimated rows of the table the queries visit without
+     * the index.
+     */
+    public double getRowsReadBefore() {
+        return rowsReadBefore;
+    }
+
+    /**
+     * @return The estimated rows of the table and index the queries visit
+     * with the index.
+     */
+    public double getRowsReadAfter() {
+        return rowsReadAfter;
+    }
+
+    /**
+     * @return How many times fewer rows the queries visit with the index.
+     */
+    public double getReadSpeedup() {
+        return rowsReadAfter > 0 ? rowsReadBefore / rowsReadAfter :
+          rowsReadBefore;
+    }
+
+    /**
+     * @return The time (ns) the queries spent executing which the index is
+     * estimated to save, in proportion to the rows they no longer visit.
+     */
+    public long getTimeSavedNanos() {
+        return timeSavedNanos;
+    }
+
+    /**
+     * @return The shape of each query which writes an entry of the index.
+     */
+    public List<String> getWriteQueries() {
+        return writeQueries;
+    }
+
+    /**
+     * @return The entries of the index the write queries would have
+     * written, where an update moves an entry by deleting and inserting it.
+     */
+    public long getIndexWrites() {
+        return indexWrites;
+    }
+
+    /**
+     * @return The rows visited finding where each entry is written.
+     */
+    public double getWriteCost() {
+        return indexWrites * (log2(tableRows) + 1);
+    }
+
+    /**
+     * @return How many times more b-trees each row written to the table
+     * writes, as it is written to the table and each of its indexes.
+     */
+    public double getWriteAmplification() {
+        return (existingIndexes + 2.0) / (existingIndexes + 1.0);
+    }
+
+    /**
+     * @return The rows the queries no longer visit, less the rows visited
+     * maintaining the index.
+     */
+    public double getBenefit() {
+        return rowsReadBefore - rowsReadAfter - getWriteCost();
+    }
+
+    /**
+     * @return Whether the index saves more than it costs the workload.
+     */
+    public boolean isAdvised() {
+        return getBenefit() > 0;
+    }
+
+    /**
+     * @return The statement creating the index, unless it exists.
+     */
+    public String getCreateStatement() {
+        return createStatement(name, table, columns);
+    }
+
+    static String createStatement(String name, String table,
+      List<String> columns) {
+        StringBuilder sql = new StringBuilder("CREATE INDEX IF NOT EXISTS ")
+          .append(quote(name)).append(" ON ").append(quote(table))
+          .append(" (");
+        for(int i = 0; i < columns.size(); i++) {
+            if(i > 0)
+                sql.append(", ");
+            sql.append(quote(columns.get(i)));
+        }
+        return sql.append(")").toString();
+    }
+
+    static double log2(long rows) {
+        return Math.log(Math.max(rows, 2)) / Math.log(2);
+    }
+
+    static String quote(String name) {
+        if(PLAIN_NAME.matcher(name).matches())
+            return name;
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * @return A summary of the cost and benefit of the index, as lines of
+     * an sql comment.
+     */
+    String describe() {
+        StringBuilder description = new StringBuilder();
+        description.append(String.format(Locale.ROOT, "-- %s %s: %d " +
+          "executions of %d queries no longer scan %d rows%n", table,
+          columns, executions, queries.size(), tableRows));
+        description.append(String.format(Locale.ROOT, "--   read speedup " +
+          "%.1fx, %.0f fewer rows visited, ~%d ms saved%n", getReadSpeedup(),
+          rowsReadBefore - rowsReadAfter,
+          TimeUnit.NANOSECONDS.toMillis(timeSavedNanos)));
+        description.append(String.format(Locale.ROOT, "--   write " +
+          "amplification %.2fx: %d index entries written by %d queries, " +
+          "%.0f rows visited%n", getWriteAmplification(), indexWrites,
+          writeQueries.size(), getWriteCost()));
+        for(String query : queries)
+            description.append("--   ").append(query).append(
+              System.lineSeparator());
+        return description.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getCreateStatement();
+    }
+}
@@ -0,0 +1,217 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.pool.DelegatingConnection;
+import com.majoinen.d.database.pool.DelegatingPreparedStatement;
+import org.sqlite.SQLiteErrorCode;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A connection to a shared cache database whose prepared statements wait
+ * for the tables they use. A connection sharing the cache locks each table
+ * it reads until its statement is done, and each table it writes until its
+ * transaction commits. A statement needing a table another connection has
+ * locked fails with SQLITE_LOCKED straight away, as the busy timeout does
+ * not apply, so it is retried here until the lock is released or the
+ * timeout passes.
+ *
+ * The driver finalizes a statement which fails on a lock, so it is
+ * prepared again and its parameters bound again before it is retried. The
+ * rows of a batch are kept to bind again too, but a batch is only retried
+ * within a transaction, where the first row locks the table for the rest,
+ * so a batch which failed on a lock has not applied any of its rows.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 8/12/17
+ */
+final class LockRetryingConnection extends DelegatingConnection {
+
+    private static final int SQLITE_LOCKED = SQLiteErrorCode.SQLITE_LOCKED.code;
+
+    // How long (ms) a statement waits for a lock before failing, as long as
+    // SQLiteWALExecutor waits on SQLITE_BUSY
+    private static final long LOCK_TIMEOUT_MILLIS = 5000;
+
+    // The first and longest waits (ns) between attempts
+    private static final long MIN_BACKOFF_NANOS =
+      TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_BACKOFF_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(10);
+
+    LockRetryingConnection(Connection connection) {
+        super(connection);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return new LockRetryingStatement(sql, retry(() ->
+          getDelegate().prepareStatement(sql)));
+    }
+
+    /**
+     * Run a call, retrying it while it fails on a table locked by another
+     * connection.
+     *
+     * @param call The call to run.
+     * @param <T> The type of result of the call.
+     * @return The result of the call.
+     * @throws SQLException If the call fails other than on a lock, or is
+     * still locked out once the timeout has passed.
+     */
+    private static <T> T retry(Call<T> call) throws SQLException {
+        long deadline = System.nanoTime() +
+          TimeUnit.MILLISECONDS.toNanos(LOCK_TIMEOUT_MILLIS);
+        long backoff = MIN_BACKOFF_NANOS;
+        while(true) {
+            try {
+                return call.run();
+            } catch(SQLException e) {
+                if(e.getErrorCode() != SQLITE_LOCKED ||
+                  System.nanoTime() - deadline >= 0 ||
+                  Thread.currentThread().isInterrupted())
+                    throw e;
+            }
+            LockSupport.parkNanos(backoff);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+        }
+    }
+
+    private interface Call<T> {
+        T run() throws SQLException;
+    }
+
+    /* Retries each execution, preparing the statement again and binding
+     * its parameters and batch again first */
+    private final class LockRetryingStatement
+      extends DelegatingPreparedStatement {
+
+        private final String sql;
+        private PreparedStatement statement;
+
+        // Whether the statement failed on a lock, so must be prepared again
+        private boolean stale;
+
+        private final Map<Integer, Object> row = new TreeMap<>();
+        private final List<Map<Integer, Object>> batch = new ArrayList<>();
+        private int fetchSize;
+
+        private LockRetryingStatement(String sql, PreparedStatement statement) {
+            super(statement);
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        protected PreparedStatement getDelegate() throws SQLException {
+            if(stale) {
+                PreparedStatement prepared =
+                  LockRetryingConnection.this.getDelegate().prepareStatement(
+                  sql);
+                statement.close();
+                statement = prepared;
+                stale = false;
+                if(fetchSize != 0)
+                    statement.setFetchSize(fetchSize);
+                for(Map<Integer, Object> values : batch) {
+                    bind(values);
+                    statement.addBatch();
+                }
+                bind(row);
+            }
+            return statement;
+        }
+
+        private void bind(Map<Integer, Object> values) throws SQLException {
+            for(Map.Entry<Integer, Object> value : values.entrySet())
+                statement.setObject(value.getKey(), value.getValue());
+        }
+
+        /* Run a call on the statement, marking it stale if it is locked */
+        private <T> T execute(Call<T> call) throws SQLException {
+            try {
+                return call.run();
+            } catch(SQLException e) {
+                if(e.getErrorCode() == SQLITE_LOCKED)
+                    stale = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            return retry(() -> execute(() -> getDelegate().executeQuery()));
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            return retry(() -> execute(() -> getDelegate().executeUpdate()));
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            return retry(() -> execute(() -> getDelegate().execute()));
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            try {
+                if(getAutoCommit())
+                    return execute(() -> getDelegate().executeBatch());
+                return retry(() -> execute(() ->
+                  getDelegate().executeBatch()));
+            } finally {
+                batch.clear();
+            }
+        }
+
+        @Override
+        public void setObject(int parameterIndex, Object x)
+          throws SQLException {
+            getDelegate().setObject(parameterIndex, x);
+            row.put(parameterIndex, x);
+        }
+
+        @Override
+        public void clearParameters() throws SQLException {
+            getDelegate().clearParameters();
+            row.clear();
+        }
+
+        @Override
+        public void addBatch() throws SQLException {
+            getDelegate().addBatch();
+            batch.add(new TreeMap<>(row));
+        }
+
+        @Override
+        public void clearBatch() throws SQLException {
+            getDelegate().clearBatch();
+            batch.clear();
+        }
+
+        @Override
+        public void setFetchSize(int rows) throws SQLException {
+            getDelegate().setFetchSize(rows);
+            fetchSize = rows;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            statement.close();
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return statement.isClosed();
+        }
+    }
+}
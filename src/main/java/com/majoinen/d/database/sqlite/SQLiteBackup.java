@@ -0,0 +1,163 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.BackupDatabaseException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import org.sqlite.SQLiteConnection;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Copies a live SQLite database with SQLite's online backup API. The copy
+ * is written to a temporary file beside the target, which is then moved
+ * over the target, so the target is only ever replaced by a complete copy.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 6/11/17
+ */
+final class SQLiteBackup {
+
+    private static final Logger logger =
+      LogManager.getLogger(SQLiteBackup.class);
+
+    private static final String TEMPORARY_SUFFIX = ".backup";
+
+    // Sorts in the order backups were taken
+    private static final String TIMESTAMP_FORMAT = "yyyyMMdd-HHmmss-SSS";
+
+    private SQLiteBackup() { }
+
+    /**
+     * Copy the main database of a connection to a file.
+     *
+     * @param source The connection to the database to copy, which must not
+     * be used by any other thread until the copy completes.
+     * @param target The file to copy the database to.
+     * @param listener Notified of the progress of the copy, or null.
+     * @return A summary of the copy.
+     * @throws BackupDatabaseException If any SQLException or IOException
+     * occurs, in which case the target is unchanged.
+     */
+    static BackupResult backup(Connection source, Path target,
+      BackupListener listener) throws BackupDatabaseException {
+        Path temporary = null;
+        try {
+            Path directory = target.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory,
+              target.getFileName().toString(), TEMPORARY_SUFFIX);
+            long start = System.nanoTime();
+            int pageCount = pageCount(source);
+            if(listener != null)
+                listener.progress(pageCount, pageCount);
+            // Called between steps, yielding to foreground queries
+            int result = source.unwrap(SQLiteConnection.class).db().backup(
+              "main", temporary.toString(), (remaining, pages) -> {
+                  if(listener != null)
+                      listener.progress(remaining, pages);
+                  Thread.yield();
+              });
+            if(result != 0)
+                throw new BackupDatabaseException("Backup failed with code " +
+                  result);
+            long bytes = Files.size(temporary);
+            move(temporary, target);
+            long duration = System.nanoTime() - start;
+            if(listener != null)
+                listener.progress(0, pageCount);
+            BackupResult backup = new BackupResult(target, pageCount, bytes,
+              duration);
+            logger.debug("Backup complete: {}", backup);
+            return backup;
+        } catch(SQLException | IOException e) {
+            throw new BackupDatabaseException("Error backing up to " + target,
+              e);
+        } finally {
+            deleteQuietly(temporary);
+        }
+    }
+
+    /**
+     * @param directory The directory backups are kept in.
+     * @param prefix The prefix of every backup's filename.
+     * @param suffix The suffix of every backup's filename.
+     * @return A file for a new backup, named by the time it was taken.
+     */
+    static Path newBackupFile(Path directory, String prefix, String suffix) {
+        return directory.resolve(prefix + new SimpleDateFormat(
+          TIMESTAMP_FORMAT).format(new Date()) + suffix);
+    }
+
+    /**
+     * Delete the oldest backups in a directory, keeping the newest.
+     *
+     * @param directory The directory backups are kept in.
+     * @param prefix The prefix of every backup's filename.
+     * @param suffix The suffix of every backup's filename.
+     * @param retain The number of backups to keep.
+     * @return The number of backups deleted.
+     * @throws BackupDatabaseException If any IOException occurs listing or
+     * deleting backups.
+     */
+    static int prune(Path directory, String prefix, String suffix,
+      int retain) throws BackupDatabaseException {
+        List<Path> backups = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+          prefix + "*" + suffix)) {
+            for(Path file : files)
+                backups.add(file);
+            Collections.sort(backups);
+            int deleted = 0;
+            for(int i = 0; i < backups.size() - retain; i++) {
+                Files.deleteIfExists(backups.get(i));
+                deleted++;
+            }
+            if(deleted > 0)
+                logger.debug("Deleted {} old backups", deleted);
+            return deleted;
+        } catch(IOException e) {
+            throw new BackupDatabaseException("Error deleting old backups in " +
+              directory, e);
+        }
+    }
+
+    private static int pageCount(Connection source) throws SQLException {
+        try(Statement statement = source.createStatement();
+          ResultSet result = statement.executeQuery("PRAGMA page_count")) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE,
+              StandardCopyOption.REPLACE_EXISTING);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if(path == null)
+            return;
+        try {
+            Files.deleteIfExists(path);
+        } catch(IOException e) {
+            logger.error("Error deleting " + path, e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.BackupDatabaseException;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the backups of a database one at a time on a single low priority
+ * background thread, either on demand or on a schedule. Scheduled backups
+ * are written to a directory, named by the time they were taken, and only
+ * the newest are kept.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 6/11/17
+ */
+final class SQLiteBackupExecutor {
+
+    private static final Logger logger =
+      LogManager.getLogger(SQLiteBackupExecutor.class);
+
+    /**
+     * Copies the database to a file.
+     */
+    @FunctionalInterface
+    interface Source {
+        BackupResult backup(Path target, BackupListener listener)
+          throws DBUtilsException;
+    }
+
+    private final Source source;
+    private final ScheduledExecutorService thread;
+
+    // The scheduled backups, or null if none are scheduled
+    private ScheduledFuture<?> schedule;
+
+    SQLiteBackupExecutor(String databaseName, Source source) {
+        this.source = source;
+        this.thread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread backupThread = new Thread(runnable, "DBUtils-backup-" +
+              databaseName);
+            backupThread.setDaemon(true);
+            backupThread.setPriority(Thread.MIN_PRIORITY);
+            return backupThread;
+        });
+    }
+
+    /**
+     * Back up the database once every backup queued before it completes.
+     *
+     * @param target The file to back up to.
+     * @param listener Notified of the progress of the backup, or null.
+     * @return A future completed with a summary of the backup.
+     */
+    CompletableFuture<BackupResult> submit(Path target,
+      BackupListener listener) {
+        CompletableFuture<BackupResult> future = new CompletableFuture<>();
+        try {
+            thread.execute(() -> {
+                try {
+                    if(!future.isDone())
+                        future.complete(source.backup(target, listener));
+                } catch(DBUtilsException | RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            future.completeExceptionally(new BackupDatabaseException(
+              "Backup rejected, the database is closed"));
+        }
+        return future;
+    }
+
+    /**
+     * Back up the database periodically, replacing any existing schedule.
+     *
+     * @param directory The directory to write backups to.
+     * @param prefix The prefix of every backup's filename.
+     * @param suffix The suffix of every backup's filename.
+     * @param intervalMillis How long (ms) to wait after each backup before
+     * starting the next.
+     * @param retain The number of backups to keep, after which the oldest
+     * are deleted.
+     */
+    synchronized void schedule(Path directory, String prefix, String suffix,
+      long intervalMillis, int retain) {
+        cancelSchedule();
+        logger.debug("Backing up to {} every {}ms", directory,
+          intervalMillis);
+        schedule = thread.scheduleWithFixedDelay(() -> scheduledBackup(
+          directory, prefix, suffix, retain), intervalMillis, intervalMillis,
+          TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop scheduled backups. A backup which has started still completes.
+     */
+    synchronized void cancelSchedule() {
+        if(schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+
+    /**
+     * Stop scheduled backups. Backups already submitted still run, but no
+     * more can be submitted.
+     */
+    synchronized void close() {
+        cancelSchedule();
+        thread.shutdown();
+    }
+
+    private void scheduledBackup(Path directory, String prefix,
+      String suffix, int retain) {
+        try {
+            BackupResult result = source.backup(SQLiteBackup.newBackupFile(
+              directory, prefix, suffix), null);
+            logger.info("Scheduled backup complete: {}", result);
+            SQLiteBackup.prune(directory, prefix, suffix, retain);
+        } catch(DBUtilsException | RuntimeException e) {
+            logger.error("Error taking scheduled backup", e);
+        }
+    }
+}
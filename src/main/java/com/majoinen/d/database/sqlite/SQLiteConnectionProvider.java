@@ -5,11 +5,20 @@ import com.majoinen.d.database.exception.DBUtilsException;
 import com.majoinen.d.database.log.LogManager;
 import com.majoinen.d.database.log.Logger;
 
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteOpenMode;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
 
 /**
+ * Opens connections to an SQLite database file, applying the settings of
+ * its SQLitePragmaProfile to each.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 23/7/17
  */
@@ -24,31 +33,123 @@ public class SQLiteConnectionProvider implements DatabaseConnectionProvider {
     private String databaseName;
     private String configFilename;
 
+    // Driver properties, such as pragmas, applied to each connection opened
+    private Properties connectionProperties;
+
+    // The profile applied to each connection opened, or null to use the
+    // profile in the config file
+    private SQLitePragmaProfile profile;
+
     public SQLiteConnectionProvider(String databaseName,
       String configFilename) {
+        this(databaseName, configFilename, null);
+    }
+
+    public SQLiteConnectionProvider(String databaseName,
+      String configFilename, Properties connectionProperties) {
+        this(databaseName, configFilename, connectionProperties, null);
+    }
+
+    /**
+     * @param databaseName The name of the database.
+     * @param configFilename The config file of the database.
+     * @param connectionProperties Driver properties applied to each
+     * connection, or null. A journal mode set here is kept over the
+     * profile's, and the other settings of the profile replace these.
+     * @param profile The profile applied to each connection, or null to use
+     * the profile in the config file.
+     */
+    public SQLiteConnectionProvider(String databaseName,
+      String configFilename, Properties connectionProperties,
+      SQLitePragmaProfile profile) {
         this.databaseName = databaseName;
         this.configFilename = configFilename;
+        this.connectionProperties = connectionProperties;
+        this.profile = profile;
     }
 
     /**
-     * Opens a connection to the database.
+     * Opens a connection to the database. DriverManager is thread safe, so
+     * concurrent callers are not serialised here; reuse of connections is
+     * left to the ConnectionPool wrapping this provider.
      *
      * @throws DBUtilsException If a database access error occurs; if the
      * database config file is not found or if there are any permission
      * issues when accessing the file.
      */
     @Override
-    public synchronized Connection openConnection() throws
+    public Connection openConnection() throws
       DBUtilsException {
         String filename =
           SQLiteDatabaseProperties.getDatabaseDirectory(configFilename) +
           "/" + databaseName + "." +
           SQLiteDatabaseProperties.getDatabaseFileExtension(configFilename);
-        logger.debug("Opening connection to the database: "+filename);
+        logger.debug("Opening connection to the database: {}", filename);
+        SQLitePragmaProfile pragmas = profile != null ? profile :
+          SQLiteDatabaseProperties.getPragmaProfile(configFilename);
+        Connection connection = null;
         try {
-            return DriverManager.getConnection(DATABASE_TYPE_PREFIX + filename);
+            if(pragmas == SQLitePragmaProfile.DEFAULT)
+                connection = connectionProperties != null ?
+                  DriverManager.getConnection(DATABASE_TYPE_PREFIX +
+                  filename, connectionProperties) :
+                  DriverManager.getConnection(DATABASE_TYPE_PREFIX +
+                  filename);
+            else
+                connection = DriverManager.getConnection(DATABASE_TYPE_PREFIX +
+                  filename, getProperties(pragmas));
+            // Not supported by SQLiteConfig, so set once opened
+            if(pragmas.getMmapSize() != null) {
+                try(Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA mmap_size = " +
+                      pragmas.getMmapSize());
+                }
+            }
+            return connection;
         } catch (SQLException e) {
+            closeQuietly(connection);
             throw new DBUtilsException("Error opening connection", e);
         }
     }
+
+    /**
+     * Combine the driver properties of this provider with the settings of a
+     * profile. Settings which change the database file are not applied to
+     * read-only connections.
+     *
+     * @param pragmas The profile to apply.
+     * @return The driver properties of each connection.
+     */
+    Properties getProperties(SQLitePragmaProfile pragmas) {
+        Properties properties = new Properties();
+        if(connectionProperties != null)
+            properties.putAll(connectionProperties);
+        SQLiteConfig config = new SQLiteConfig(properties);
+        boolean readOnly = (config.getOpenModeFlags() &
+          SQLiteOpenMode.READONLY.flag) != 0;
+        if(pragmas.getJournalMode() != null && !readOnly &&
+          !properties.containsKey(Pragma.JOURNAL_MODE.pragmaName))
+            config.setJournalMode(pragmas.getJournalMode());
+        if(pragmas.getPageSize() != null && !readOnly)
+            config.setPageSize(pragmas.getPageSize());
+        if(pragmas.getSynchronous() != null)
+            config.setSynchronous(pragmas.getSynchronous());
+        if(pragmas.getCacheSize() != null)
+            config.setCacheSize(pragmas.getCacheSize());
+        if(pragmas.getTempStore() != null)
+            config.setTempStore(pragmas.getTempStore());
+        if(pragmas.getBusyTimeout() != null)
+            config.setBusyTimeout(String.valueOf(pragmas.getBusyTimeout()));
+        return config.toProperties();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if(connection == null)
+            return;
+        try {
+            connection.close();
+        } catch(SQLException e) {
+            logger.error("Error closing connection", e);
+        }
+    }
 }
@@ -1,16 +1,33 @@
 package com.majoinen.d.database.sqlite;
 
+import com.majoinen.d.database.DBUtilsConnection;
+import com.majoinen.d.database.DatabaseConnectionProvider;
+import com.majoinen.d.database.DatabaseConnectionProviderFactory;
+import com.majoinen.d.database.DatabaseProperties;
 import com.majoinen.d.database.SQLDatabaseController;
+import com.majoinen.d.database.exception.BackupDatabaseException;
 import com.majoinen.d.database.exception.DBUtilsException;
 import com.majoinen.d.database.log.Logger;
 import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.metrics.MetricsSnapshot;
 import com.majoinen.d.database.util.PropertiesHandler;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A database facade DAOs will use when communicating with an SQLite database.
  *
+ * In WAL execution mode, queries are executed by an SQLiteWALExecutor so
+ * reads run concurrently on read-only connections while writes are
+ * serialised on a single writer connection. In IN_MEMORY execution mode,
+ * the database is served from memory and persisted by snapshots.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 5/7/17
  */
@@ -22,6 +39,28 @@ public class SQLiteDatabaseController extends SQLDatabaseController {
     private final String databaseName;
     private final String configFilename;
 
+    // Null until first read from the config file
+    private volatile SQLiteExecutionMode executionMode;
+
+    // Created the first time a query is prepared in WAL mode. This, the
+    // in-memory database and the profile provider are read each time a
+    // query is prepared, so are volatile and only created holding the lock
+    private volatile SQLiteWALExecutor walExecutor;
+
+    // Created when initialised in IN_MEMORY mode
+    private volatile SQLiteInMemoryDatabase inMemoryDatabase;
+
+    // Created the first time a backup is taken or scheduled
+    private SQLiteBackupExecutor backupExecutor;
+
+    // The PRAGMA settings of connections opened from now on, or null to use
+    // the profile in the config file
+    private volatile SQLitePragmaProfile pragmaProfile;
+
+    // Provides connections in DEFAULT mode while a profile is set, created
+    // when first needed
+    private volatile DatabaseConnectionProvider profileProvider;
+
     public SQLiteDatabaseController(String databaseName,
       String configFilename) {
         super(databaseName, configFilename);
@@ -36,7 +75,9 @@ public class SQLiteDatabaseController extends SQLDatabaseController {
     }
 
     /**
-     * Initialise, verify and if needed create any missing tables.
+     * Initialise, verify and if needed create any missing tables. In
+     * IN_MEMORY mode, the database is then loaded into memory. Backups are
+     * scheduled if database.backup.interval is set.
      *
      * @throws DBUtilsException if any IOException occurs when accessing
      * database properties or SQLException when verifying or creating tables.
@@ -45,6 +86,14 @@ public class SQLiteDatabaseController extends SQLDatabaseController {
     public void init() throws DBUtilsException {
         logger.debug("Initialising database");
         SQLiteDatabaseInitialiser.getInstance(this).init();
+        if(getExecutionMode() == SQLiteExecutionMode.IN_MEMORY)
+            getInMemoryDatabase();
+        long backupInterval = SQLiteDatabaseProperties.getBackupInterval(
+          configFilename);
+        if(backupInterval > 0)
+            scheduleBackups(Paths.get(SQLiteDatabaseProperties
+              .getBackupDirectory(configFilename)), backupInterval,
+              SQLiteDatabaseProperties.getBackupRetain(configFilename));
     }
 
     @Override
@@ -57,4 +106,420 @@ public class SQLiteDatabaseController extends SQLDatabaseController {
     public void setProperty(String key, String value) throws DBUtilsException {
         PropertiesHandler.setProperty(configFilename, key, value);
     }
+
+    /**
+     * Wait for any queued writes, then close the connections of this
+     * database, including those of the WAL executor. An in-memory database
+     * is persisted by a final snapshot before it is closed. Scheduled
+     * backups are stopped, though a backup already queued still runs.
+     *
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection.
+     */
+    @Override
+    public void close() throws DBUtilsException {
+        try {
+            super.close();
+        } finally {
+            synchronized(this) {
+                if(backupExecutor != null) {
+                    backupExecutor.close();
+                    backupExecutor = null;
+                }
+                if(walExecutor != null) {
+                    walExecutor.close();
+                    walExecutor = null;
+                }
+                try {
+                    closeProfileProvider();
+                    closeInMemoryDatabase();
+                } finally {
+                    SQLiteDatabaseInitialiser.removeInstance(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get how queries are executed. Unless set, this is the mode defined in
+     * the config file.
+     *
+     * @return The execution mode.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the mode is
+     * unknown.
+     */
+    public SQLiteExecutionMode getExecutionMode() throws DBUtilsException {
+        if(executionMode == null)
+            executionMode = SQLiteDatabaseProperties.getExecutionMode(
+              configFilename);
+        return executionMode;
+    }
+
+    /**
+     * Set how queries prepared from now on are executed. Leaving WAL mode
+     * waits for queued writes and closes the WAL executor's connections,
+     * though the database file itself stays in WAL journal mode. Leaving
+     * IN_MEMORY mode persists and closes the in-memory database.
+     *
+     * @param executionMode The execution mode.
+     * @throws BackupDatabaseException If leaving IN_MEMORY mode and the
+     * final snapshot fails. The mode is still changed.
+     */
+    public synchronized void setExecutionMode(SQLiteExecutionMode
+      executionMode) throws BackupDatabaseException {
+        if(executionMode != SQLiteExecutionMode.WAL && walExecutor != null) {
+            walExecutor.close();
+            walExecutor = null;
+        }
+        this.executionMode = executionMode;
+        if(executionMode != SQLiteExecutionMode.IN_MEMORY)
+            closeInMemoryDatabase();
+    }
+
+    /**
+     * Get the PRAGMA settings applied to each connection when it is opened.
+     * Unless set, this is the profile defined in the config file.
+     *
+     * @return The profile.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the
+     * profile is unknown.
+     */
+    public SQLitePragmaProfile getPragmaProfile() throws DBUtilsException {
+        SQLitePragmaProfile profile = pragmaProfile;
+        return profile != null ? profile :
+          SQLiteDatabaseProperties.getPragmaProfile(configFilename);
+    }
+
+    /**
+     * Set the PRAGMA settings of connections opened from now on. Open
+     * connections are closed once they are no longer in use, and in WAL mode
+     * queued writes are waited for, so every later query uses the profile.
+     * Profiles are not applied to an in-memory database.
+     *
+     * @param profile The profile.
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection.
+     */
+    public void setPragmaProfile(SQLitePragmaProfile profile)
+      throws DBUtilsException {
+        if(profile == null)
+            throw new IllegalArgumentException("A profile is needed");
+        switchPragmaProfile(profile);
+    }
+
+    /**
+     * Run work, such as an import, with the PRAGMA settings of a profile,
+     * then restore the previous profile. Every query of this controller
+     * uses the profile while the work runs, including those of other
+     * threads.
+     *
+     * @param profile The profile to run the work with.
+     * @param work The work to run.
+     * @param <T> The type of result of the work.
+     * @return The result of the work.
+     * @throws DBUtilsException If the work fails, or any SQLException occurs
+     * closing a connection when switching profiles.
+     */
+    public <T> T withPragmaProfile(SQLitePragmaProfile profile,
+      Callable<T> work) throws DBUtilsException {
+        if(profile == null)
+            throw new IllegalArgumentException("A profile is needed");
+        SQLitePragmaProfile previous;
+        synchronized(this) {
+            previous = pragmaProfile;
+            switchPragmaProfile(profile);
+        }
+        try {
+            return work.call();
+        } catch(DBUtilsException | RuntimeException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new DBUtilsException("Error running work with profile " +
+              profile.getName(), e);
+        } finally {
+            switchPragmaProfile(previous);
+        }
+    }
+
+    /**
+     * Run an import with the BULK_LOAD profile, then restore the previous
+     * profile. Nothing is synced while it runs, so a crash may corrupt the
+     * database. See withPragmaProfile(SQLitePragmaProfile, Callable).
+     *
+     * @param work The import to run.
+     * @param <T> The type of result of the import.
+     * @return The result of the import.
+     * @throws DBUtilsException If the import fails, or any SQLException
+     * occurs closing a connection when switching profiles.
+     */
+    public <T> T bulkLoad(Callable<T> work) throws DBUtilsException {
+        return withPragmaProfile(SQLitePragmaProfile.BULK_LOAD, work);
+    }
+
+    /**
+     * Persist the in-memory database to its file, if anything has been
+     * written since the last snapshot. Does nothing unless in IN_MEMORY mode.
+     *
+     * @return Whether a snapshot was taken.
+     * @throws DBUtilsException If the snapshot fails, or if the config file
+     * is not found or there are any permission issues when accessing it.
+     */
+    public boolean snapshot() throws DBUtilsException {
+        if(getExecutionMode() != SQLiteExecutionMode.IN_MEMORY)
+            return false;
+        return getInMemoryDatabase().snapshot();
+    }
+
+    /**
+     * Back up the database to a file on a background thread, using SQLite's
+     * online backup API. Backups run one at a time, on a dedicated read-only
+     * connection, so in WAL mode writes carry on while the database is
+     * copied. In DEFAULT mode, writes wait for the copy to complete before
+     * they commit. In IN_MEMORY mode, the copy is taken between writes.
+     *
+     * @param target The file to back up to, which is only replaced once the
+     * backup is complete.
+     * @return A future completed with a summary of the backup, or
+     * exceptionally with a BackupDatabaseException.
+     */
+    public CompletableFuture<BackupResult> backup(Path target) {
+        return backup(target, null);
+    }
+
+    /**
+     * Back up the database to a file on a background thread, notifying a
+     * listener of its progress. See backup(Path).
+     *
+     * @param target The file to back up to, which is only replaced once the
+     * backup is complete.
+     * @param listener Notified of the progress of the backup, or null.
+     * @return A future completed with a summary of the backup, or
+     * exceptionally with a BackupDatabaseException.
+     */
+    public CompletableFuture<BackupResult> backup(Path target,
+      BackupListener listener) {
+        return getBackupExecutor().submit(target, listener);
+    }
+
+    /**
+     * Advise indexes for the queries executed on this database, using the
+     * shapes its metrics recorded as the workload. The plans are read on a
+     * copy of the schema, so the database is never changed. See
+     * SQLiteIndexAdvisor.
+     *
+     * @return The indexes advised and rejected, which can be written as an
+     * sql script.
+     * @throws DBUtilsException If metrics are disabled, or any SQLException
+     * occurs reading the schema of the database.
+     */
+    public IndexAdvice adviseIndexes() throws DBUtilsException {
+        MetricsSnapshot metrics = getMetrics();
+        if(metrics == null)
+            throw new DBUtilsException("Metrics are disabled, so there is " +
+              "no workload to advise indexes for");
+        return new SQLiteIndexAdvisor(getExplainProvider()).advise(
+          metrics.getQueries());
+    }
+
+    /**
+     * Back up the database periodically on a background thread, replacing
+     * any existing schedule. Each backup is written to the directory, named
+     * by the database and the time it was taken, after which the oldest
+     * backups are deleted.
+     *
+     * @param directory The directory to write backups to.
+     * @param intervalMillis How long (ms) to wait after each backup before
+     * starting the next.
+     * @param retain The number of backups to keep.
+     * @throws DBUtilsException If the database config file is not found or
+     * if there are any permission issues when accessing the file.
+     */
+    public void scheduleBackups(Path directory, long intervalMillis,
+      int retain) throws DBUtilsException {
+        if(intervalMillis <= 0 || retain <= 0)
+            throw new IllegalArgumentException("Backup interval and retain " +
+              "must be positive");
+        getBackupExecutor().schedule(directory, databaseName + "-", "." +
+          SQLiteDatabaseProperties.getDatabaseFileExtension(configFilename),
+          intervalMillis, retain);
+    }
+
+    /**
+     * Stop scheduled backups. A backup which has started still completes.
+     */
+    public synchronized void cancelScheduledBackups() {
+        if(backupExecutor != null)
+            backupExecutor.cancelSchedule();
+    }
+
+    /**
+     * Create the connection a new Query or BatchQuery will use. In WAL mode
+     * its reads use a read-only connection and its updates are run by the
+     * WAL executor. In IN_MEMORY mode, the same is true of the in-memory
+     * database.
+     *
+     * @return A connection to the database which has not yet been opened.
+     * @throws DBUtilsException If the database config file is not found or
+     * if there are any permission issues when accessing the file.
+     */
+    @Override
+    protected DBUtilsConnection newConnection() throws DBUtilsException {
+        if(getExecutionMode() == SQLiteExecutionMode.WAL) {
+            SQLiteWALExecutor executor = getWALExecutor();
+            return newConnection(executor.getReadProvider(), executor);
+        }
+        if(getExecutionMode() == SQLiteExecutionMode.IN_MEMORY) {
+            SQLiteInMemoryDatabase database = getInMemoryDatabase();
+            return newConnection(database.getReadProvider(), database);
+        }
+        if(pragmaProfile != null)
+            return newConnection(getProfileProvider(), null);
+        return super.newConnection();
+    }
+
+    /**
+     * Read the plans of slow queries with the same connections as reads,
+     * so in WAL mode they are read-only and never wait for the writer.
+     *
+     * @return The provider of connections to read plans with.
+     * @throws DBUtilsException If the database config file is not found or
+     * if there are any permission issues when accessing the file.
+     */
+    @Override
+    protected DatabaseConnectionProvider getExplainProvider()
+      throws DBUtilsException {
+        if(getExecutionMode() == SQLiteExecutionMode.WAL)
+            return getWALExecutor().getReadProvider();
+        if(getExecutionMode() == SQLiteExecutionMode.IN_MEMORY)
+            return getInMemoryDatabase().getReadProvider();
+        if(pragmaProfile != null)
+            return getProfileProvider();
+        return super.getExplainProvider();
+    }
+
+    /* Connections of the previous profile are closed, so only one journal
+     * mode is in use at a time. The journal mode can not be changed while
+     * another connection is open */
+    private synchronized void switchPragmaProfile(SQLitePragmaProfile profile)
+      throws DBUtilsException {
+        logger.debug("Switching to pragma profile: {}", profile == null ?
+          "from config file" : profile.getName());
+        pragmaProfile = profile;
+        if(walExecutor != null) {
+            walExecutor.close();
+            walExecutor = null;
+        }
+        closeProfileProvider();
+        DatabaseConnectionProviderFactory.closeConnectionProvider(
+          databaseName);
+    }
+
+    private DatabaseConnectionProvider getProfileProvider()
+      throws DBUtilsException {
+        DatabaseConnectionProvider provider = profileProvider;
+        if(provider != null)
+            return provider;
+        synchronized(this) {
+            if(profileProvider == null)
+                profileProvider = DatabaseConnectionProviderFactory.pool(
+                  new SQLiteConnectionProvider(databaseName, configFilename,
+                  null, pragmaProfile), configFilename);
+            return profileProvider;
+        }
+    }
+
+    private synchronized void closeProfileProvider() throws DBUtilsException {
+        if(profileProvider != null) {
+            DatabaseConnectionProvider provider = profileProvider;
+            profileProvider = null;
+            provider.close();
+        }
+    }
+
+    private synchronized SQLiteBackupExecutor getBackupExecutor() {
+        if(backupExecutor == null)
+            backupExecutor = new SQLiteBackupExecutor(databaseName,
+              this::backupNow);
+        return backupExecutor;
+    }
+
+    /* Runs on the backup thread */
+    private BackupResult backupNow(Path target, BackupListener listener)
+      throws DBUtilsException {
+        if(getExecutionMode() == SQLiteExecutionMode.IN_MEMORY) {
+            SQLiteInMemoryDatabase database = inMemoryDatabase;
+            // Not reloaded, as it has not been initialised or was closed
+            if(database == null)
+                throw new BackupDatabaseException("The in-memory database " +
+                  "is not open");
+            return database.backup(target, listener);
+        }
+        try(Connection source = new SQLiteConnectionProvider(databaseName,
+          configFilename, SQLiteWALExecutor.getReaderProperties())
+          .openConnection()) {
+            return SQLiteBackup.backup(source, target, listener);
+        } catch(SQLException e) {
+            throw new BackupDatabaseException("Error closing backup " +
+              "connection", e);
+        }
+    }
+
+    private SQLiteInMemoryDatabase getInMemoryDatabase()
+      throws DBUtilsException {
+        SQLiteInMemoryDatabase database = inMemoryDatabase;
+        if(database != null)
+            return database;
+        synchronized(this) {
+            if(inMemoryDatabase == null) {
+                logger.debug("Loading database into memory");
+                inMemoryDatabase = new SQLiteInMemoryDatabase(databaseName,
+                  Paths.get(getDatabaseAbsolutePath()),
+                  DatabaseProperties.getPoolMinSize(configFilename),
+                  DatabaseProperties.getPoolMaxSize(configFilename),
+                  DatabaseProperties.getPoolIdleTimeout(configFilename),
+                  DatabaseProperties.getPoolAcquireTimeout(configFilename),
+                  DatabaseProperties.getPoolValidationTimeout(configFilename),
+                  DatabaseProperties.getStatementCacheSize(configFilename),
+                  SQLiteDatabaseProperties.getSnapshotInterval(
+                  configFilename),
+                  SQLiteDatabaseProperties.isDirtyReadsEnabled(
+                  configFilename));
+            }
+            return inMemoryDatabase;
+        }
+    }
+
+    private synchronized void closeInMemoryDatabase()
+      throws BackupDatabaseException {
+        if(inMemoryDatabase != null) {
+            SQLiteInMemoryDatabase database = inMemoryDatabase;
+            inMemoryDatabase = null;
+            database.close();
+        }
+    }
+
+    private SQLiteWALExecutor getWALExecutor() throws DBUtilsException {
+        SQLiteWALExecutor executor = walExecutor;
+        if(executor != null)
+            return executor;
+        synchronized(this) {
+            if(walExecutor == null) {
+                logger.debug("Starting WAL executor");
+                walExecutor = new SQLiteWALExecutor(databaseName,
+                  new SQLiteConnectionProvider(databaseName, configFilename,
+                    SQLiteWALExecutor.getWriterProperties(), pragmaProfile),
+                  new SQLiteConnectionProvider(databaseName, configFilename,
+                    SQLiteWALExecutor.getReaderProperties(), pragmaProfile),
+                  DatabaseProperties.getPoolMinSize(configFilename),
+                  DatabaseProperties.getPoolMaxSize(configFilename),
+                  DatabaseProperties.getPoolIdleTimeout(configFilename),
+                  DatabaseProperties.getPoolAcquireTimeout(configFilename),
+                  DatabaseProperties.getPoolValidationTimeout(configFilename),
+                  DatabaseProperties.getStatementCacheSize(configFilename));
+            }
+            return walExecutor;
+        }
+    }
 }
@@ -1,13 +1,22 @@
 package com.majoinen.d.database.sqlite;
 
 import com.majoinen.d.database.DatabaseInitialiser;
+import com.majoinen.d.database.DatabaseProperties;
 import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.exception.TableMismatchException;
 import com.majoinen.d.database.log.LogManager;
 import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.util.Registry;
 
-import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Determines if the database does not already exist, and creates it when
@@ -16,8 +25,9 @@ import java.util.Map;
  *
  *
  * Initialises a SQLite database and populates it with tables. If the
- * database exists it will verify all tables schema matches the corresponding
- * sql file.
+ * database exists it will verify all tables schema matches its template, or
+ * otherwise the corresponding sql file of each table. See
+ * SQLiteSchemaVerifier.
  *
  * @author Daniel Majoinen
  * @version 1.0, 5/7/17
@@ -30,7 +40,8 @@ public class SQLiteDatabaseInitialiser implements DatabaseInitialiser {
     // The resource folder all databases are located
     private static final String DB_RESOURCE_DIR = "/databases/";
 
-    private static Map<SQLiteDatabaseController, SQLiteDatabaseInitialiser> map;
+    private static final Registry<SQLiteDatabaseController,
+      SQLiteDatabaseInitialiser> initialisers = new Registry<>();
     private SQLiteDatabaseController databaseController;
 
     private SQLiteDatabaseInitialiser(SQLiteDatabaseController controller) {
@@ -39,19 +50,20 @@ public class SQLiteDatabaseInitialiser implements DatabaseInitialiser {
 
     static SQLiteDatabaseInitialiser getInstance(SQLiteDatabaseController
       databaseController) {
-        if(map == null)
-            map = new HashMap<>();
-        else if(map.containsKey(databaseController))
-            return map.get(databaseController);
-        SQLiteDatabaseInitialiser initialiser =
-          new SQLiteDatabaseInitialiser(databaseController);
-        map.put(databaseController, initialiser);
-        return initialiser;
+        return initialisers.computeIfAbsent(databaseController,
+          SQLiteDatabaseInitialiser::new);
+    }
+
+    static void removeInstance(SQLiteDatabaseController databaseController) {
+        initialisers.remove(databaseController);
     }
 
     /**
      * Verify the database exists. If the database does not exist, create it.
+     * If it does, verify its schema unless database.schema.verify is false.
      *
+     * @throws TableMismatchException If the schema of an existing database
+     * does not match.
      * @throws DBUtilsException If there was a database error when verifying a
      * table or connecting to the database; If the database config file is not
      * found or if there are any permission issues when accessing the config
@@ -62,7 +74,7 @@ public class SQLiteDatabaseInitialiser implements DatabaseInitialiser {
         String configFilename = databaseController.getConfigFilename();
         File directory = new File(SQLiteDatabaseProperties
           .getDatabaseDirectory(configFilename));
-        logger.debug("Database directory: " + directory.getAbsolutePath());
+        logger.debug("Database directory: {}", directory.getAbsolutePath());
         String filename = DB_RESOURCE_DIR
           .concat(configFilename)
           .concat(".")
@@ -71,36 +83,80 @@ public class SQLiteDatabaseInitialiser implements DatabaseInitialiser {
         if(!directory.exists() && !directory.mkdirs())
             throw new DBUtilsException("Error creating db directory");
         if(!new File(databaseController.getDatabaseAbsolutePath()).exists()) {
-            logger.debug("Creating database: " + filename);
+            logger.debug("Creating database: {}", filename);
             createDatabase(filename);
             logger.debug("Database created successfully");
-        } else
+        } else {
             logger.debug("Database already exists, skip creation.");
+            if(SQLiteDatabaseProperties.isSchemaVerificationEnabled(
+              configFilename))
+                verifySchema(filename);
+        }
     }
 
     /**
-     * Makes a copy of the source database in the desired location.
+     * Verify the schema of the database matches its template, or if there
+     * is no template, the sql file of each table in table.names.
      *
      * @param filename Name of the database file in resources/databases
-     * @throws DBUtilsException If any IOException occurs reading the
-     * source database or writing to the destination.
+     * @throws TableMismatchException If any table is missing or differs.
+     * @throws DBUtilsException If any SQLException occurs reading either
+     * schema.
      */
-    private void createDatabase(String filename) throws DBUtilsException {
-        try (InputStream in = getClass().getResourceAsStream(filename)) {
-            if(in == null)
-                throw new NullPointerException("[DBUtils] resources" +
-                  filename + " is missing");
-            try (OutputStream out = new FileOutputStream(new File(
-              databaseController.getDatabaseAbsolutePath()))) {
-                byte[] buf = new byte[1024];
-                int len;
-                while ((len = in.read(buf)) > 0)
-                    out.write(buf, 0, len);
-            } catch (IOException e) {
-                throw new DBUtilsException("Error writing to file", e);
+    private void verifySchema(String filename) throws DBUtilsException {
+        String configFilename = databaseController.getConfigFilename();
+        List<String> tables = DatabaseProperties.hasTableNames(configFilename)
+          ? DatabaseProperties.getTableNames(configFilename)
+          : Collections.emptyList();
+        Connection expected = null;
+        try {
+            URL template = getClass().getResource(filename);
+            if(template != null) {
+                Path path = SQLiteTemplateCache.getTemplate(template,
+                  Paths.get(SQLiteDatabaseProperties.getTemplateCacheDirectory(
+                    configFilename)));
+                expected = DriverManager.getConnection("jdbc:sqlite:" + path,
+                  SQLiteWALExecutor.getReaderProperties());
+            } else if(!tables.isEmpty()) {
+                expected = SQLiteSchemaVerifier.fromScripts(tables);
+            }
+            if(expected == null) {
+                logger.debug("No template or sql files to verify against");
+                return;
+            }
+            try(Connection actual = new SQLiteConnectionProvider(
+              databaseController.getDatabaseName(), configFilename,
+              SQLiteWALExecutor.getReaderProperties()).openConnection()) {
+                SQLiteSchemaVerifier.verify(actual, expected, tables);
+            }
+        } catch(SQLException e) {
+            throw new DBUtilsException("Error verifying schema", e);
+        } finally {
+            if(expected != null) {
+                try {
+                    expected.close();
+                } catch(SQLException e) {
+                    logger.error("Error closing connection", e);
+                }
             }
-        } catch (IOException e) {
-            throw new DBUtilsException("Error reading file", e);
         }
     }
+
+    /**
+     * Makes a copy of the source database in the desired location. The
+     * source is copied from the template cache, so a template inside a jar
+     * is only extracted once.
+     *
+     * @param filename Name of the database file in resources/databases
+     * @throws DBUtilsException If the source database is missing, or any
+     * IOException occurs reading the source database or writing to the
+     * destination.
+     */
+    private void createDatabase(String filename) throws DBUtilsException {
+        Path template = SQLiteTemplateCache.getTemplate(filename, Paths.get(
+          SQLiteDatabaseProperties.getTemplateCacheDirectory(
+            databaseController.getConfigFilename())));
+        SQLiteTemplateCache.copy(template,
+          Paths.get(databaseController.getDatabaseAbsolutePath()));
+    }
 }
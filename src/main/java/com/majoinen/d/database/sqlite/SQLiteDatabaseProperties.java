@@ -2,6 +2,7 @@ package com.majoinen.d.database.sqlite;
 
 import com.majoinen.d.database.DatabaseProperties;
 import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.util.ConsistentHashRing;
 import com.majoinen.d.database.util.PropertiesHandler;
 
 /**
@@ -23,6 +24,61 @@ public final class SQLiteDatabaseProperties extends DatabaseProperties {
     private static final String ROOT_DIRECTORY_KEY =
       "root.directory";
 
+    // The key for where templates extracted from the classpath are kept
+    private static final String TEMPLATE_CACHE_DIRECTORY_KEY =
+      "database.template.cache.directory";
+
+    // The template cache directory within the database directory by default
+    private static final String DEFAULT_TEMPLATE_CACHE_DIRECTORY = ".templates";
+
+    // The key for how queries are executed, see SQLiteExecutionMode
+    private static final String EXECUTION_MODE_KEY = "database.execution.mode";
+
+    // The key for how often (ms) an in-memory database is persisted
+    private static final String SNAPSHOT_INTERVAL_KEY =
+      "database.snapshot.interval";
+
+    // In-memory databases are only persisted on demand and when closed
+    private static final long DEFAULT_SNAPSHOT_INTERVAL = 0;
+
+    // The key for whether reads of an in-memory database see uncommitted data
+    private static final String DIRTY_READS_KEY = "database.memory.dirty.reads";
+
+    // The key for whether an existing database's schema is verified
+    private static final String VERIFY_SCHEMA_KEY = "database.schema.verify";
+
+    // The key for the number of files a sharded database is split across
+    private static final String SHARD_COUNT_KEY = "database.shard.count";
+
+    private static final long DEFAULT_SHARD_COUNT = 1;
+
+    // The key for the number of points each shard has on the hash ring
+    private static final String SHARD_VIRTUAL_NODES_KEY =
+      "database.shard.virtual.nodes";
+
+    // The key for where scheduled backups are written
+    private static final String BACKUP_DIRECTORY_KEY =
+      "database.backup.directory";
+
+    // The backup directory within the database directory by default
+    private static final String DEFAULT_BACKUP_DIRECTORY = "backups";
+
+    // The key for how often (ms) scheduled backups are taken
+    private static final String BACKUP_INTERVAL_KEY =
+      "database.backup.interval";
+
+    // Backups are only taken on demand by default
+    private static final long DEFAULT_BACKUP_INTERVAL = 0;
+
+    // The key for how many scheduled backups are kept
+    private static final String BACKUP_RETAIN_KEY = "database.backup.retain";
+
+    private static final long DEFAULT_BACKUP_RETAIN = 7;
+
+    // The key for the PRAGMA settings of each connection, see
+    // SQLitePragmaProfile
+    private static final String PRAGMA_PROFILE_KEY = "database.pragma.profile";
+
     private SQLiteDatabaseProperties() { }
 
     public static String getDatabaseDirectory(String filename)
@@ -41,4 +97,195 @@ public final class SQLiteDatabaseProperties extends DatabaseProperties {
         return PropertiesHandler.getRequiredProperty(filename,
           DATABASE_FILE_EXTENSION_KEY);
     }
+
+    /**
+     * Get where template databases extracted from the classpath are kept,
+     * which is a directory within the database directory unless set.
+     *
+     * @param filename the filename of the .properties file.
+     * @return The template cache directory.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public static String getTemplateCacheDirectory(String filename)
+      throws DBUtilsException {
+        String directory = PropertiesHandler.getProperty(filename,
+          TEMPLATE_CACHE_DIRECTORY_KEY);
+        if(directory == null || directory.trim().length() == 0)
+            return getDatabaseDirectory(filename) + "/" +
+              DEFAULT_TEMPLATE_CACHE_DIRECTORY;
+        return directory.trim();
+    }
+
+    /**
+     * Get how queries should be executed, which is DEFAULT unless the config
+     * file sets database.execution.mode.
+     *
+     * @param filename the filename of the .properties file.
+     * @return the execution mode.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the mode is
+     * unknown.
+     */
+    public static SQLiteExecutionMode getExecutionMode(String filename)
+      throws DBUtilsException {
+        String mode = PropertiesHandler.getProperty(filename,
+          EXECUTION_MODE_KEY);
+        if(mode == null || mode.trim().length() == 0)
+            return SQLiteExecutionMode.DEFAULT;
+        for (SQLiteExecutionMode executionMode : SQLiteExecutionMode.values())
+            if(executionMode.name().equalsIgnoreCase(mode.trim()))
+                return executionMode;
+        throw new DBUtilsException("Unknown execution mode: " + mode);
+    }
+
+    /**
+     * Get how often an in-memory database is persisted to its file.
+     *
+     * @param filename the filename of the .properties file.
+     * @return The interval (ms) between snapshots, or 0 to only take them on
+     * demand and when the database is closed.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the value
+     * is not a number.
+     */
+    public static long getSnapshotInterval(String filename)
+      throws DBUtilsException {
+        return getNumericProperty(filename, SNAPSHOT_INTERVAL_KEY,
+          DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Whether reads of an in-memory database see uncommitted data rather
+     * than wait for the writer to commit, which they only do if the config
+     * file sets database.memory.dirty.reads to true.
+     *
+     * @param filename the filename of the .properties file.
+     * @return True if dirty reads are enabled.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public static boolean isDirtyReadsEnabled(String filename)
+      throws DBUtilsException {
+        String enabled = PropertiesHandler.getProperty(filename,
+          DIRTY_READS_KEY);
+        return enabled != null && Boolean.parseBoolean(enabled.trim());
+    }
+
+    /**
+     * Get where scheduled backups are written, which is a directory within
+     * the database directory unless set.
+     *
+     * @param filename the filename of the .properties file.
+     * @return The backup directory.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public static String getBackupDirectory(String filename)
+      throws DBUtilsException {
+        String directory = PropertiesHandler.getProperty(filename,
+          BACKUP_DIRECTORY_KEY);
+        if(directory == null || directory.trim().length() == 0)
+            return getDatabaseDirectory(filename) + "/" +
+              DEFAULT_BACKUP_DIRECTORY;
+        return directory.trim();
+    }
+
+    /**
+     * Get how often scheduled backups are taken.
+     *
+     * @param filename the filename of the .properties file.
+     * @return The interval (ms) between backups, or 0 if backups are not
+     * scheduled.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the value
+     * is not a number.
+     */
+    public static long getBackupInterval(String filename)
+      throws DBUtilsException {
+        return getNumericProperty(filename, BACKUP_INTERVAL_KEY,
+          DEFAULT_BACKUP_INTERVAL);
+    }
+
+    /**
+     * Get how many scheduled backups are kept before the oldest are deleted.
+     *
+     * @param filename the filename of the .properties file.
+     * @return The number of backups to keep.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the value
+     * is not a number.
+     */
+    public static int getBackupRetain(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, BACKUP_RETAIN_KEY,
+          DEFAULT_BACKUP_RETAIN);
+    }
+
+    /**
+     * Whether the schema of an existing database is verified against its
+     * template when initialised, which it is unless the config file sets
+     * database.schema.verify to false.
+     *
+     * @param filename the filename of the .properties file.
+     * @return True if the schema should be verified.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public static boolean isSchemaVerificationEnabled(String filename)
+      throws DBUtilsException {
+        String enabled = PropertiesHandler.getProperty(filename,
+          VERIFY_SCHEMA_KEY);
+        return enabled == null || Boolean.parseBoolean(enabled.trim());
+    }
+
+    /**
+     * Get how many files the database is split across. A database with more
+     * than one shard is controlled by a ShardedDatabaseController.
+     *
+     * @param filename the filename of the .properties file.
+     * @return The number of shards, which is 1 unless set.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the value
+     * is not a number.
+     */
+    public static int getShardCount(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, SHARD_COUNT_KEY,
+          DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * Get how many points each shard is placed at on the consistent hash
+     * ring which assigns keys to shards.
+     *
+     * @param filename the filename of the .properties file.
+     * @return The number of virtual nodes of each shard.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the value
+     * is not a number.
+     */
+    public static int getShardVirtualNodes(String filename)
+      throws DBUtilsException {
+        return (int) getNumericProperty(filename, SHARD_VIRTUAL_NODES_KEY,
+          ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Get the PRAGMA settings applied to each connection when it is opened.
+     *
+     * @param filename the filename of the .properties file.
+     * @return The profile, which is DEFAULT unless set.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing the config file or if the
+     * profile is unknown.
+     */
+    public static SQLitePragmaProfile getPragmaProfile(String filename)
+      throws DBUtilsException {
+        String profile = PropertiesHandler.getProperty(filename,
+          PRAGMA_PROFILE_KEY);
+        if(profile == null || profile.trim().length() == 0)
+            return SQLitePragmaProfile.DEFAULT;
+        return SQLitePragmaProfile.fromName(profile);
+    }
 }
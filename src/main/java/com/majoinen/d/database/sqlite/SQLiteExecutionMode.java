@@ -0,0 +1,25 @@
+package com.majoinen.d.database.sqlite;
+
+/**
+ * How an SQLiteDatabaseController executes queries.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 25/9/17
+ */
+public enum SQLiteExecutionMode {
+
+    // Every query borrows a connection from the same pool, whether it reads
+    // or writes
+    DEFAULT,
+
+    // The database uses write-ahead logging. Reads are served by a pool of
+    // read-only connections, and all writes are run one at a time by a
+    // single writer thread on a single writer connection
+    WAL,
+
+    // The database file is loaded into a shared in-memory database when
+    // initialised, which serves every query. Writes are run one at a time
+    // by a single writer thread, and are only persisted to the file by
+    // snapshots, see SQLiteInMemoryDatabase
+    IN_MEMORY
+}
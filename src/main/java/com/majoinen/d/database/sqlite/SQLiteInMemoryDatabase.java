@@ -0,0 +1,285 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.DatabaseConnectionProvider;
+import com.majoinen.d.database.WriteExecutor;
+import com.majoinen.d.database.exception.BackupDatabaseException;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteOpenMode;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An SQLite database loaded from its file into a shared in-memory database,
+ * which every query is served from. Changes are only written back to the
+ * file by snapshots, taken on demand, periodically and when the database is
+ * closed, using SQLite's online backup API.
+ *
+ * Connections share one cache, in which a writer locks the tables it writes
+ * until it commits, so a read of such a table waits for the commit and only
+ * sees committed data. Dirty reads may be enabled instead, so that reads are
+ * never blocked, but they then see writes which may later be rolled back.
+ * Writes are run one at a time on a single writer thread by an
+ * SQLiteWALExecutor.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 2/11/17
+ */
+public class SQLiteInMemoryDatabase implements WriteExecutor {
+
+    private static final Logger logger =
+      LogManager.getLogger(SQLiteInMemoryDatabase.class);
+
+    private static final String URL_PREFIX = "jdbc:sqlite:file:dbutils-";
+    private static final String URL_SUFFIX = "?mode=memory&cache=shared";
+
+    // Distinguishes the in-memory databases of controllers in one JVM
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final Path file;
+    private final String url;
+    private final boolean dirtyReads;
+    private final SQLiteWALExecutor executor;
+
+    // Keeps the in-memory database alive, as it is deleted when its last
+    // connection closes, and is the source of snapshots
+    private final Connection anchor;
+
+    // Takes periodic snapshots, or null if there are none
+    private final ScheduledExecutorService snapshotThread;
+
+    // Whether anything has been written since the last snapshot
+    private volatile boolean modified;
+    private boolean closed;
+
+    /**
+     * Create an in-memory database loaded from a file, if it exists.
+     *
+     * @param databaseName The name of the database, used to name threads.
+     * @param file The database file loaded and persisted to.
+     * @param minReaders The number of idle readers which are never evicted.
+     * @param maxReaders The maximum number of readers open at once.
+     * @param idleTimeoutMillis How long a reader may be idle before it is
+     * evicted, or 0 to never evict.
+     * @param acquireTimeoutMillis How long to wait for a connection before
+     * giving up.
+     * @param validationTimeoutSeconds How long to wait when validating an
+     * idle connection before discarding it.
+     * @param statementCacheSize The number of statements to cache on each
+     * connection, or 0 to disable caching.
+     * @param snapshotIntervalMillis How often (ms) to persist changes, or 0
+     * to only persist them on demand and when closed.
+     * @param dirtyReads Whether reads see uncommitted data rather than wait
+     * for the writer to commit.
+     * @throws DBUtilsException If any SQLException occurs creating the
+     * database or loading the file.
+     */
+    public SQLiteInMemoryDatabase(String databaseName, Path file,
+      int minReaders, int maxReaders, long idleTimeoutMillis,
+      long acquireTimeoutMillis, int validationTimeoutSeconds,
+      int statementCacheSize, long snapshotIntervalMillis, boolean dirtyReads)
+      throws DBUtilsException {
+        this.file = file;
+        this.dirtyReads = dirtyReads;
+        this.url = URL_PREFIX + databaseName + "-" +
+          instances.incrementAndGet() + URL_SUFFIX;
+        this.anchor = load();
+        this.executor = new SQLiteWALExecutor(databaseName,
+          this::openWriteConnection, this::openReadConnection, minReaders,
+          maxReaders, idleTimeoutMillis, acquireTimeoutMillis,
+          validationTimeoutSeconds, statementCacheSize);
+        if(snapshotIntervalMillis > 0) {
+            this.snapshotThread = Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                  Thread thread = new Thread(runnable, "DBUtils-snapshot-" +
+                    databaseName);
+                  thread.setDaemon(true);
+                  return thread;
+              });
+            snapshotThread.scheduleWithFixedDelay(this::periodicSnapshot,
+              snapshotIntervalMillis, snapshotIntervalMillis,
+              TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshotThread = null;
+        }
+    }
+
+    /**
+     * @return A provider of connections for reads, which wait for the
+     * writer to commit unless dirty reads are enabled.
+     */
+    public DatabaseConnectionProvider getReadProvider() {
+        return executor.getReadProvider();
+    }
+
+    @Override
+    public <T> T execute(Work<T> work) throws DBUtilsException {
+        // Marked on the writer thread, so a snapshot queued behind this work
+        // always sees it
+        return executor.execute(connection -> {
+            modified = true;
+            return work.execute(connection);
+        });
+    }
+
+    /**
+     * Persist the database to its file, if anything has been written since
+     * the last snapshot. The snapshot is taken on the writer thread between
+     * writes, written to a temporary file and then moved over the database
+     * file, so the file is always a complete snapshot.
+     *
+     * @return Whether a snapshot was taken.
+     * @throws BackupDatabaseException If the snapshot fails, in which case
+     * the database file is unchanged.
+     */
+    public boolean snapshot() throws BackupDatabaseException {
+        try {
+            return executor.execute(connection -> {
+                // Nothing else is written while on the writer thread
+                if(!modified)
+                    return false;
+                SQLiteBackup.backup(anchor, file, null);
+                modified = false;
+                return true;
+            });
+        } catch(BackupDatabaseException e) {
+            throw e;
+        } catch(DBUtilsException e) {
+            throw new BackupDatabaseException("Error taking snapshot", e);
+        }
+    }
+
+    /**
+     * Copy the database to another file, without affecting snapshots. The
+     * copy is taken on the writer thread between writes.
+     *
+     * @param target The file to copy the database to.
+     * @param listener Notified of the progress of the copy, or null.
+     * @return A summary of the copy.
+     * @throws BackupDatabaseException If the copy fails, in which case the
+     * target is unchanged.
+     */
+    public BackupResult backup(Path target, BackupListener listener)
+      throws BackupDatabaseException {
+        try {
+            return executor.execute(connection ->
+              SQLiteBackup.backup(anchor, target, listener));
+        } catch(BackupDatabaseException e) {
+            throw e;
+        } catch(DBUtilsException e) {
+            throw new BackupDatabaseException("Error backing up to " +
+              target, e);
+        }
+    }
+
+    /**
+     * @return Whether anything has been written since the last snapshot.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Stop taking periodic snapshots, wait for queued writes, take a final
+     * snapshot and delete the in-memory database.
+     *
+     * @throws BackupDatabaseException If the final snapshot fails. The
+     * in-memory database is still deleted.
+     */
+    public synchronized void close() throws BackupDatabaseException {
+        if(closed)
+            return;
+        closed = true;
+        if(snapshotThread != null)
+            snapshotThread.shutdownNow();
+        try {
+            snapshot();
+        } finally {
+            executor.close();
+            try {
+                anchor.close();
+            } catch(SQLException e) {
+                logger.error("Error closing in-memory database", e);
+            }
+        }
+    }
+
+    /* Create the in-memory database and copy the file into it */
+    private Connection load() throws DBUtilsException {
+        Connection connection = openConnection(false);
+        if(!Files.exists(file))
+            return connection;
+        logger.debug("Loading {} into memory", file);
+        try(Statement statement = connection.createStatement()) {
+            statement.executeUpdate("restore from " + quote(file));
+            return connection;
+        } catch(SQLException e) {
+            try {
+                connection.close();
+            } catch(SQLException closing) {
+                logger.error("Error closing in-memory database", closing);
+            }
+            throw new DBUtilsException("Error loading " + file +
+              " into memory", e);
+        }
+    }
+
+    private void periodicSnapshot() {
+        try {
+            snapshot();
+        } catch(BackupDatabaseException e) {
+            logger.error("Error taking periodic snapshot", e);
+        }
+    }
+
+    private Connection openWriteConnection() throws DBUtilsException {
+        return new LockRetryingConnection(openConnection(false));
+    }
+
+    private Connection openReadConnection() throws DBUtilsException {
+        Connection connection = openConnection(true);
+        if(!dirtyReads)
+            return new LockRetryingConnection(connection);
+        try(Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA read_uncommitted = true");
+            return connection;
+        } catch(SQLException e) {
+            try {
+                connection.close();
+            } catch(SQLException closing) {
+                logger.error("Error closing connection", closing);
+            }
+            throw new DBUtilsException("Error opening connection", e);
+        }
+    }
+
+    private Connection openConnection(boolean reader)
+      throws DBUtilsException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSharedCache(true);
+        config.setOpenMode(SQLiteOpenMode.OPEN_URI);
+        Properties properties = config.toProperties();
+        try {
+            return DriverManager.getConnection(url, properties);
+        } catch(SQLException e) {
+            throw new DBUtilsException("Error opening " + (reader ? "read" :
+              "write") + " connection to in-memory database", e);
+        }
+    }
+
+    private static String quote(Path path) {
+        return "'" + path.toString().replace("'", "''") + "'";
+    }
+}
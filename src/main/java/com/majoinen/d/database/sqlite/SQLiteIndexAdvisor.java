@@ -0,0 +1,468 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.DatabaseConnectionProvider;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.metrics.InMemoryMetricsRecorder;
+import com.majoinen.d.database.metrics.QueryShapeSnapshot;
+import com.majoinen.d.database.util.SQLPredicates;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Advises indexes for a workload of queries, such as the query shapes the
+ * metrics of a controller record with how often each ran and how long it
+ * took. The plan of each query is read with EXPLAIN QUERY PLAN on an
+ * in-memory copy of the schema, along with any statistics ANALYZE gathered,
+ * and for each table it scans an index is proposed on the columns the
+ * query compares to a value, then a column it compares to a range or the
+ * columns it orders by. Each index is created on the copy and kept only if
+ * the queries re-explained with it no longer scan the table, so the
+ * database itself is never changed.
+ *
+ * The read speedup of each index is weighed against the rows written to it
+ * by the INSERT, UPDATE and DELETE queries of the workload, as described by
+ * IndexRecommendation, and the result is an IndexAdvice which can be
+ * written as an sql script.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 30/11/17
+ */
+public final class SQLiteIndexAdvisor {
+
+    private static final Logger logger =
+      LogManager.getLogger(SQLiteIndexAdvisor.class);
+
+    // The most columns of an advised index
+    private static final int MAX_INDEX_COLUMNS = 4;
+
+    // The tables, indexes and views of a database, tables first
+    private static final String SCHEMA_QUERY = "SELECT name, sql FROM " +
+      "sqlite_master WHERE sql IS NOT NULL AND name NOT LIKE 'sqlite_%' " +
+      "AND type IN ('table', 'index', 'view') ORDER BY CASE type WHEN " +
+      "'table' THEN 0 WHEN 'index' THEN 1 ELSE 2 END";
+
+    private static final String STATISTICS_TABLE = "sqlite_stat1";
+
+    private final DatabaseConnectionProvider connectionProvider;
+
+    /**
+     * @param connectionProvider Provides a connection to the database, which
+     * is only read.
+     */
+    public SQLiteIndexAdvisor(DatabaseConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+    }
+
+    /**
+     * Advise indexes for a workload.
+     *
+     * @param workload The shape of each query with its executions, rows
+     * and time.
+     * @return The indexes advised and rejected.
+     * @throws DBUtilsException If any SQLException occurs reading the
+     * schema of the database or creating the copy of it.
+     */
+    public IndexAdvice advise(Collection<QueryShapeSnapshot> workload)
+      throws DBUtilsException {
+        try(Connection database = connectionProvider.openConnection();
+          Connection scratch = copySchema(database)) {
+            return advise(workload, database, scratch);
+        } catch(SQLException e) {
+            throw new DBUtilsException("Error advising indexes", e);
+        }
+    }
+
+    private IndexAdvice advise(Collection<QueryShapeSnapshot> workload,
+      Connection database, Connection scratch) throws SQLException {
+        Map<String, Table> tables = new HashMap<>();
+        Map<String, Candidate> candidates = new LinkedHashMap<>();
+        Map<String, List<Shape>> writes = new HashMap<>();
+        int shapes = 0;
+        for(QueryShapeSnapshot query : workload) {
+            if(query.getExecutions() == 0 ||
+              InMemoryMetricsRecorder.OTHER_SHAPE.equals(query.getShape()))
+                continue;
+            shapes++;
+            Shape shape = new Shape(query);
+            if(shape.predicates.isWrite())
+                writes.computeIfAbsent(shape.predicates.getWrittenTable(),
+                  key -> new ArrayList<>()).add(shape);
+            if(shape.predicates.getEqualityColumns().isEmpty() &&
+              shape.predicates.getRangeColumns().isEmpty() &&
+              shape.predicates.getOrderColumns().isEmpty())
+                continue;
+            try {
+                shape.before = SQLiteQueryPlan.explain(scratch,
+                  query.getShape());
+            } catch(SQLException e) {
+                logger.debug("Not advising indexes for {}: {}",
+                  query.getShape(), e.getMessage());
+                continue;
+            }
+            for(String scanned : shape.before.getFullTableScans()) {
+                Table table = table(tables, scanned.toLowerCase(Locale.ROOT),
+                  database, scratch);
+                if(table == null)
+                    continue;
+                List<String> columns = indexColumns(shape.predicates, table);
+                if(!columns.isEmpty())
+                    candidates.computeIfAbsent(table.name + " " + columns,
+                      key -> new Candidate(table, columns)).shapes.add(shape);
+            }
+        }
+        Set<String> names = indexNames(scratch);
+        List<IndexRecommendation> recommendations = new ArrayList<>();
+        List<IndexRecommendation> rejected = new ArrayList<>();
+        for(Candidate candidate : merge(candidates.values())) {
+            IndexRecommendation index = verify(candidate, scratch, names,
+              writes.getOrDefault(candidate.table.name,
+                Collections.emptyList()));
+            if(index != null)
+                (index.isAdvised() ? recommendations : rejected).add(index);
+        }
+        Comparator<IndexRecommendation> byBenefit = Comparator.comparingDouble(
+          IndexRecommendation::getBenefit).reversed();
+        recommendations.sort(byBenefit);
+        rejected.sort(byBenefit);
+        logger.info("Advised " + recommendations.size() + " indexes, and " +
+          "rejected " + rejected.size() + ", for " + shapes + " query shapes");
+        return new IndexAdvice(shapes, Collections.unmodifiableList(
+          recommendations), Collections.unmodifiableList(rejected));
+    }
+
+    /* The columns compared to a value, then the first compared to a range
+     * or else those ordered by, if they are all of the table */
+    private static List<String> indexColumns(SQLPredicates predicates,
+      Table table) {
+        Set<String> columns = new LinkedHashSet<>();
+        for(SQLPredicates.Column column : predicates.getEqualityColumns())
+            if(table.has(column))
+                columns.add(column.getName());
+        String range = null;
+        for(SQLPredicates.Column column : predicates.getRangeColumns()) {
+            if(table.has(column) && !columns.contains(column.getName())) {
+                range = column.getName();
+                break;
+            }
+        }
+        if(range != null) {
+            columns.add(range);
+        } else {
+            List<String> order = new ArrayList<>();
+            for(SQLPredicates.Column column : predicates.getOrderColumns())
+                if(table.has(column))
+                    order.add(column.getName());
+            if(order.size() == predicates.getOrderColumns().size())
+                columns.addAll(order);
+        }
+        List<String> index = new ArrayList<>(columns);
+        return index.size() > MAX_INDEX_COLUMNS ? new ArrayList<>(
+          index.subList(0, MAX_INDEX_COLUMNS)) : index;
+    }
+
+    /* An index whose columns lead another of the same table is dropped,
+     * and its queries given to the other */
+    private static List<Candidate> merge(Collection<Candidate> candidates) {
+        List<Candidate> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparingInt(
+          (Candidate candidate) -> candidate.columns.size()).reversed());
+        List<Candidate> merged = new ArrayList<>();
+        for(Candidate candidate : sorted) {
+            Candidate into = null;
+            for(Candidate other : merged) {
+                if(other.table == candidate.table && other.columns.subList(0,
+                  candidate.columns.size()).equals(candidate.columns)) {
+                    into = other;
+                    break;
+                }
+            }
+            if(into != null)
+                into.shapes.addAll(candidate.shapes);
+            else
+                merged.add(candidate);
+        }
+        return merged;
+    }
+
+    /* Create the index on the copy and re-explain its queries, estimating
+     * the cost and benefit from those which no longer scan the table */
+    private static IndexRecommendation verify(Candidate candidate,
+      Connection scratch, Set<String> names, List<Shape> writes)
+      throws SQLException {
+        Table table = candidate.table;
+        String name = indexName(table.name, candidate.columns, names);
+        List<Shape> helped = new ArrayList<>();
+        try(Statement statement = scratch.createStatement()) {
+            statement.execute(IndexRecommendation.createStatement(name,
+              table.name, candidate.columns));
+            try {
+                for(Shape shape : candidate.shapes) {
+                    SQLiteQueryPlan after = SQLiteQueryPlan.explain(scratch,
+                      shape.query.getShape());
+                    if(!scans(after, table.name) && after.getFullTableScans()
+                      .size() < shape.before.getFullTableScans().size())
+                        helped.add(shape);
+                }
+            } finally {
+                statement.execute("DROP INDEX " +
+                  IndexRecommendation.quote(name));
+            }
+        }
+        if(helped.isEmpty()) {
+            logger.debug("Index on {} {} does not change any plan",
+              table.name, candidate.columns);
+            return null;
+        }
+        double probe = IndexRecommendation.log2(table.rows);
+        long executions = 0;
+        double before = 0;
+        double after = 0;
+        long timeSaved = 0;
+        List<String> queries = new ArrayList<>();
+        for(Shape shape : helped) {
+            long count = shape.query.getExecutions();
+            double found = (double) (shape.query.getRowsRead() +
+              shape.query.getRowsWritten()) / count;
+            double visited = Math.min(table.rows, probe + found);
+            executions += count;
+            before += (double) count * table.rows;
+            after += count * visited;
+            if(table.rows > 0)
+                timeSaved += (long) (shape.query.getExecute().getTotal() *
+                  (1 - visited / table.rows));
+            queries.add(shape.query.getShape());
+        }
+        long indexWrites = 0;
+        List<String> writeQueries = new ArrayList<>();
+        for(Shape shape : writes) {
+            Set<String> written = shape.predicates.getWrittenColumns();
+            if(written != null && Collections.disjoint(written,
+              candidate.columns))
+                continue;
+            indexWrites += shape.query.getRowsWritten() *
+              (written == null ? 1 : 2);
+            writeQueries.add(shape.query.getShape());
+        }
+        names.add(name.toLowerCase(Locale.ROOT));
+        return new IndexRecommendation(name, table.name,
+          Collections.unmodifiableList(candidate.columns),
+          Collections.unmodifiableList(queries), executions, table.rows,
+          before, after, timeSaved, Collections.unmodifiableList(
+            writeQueries), indexWrites, table.indexes);
+    }
+
+    private static boolean scans(SQLiteQueryPlan plan, String table) {
+        for(String scanned : plan.getFullTableScans())
+            if(scanned.equalsIgnoreCase(table))
+                return true;
+        return false;
+    }
+
+    /* idx_table_column, made unique among the indexes of the database */
+    private static String indexName(String table, List<String> columns,
+      Set<String> names) {
+        StringBuilder name = new StringBuilder("idx_").append(table);
+        for(String column : columns)
+            name.append('_').append(column);
+        String base = name.toString().replaceAll("[^A-Za-z0-9_]", "_");
+        String unique = base;
+        for(int i = 2; names.contains(unique.toLowerCase(Locale.ROOT)); i++)
+            unique = base + "_" + i;
+        return unique;
+    }
+
+    private static Set<String> indexNames(Connection scratch)
+      throws SQLException {
+        Set<String> names = new HashSet<>();
+        try(Statement statement = scratch.createStatement();
+          ResultSet result = statement.executeQuery("SELECT name FROM " +
+            "sqlite_master WHERE type = 'index'")) {
+            while(result.next())
+                names.add(result.getString(1).toLowerCase(Locale.ROOT));
+        }
+        return names;
+    }
+
+    /* The columns and indexes of a table from the copy, and its rows from
+     * the database, or null if it is not a table of the copy */
+    private static Table table(Map<String, Table> tables, String name,
+      Connection database, Connection scratch) throws SQLException {
+        if(tables.containsKey(name))
+            return tables.get(name);
+        String quoted = IndexRecommendation.quote(name);
+        Set<String> columns = new HashSet<>();
+        int indexes = 0;
+        try(Statement statement = scratch.createStatement()) {
+            try(ResultSet result = statement.executeQuery(
+              "PRAGMA table_info(" + quoted + ")")) {
+                while(result.next())
+                    columns.add(result.getString("name")
+                      .toLowerCase(Locale.ROOT));
+            }
+            try(ResultSet result = statement.executeQuery(
+              "PRAGMA index_list(" + quoted + ")")) {
+                while(result.next())
+                    indexes++;
+            }
+        }
+        Table table = columns.isEmpty() ? null : new Table(name, columns,
+          indexes, rows(database, quoted));
+        tables.put(name, table);
+        return table;
+    }
+
+    /* The largest rowid is read from the end of the table without a scan,
+     * and only tables without a rowid are counted */
+    private static long rows(Connection database, String table)
+      throws SQLException {
+        try(Statement statement = database.createStatement()) {
+            ResultSet result;
+            try {
+                result = statement.executeQuery("SELECT max(rowid) FROM " +
+                  table);
+            } catch(SQLException e) {
+                result = statement.executeQuery("SELECT count(*) FROM " +
+                  table);
+            }
+            try {
+                return result.next() ? result.getLong(1) : 0;
+            } finally {
+                result.close();
+            }
+        }
+    }
+
+    /**
+     * Create an in-memory database with the tables, indexes and views of a
+     * database, and a copy of the statistics ANALYZE gathered for it, so
+     * SQLite plans queries on the copy as it would on the database. Objects
+     * which can not be created, such as virtual tables of a module which is
+     * not loaded, are skipped.
+     *
+     * @param database A connection to the database to copy.
+     * @return A connection to the copy.
+     * @throws SQLException If the schema or statistics can not be read.
+     */
+    static Connection copySchema(Connection database) throws SQLException {
+        Connection scratch = DriverManager.getConnection(
+          "jdbc:sqlite::memory:");
+        try(Statement source = database.createStatement();
+          Statement target = scratch.createStatement()) {
+            boolean statistics = false;
+            try(ResultSet schema = source.executeQuery(SCHEMA_QUERY)) {
+                while(schema.next()) {
+                    try {
+                        target.execute(schema.getString("sql"));
+                    } catch(SQLException e) {
+                        logger.debug("Not copying {} to advise indexes: {}",
+                          schema.getString("name"), e.getMessage());
+                    }
+                }
+            }
+            try(ResultSet result = source.executeQuery("SELECT count(*) " +
+              "FROM sqlite_master WHERE name = '" + STATISTICS_TABLE + "'")) {
+                statistics = result.next() && result.getInt(1) > 0;
+            }
+            if(statistics)
+                copyStatistics(source, scratch, target);
+            return scratch;
+        } catch(SQLException | RuntimeException e) {
+            try {
+                scratch.close();
+            } catch(SQLException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    /* ANALYZE creates the statistics table, which is then replaced with
+     * the statistics of the database and loaded by ANALYZE sqlite_master */
+    private static void copyStatistics(Statement source, Connection scratch,
+      Statement target) throws SQLException {
+        target.execute("ANALYZE");
+        target.execute("DELETE FROM " + STATISTICS_TABLE);
+        try(ResultSet statistics = source.executeQuery("SELECT tbl, idx, " +
+          "stat FROM " + STATISTICS_TABLE);
+          PreparedStatement insert = scratch.prepareStatement("INSERT INTO " +
+            STATISTICS_TABLE + " (tbl, idx, stat) VALUES (?, ?, ?)")) {
+            while(statistics.next()) {
+                insert.setString(1, statistics.getString(1));
+                insert.setString(2, statistics.getString(2));
+                insert.setString(3, statistics.getString(3));
+                insert.executeUpdate();
+            }
+        }
+        target.execute("ANALYZE sqlite_master");
+    }
+
+    /* A table of the database */
+    private static final class Table {
+
+        private final String name;
+        private final Set<String> columns;
+        private final int indexes;
+        private final long rows;
+
+        private Table(String name, Set<String> columns, int indexes,
+          long rows) {
+            this.name = name;
+            this.columns = columns;
+            this.indexes = indexes;
+            this.rows = rows;
+        }
+
+        /* Whether a column of a query is of this table, where a column of
+         * an unknown table is taken to be of any table which has it */
+        private boolean has(SQLPredicates.Column column) {
+            return (column.getTable() == null ||
+              name.equals(column.getTable())) &&
+              columns.contains(column.getName());
+        }
+    }
+
+    /* A query of the workload, and its plan without any new index */
+    private static final class Shape {
+
+        private final QueryShapeSnapshot query;
+        private final SQLPredicates predicates;
+        private SQLiteQueryPlan before;
+
+        private Shape(QueryShapeSnapshot query) {
+            this.query = query;
+            this.predicates = SQLPredicates.parse(query.getShape());
+        }
+    }
+
+    /* An index proposed for the queries which scan a table */
+    private static final class Candidate {
+
+        private final Table table;
+        private final List<String> columns;
+        private final Set<Shape> shapes = new LinkedHashSet<>();
+
+        private Candidate(Table table, List<String> columns) {
+            this.table = table;
+            this.columns = columns;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+import org.sqlite.SQLiteConfig.TempStore;
+
+/**
+ * A named set of PRAGMA settings applied to every connection when it is
+ * opened, chosen in the config file by database.pragma.profile. A setting
+ * which is null is left as SQLite's default.
+ *
+ * The journal mode and page size change the database file, so they are not
+ * applied to read-only connections, and the page size only takes effect on
+ * a database without tables or once it is vacuumed. The journal mode can
+ * only be changed while no other connection is open.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 23/11/17
+ */
+public enum SQLitePragmaProfile {
+
+    // SQLite's defaults: a rollback journal, synchronous=FULL, a 2MB page
+    // cache and no memory mapping
+    DEFAULT("default", null, null, null, null, null, null, null),
+
+    // Readers never wait for the writer, and pages are read from a large
+    // cache and a memory map rather than with system calls
+    READ_HEAVY("read-heavy", JournalMode.WAL, SynchronousMode.NORMAL,
+      -65536, 268435456L, TempStore.MEMORY, 5000, 4096),
+
+    // Commits only append to the WAL and only sync on checkpoints, so a
+    // commit may be lost on power failure but the database is not corrupted
+    WRITE_HEAVY("write-heavy", JournalMode.WAL, SynchronousMode.NORMAL,
+      -32768, 67108864L, TempStore.MEMORY, 10000, 4096),
+
+    // Nothing is synced and the journal is kept in memory, so an import is
+    // as fast as possible, but a crash may corrupt the database. Only for
+    // imports which can be repeated from scratch
+    BULK_LOAD("bulk-load", JournalMode.MEMORY, SynchronousMode.OFF,
+      -262144, null, TempStore.MEMORY, 30000, 4096),
+
+    // Every commit is synced to disk before it returns, and memory mapping
+    // is disabled so I/O errors are reported rather than crashing
+    DURABLE("durable", JournalMode.DELETE, SynchronousMode.FULL, -8192, 0L,
+      null, 30000, 4096);
+
+    private final String name;
+    private final JournalMode journalMode;
+    private final SynchronousMode synchronous;
+    private final Integer cacheSize;
+    private final Long mmapSize;
+    private final TempStore tempStore;
+    private final Integer busyTimeout;
+    private final Integer pageSize;
+
+    SQLitePragmaProfile(String name, JournalMode journalMode,
+      SynchronousMode synchronous, Integer cacheSize, Long mmapSize,
+      TempStore tempStore, Integer busyTimeout, Integer pageSize) {
+        this.name = name;
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.tempStore = tempStore;
+        this.busyTimeout = busyTimeout;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Get the profile with a name, ignoring case. The name of the constant,
+     * such as BULK_LOAD, is also accepted.
+     *
+     * @param name The name of the profile, such as bulk-load.
+     * @return The profile.
+     * @throws DBUtilsException If there is no profile with the name.
+     */
+    public static SQLitePragmaProfile fromName(String name)
+      throws DBUtilsException {
+        String trimmed = name.trim();
+        for(SQLitePragmaProfile profile : values())
+            if(profile.name.equalsIgnoreCase(trimmed) ||
+              profile.name().equalsIgnoreCase(trimmed))
+                return profile;
+        throw new DBUtilsException("Unknown pragma profile: " + name);
+    }
+
+    /**
+     * @return The name of the profile in the config file, such as bulk-load.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public JournalMode getJournalMode() {
+        return journalMode;
+    }
+
+    public SynchronousMode getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * @return The pages cached, or if negative the KiB cached.
+     */
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @return The bytes of the database file memory mapped.
+     */
+    public Long getMmapSize() {
+        return mmapSize;
+    }
+
+    public TempStore getTempStore() {
+        return tempStore;
+    }
+
+    /**
+     * @return How long (ms) to retry when the database is locked.
+     */
+    public Integer getBusyTimeout() {
+        return busyTimeout;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+}
@@ -0,0 +1,139 @@
+package com.majoinen.d.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The plan SQLite chooses for a query, read with EXPLAIN QUERY PLAN. Each
+ * step is the detail SQLite reports, such as "SEARCH TABLE user USING INDEX
+ * user_email (email=?)". A step which scans a table without an index, or
+ * searches it with an automatic index SQLite builds by scanning it, reads
+ * every row of the table, which is flagged as a full table scan.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 27/11/17
+ */
+public final class SQLiteQueryPlan {
+
+    // A table scan, reported as SCAN TABLE name by older versions of SQLite
+    // and as SCAN name by newer versions. Subqueries and constant rows are
+    // not tables
+    private static final Pattern SCAN = Pattern.compile(
+      "^SCAN (?:TABLE )?(?!SUBQUERY\\b|CONSTANT ROW\\b)([^\\s]+)(.*)$");
+
+    // A search with an index SQLite builds for the query alone, by scanning
+    // the table
+    private static final Pattern AUTOMATIC_INDEX = Pattern.compile(
+      "^SEARCH (?:TABLE )?([^\\s]+)(?: AS [^\\s]+)? USING AUTOMATIC .*$");
+
+    private final String sql;
+    private final List<String> steps;
+    private final Set<String> fullTableScans;
+
+    private SQLiteQueryPlan(String sql, List<String> steps) {
+        this.sql = sql;
+        this.steps = Collections.unmodifiableList(steps);
+        Set<String> scans = new LinkedHashSet<>();
+        for(String step : steps) {
+            String table = scannedTable(step);
+            if(table != null)
+                scans.add(table);
+        }
+        this.fullTableScans = Collections.unmodifiableSet(scans);
+    }
+
+    /**
+     * Read the plan of a query. Its parameters are bound to NULL, which does
+     * not change the plan SQLite chooses unless it was built with STAT4.
+     *
+     * @param connection A connection to the database the query runs on.
+     * @param sql The query, where each parameter is a ?.
+     * @return The plan of the query.
+     * @throws SQLException If the query can not be explained, such as when
+     * a table it reads does not exist.
+     */
+    public static SQLiteQueryPlan explain(Connection connection, String sql)
+      throws SQLException {
+        List<String> steps = new ArrayList<>();
+        try(PreparedStatement statement = connection.prepareStatement(
+          "EXPLAIN QUERY PLAN " + sql)) {
+            int parameters = statement.getParameterMetaData()
+              .getParameterCount();
+            for(int i = 1; i <= parameters; i++)
+                statement.setObject(i, null);
+            try(ResultSet result = statement.executeQuery()) {
+                while(result.next())
+                    steps.add(result.getString("detail"));
+            }
+        }
+        return new SQLiteQueryPlan(sql, steps);
+    }
+
+    /**
+     * Get the table a step of a plan scans without an index.
+     *
+     * @param step The detail of the step.
+     * @return The table scanned, or null if the step uses an index of the
+     * table or is not a table scan.
+     */
+    public static String scannedTable(String step) {
+        if(step == null)
+            return null;
+        String trimmed = step.trim();
+        Matcher matcher = SCAN.matcher(trimmed);
+        if(matcher.matches())
+            return matcher.group(2).contains(" USING ") ? null :
+              matcher.group(1);
+        matcher = AUTOMATIC_INDEX.matcher(trimmed);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return The detail of each step of the plan, in the order SQLite
+     * reports them.
+     */
+    public List<String> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return Each table the plan reads every row of without an index.
+     */
+    public Set<String> getFullTableScans() {
+        return fullTableScans;
+    }
+
+    public boolean hasFullTableScan() {
+        return !fullTableScans.isEmpty();
+    }
+
+    /**
+     * @return Each step separated by a semicolon, with full table scans
+     * flagged.
+     */
+    @Override
+    public String toString() {
+        StringBuilder plan = new StringBuilder();
+        for(String step : steps) {
+            if(plan.length() > 0)
+                plan.append("; ");
+            plan.append(step);
+            if(scannedTable(step) != null)
+                plan.append(" [FULL TABLE SCAN]");
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,309 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.exception.TableMismatchException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.util.SQLScriptReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Verifies the schema of a database matches the schema it was created
+ * from. The schema of each is first reduced to a SHA-256 fingerprint of
+ * sqlite_master, so a database created from its template is verified with
+ * a single query of each. Only when the fingerprints differ are the
+ * columns, indexes and triggers of each table compared, which tolerates
+ * differences in how the sql defining them was written. A database may
+ * have columns, indexes and triggers the expected schema does not, such as
+ * those added by later migrations; only those missing or defined
+ * differently are mismatches.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 13/11/17
+ */
+final class SQLiteSchemaVerifier {
+
+    private static final Logger logger =
+      LogManager.getLogger(SQLiteSchemaVerifier.class);
+
+    // Every object of the schema, excluding those SQLite creates itself
+    private static final String SCHEMA_QUERY = "SELECT type, name, " +
+      "tbl_name, sql FROM sqlite_master WHERE name NOT LIKE 'sqlite_%' " +
+      "ORDER BY type, name";
+
+    private static final String TABLES_QUERY = "SELECT name FROM " +
+      "sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%'";
+
+    private static final String TRIGGERS_QUERY = "SELECT name FROM " +
+      "sqlite_master WHERE type = 'trigger' AND " +
+      "tbl_name = ? COLLATE NOCASE";
+
+    // The resource folder table creation scripts are located
+    private static final String SQL_RESOURCE_DIR = "/sql/";
+
+    private static final String SQL_FILE_EXTENSION = ".sql";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private SQLiteSchemaVerifier() { }
+
+    /**
+     * Verify the schema of a database matches the expected schema.
+     *
+     * @param actual A connection to the database to verify.
+     * @param expected A connection to a database with the expected schema.
+     * @param tables The tables to verify, or empty to verify every table of
+     * the expected schema. Tables only in the database are ignored.
+     * @throws TableMismatchException If any table, or any column, index or
+     * trigger of one, is missing or differs.
+     * @throws DBUtilsException If any SQLException occurs reading either
+     * schema.
+     */
+    static void verify(Connection actual, Connection expected,
+      Collection<String> tables) throws DBUtilsException {
+        try {
+            Set<String> names = lowerCase(tables);
+            String expectedFingerprint = fingerprint(expected, names);
+            if(expectedFingerprint.equals(fingerprint(actual, names))) {
+                logger.debug("Schema fingerprint matches: {}",
+                  expectedFingerprint);
+                return;
+            }
+            logger.info("Schema fingerprint differs, comparing tables");
+            List<String> mismatches = compareTables(actual, expected, names);
+            if(!mismatches.isEmpty())
+                throw new TableMismatchException("Tables do not match the " +
+                  "expected schema: " + String.join("; ", mismatches));
+            logger.debug("Tables match the expected schema");
+        } catch(SQLException e) {
+            throw new DBUtilsException("Error verifying schema", e);
+        }
+    }
+
+    /**
+     * Get a fingerprint of a schema, which is the same for two databases
+     * only if every table, index, view and trigger is defined by the same
+     * sql.
+     *
+     * @param connection A connection to the database.
+     * @param tables The lower cased tables to include, or empty for all.
+     * @return The SHA-256 hash of the schema in hexadecimal.
+     * @throws SQLException If an SQLException occurs reading the schema.
+     */
+    static String fingerprint(Connection connection, Set<String> tables)
+      throws SQLException {
+        MessageDigest digest = sha256();
+        try(Statement statement = connection.createStatement();
+          ResultSet result = statement.executeQuery(SCHEMA_QUERY)) {
+            while(result.next()) {
+                if(!includes(tables, result.getString(3)))
+                    continue;
+                for(int i = 1; i <= 4; i++) {
+                    String value = result.getString(i);
+                    if(value != null)
+                        digest.update(value.getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                }
+            }
+        }
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for(int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Create an in-memory database by executing the creation script of
+     * each table, resources/sql/table.sql, to verify a database against.
+     *
+     * @param tables The tables to create.
+     * @return A connection to the in-memory database, or null if any
+     * script is missing.
+     * @throws DBUtilsException If any SQLException occurs executing a script
+     * or IOException occurs reading one.
+     */
+    static Connection fromScripts(Collection<String> tables)
+      throws DBUtilsException {
+        Connection connection = null;
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+            for(String table : tables) {
+                String file = SQL_RESOURCE_DIR + table.trim() +
+                  SQL_FILE_EXTENSION;
+                InputStream is = SQLiteSchemaVerifier.class
+                  .getResourceAsStream(file);
+                if(is == null) {
+                    logger.debug("No script to verify {} against: resources{}",
+                      table, file);
+                    connection.close();
+                    return null;
+                }
+                try(SQLScriptReader script = new SQLScriptReader(
+                  new InputStreamReader(is, StandardCharsets.UTF_8));
+                  Statement statement = connection.createStatement()) {
+                    String sql;
+                    while((sql = script.next()) != null)
+                        statement.execute(sql);
+                }
+            }
+            return connection;
+        } catch(SQLException | IOException e) {
+            closeQuietly(connection);
+            throw new DBUtilsException("Error creating schema from scripts",
+              e);
+        }
+    }
+
+    /* Describe each table of the expected schema in both databases, and
+     * note each one missing a column, index or trigger of the expected
+     * schema, or defining one differently. Those only in the database, such
+     * as indexes added since it was created, are accepted */
+    private static List<String> compareTables(Connection actual,
+      Connection expected, Set<String> tables) throws SQLException {
+        Set<String> actualTables = tableNames(actual);
+        List<String> mismatches = new ArrayList<>();
+        for(String table : tableNames(expected)) {
+            if(!includes(tables, table))
+                continue;
+            if(!actualTables.contains(table.toLowerCase(Locale.ROOT))) {
+                mismatches.add(table + " is missing");
+                continue;
+            }
+            Map<String, String> expectedTable = describe(expected, table);
+            Map<String, String> actualTable = describe(actual, table);
+            for(Map.Entry<String, String> entry : expectedTable.entrySet()) {
+                String found = actualTable.get(entry.getKey());
+                if(found == null) {
+                    mismatches.add(table + " is missing " + entry.getKey());
+                } else if(!found.equals(entry.getValue())) {
+                    logger.error(entry.getKey() + " of table " + table +
+                      " is " + found + ", expected " + entry.getValue());
+                    mismatches.add(table + " has a different " +
+                      entry.getKey());
+                }
+            }
+            if(actualTable.size() > expectedTable.size())
+                logger.debug("Table {} has {} objects not in the expected " +
+                  "schema", table, actualTable.size() - expectedTable.size());
+        }
+        return mismatches;
+    }
+
+    private static Set<String> tableNames(Connection connection)
+      throws SQLException {
+        Set<String> names = new HashSet<>();
+        try(Statement statement = connection.createStatement();
+          ResultSet result = statement.executeQuery(TABLES_QUERY)) {
+            while(result.next())
+                names.add(result.getString(1).toLowerCase(Locale.ROOT));
+        }
+        return names;
+    }
+
+    /* The columns, indexes and triggers of a table, keyed by kind and name.
+     * Names are compared ignoring case, as SQLite does */
+    private static Map<String, String> describe(Connection connection,
+      String table) throws SQLException {
+        Map<String, String> description = new TreeMap<>();
+        try(Statement statement = connection.createStatement()) {
+            try(ResultSet columns = statement.executeQuery(
+              "PRAGMA table_info(" + quote(table) + ")")) {
+                while(columns.next())
+                    description.put("column " + lowerCase(
+                      columns.getString("name")), columns.getString("type")
+                      .toUpperCase(Locale.ROOT) + " notnull=" +
+                      columns.getInt("notnull") + " default=" +
+                      columns.getString("dflt_value") + " pk=" +
+                      columns.getInt("pk"));
+            }
+            Map<String, String> indexes = new TreeMap<>();
+            try(ResultSet list = statement.executeQuery(
+              "PRAGMA index_list(" + quote(table) + ")")) {
+                while(list.next())
+                    indexes.put(lowerCase(list.getString("name")), "unique=" +
+                      list.getInt("unique"));
+            }
+            for(Map.Entry<String, String> index : indexes.entrySet()) {
+                StringBuilder columns = new StringBuilder(index.getValue());
+                try(ResultSet info = statement.executeQuery(
+                  "PRAGMA index_info(" + quote(index.getKey()) + ")")) {
+                    while(info.next())
+                        columns.append(' ').append(lowerCase(
+                          info.getString("name")));
+                }
+                description.put("index " + index.getKey(), columns.toString());
+            }
+        }
+        try(PreparedStatement statement = connection.prepareStatement(
+          TRIGGERS_QUERY)) {
+            statement.setString(1, table);
+            try(ResultSet result = statement.executeQuery()) {
+                while(result.next())
+                    description.put("trigger " + lowerCase(
+                      result.getString(1)), "");
+            }
+        }
+        return description;
+    }
+
+    private static boolean includes(Set<String> tables, String table) {
+        return tables.isEmpty() || (table != null &&
+          tables.contains(table.toLowerCase(Locale.ROOT)));
+    }
+
+    private static Set<String> lowerCase(Collection<String> tables) {
+        Set<String> names = new HashSet<>();
+        for(String table : tables)
+            names.add(table.trim().toLowerCase(Locale.ROOT));
+        return names;
+    }
+
+    private static String lowerCase(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is unavailable", e);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if(connection == null)
+            return;
+        try {
+            connection.close();
+        } catch(SQLException e) {
+            logger.error("Error closing connection", e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Provides template databases as local files, so new databases are copied
+ * from a file rather than streamed from the classpath. A template inside a
+ * jar is extracted once to the cache directory, and extracted again only if
+ * its size or modification time in the jar changes.
+ *
+ * Files are copied with FileChannel.transferTo(), which lets the operating
+ * system copy them without passing through the JVM, and where the JVM and
+ * file system support it, clone them. Copies are written to a temporary file
+ * and moved into place, so a failed copy never leaves a partial database.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 30/10/17
+ */
+final class SQLiteTemplateCache {
+
+    private static final Logger logger =
+      LogManager.getLogger(SQLiteTemplateCache.class);
+
+    // The most bytes transferred by one call, as some platforms limit it
+    private static final long TRANSFER_SIZE = 64L * 1024 * 1024;
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private SQLiteTemplateCache() { }
+
+    /**
+     * Get a local file of a template database on the classpath, extracting
+     * it to the cache directory if it is not already a file.
+     *
+     * @param resource The classpath resource of the template.
+     * @param cacheDirectory Where extracted templates are kept.
+     * @return The template file.
+     * @throws DBUtilsException If the template is missing, or any
+     * IOException occurs extracting it.
+     */
+    static Path getTemplate(String resource, Path cacheDirectory)
+      throws DBUtilsException {
+        URL url = SQLiteTemplateCache.class.getResource(resource);
+        if(url == null)
+            throw new DBUtilsException("[DBUtils] resources" + resource +
+              " is missing");
+        return getTemplate(url, cacheDirectory);
+    }
+
+    /**
+     * Get a local file of a template database, extracting it to the cache
+     * directory if it is not already a file.
+     *
+     * @param url The location of the template.
+     * @param cacheDirectory Where extracted templates are kept.
+     * @return The template file.
+     * @throws DBUtilsException If any IOException occurs extracting the
+     * template.
+     */
+    static Path getTemplate(URL url, Path cacheDirectory)
+      throws DBUtilsException {
+        try {
+            if("file".equals(url.getProtocol()))
+                return Paths.get(url.toURI());
+            URLConnection connection = url.openConnection();
+            long size = connection.getContentLengthLong();
+            long lastModified = connection.getLastModified();
+            String path = url.getPath();
+            Path cached = cacheDirectory.resolve(
+              path.substring(path.lastIndexOf('/') + 1));
+            if(isCurrent(cached, size, lastModified)) {
+                logger.debug("Using cached template: {}", cached);
+                return cached;
+            }
+            logger.debug("Extracting template {} to {}", url, cached);
+            Files.createDirectories(cacheDirectory);
+            Path temporary = temporaryFor(cached);
+            try {
+                try(InputStream in = connection.getInputStream();
+                  ReadableByteChannel source = Channels.newChannel(in);
+                  FileChannel target = FileChannel.open(temporary,
+                    StandardOpenOption.WRITE)) {
+                    long position = 0;
+                    long transferred;
+                    while((transferred = target.transferFrom(source,
+                      position, TRANSFER_SIZE)) > 0)
+                        position += transferred;
+                }
+                if(lastModified > 0)
+                    Files.setLastModifiedTime(temporary,
+                      FileTime.fromMillis(lastModified));
+                moveIntoPlace(temporary, cached);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            return cached;
+        } catch(IOException | URISyntaxException e) {
+            throw new DBUtilsException("Error extracting template " + url, e);
+        }
+    }
+
+    /**
+     * Copy a file, replacing the target only once the copy is complete.
+     *
+     * @param source The file to copy.
+     * @param target Where to copy it.
+     * @throws DBUtilsException If any IOException occurs copying the file.
+     */
+    static void copy(Path source, Path target) throws DBUtilsException {
+        try {
+            Path temporary = temporaryFor(target);
+            try {
+                try(FileChannel in = FileChannel.open(source,
+                  StandardOpenOption.READ);
+                  FileChannel out = FileChannel.open(temporary,
+                    StandardOpenOption.WRITE)) {
+                    long size = in.size();
+                    long position = 0;
+                    while(position < size)
+                        position += in.transferTo(position,
+                          Math.min(TRANSFER_SIZE, size - position), out);
+                }
+                moveIntoPlace(temporary, target);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch(IOException e) {
+            throw new DBUtilsException("Error copying " + source + " to " +
+              target, e);
+        }
+    }
+
+    private static boolean isCurrent(Path cached, long size,
+      long lastModified) throws IOException {
+        if(!Files.isRegularFile(cached))
+            return false;
+        if(size >= 0 && Files.size(cached) != size)
+            return false;
+        return lastModified <= 0 ||
+          Files.getLastModifiedTime(cached).toMillis() == lastModified;
+    }
+
+    /* Create an empty temporary file beside the given file */
+    private static Path temporaryFor(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        return Files.createTempFile(directory, file.getFileName().toString(),
+          TEMPORARY_SUFFIX);
+    }
+
+    private static void moveIntoPlace(Path temporary, Path target)
+      throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE,
+              StandardCopyOption.REPLACE_EXISTING);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target,
+              StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
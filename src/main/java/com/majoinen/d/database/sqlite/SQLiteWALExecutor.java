@@ -0,0 +1,203 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.DBUtilsConnection;
+import com.majoinen.d.database.DatabaseConnectionProvider;
+import com.majoinen.d.database.Query;
+import com.majoinen.d.database.WriteExecutor;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.pool.ConnectionPool;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes queries against an SQLite database in write-ahead logging mode.
+ * Reads are served by a pool of read-only connections, which in WAL mode
+ * never block on, or are blocked by, the writer. Writes are run one at a
+ * time by a dedicated writer thread on a single writer connection, so
+ * writers never contend for the database lock and SQLITE_BUSY is avoided.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 25/9/17
+ */
+public class SQLiteWALExecutor implements WriteExecutor {
+
+    private static final Logger logger =
+      LogManager.getLogger(SQLiteWALExecutor.class);
+
+    // How long (ms) a connection waits on a lock, such as a checkpoint,
+    // before failing with SQLITE_BUSY
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+
+    // How long (s) to wait for queued writes when closing
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final ConnectionPool writer;
+    private final ConnectionPool readers;
+    private final DatabaseConnectionProvider readProvider;
+    private final ExecutorService writerThread;
+    private volatile Thread thread;
+    private volatile boolean walEnabled;
+
+    /**
+     * Create an executor for a database, using the provided connection
+     * providers which should open connections with getWriterProperties() and
+     * getReaderProperties() respectively.
+     *
+     * @param databaseName The name of the database, used to name the writer
+     * thread.
+     * @param writerProvider Opens the writer connection.
+     * @param readerProvider Opens read-only connections.
+     * @param minReaders The number of idle readers which are never evicted.
+     * @param maxReaders The maximum number of readers open at once.
+     * @param idleTimeoutMillis How long a reader may be idle before it is
+     * evicted, or 0 to never evict.
+     * @param acquireTimeoutMillis How long to wait for a connection before
+     * giving up.
+     * @param validationTimeoutSeconds How long to wait when validating an
+     * idle connection before discarding it.
+     * @param statementCacheSize The number of statements to cache on each
+     * connection, or 0 to disable caching.
+     */
+    public SQLiteWALExecutor(String databaseName,
+      DatabaseConnectionProvider writerProvider,
+      DatabaseConnectionProvider readerProvider, int minReaders,
+      int maxReaders, long idleTimeoutMillis, long acquireTimeoutMillis,
+      int validationTimeoutSeconds, int statementCacheSize) {
+        this.writer = new ConnectionPool(writerProvider, 1, 1, 0,
+          acquireTimeoutMillis, validationTimeoutSeconds, statementCacheSize);
+        this.readers = new ConnectionPool(readerProvider, minReaders,
+          maxReaders, idleTimeoutMillis, acquireTimeoutMillis,
+          validationTimeoutSeconds, statementCacheSize);
+        this.readProvider = this::openReadConnection;
+        this.writerThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DBUtils-writer-" +
+              databaseName);
+            thread.setDaemon(true);
+            this.thread = thread;
+            return thread;
+        });
+    }
+
+    /**
+     * @return Properties for the writer connection, which enables WAL and
+     * only syncs to disk on checkpoints.
+     */
+    public static Properties getWriterProperties() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.setBusyTimeout(String.valueOf(BUSY_TIMEOUT_MILLIS));
+        return config.toProperties();
+    }
+
+    /**
+     * @return Properties for reader connections, which are opened read-only.
+     */
+    public static Properties getReaderProperties() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(String.valueOf(BUSY_TIMEOUT_MILLIS));
+        return config.toProperties();
+    }
+
+    /**
+     * @return A provider of read-only connections. The first connection
+     * provided waits for the writer to enable WAL on the database.
+     */
+    public DatabaseConnectionProvider getReadProvider() {
+        return readProvider;
+    }
+
+    /**
+     * Run work on the writer thread with the writer connection, waiting for
+     * it to complete. Work submitted by many threads is run one at a time
+     * in the order it is submitted.
+     *
+     * @param work The work to run, given a connection to write with.
+     * @param <T> The type of result of the work.
+     * @return The result of the work.
+     * @throws DBUtilsException If the work fails; if the executor is closed
+     * or if the calling thread is interrupted while waiting.
+     */
+    @Override
+    public <T> T execute(Work<T> work) throws DBUtilsException {
+        if(Thread.currentThread() == thread)
+            return work.execute(new DBUtilsConnection(writer));
+        Future<T> result;
+        try {
+            result = writerThread.submit(() ->
+              work.execute(new DBUtilsConnection(writer)));
+        } catch(RuntimeException e) {
+            throw new DBUtilsException("Writer is closed", e);
+        }
+        try {
+            return result.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBUtilsException("Interrupted waiting for write", e);
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof DBUtilsException)
+                throw (DBUtilsException) cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if(cause instanceof Error)
+                throw (Error) cause;
+            throw new DBUtilsException("Error executing write", e);
+        }
+    }
+
+    public ConnectionPool getWriterPool() {
+        return writer;
+    }
+
+    public ConnectionPool getReaderPool() {
+        return readers;
+    }
+
+    /**
+     * Wait for queued writes to complete, then close the writer and all
+     * idle readers.
+     */
+    public void close() {
+        writerThread.shutdown();
+        try {
+            if(!writerThread.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS,
+              TimeUnit.SECONDS))
+                logger.error("Timed out waiting for queued writes");
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+        readers.close();
+    }
+
+    private Connection openReadConnection() throws DBUtilsException {
+        if(!walEnabled)
+            enableWAL();
+        return readers.openConnection();
+    }
+
+    /* WAL is enabled when the writer connection is opened, and persists in
+     * the database file, so readers wait for the writer to open first */
+    private synchronized void enableWAL() throws DBUtilsException {
+        if(walEnabled)
+            return;
+        String mode = execute(connection -> new Query(connection,
+          "PRAGMA journal_mode").executeAndMap(result ->
+          result.getString(1)));
+        // An in-memory database has no file to write ahead of
+        if(!"wal".equalsIgnoreCase(mode) && !"memory".equalsIgnoreCase(mode))
+            logger.error("Unable to enable WAL, journal mode is: " + mode);
+        walEnabled = true;
+    }
+}
@@ -0,0 +1,240 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.BatchQuery;
+import com.majoinen.d.database.DatabaseProperties;
+import com.majoinen.d.database.Query;
+import com.majoinen.d.database.ScatterGatherQuery;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+import com.majoinen.d.database.metrics.InMemoryMetricsRecorder;
+import com.majoinen.d.database.metrics.MetricsSnapshot;
+import com.majoinen.d.database.util.ConsistentHashRing;
+import com.majoinen.d.database.util.PropertiesHandler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A database split across several SQLite files, its shards, so writes to
+ * different shards run in parallel, each on its own file and connections.
+ * The number of shards is set in the config file by database.shard.count,
+ * and each shard is a SQLiteDatabaseController configured by the same
+ * file, named after the database and its index, such as users-0.
+ *
+ * Every query is prepared with a shard key, such as the id of the customer
+ * whose rows it reads or writes, which picks its shard by consistent
+ * hashing. Changing the number of shards moves about 1/n of keys to
+ * another shard, whose rows are not moved with them.
+ *
+ * As a query cannot be prepared without a shard key, this is not a
+ * DatabaseController. It is created by
+ * DatabaseControllerFactory.getShardedController().
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 16/11/17
+ */
+public class ShardedDatabaseController {
+
+    private static final Logger logger =
+      LogManager.getLogger(ShardedDatabaseController.class);
+
+    private final String databaseName;
+    private final String configFilename;
+    private final ConsistentHashRing<SQLiteDatabaseController> ring;
+
+    // Records the queries of every shard, created when first needed
+    private InMemoryMetricsRecorder metricsRecorder;
+    private boolean metricsChecked;
+
+    /**
+     * @param databaseName The name of the database, which each shard is
+     * named after.
+     * @param configFilename The config file of every shard.
+     * @throws DBUtilsException If the config file is not found; if there are
+     * any permission issues when accessing it or if the number of shards is
+     * not a positive number.
+     */
+    public ShardedDatabaseController(String databaseName,
+      String configFilename) throws DBUtilsException {
+        this.databaseName = databaseName;
+        this.configFilename = configFilename;
+        int shardCount = SQLiteDatabaseProperties.getShardCount(
+          configFilename);
+        if(shardCount < 1)
+            throw new DBUtilsException("Invalid shard count: " + shardCount);
+        Map<String, SQLiteDatabaseController> shards = new LinkedHashMap<>();
+        for(int i = 0; i < shardCount; i++) {
+            String shardName = databaseName + "-" + i;
+            shards.put(shardName, new SQLiteDatabaseController(shardName,
+              configFilename));
+        }
+        this.ring = new ConsistentHashRing<>(shards,
+          SQLiteDatabaseProperties.getShardVirtualNodes(configFilename));
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public String getConfigFilename() {
+        return configFilename;
+    }
+
+    /**
+     * Get the shard a key belongs to, such as to enable features on it.
+     *
+     * @param shardKey The shard key, hashed by its toString().
+     * @return The controller of the shard.
+     */
+    public SQLiteDatabaseController getShard(Object shardKey) {
+        return ring.get(shardKey);
+    }
+
+    /**
+     * @return The controller of every shard, in order of their index.
+     */
+    public List<SQLiteDatabaseController> getShards() {
+        return ring.getNodes();
+    }
+
+    /**
+     * Initialise every shard, creating each from the database's template
+     * if it does not exist.
+     *
+     * @throws DBUtilsException if any IOException occurs when accessing
+     * database properties or SQLException when verifying or creating tables.
+     */
+    public void init() throws DBUtilsException {
+        logger.debug("Initialising {} shards", getShards().size());
+        installMetrics();
+        for(SQLiteDatabaseController shard : getShards())
+            shard.init();
+    }
+
+    /**
+     * Prepare a query on the shard a key belongs to.
+     *
+     * @param shardKey The shard key, hashed by its toString().
+     * @param query The query to prepare.
+     * @return A Query on the key's shard.
+     * @throws DBUtilsException If any SQLExceptions occur preparing the
+     * statement or creating the Query.
+     */
+    public Query prepareQuery(Object shardKey, String query)
+      throws DBUtilsException {
+        installMetrics();
+        return getShard(shardKey).prepareQuery(query);
+    }
+
+    /**
+     * Prepare a batch query on the shard a key belongs to.
+     *
+     * @param shardKey The shard key, hashed by its toString().
+     * @param queries The queries of the batch query.
+     * @return A BatchQuery on the key's shard.
+     * @throws DBUtilsException If any SQLExceptions occur preparing the
+     * statement or creating the BatchQuery.
+     */
+    public BatchQuery prepareBatchQuery(Object shardKey, String... queries)
+      throws DBUtilsException {
+        installMetrics();
+        return getShard(shardKey).prepareBatchQuery(queries);
+    }
+
+    /**
+     * Prepare a query to run on every shard at once, such as a query for
+     * rows of every customer.
+     *
+     * @param query The query to run on every shard.
+     * @return A ScatterGatherQuery across every shard.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public ScatterGatherQuery prepareScatterGatherQuery(String query)
+      throws DBUtilsException {
+        installMetrics();
+        return new ScatterGatherQuery(getShards(), query);
+    }
+
+    /**
+     * @return True only if the file of every shard exists.
+     */
+    public boolean databaseExists() throws DBUtilsException {
+        for(SQLiteDatabaseController shard : getShards())
+            if(!shard.databaseExists())
+                return false;
+        return true;
+    }
+
+    /**
+     * @return The name of the database.
+     */
+    @Override
+    public String toString() {
+        return databaseName;
+    }
+
+    public void setProperty(String key, String value) throws DBUtilsException {
+        PropertiesHandler.setProperty(configFilename, key, value);
+    }
+
+    /**
+     * Summarise the queries executed on every shard together.
+     *
+     * @return A snapshot of the metrics, or null if metrics are disabled.
+     * @throws DBUtilsException If the config file is not found or if there
+     * are any permission issues when accessing the config file.
+     */
+    public MetricsSnapshot getMetrics() throws DBUtilsException {
+        installMetrics();
+        synchronized(this) {
+            return metricsRecorder == null ? null : metricsRecorder.snapshot();
+        }
+    }
+
+    /**
+     * Wait for any queued writes, then close the connections of every
+     * shard.
+     *
+     * @throws DBUtilsException If any SQLException occurs closing a
+     * connection. Every shard is closed regardless.
+     */
+    public void close() throws DBUtilsException {
+        DBUtilsException failure = null;
+        for(SQLiteDatabaseController shard : getShards()) {
+            try {
+                shard.close();
+            } catch(DBUtilsException e) {
+                failure = e;
+            }
+        }
+        synchronized(this) {
+            if(metricsRecorder != null)
+                metricsRecorder.unregisterMBean();
+            metricsRecorder = null;
+            metricsChecked = false;
+        }
+        if(failure != null)
+            throw failure;
+    }
+
+    /* Give every shard the same recorder, so their metrics are summarised
+     * together. The shards do not unregister a recorder they were given, so
+     * it is only unregistered when this controller is closed. Closing a
+     * shard discards its recorder, so this is repeated after the shards are
+     * closed */
+    private synchronized void installMetrics() throws DBUtilsException {
+        if(metricsChecked)
+            return;
+        if(DatabaseProperties.isMetricsEnabled(configFilename)) {
+            metricsRecorder = new InMemoryMetricsRecorder(databaseName,
+              DatabaseProperties.getMetricsMaxShapes(configFilename));
+            metricsRecorder.registerMBean();
+            for(SQLiteDatabaseController shard : getShards())
+                shard.setMetricsRecorder(metricsRecorder);
+        }
+        metricsChecked = true;
+    }
+}
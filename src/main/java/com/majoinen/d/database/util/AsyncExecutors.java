@@ -0,0 +1,92 @@
+package com.majoinen.d.database.util;
+
+import com.majoinen.d.database.log.LogManager;
+import com.majoinen.d.database.log.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the executor asynchronous queries run on by default, and the
+ * scheduler which times them out.
+ *
+ * The default executor starts a virtual thread per query when the runtime
+ * supports them, and otherwise uses a pool of daemon threads which grows as
+ * needed and shrinks when idle.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 2/10/17
+ */
+public final class AsyncExecutors {
+
+    private static final Logger logger =
+      LogManager.getLogger(AsyncExecutors.class);
+
+    private static volatile Executor defaultExecutor;
+
+    // Completes timed out queries and cancels their statements
+    private static final ScheduledExecutorService timeouts =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "DBUtils-query-timeout");
+          thread.setDaemon(true);
+          return thread;
+      });
+
+    private AsyncExecutors() { }
+
+    /**
+     * @return The executor asynchronous queries run on unless another is
+     * provided, created the first time it is needed.
+     */
+    public static Executor getDefault() {
+        Executor executor = defaultExecutor;
+        if(executor == null) {
+            synchronized(AsyncExecutors.class) {
+                if(defaultExecutor == null)
+                    defaultExecutor = createDefault();
+                executor = defaultExecutor;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Run a task once a delay has passed.
+     *
+     * @param task The task to run.
+     * @param delayMillis How long (ms) to wait before running the task.
+     * @return The scheduled task, which may be cancelled.
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return timeouts.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /* Virtual threads are looked up reflectively so the library still runs
+     * on runtimes without them */
+    private static Executor createDefault() {
+        try {
+            Executor executor = (Executor) Executors.class
+              .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.debug("Running asynchronous queries on virtual threads");
+            return executor;
+        } catch(ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Running asynchronous queries on a thread pool");
+            return newThreadPool();
+        }
+    }
+
+    private static ExecutorService newThreadPool() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "DBUtils-async-" +
+              count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package com.majoinen.d.database.util;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a column as a given Java type with the matching typed getter of the
+ * ResultSet, such as getInt() for an int, so values are not read as Objects
+ * and converted. Used by RowMapper.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 23/10/17
+ */
+final class ColumnReaders {
+
+    private static final Map<Class<?>, ColumnReader> readers = new HashMap<>();
+
+    static {
+        readers.put(String.class, ResultSet::getString);
+        readers.put(int.class, ResultSet::getInt);
+        readers.put(long.class, ResultSet::getLong);
+        readers.put(double.class, ResultSet::getDouble);
+        readers.put(float.class, ResultSet::getFloat);
+        readers.put(short.class, ResultSet::getShort);
+        readers.put(byte.class, ResultSet::getByte);
+        readers.put(boolean.class, ResultSet::getBoolean);
+        readers.put(Integer.class, nullable(ResultSet::getInt));
+        readers.put(Long.class, nullable(ResultSet::getLong));
+        readers.put(Double.class, nullable(ResultSet::getDouble));
+        readers.put(Float.class, nullable(ResultSet::getFloat));
+        readers.put(Short.class, nullable(ResultSet::getShort));
+        readers.put(Byte.class, nullable(ResultSet::getByte));
+        readers.put(Boolean.class, nullable(ResultSet::getBoolean));
+        readers.put(BigDecimal.class, ResultSet::getBigDecimal);
+        readers.put(byte[].class, ResultSet::getBytes);
+        readers.put(Date.class, ResultSet::getDate);
+        readers.put(Time.class, ResultSet::getTime);
+        readers.put(Timestamp.class, ResultSet::getTimestamp);
+        readers.put(java.util.Date.class, ResultSet::getTimestamp);
+        readers.put(LocalDate.class, (resultSet, column) -> {
+            Date date = resultSet.getDate(column);
+            return date == null ? null : date.toLocalDate();
+        });
+        readers.put(LocalTime.class, (resultSet, column) -> {
+            Time time = resultSet.getTime(column);
+            return time == null ? null : time.toLocalTime();
+        });
+        readers.put(LocalDateTime.class, (resultSet, column) -> {
+            Timestamp timestamp = resultSet.getTimestamp(column);
+            return timestamp == null ? null : timestamp.toLocalDateTime();
+        });
+        readers.put(Instant.class, (resultSet, column) -> {
+            Timestamp timestamp = resultSet.getTimestamp(column);
+            return timestamp == null ? null : timestamp.toInstant();
+        });
+    }
+
+    private ColumnReaders() { }
+
+    /**
+     * Get the reader of columns as the given type. Enums are read by name,
+     * and any other type is read with getObject(), asking the driver to
+     * convert the value if it is not already of the type.
+     *
+     * @param type The type to read columns as.
+     * @return The reader.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static ColumnReader forType(Class<?> type) {
+        ColumnReader reader = readers.get(type);
+        if(reader != null)
+            return reader;
+        if(type.isEnum()) {
+            Class<? extends Enum> enumType = (Class<? extends Enum>) type;
+            return (resultSet, column) -> {
+                String name = resultSet.getString(column);
+                return name == null ? null : Enum.valueOf(enumType, name);
+            };
+        }
+        return (resultSet, column) -> {
+            Object value = resultSet.getObject(column);
+            if(value == null || type.isInstance(value))
+                return value;
+            return resultSet.getObject(column, type);
+        };
+    }
+
+    /* Read a primitive column as null, rather than 0, when it is NULL */
+    private static ColumnReader nullable(ColumnReader reader) {
+        return (resultSet, column) -> {
+            Object value = reader.read(resultSet, column);
+            return resultSet.wasNull() ? null : value;
+        };
+    }
+
+    /* Reads one column of the current row */
+    @FunctionalInterface
+    interface ColumnReader {
+        Object read(ResultSet resultSet, int column) throws SQLException;
+    }
+}
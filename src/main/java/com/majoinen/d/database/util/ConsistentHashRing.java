@@ -0,0 +1,124 @@
+package com.majoinen.d.database.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns keys to nodes by consistent hashing. Each node is placed on a
+ * ring of 64-bit hashes at many points, its virtual nodes, and a key
+ * belongs to the node at the first point at or after the hash of the key.
+ * Adding or removing a node only moves the keys of the points it gains or
+ * loses, about 1/n of all keys, rather than nearly every key as taking the
+ * hash modulo n would.
+ *
+ * Points are hashed from the names of nodes and keys from their toString(),
+ * so the same key belongs to the same node in every JVM.
+ *
+ * @param <T> The type of node.
+ * @author Daniel Majoinen
+ * @version 1.0, 16/11/17
+ */
+public final class ConsistentHashRing<T> {
+
+    // The number of points each node is placed at by default
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // The sorted hash of each point, and the node at the same index
+    private final long[] points;
+    private final Object[] owners;
+
+    private final List<T> nodes;
+
+    /**
+     * @param nodes Each node, by the name it is placed on the ring by.
+     * @param virtualNodes The number of points each node is placed at. More
+     * points spread keys more evenly, at the cost of memory.
+     */
+    public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+        if(nodes.isEmpty())
+            throw new IllegalArgumentException("A ring needs a node");
+        if(virtualNodes < 1)
+            throw new IllegalArgumentException("Invalid virtual nodes: " +
+              virtualNodes);
+        int count = nodes.size() * virtualNodes;
+        long[] hashes = new long[count];
+        Object[] nodeAt = new Object[count];
+        int index = 0;
+        for(Map.Entry<String, T> node : nodes.entrySet()) {
+            for(int i = 0; i < virtualNodes; i++) {
+                hashes[index] = hash(node.getKey() + "#" + i);
+                nodeAt[index] = node.getValue();
+                index++;
+            }
+        }
+        // Sort the points, keeping each with its node
+        Integer[] order = new Integer[count];
+        for(int i = 0; i < count; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[count];
+        this.owners = new Object[count];
+        for(int i = 0; i < count; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodeAt[order[i]];
+        }
+        this.nodes = Collections.unmodifiableList(
+          new ArrayList<>(nodes.values()));
+    }
+
+    /**
+     * Get the node a key belongs to.
+     *
+     * @param key The key, hashed by its toString().
+     * @return The node the key belongs to.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(Object key) {
+        if(key == null)
+            throw new IllegalArgumentException("A key is needed");
+        long hash = hash(key.toString());
+        int low = 0;
+        int high = points.length - 1;
+        // The first point at or after the hash, wrapping around the ring
+        if(hash > points[high])
+            return (T) owners[0];
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(points[middle] < hash)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return (T) owners[low];
+    }
+
+    /**
+     * @return Every node, in the order they were given.
+     */
+    public List<T> getNodes() {
+        return nodes;
+    }
+
+    /* FNV-1a over the chars of a string, then mixed so that similar strings
+     * are spread across the ring */
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
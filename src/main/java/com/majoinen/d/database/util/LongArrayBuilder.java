@@ -0,0 +1,58 @@
+package com.majoinen.d.database.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects longs into an array of unknown length. Small arrays grow by
+ * doubling, and past CHUNK_SIZE values are kept in fixed size chunks, so
+ * each value is copied at most once more when the array is built.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 26/10/17
+ */
+final class LongArrayBuilder {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int CHUNK_SIZE = 8192;
+
+    // Full chunks, before the current one
+    private final List<long[]> chunks = new ArrayList<>();
+    private long[] current = new long[INITIAL_CAPACITY];
+    private int size;
+
+    void add(long value) {
+        if(size == current.length)
+            grow();
+        current[size++] = value;
+    }
+
+    long[] toArray() {
+        if(chunks.isEmpty())
+            return size == current.length ? current :
+              Arrays.copyOf(current, size);
+        long length = (long) chunks.size() * CHUNK_SIZE + size;
+        if(length > Integer.MAX_VALUE - 8)
+            throw new OutOfMemoryError("Too many values for an array: " +
+              length);
+        long[] values = new long[(int) length];
+        int offset = 0;
+        for (long[] chunk : chunks) {
+            System.arraycopy(chunk, 0, values, offset, CHUNK_SIZE);
+            offset += CHUNK_SIZE;
+        }
+        System.arraycopy(current, 0, values, offset, size);
+        return values;
+    }
+
+    private void grow() {
+        if(current.length < CHUNK_SIZE) {
+            current = Arrays.copyOf(current, current.length * 2);
+        } else {
+            chunks.add(current);
+            current = new long[CHUNK_SIZE];
+            size = 0;
+        }
+    }
+}
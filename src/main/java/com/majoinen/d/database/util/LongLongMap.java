@@ -0,0 +1,194 @@
+package com.majoinen.d.database.util;
+
+/**
+ * A map of long keys to long values, held in two arrays with open
+ * addressing rather than as boxed entries, so it takes a fraction of the
+ * memory of a Map of Longs. Not thread safe.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 26/10/17
+ */
+public final class LongLongMap {
+
+    private static final int DEFAULT_EXPECTED_SIZE = 16;
+
+    // Marks an empty slot. The key 0 is kept outside the arrays
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    // Resize once the arrays are half full, keeping probe sequences short
+    private int resizeAt;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongMap() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * @param expectedSize The number of keys expected, so the map does not
+     * need to resize while it is filled.
+     */
+    public LongLongMap(int expectedSize) {
+        if(expectedSize < 0)
+            throw new IllegalArgumentException("Invalid expected size: " +
+              expectedSize);
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Map a key to a value, replacing any value it was mapped to.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    public void put(long key, long value) {
+        if(key == EMPTY) {
+            if(!hasZeroKey)
+                size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int slot = slotOf(key);
+        while(keys[slot] != EMPTY) {
+            if(keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if(++size > resizeAt)
+            resize(keys.length * 2);
+    }
+
+    /**
+     * @param key The key.
+     * @param defaultValue The value to return if the key is not mapped.
+     * @return The value the key is mapped to, or the default value.
+     */
+    public long get(long key, long defaultValue) {
+        if(key == EMPTY)
+            return hasZeroKey ? zeroValue : defaultValue;
+        int slot = slotOf(key);
+        while(keys[slot] != EMPTY) {
+            if(keys[slot] == key)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        if(key == EMPTY)
+            return hasZeroKey;
+        int slot = slotOf(key);
+        while(keys[slot] != EMPTY) {
+            if(keys[slot] == key)
+                return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Call the consumer with each key and its value, in no particular order.
+     *
+     * @param consumer Given each key and value.
+     */
+    public void forEach(LongLongConsumer consumer) {
+        if(hasZeroKey)
+            consumer.accept(EMPTY, zeroValue);
+        for (int i = 0; i < keys.length; i++) {
+            if(keys[i] != EMPTY)
+                consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * @return Every key, in no particular order.
+     */
+    public long[] keys() {
+        long[] found = new long[size];
+        int index = 0;
+        if(hasZeroKey)
+            found[index++] = EMPTY;
+        for (long key : keys) {
+            if(key != EMPTY)
+                found[index++] = key;
+        }
+        return found;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        forEach((key, value) -> {
+            if(builder.length() > 1)
+                builder.append(", ");
+            builder.append(key).append('=').append(value);
+        });
+        return builder.append('}').toString();
+    }
+
+    /* Spread the bits of the key, so sequential keys do not cluster */
+    private int slotOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if(key == EMPTY)
+                continue;
+            int slot = slotOf(key);
+            while(keys[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 2;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long capacity = Math.max(4, Long.highestOneBit(
+          Math.max(1, expectedSize) * 2L - 1) << 1);
+        if(capacity > 1 << 30)
+            throw new IllegalArgumentException("Expected size too large: " +
+              expectedSize);
+        return (int) capacity;
+    }
+
+    /**
+     * Accepts a key and value of a LongLongMap.
+     */
+    @FunctionalInterface
+    public interface LongLongConsumer {
+        void accept(long key, long value);
+    }
+}
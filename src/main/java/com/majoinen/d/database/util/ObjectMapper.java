@@ -13,4 +13,17 @@ import java.sql.SQLException;
 @FunctionalInterface
 public interface ObjectMapper<T> {
     T map(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Identify what this mapper maps rows to, used in the key of cached
+     * results. Mappers with equal keys must map the same row to equal
+     * objects.
+     *
+     * @return This mapper by default. A lambda which captures nothing is
+     * one instance reused on every evaluation, so it keeps hitting the
+     * cache, while each instance of a capturing lambda is its own key.
+     */
+    default Object getMappingKey() {
+        return this;
+    }
 }
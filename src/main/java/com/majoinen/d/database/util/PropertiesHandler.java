@@ -5,8 +5,6 @@ import com.majoinen.d.database.exception.DBUtilsException;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -30,17 +28,19 @@ public final class PropertiesHandler {
       "DatabaseUtils missing property value: ";
 
     // Cache properties mapped to .properties filenames
-    private static Map<String, Properties> propertiesMap;
+    private static final Registry<String, Properties> propertiesMap =
+      new Registry<>();
 
     private PropertiesHandler() { }
 
     private static Properties getDatabaseProperties(String filename)
       throws DBUtilsException {
-        if(propertiesMap == null)
-            propertiesMap = new HashMap<>();
-        else if(propertiesMap.containsKey(filename))
-            return propertiesMap.get(filename);
+        return propertiesMap.getOrCreate(filename,
+          PropertiesHandler::loadProperties);
+    }
 
+    private static Properties loadProperties(String filename)
+      throws DBUtilsException {
         Properties properties = new Properties();
         InputStream inputStream = PropertiesHandler.class.getResourceAsStream(
           CONFIG_RESOURCE_DIR + filename + PROPERTIES_FILE_EXTENSION);
@@ -56,8 +56,6 @@ public final class PropertiesHandler {
               "DBUtils requires config file: resources" +
                 CONFIG_RESOURCE_DIR + filename + PROPERTIES_FILE_EXTENSION);
         }
-
-        propertiesMap.put(filename, properties);
         return properties;
     }
 
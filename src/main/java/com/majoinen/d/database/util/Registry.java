@@ -0,0 +1,123 @@
+package com.majoinen.d.database.util;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.exception.UncheckedDBUtilsException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A thread safe registry of instances created on first use, such as the
+ * controller of each database. Lookups of existing instances never block,
+ * and an instance is created at most once for its key even when many threads
+ * ask for it at the same time.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 5/10/17
+ */
+public final class Registry<K, V> {
+
+    private final ConcurrentMap<K, V> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param key The key of the instance.
+     * @return The instance registered for the key, or null if there is none.
+     */
+    public V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Get the instance registered for a key, creating and registering it if
+     * there is none. Only one thread creates the instance of a key; any
+     * others asking for it meanwhile wait and receive the same instance.
+     *
+     * @param key The key of the instance.
+     * @param factory Creates the instance if there is none.
+     * @return The instance registered for the key.
+     * @throws DBUtilsException If the factory fails to create the instance,
+     * in which case nothing is registered.
+     */
+    public V getOrCreate(K key, Factory<K, V> factory)
+      throws DBUtilsException {
+        V value = entries.get(key);
+        if(value != null)
+            return value;
+        try {
+            return entries.computeIfAbsent(key, k -> {
+                try {
+                    return factory.create(k);
+                } catch(DBUtilsException e) {
+                    throw new UncheckedDBUtilsException(e);
+                }
+            });
+        } catch(UncheckedDBUtilsException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Get the instance registered for a key, creating and registering it if
+     * there is none, where creating the instance cannot fail.
+     *
+     * @param key The key of the instance.
+     * @param factory Creates the instance if there is none.
+     * @return The instance registered for the key.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> factory) {
+        V value = entries.get(key);
+        return value != null ? value : entries.computeIfAbsent(key, factory);
+    }
+
+    /**
+     * Remove the instance registered for a key.
+     *
+     * @param key The key of the instance.
+     * @return The instance which was registered, or null if there was none.
+     */
+    public V remove(K key) {
+        return entries.remove(key);
+    }
+
+    /**
+     * Remove every instance, returning those which were registered.
+     *
+     * @return The instances which were registered.
+     */
+    public Collection<V> removeAll() {
+        Collection<V> removed = new ArrayList<>();
+        for (K key : entries.keySet()) {
+            V value = entries.remove(key);
+            if(value != null)
+                removed.add(value);
+        }
+        return removed;
+    }
+
+    /**
+     * @return A view of every registered instance, which reflects later
+     * registrations and removals.
+     */
+    public Collection<V> values() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Creates the instance registered for a key.
+     *
+     * @param <K> The type of key.
+     * @param <V> The type of instance.
+     */
+    @FunctionalInterface
+    public interface Factory<K, V> {
+        V create(K key) throws DBUtilsException;
+    }
+}
@@ -58,6 +58,82 @@ public final class ResultSetHandler {
         return list;
     }
 
+    /**
+     * Read the first column of every row as a long, without boxing. NULL is
+     * read as 0.
+     *
+     * @param resultSet The results to read, which are closed on return.
+     * @return The value of each row, in order.
+     * @throws DBUtilsException If any SQLException occurs reading the
+     * results.
+     */
+    public static long[] handleLongs(ResultSet resultSet)
+      throws DBUtilsException {
+        LongArrayBuilder values = new LongArrayBuilder();
+        try {
+            if(resultSet == null || resultSet.isClosed())
+                return new long[0];
+            while(resultSet.next())
+                values.add(resultSet.getLong(1));
+        } catch(SQLException e) {
+            throw new DBUtilsException("Error reading results as longs", e);
+        } finally {
+            closeResultSet(resultSet);
+        }
+        return values.toArray();
+    }
+
+    /**
+     * Read the first column of every row as a double, without boxing. NULL
+     * is read as 0.
+     *
+     * @param resultSet The results to read, which are closed on return.
+     * @return The value of each row, in order.
+     * @throws DBUtilsException If any SQLException occurs reading the
+     * results.
+     */
+    public static double[] handleDoubles(ResultSet resultSet)
+      throws DBUtilsException {
+        DoubleArrayBuilder values = new DoubleArrayBuilder();
+        try {
+            if(resultSet == null || resultSet.isClosed())
+                return new double[0];
+            while(resultSet.next())
+                values.add(resultSet.getDouble(1));
+        } catch(SQLException e) {
+            throw new DBUtilsException("Error reading results as doubles", e);
+        } finally {
+            closeResultSet(resultSet);
+        }
+        return values.toArray();
+    }
+
+    /**
+     * Read the first column of every row as a key and the second as its
+     * value, without boxing. NULL is read as 0, and a key which appears in
+     * more than one row is mapped to its last value.
+     *
+     * @param resultSet The results to read, which are closed on return.
+     * @return The keys mapped to their values.
+     * @throws DBUtilsException If any SQLException occurs reading the
+     * results.
+     */
+    public static LongLongMap handleLongToLongMap(ResultSet resultSet)
+      throws DBUtilsException {
+        LongLongMap map = new LongLongMap();
+        try {
+            if(resultSet == null || resultSet.isClosed())
+                return map;
+            while(resultSet.next())
+                map.put(resultSet.getLong(1), resultSet.getLong(2));
+        } catch(SQLException e) {
+            throw new DBUtilsException("Error reading results as a map", e);
+        } finally {
+            closeResultSet(resultSet);
+        }
+        return map;
+    }
+
     private static void closeResultSet(ResultSet resultSet) throws
       DBUtilsException {
         try {
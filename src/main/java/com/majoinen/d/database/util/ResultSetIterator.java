@@ -0,0 +1,135 @@
+package com.majoinen.d.database.util;
+
+import com.majoinen.d.database.DBUtilsConnection;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.exception.UncheckedDBUtilsException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily maps the rows of a ResultSet as they are iterated, so only the
+ * current row is held in memory. The ResultSet and the connection it came
+ * from are closed once the last row has been read, or when the iterator is
+ * closed early.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 22/9/17
+ */
+public class ResultSetIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private final ResultSet resultSet;
+    private final ObjectMapper<T> mapper;
+    private final DBUtilsConnection connection;
+
+    // Whether the cursor has been moved to a row which has not been returned
+    private boolean fetched;
+    private boolean hasRow;
+    private boolean closed;
+
+    // The rows read so far, and the time (ns) spent reading and mapping them
+    private long rows;
+    private long mapNanos;
+
+    public ResultSetIterator(ResultSet resultSet, ObjectMapper<T> mapper,
+      DBUtilsConnection connection) {
+        this.resultSet = resultSet;
+        this.mapper = mapper;
+        this.connection = connection;
+    }
+
+    /**
+     * Move the cursor to the next row if it has not been already. Once there
+     * are no more rows the iterator is closed.
+     *
+     * @return True if there is another row to map.
+     * @throws UncheckedDBUtilsException If an SQLException occurs moving the
+     * cursor.
+     */
+    @Override
+    public boolean hasNext() {
+        if(closed)
+            return false;
+        if(!fetched) {
+            long start = System.nanoTime();
+            try {
+                hasRow = resultSet != null && resultSet.next();
+                mapNanos += System.nanoTime() - start;
+            } catch(SQLException e) {
+                connection.recordMapFailed();
+                close();
+                throw new UncheckedDBUtilsException(new DBUtilsException(
+                  "Error moving to next row", e));
+            }
+            fetched = true;
+            if(!hasRow)
+                close();
+        }
+        return hasRow;
+    }
+
+    /**
+     * Map the next row.
+     *
+     * @return The next row mapped to an object.
+     * @throws UncheckedDBUtilsException If an SQLException occurs mapping the
+     * row, in which case the iterator is closed.
+     */
+    @Override
+    public T next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+        fetched = false;
+        long start = System.nanoTime();
+        try {
+            T value = mapper.map(resultSet);
+            mapNanos += System.nanoTime() - start;
+            rows++;
+            return value;
+        } catch(SQLException e) {
+            connection.recordMapFailed();
+            close();
+            throw new UncheckedDBUtilsException(new DBUtilsException(
+              "Error mapping row to object", e));
+        }
+    }
+
+    /**
+     * Close the ResultSet and the connection it came from. Calling close more
+     * than once has no effect.
+     *
+     * @throws UncheckedDBUtilsException If an SQLException occurs closing the
+     * ResultSet or connection.
+     */
+    @Override
+    public void close() {
+        if(closed)
+            return;
+        closed = true;
+        hasRow = false;
+        connection.recordMapped(mapNanos, rows);
+        try {
+            if(resultSet != null && !resultSet.isClosed())
+                resultSet.close();
+        } catch(SQLException e) {
+            throw new UncheckedDBUtilsException(new DBUtilsException(
+              "Error closing ResultSet", e));
+        } finally {
+            closeConnection();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void closeConnection() {
+        try {
+            connection.close();
+        } catch(DBUtilsException e) {
+            throw new UncheckedDBUtilsException(e);
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.majoinen.d.database.util;
+
+import com.majoinen.d.database.util.ColumnReaders.ColumnReader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An ObjectMapper which maps each row to a new object of a class, derived
+ * from the class rather than written by hand. Columns are matched to the
+ * parameters of a constructor, or to the setters and fields of a class with
+ * a no argument constructor, by name. Names are matched ignoring case and
+ * underscores, so a user_id column maps to a userId property.
+ *
+ * The column labels of a result are resolved to indexes once for each
+ * distinct set of labels, and every row is then read with typed getters by
+ * index and bound through MethodHandles, without reflection. Columns with
+ * no matching property are ignored.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 23/10/17
+ */
+public final class RowMapper<T> implements ObjectMapper<T> {
+
+    private static final Registry<Class<?>, RowMapper<?>> mappers =
+      new Registry<>();
+
+    // The most sets of column labels bindings are kept for
+    private static final int MAX_BINDINGS = 64;
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    // Class.isRecord() and Class.getRecordComponents(), when supported
+    private static final Method IS_RECORD = findMethod(Class.class,
+      "isRecord");
+    private static final Method GET_RECORD_COMPONENTS = findMethod(
+      Class.class, "getRecordComponents");
+
+    private final Class<T> type;
+
+    // Creates an object from an Object[] of constructor arguments, or from
+    // no arguments when there are no parameters
+    private final MethodHandle constructor;
+
+    // The normalised name and type of each constructor parameter
+    private final String[] parameterNames;
+    private final Class<?>[] parameterTypes;
+
+    // Setters of a class with no constructor parameters, by normalised name
+    private final Map<String, Property> properties;
+
+    // Identifies what this mapper creates, for caching results
+    private final List<Object> mappingKey;
+
+    // The binding of each set of column labels
+    private final Map<List<String>, Binding<T>> bindings =
+      new ConcurrentHashMap<>();
+
+    // The result set last mapped and its binding, so the labels are only
+    // read once per result set
+    private volatile LastBinding<T> last;
+
+    private RowMapper(Class<T> type, MethodHandle constructor,
+      String[] parameterNames, Class<?>[] parameterTypes,
+      Map<String, Property> properties, List<Object> mappingKey) {
+        this.type = type;
+        this.constructor = constructor;
+        this.parameterNames = parameterNames;
+        this.parameterTypes = parameterTypes;
+        this.properties = properties;
+        this.mappingKey = mappingKey;
+    }
+
+    /**
+     * Get the mapper of rows to a class. Records are created with their
+     * canonical constructor, classes with a no argument constructor are
+     * populated through their setters and non-final fields, and otherwise a
+     * class with a single constructor is created with it, if it was compiled
+     * with -parameters so its parameter names are known. Mappers are created
+     * once for each class and shared.
+     *
+     * @param type The class rows are mapped to.
+     * @param <T> The type rows are mapped to.
+     * @return The mapper.
+     * @throws IllegalArgumentException If there is no way to create the
+     * class, or its constructor or setters cannot be accessed.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> of(Class<T> type) {
+        return (RowMapper<T>) mappers.computeIfAbsent(type,
+          RowMapper::create);
+    }
+
+    /**
+     * Create a mapper of rows to objects created by the given constructor.
+     * Without column names, the parameters are matched by their names, which
+     * requires the class to be compiled with -parameters.
+     *
+     * @param constructor The constructor of the objects.
+     * @param columns The column to pass as each parameter, in order.
+     * @param <T> The type rows are mapped to.
+     * @return The mapper.
+     * @throws IllegalArgumentException If the number of columns does not
+     * match the parameters, the parameter names are not known, or the
+     * constructor cannot be accessed.
+     */
+    public static <T> RowMapper<T> of(Constructor<T> constructor,
+      String... columns) {
+        Parameter[] parameters = constructor.getParameters();
+        String[] names = columns;
+        if(names.length == 0 && parameters.length > 0) {
+            if(!parameters[0].isNamePresent())
+                throw new IllegalArgumentException("Parameter names of " +
+                  constructor + " are unknown, compile with -parameters " +
+                  "or provide the column names");
+            names = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++)
+                names[i] = parameters[i].getName();
+        }
+        if(names.length != parameters.length)
+            throw new IllegalArgumentException(names.length + " columns " +
+              "provided for " + parameters.length + " parameters of " +
+              constructor);
+        return forConstructor(constructor, names);
+    }
+
+    /**
+     * @return The class rows are mapped to.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public Object getMappingKey() {
+        return mappingKey;
+    }
+
+    @Override
+    public T map(ResultSet resultSet) throws SQLException {
+        return bindingFor(resultSet).map(resultSet);
+    }
+
+    private Binding<T> bindingFor(ResultSet resultSet) throws SQLException {
+        LastBinding<T> current = last;
+        if(current != null && current.resultSet.get() == resultSet)
+            return current.binding;
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        List<String> labels = new ArrayList<>(metaData.getColumnCount());
+        for (int i = 1; i <= metaData.getColumnCount(); i++)
+            labels.add(metaData.getColumnLabel(i));
+        Binding<T> binding = bindings.get(labels);
+        if(binding == null) {
+            binding = bind(labels);
+            if(bindings.size() >= MAX_BINDINGS)
+                bindings.clear();
+            bindings.put(labels, binding);
+        }
+        last = new LastBinding<>(resultSet, binding);
+        return binding;
+    }
+
+    /* Resolve the column index and reader of each parameter or property */
+    private Binding<T> bind(List<String> labels) throws SQLException {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = labels.size(); i > 0; i--)
+            columns.put(normalise(labels.get(i - 1)), i);
+        if(parameterNames.length > 0) {
+            int[] indexes = new int[parameterNames.length];
+            ColumnReader[] readers = new ColumnReader[parameterNames.length];
+            for (int i = 0; i < parameterNames.length; i++) {
+                Integer column = columns.get(parameterNames[i]);
+                if(column == null)
+                    throw new SQLException("No column for parameter " +
+                      parameterNames[i] + " of " + type.getName() +
+                      " in " + labels);
+                indexes[i] = column;
+                readers[i] = ColumnReaders.forType(parameterTypes[i]);
+            }
+            return new ConstructorBinding<>(constructor, indexes, readers);
+        }
+        List<Integer> indexes = new ArrayList<>();
+        List<Property> bound = new ArrayList<>();
+        for (Map.Entry<String, Integer> column : columns.entrySet()) {
+            Property property = properties.get(column.getKey());
+            if(property != null) {
+                indexes.add(column.getValue());
+                bound.add(property);
+            }
+        }
+        return new SetterBinding<>(constructor, indexes, bound);
+    }
+
+    private static RowMapper<?> create(Class<?> type) {
+        if(isRecord(type)) {
+            Object[] components = recordComponents(type);
+            String[] names = new String[components.length];
+            Class<?>[] types = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                names[i] = (String) invoke(components[i], "getName");
+                types[i] = (Class<?>) invoke(components[i], "getType");
+            }
+            try {
+                return forConstructor(type.getDeclaredConstructor(types),
+                  names);
+            } catch(NoSuchMethodException e) {
+                throw new IllegalArgumentException("No canonical " +
+                  "constructor of " + type.getName(), e);
+            }
+        }
+        try {
+            return forSetters(type.getDeclaredConstructor());
+        } catch(NoSuchMethodException e) {
+            Constructor<?>[] constructors = type.getDeclaredConstructors();
+            if(constructors.length != 1)
+                throw new IllegalArgumentException("Cannot choose a " +
+                  "constructor of " + type.getName() + " to map rows to");
+            return of(constructors[0]);
+        }
+    }
+
+    private static <T> RowMapper<T> forConstructor(Constructor<T> constructor,
+      String[] names) {
+        int count = names.length;
+        MethodHandle handle = unreflect(constructor)
+          .asType(MethodType.genericMethodType(count))
+          .asSpreader(Object[].class, count);
+        String[] normalised = new String[count];
+        for (int i = 0; i < count; i++)
+            normalised[i] = normalise(names[i]);
+        List<Object> key = new ArrayList<>();
+        key.add(constructor);
+        key.addAll(Arrays.asList(normalised));
+        return new RowMapper<>(constructor.getDeclaringClass(), handle,
+          normalised, constructor.getParameterTypes(), null, key);
+    }
+
+    private static <T> RowMapper<T> forSetters(Constructor<T> constructor) {
+        Class<T> type = constructor.getDeclaringClass();
+        Map<String, Property> properties = new HashMap<>();
+        for (Class<?> c = type; c != null && c != Object.class;
+          c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if(Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) ||
+                  field.isSynthetic())
+                    continue;
+                properties.putIfAbsent(normalise(field.getName()),
+                  new Property(unreflectSetter(field), field.getType()));
+            }
+        }
+        for (Method method : type.getMethods()) {
+            String name = method.getName();
+            if(name.length() > 3 && name.startsWith("set") &&
+              method.getParameterCount() == 1 &&
+              !Modifier.isStatic(method.getModifiers()))
+                properties.put(normalise(name.substring(3)), new Property(
+                  unreflect(method), method.getParameterTypes()[0]));
+        }
+        MethodHandle handle = unreflect(constructor)
+          .asType(MethodType.methodType(Object.class));
+        return new RowMapper<>(type, handle, new String[0], new Class<?>[0],
+          properties, Arrays.asList(constructor));
+    }
+
+    /* The form of a name columns and properties are matched by */
+    private static String normalise(String name) {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static MethodHandle unreflect(AccessibleObject member) {
+        makeAccessible(member);
+        try {
+            if(member instanceof Constructor)
+                return lookup.unreflectConstructor((Constructor<?>) member);
+            return lookup.unreflect((Method) member).asType(MethodType
+              .methodType(void.class, Object.class, Object.class));
+        } catch(IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access " + member, e);
+        }
+    }
+
+    private static MethodHandle unreflectSetter(Field field) {
+        makeAccessible(field);
+        try {
+            return lookup.unreflectSetter(field).asType(MethodType
+              .methodType(void.class, Object.class, Object.class));
+        } catch(IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access " + field, e);
+        }
+    }
+
+    /* Allow non-public members to be used, where the runtime permits it */
+    private static void makeAccessible(AccessibleObject member) {
+        try {
+            member.setAccessible(true);
+        } catch(RuntimeException e) {
+            // Left to fail when unreflected, unless it is public
+        }
+    }
+
+    private static boolean isRecord(Class<?> type) {
+        return IS_RECORD != null && (Boolean) invoke(type, IS_RECORD);
+    }
+
+    private static Object[] recordComponents(Class<?> type) {
+        return (Object[]) invoke(type, GET_RECORD_COMPONENTS);
+    }
+
+    private static Object invoke(Object target, String methodName) {
+        return invoke(target, findMethod(target.getClass(), methodName));
+    }
+
+    private static Object invoke(Object target, Method method) {
+        try {
+            return method.invoke(target);
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot call " + method, e);
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch(NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /* Maps rows with one set of column labels */
+    private interface Binding<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+
+    private static final class ConstructorBinding<T> implements Binding<T> {
+
+        private final MethodHandle constructor;
+        private final int[] columns;
+        private final ColumnReader[] readers;
+
+        private ConstructorBinding(MethodHandle constructor, int[] columns,
+          ColumnReader[] readers) {
+            this.constructor = constructor;
+            this.columns = columns;
+            this.readers = readers;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T map(ResultSet resultSet) throws SQLException {
+            Object[] arguments = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++)
+                arguments[i] = readers[i].read(resultSet, columns[i]);
+            try {
+                return (T) (Object) constructor.invokeExact(arguments);
+            } catch(SQLException | RuntimeException | Error e) {
+                throw e;
+            } catch(Throwable e) {
+                throw new SQLException("Error creating mapped object", e);
+            }
+        }
+    }
+
+    private static final class SetterBinding<T> implements Binding<T> {
+
+        private final MethodHandle constructor;
+        private final int[] columns;
+        private final ColumnReader[] readers;
+        private final MethodHandle[] setters;
+
+        private SetterBinding(MethodHandle constructor, List<Integer> columns,
+          List<Property> properties) {
+            this.constructor = constructor;
+            this.columns = new int[columns.size()];
+            this.readers = new ColumnReader[columns.size()];
+            this.setters = new MethodHandle[columns.size()];
+            for (int i = 0; i < this.columns.length; i++) {
+                this.columns[i] = columns.get(i);
+                this.readers[i] = ColumnReaders.forType(
+                  properties.get(i).type);
+                this.setters[i] = properties.get(i).setter;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T map(ResultSet resultSet) throws SQLException {
+            try {
+                Object target = (Object) constructor.invokeExact();
+                for (int i = 0; i < columns.length; i++)
+                    setters[i].invokeExact(target,
+                      readers[i].read(resultSet, columns[i]));
+                return (T) target;
+            } catch(SQLException | RuntimeException | Error e) {
+                throw e;
+            } catch(Throwable e) {
+                throw new SQLException("Error populating mapped object", e);
+            }
+        }
+    }
+
+    /* A setter or field, taking the object and the value */
+    private static final class Property {
+
+        private final MethodHandle setter;
+        private final Class<?> type;
+
+        private Property(MethodHandle setter, Class<?> type) {
+            this.setter = setter;
+            this.type = type;
+        }
+    }
+
+    private static final class LastBinding<T> {
+
+        private final WeakReference<ResultSet> resultSet;
+        private final Binding<T> binding;
+
+        private LastBinding(ResultSet resultSet, Binding<T> binding) {
+            this.resultSet = new WeakReference<>(resultSet);
+            this.binding = binding;
+        }
+    }
+}
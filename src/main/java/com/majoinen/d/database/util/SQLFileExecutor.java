@@ -7,7 +7,11 @@ import com.majoinen.d.database.log.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.*;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
 
 /**
  * @author Daniel Majoinen
@@ -21,29 +25,40 @@ public class SQLFileExecutor {
     // The resource folder all sql files are located
     private static final String SQL_RESOURCE_DIR = "/sql/";
 
-    // The delimiter used to separate queries in sql files
-    private static final String QUERY_DELIMITER = ";";
+    // The number of statements executed in each transaction by default
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    // The most characters of sql held in memory before a chunk is executed
+    private static final int MAX_CHUNK_CHARS = 4 * 1024 * 1024;
 
     // The file extension of sql files
     private static final String SQL_FILE_EXTENSION = ".sql";
 
-    private static Map<SQLDatabaseController, SQLFileExecutor> map;
+    private static final Registry<SQLDatabaseController, SQLFileExecutor>
+      executors = new Registry<>();
 
     private SQLDatabaseController databaseController;
 
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+
     private SQLFileExecutor(SQLDatabaseController databaseController) {
         this.databaseController = databaseController;
     }
 
     public static SQLFileExecutor getInstance(SQLDatabaseController
       databaseController) {
-        if(map == null)
-            map = new HashMap<>();
-        else if(map.containsKey(databaseController))
-            return map.get(databaseController);
-        SQLFileExecutor executor = new SQLFileExecutor(databaseController);
-        map.put(databaseController, executor);
-        return executor;
+        return executors.computeIfAbsent(databaseController,
+          SQLFileExecutor::new);
+    }
+
+    /**
+     * Forget the executor of a controller, such as when it is closed.
+     *
+     * @param databaseController The controller of the executor.
+     */
+    public static void removeInstance(SQLDatabaseController
+      databaseController) {
+        executors.remove(databaseController);
     }
 
     public boolean executeFile(String filename) throws DBUtilsException {
@@ -55,9 +70,28 @@ public class SQLFileExecutor {
         return executeFile(filename, true);
     }
 
+    /**
+     * Set how many statements of a file are executed in each transaction.
+     * Larger chunks commit less often, but hold more sql in memory.
+     *
+     * @param chunkSize The number of statements in each transaction.
+     * @return This executor.
+     */
+    public SQLFileExecutor setChunkSize(int chunkSize) {
+        if(chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be positive");
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
     /**
      * Executes all queries found in the specified resources/sql file.
-     * Queries should be separated with a semi-colon.
+     * Queries should be separated with a semi-colon. The file is read one
+     * statement at a time, and its statements are executed in chunks, each
+     * in its own batch query, so a file of any size is executed in constant
+     * memory. Consecutive statements with the same sql share a prepared
+     * statement. If a chunk fails it is rolled back, but the chunks before
+     * it remain committed.
      *
      * @param filename Name of the file to execute.
      * @return True if all the queries were successful.
@@ -67,25 +101,64 @@ public class SQLFileExecutor {
      */
     private boolean executeFile(String filename, boolean required)
       throws DBUtilsException {
-        String file = getSQLFileContents(filename, required);
-        if(file != null) {
-            String[] queries = file.split(QUERY_DELIMITER);
-            List<String> validQueries = new ArrayList<>();
-            for (String query : queries) {
-                if (query != null && query.length() != 0)
-                    validQueries.add(query);
+        String file = SQL_RESOURCE_DIR
+          .concat(filename)
+          .concat(SQL_FILE_EXTENSION);
+        InputStream is = getClass().getResourceAsStream(file);
+        if(is == null) {
+            if(required) {
+                logger.error("Sql file missing for file: " + filename);
+                throw new NullPointerException("resources" + file +
+                  " is missing");
             }
-            return !validQueries.isEmpty() && databaseController
-              .prepareBatchQuery(validQueries)
-              .executeUpdate() > 0;
-        } else {
-            String completeFilename = SQL_RESOURCE_DIR
-              .concat(filename)
-              .concat(SQL_FILE_EXTENSION);
-            logger.info("Skipping resources" + completeFilename +
-              ": File not found");
+            logger.info("Skipping resources" + file + ": File not found");
             return false;
         }
+        try(SQLScriptReader script = new SQLScriptReader(
+          new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            List<String> chunk = new ArrayList<>();
+            int chunkChars = 0;
+            int chunkLine = 0;
+            int affectedRows = 0;
+            int statements = 0;
+            String statement;
+            while((statement = script.next()) != null) {
+                if(chunk.isEmpty())
+                    chunkLine = script.getStatementLine();
+                chunk.add(statement);
+                chunkChars += statement.length();
+                statements++;
+                if(chunk.size() >= chunkSize || chunkChars >= MAX_CHUNK_CHARS) {
+                    affectedRows += executeChunk(chunk, file, chunkLine);
+                    chunk.clear();
+                    chunkChars = 0;
+                }
+            }
+            if(!chunk.isEmpty())
+                affectedRows += executeChunk(chunk, file, chunkLine);
+            if(statements == 0 && required) {
+                logger.error("resources" + file + " is empty");
+                throw new NullPointerException("resources" + file +
+                  " is empty");
+            }
+            logger.debug("Executed {} statements from resources{}",
+              statements, file);
+            return affectedRows > 0;
+        } catch(IOException e) {
+            throw new DBUtilsException("IOException reading resource file" +
+              file, e);
+        }
+    }
+
+    private int executeChunk(List<String> chunk, String file, int line)
+      throws DBUtilsException {
+        try {
+            return databaseController.prepareBatchQuery(chunk)
+              .executeUpdate();
+        } catch(DBUtilsException e) {
+            throw new DBUtilsException("Error executing resources" + file +
+              " from line " + line, e);
+        }
     }
 
     /**
@@ -121,7 +194,7 @@ public class SQLFileExecutor {
                 logger.error("resources"+ file +" is empty");
                 throw new NullPointerException("resources"+ file +" is empty");
             } else {
-                logger.debug("resources"+ file +" is empty");
+                logger.debug("resources{} is empty", file);
             }
             return contents;
         } catch(IOException e) {
@@ -1,56 +1,448 @@
 package com.majoinen.d.database.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 /**
  * Utility class to work with SQL queries and their parameters.
  *
+ * Named parameters are written as :name, @name or $name. Queries are
+ * compiled in a single pass into an SQLTemplate, skipping string literals,
+ * quoted identifiers and comments, and the template is cached so repeated
+ * executions of the same sql are not parsed again.
+ *
+ * The cache holds two generations of templates. Templates are added to the
+ * young generation, and once it is full it becomes the old generation and
+ * the previous old generation is dropped. A template found in the old
+ * generation is moved back into the young one, so sql in use is kept while
+ * sql built dynamically cannot grow the cache without bound.
+ *
  * @author Daniel Majoinen
  * @version 1.0, 22/7/17
  */
 public final class SQLParameterParser {
 
+    // The templates held by each generation, so at most twice this many are
+    // cached
+    private static final int GENERATION_SIZE = 1024;
+
+    // A list of values after IN, which is reduced to one value in a shape
+    private static final Pattern IN_LIST = Pattern.compile(
+      "(?i)(\\bIN ?)\\( ?\\? ?(?:, ?\\? ?)+\\)");
+
+    // Words which end a FROM clause
+    private static final Set<String> FROM_END_KEYWORDS = new HashSet<>(
+      Arrays.asList("WHERE", "GROUP", "ORDER", "LIMIT", "UNION", "EXCEPT",
+        "INTERSECT", "HAVING", "WINDOW", "RETURNING"));
+
+    // Words which may follow UPDATE or INTO where there is no table
+    private static final Set<String> NOT_TABLE_KEYWORDS = new HashSet<>(
+      Arrays.asList("SET", "ON", "OF", "SELECT", "VALUES", "DEFAULT"));
+
+    // Marks a quoted identifier token, so it is never taken as a keyword
+    static final char QUOTED = '"';
+
+    private static volatile Map<String, SQLTemplate> youngTemplates =
+      new ConcurrentHashMap<>();
+    private static volatile Map<String, SQLTemplate> oldTemplates =
+      new ConcurrentHashMap<>();
+
     private SQLParameterParser() { }
 
+    /**
+     * Get the compiled template for an sql query, compiling and caching it if
+     * it has not been seen before.
+     *
+     * @param sql The sql query, which may contain named parameters.
+     * @return The compiled template.
+     */
+    public static SQLTemplate compile(String sql) {
+        Map<String, SQLTemplate> young = youngTemplates;
+        SQLTemplate template = young.get(sql);
+        if(template != null)
+            return template;
+        template = oldTemplates.get(sql);
+        if(template == null)
+            template = parse(sql);
+        young.put(sql, template);
+        if(young.size() >= GENERATION_SIZE)
+            age(young);
+        return template;
+    }
+
+    /* Make a full young generation the old one, unless another thread
+     * already has */
+    private static synchronized void age(Map<String, SQLTemplate> young) {
+        if(youngTemplates != young)
+            return;
+        oldTemplates = young;
+        youngTemplates = new ConcurrentHashMap<>();
+    }
+
     /* Replace occurrences of all parameter keys with a ? */
     public static String removeParameterKeys(String sql, Map<String, Object>
       parameters) {
-        String s = sql;
-        for (String key : parameters.keySet())
-            s = s.replaceAll(key, "?");
-        return s;
+        return compile(sql).getPreparedSql();
     }
 
     /* Get a list of all parameter keys in the order they appear */
     public static List<String> getParameterKeys(String sql, Map<String, Object>
       parameters) {
         List<String> parameterKeys = new ArrayList<>();
-        int fromIndex = 0;
-        boolean finished = false;
-        while(!finished) {
-            // Reset each iteration
-            int current = sql.length();
-            String nextKey = null;
-            // Find first occurrence of a key after previous key (if any)
-            for (String key : parameters.keySet()) {
-                final int index = sql.indexOf(key, fromIndex);
-                final boolean beforeCurrent = index > 0 && index < current;
-                if (beforeCurrent) {
-                    current = index;
-                    nextKey = key;
+        for (String key : compile(sql).getParameterKeys()) {
+            if(key != null && parameters.containsKey(key))
+                parameterKeys.add(key);
+        }
+        return parameterKeys;
+    }
+
+    /**
+     * Lex an sql query in one pass, replacing each named parameter with a ?
+     * and recording which key belongs at each position.
+     *
+     * @param sql The sql query to compile.
+     * @return The compiled template.
+     */
+    private static SQLTemplate parse(String sql) {
+        StringBuilder prepared = new StringBuilder(sql.length());
+        List<String> keys = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while(i < length) {
+            char c = sql.charAt(i);
+            int end;
+            if(c == '\'' || c == '"' || c == '`') {
+                end = skipQuoted(sql, i, c);
+            } else if(c == '[') {
+                end = skipQuoted(sql, i, ']');
+            } else if(c == '-' && startsWith(sql, i, "--")) {
+                end = skipLineComment(sql, i);
+            } else if(c == '/' && startsWith(sql, i, "/*")) {
+                end = skipBlockComment(sql, i);
+            } else if(c == '?') {
+                end = skipDigits(sql, i + 1);
+                keys.add(null);
+            } else if(isParameterPrefix(c) && i + 1 < length &&
+              isIdentifierStart(sql.charAt(i + 1))) {
+                end = skipIdentifier(sql, i + 1);
+                keys.add(sql.substring(i, end));
+                prepared.append('?');
+                i = end;
+                continue;
+            } else {
+                end = i + 1;
+            }
+            prepared.append(sql, i, end);
+            i = end;
+        }
+        return new SQLTemplate(sql, prepared.toString(),
+          keys.toArray(new String[0]), positionsOf(keys));
+    }
+
+    /**
+     * Reduce an sql query to its shape, so executions which differ only in
+     * their values are grouped together. Literals, numbers and parameters
+     * become a ?, lists of them after IN become a single ?, comments are
+     * removed and whitespace is collapsed to single spaces.
+     *
+     * @param sql The sql query to normalise.
+     * @return The shape of the query.
+     */
+    static String normalise(String sql) {
+        StringBuilder shape = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        boolean space = false;
+        while(i < length) {
+            char c = sql.charAt(i);
+            int end;
+            String token = null;
+            if(c == '\'') {
+                end = skipQuoted(sql, i, c);
+                token = "?";
+            } else if(c == '"' || c == '`') {
+                end = skipQuoted(sql, i, c);
+            } else if(c == '[') {
+                end = skipQuoted(sql, i, ']');
+            } else if(c == '-' && startsWith(sql, i, "--")) {
+                i = skipLineComment(sql, i);
+                space = true;
+                continue;
+            } else if(c == '/' && startsWith(sql, i, "/*")) {
+                i = skipBlockComment(sql, i);
+                space = true;
+                continue;
+            } else if(Character.isWhitespace(c)) {
+                i++;
+                space = true;
+                continue;
+            } else if(c == '?') {
+                end = skipDigits(sql, i + 1);
+                token = "?";
+            } else if(isParameterPrefix(c) && i + 1 < length &&
+              isIdentifierStart(sql.charAt(i + 1))) {
+                end = skipIdentifier(sql, i + 1);
+                token = "?";
+            } else if(isIdentifierStart(c)) {
+                end = skipIdentifier(sql, i);
+            } else if(Character.isDigit(c) || (c == '.' && i + 1 < length &&
+              Character.isDigit(sql.charAt(i + 1)))) {
+                end = skipNumber(sql, i);
+                token = "?";
+            } else {
+                end = i + 1;
+            }
+            if(space && shape.length() > 0)
+                shape.append(' ');
+            space = false;
+            if(token != null)
+                shape.append(token);
+            else
+                shape.append(sql, i, end);
+            i = end;
+        }
+        return IN_LIST.matcher(shape).replaceAll("$1(?)");
+    }
+
+    /**
+     * Find the tables an sql query reads or writes: those named after FROM,
+     * JOIN, INTO, UPDATE and TABLE, and listed in FROM clauses. Schema names
+     * are dropped and names are lower cased, as SQLite compares them without
+     * case. Tables used through views or triggers are not found.
+     *
+     * @param sql The sql query.
+     * @return The lower cased names of the tables.
+     */
+    static Set<String> tablesOf(String sql) {
+        List<String> tokens = tokenise(sql);
+        Set<String> tables = new LinkedHashSet<>();
+        // The nesting depths which are within a FROM clause
+        BitSet inFrom = new BitSet();
+        int depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            int next = i + 1;
+            if("(".equals(token)) {
+                inFrom.clear(++depth);
+            } else if(")".equals(token)) {
+                inFrom.clear(depth);
+                depth = Math.max(0, depth - 1);
+            } else if(",".equals(token)) {
+                if(inFrom.get(depth))
+                    readTable(tokens, next, tables);
+            } else if(";".equals(token)) {
+                inFrom.clear();
+                depth = 0;
+            } else if(token.charAt(0) != QUOTED) {
+                String keyword = token.toUpperCase(Locale.ROOT);
+                if("FROM".equals(keyword) || "JOIN".equals(keyword)) {
+                    readTable(tokens, next, tables);
+                    inFrom.set(depth);
+                } else if(FROM_END_KEYWORDS.contains(keyword)) {
+                    inFrom.clear(depth);
+                } else if("INTO".equals(keyword)) {
+                    readTable(tokens, next, tables);
+                } else if("UPDATE".equals(keyword)) {
+                    if(isKeyword(tokens, next, "OR"))
+                        next += 2;
+                    readTable(tokens, next, tables);
+                } else if("TABLE".equals(keyword)) {
+                    if(isKeyword(tokens, next, "IF"))
+                        next += isKeyword(tokens, next + 1, "NOT") ? 3 : 2;
+                    readTable(tokens, next, tables);
                 }
             }
-            // If a key was found add it to the list and shift fromIndex
-            // Otherwise, end loop
-            if(nextKey != null) {
-                parameterKeys.add(nextKey);
-                fromIndex = current + 1;
+        }
+        return tables;
+    }
+
+    /* Add the possibly schema qualified table name at index, if there is one */
+    private static int readTable(List<String> tokens, int index,
+      Set<String> tables) {
+        if(!isName(tokens, index))
+            return index;
+        if(index + 2 < tokens.size() && ".".equals(tokens.get(index + 1)) &&
+          isName(tokens, index + 2))
+            index += 2;
+        String name = tokens.get(index);
+        if(name.charAt(0) == QUOTED)
+            name = name.substring(1);
+        tables.add(name.toLowerCase(Locale.ROOT));
+        return index + 1;
+    }
+
+    private static boolean isName(List<String> tokens, int index) {
+        if(index >= tokens.size())
+            return false;
+        String token = tokens.get(index);
+        return token.charAt(0) == QUOTED || (isIdentifierStart(
+          token.charAt(0)) && !NOT_TABLE_KEYWORDS.contains(
+            token.toUpperCase(Locale.ROOT)));
+    }
+
+    private static boolean isKeyword(List<String> tokens, int index,
+      String keyword) {
+        return index < tokens.size() &&
+          keyword.equalsIgnoreCase(tokens.get(index));
+    }
+
+    /**
+     * Split sql into words, quoted identifiers and punctuation. Quoted
+     * identifiers are unquoted and marked with a leading QUOTED; literals,
+     * numbers and parameters become a ?, and comments are dropped.
+     *
+     * @param sql The sql to split.
+     * @return The tokens, in order.
+     */
+    static List<String> tokenise(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while(i < length) {
+            char c = sql.charAt(i);
+            int end;
+            if(c == '"' || c == '`' || c == '[') {
+                end = skipQuoted(sql, i, c == '[' ? ']' : c);
+                tokens.add(QUOTED + sql.substring(i + 1, Math.max(i + 1,
+                  end - 1)));
+            } else if(c == '\'') {
+                end = skipQuoted(sql, i, c);
+                tokens.add("?");
+            } else if(c == '-' && startsWith(sql, i, "--")) {
+                end = skipLineComment(sql, i);
+            } else if(c == '/' && startsWith(sql, i, "/*")) {
+                end = skipBlockComment(sql, i);
+            } else if(isIdentifierStart(c)) {
+                end = skipIdentifier(sql, i);
+                tokens.add(sql.substring(i, end));
+            } else if(Character.isWhitespace(c)) {
+                end = i + 1;
+            } else if(Character.isDigit(c)) {
+                end = skipNumber(sql, i);
+                tokens.add("?");
+            } else if(isParameterPrefix(c) && i + 1 < length &&
+              isIdentifierStart(sql.charAt(i + 1))) {
+                end = skipIdentifier(sql, i + 1);
+                tokens.add("?");
             } else {
-                finished = true;
+                end = i + 1;
+                tokens.add(String.valueOf(c));
             }
+            i = end;
         }
-        return parameterKeys;
+        return tokens;
+    }
+
+    /* Map each named key to every 1-based position it appears */
+    private static Map<String, int[]> positionsOf(List<String> keys) {
+        Map<String, int[]> positions = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if(key == null)
+                continue;
+            int[] existing = positions.get(key);
+            int[] updated;
+            if(existing == null) {
+                updated = new int[1];
+            } else {
+                updated = new int[existing.length + 1];
+                System.arraycopy(existing, 0, updated, 0, existing.length);
+            }
+            updated[updated.length - 1] = i + 1;
+            positions.put(key, updated);
+        }
+        return positions;
+    }
+
+    /**
+     * Find the end of a quoted string or identifier. A doubled closing
+     * character, such as '' inside a string, does not end it.
+     *
+     * @param sql The sql being lexed.
+     * @param start The index of the opening quote.
+     * @param close The closing quote character.
+     * @return The index after the closing quote, or the end of the sql if
+     * it is unterminated.
+     */
+    static int skipQuoted(String sql, int start, char close) {
+        int i = start + 1;
+        int length = sql.length();
+        while(i < length) {
+            if(sql.charAt(i) == close) {
+                if(close != ']' && i + 1 < length && sql.charAt(i + 1) == close)
+                    i += 2;
+                else
+                    return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    static int skipLineComment(String sql, int start) {
+        int end = sql.indexOf('\n', start);
+        return end < 0 ? sql.length() : end + 1;
+    }
+
+    static int skipBlockComment(String sql, int start) {
+        int end = sql.indexOf("*/", start + 2);
+        return end < 0 ? sql.length() : end + 2;
+    }
+
+    static int skipIdentifier(String sql, int start) {
+        int i = start;
+        while(i < sql.length() && isIdentifierPart(sql.charAt(i)))
+            i++;
+        return i;
+    }
+
+    static boolean startsWith(String sql, int index, String prefix) {
+        return sql.startsWith(prefix, index);
+    }
+
+    static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static int skipDigits(String sql, int start) {
+        int i = start;
+        while(i < sql.length() && Character.isDigit(sql.charAt(i)))
+            i++;
+        return i;
+    }
+
+    /* Skip a numeric literal, including any fraction, exponent or hex */
+    private static int skipNumber(String sql, int start) {
+        int i = start;
+        while(i < sql.length()) {
+            char c = sql.charAt(i);
+            if(Character.isLetterOrDigit(c) || c == '.')
+                i++;
+            else if((c == '+' || c == '-') && (sql.charAt(i - 1) == 'e' ||
+              sql.charAt(i - 1) == 'E'))
+                i++;
+            else
+                break;
+        }
+        return i;
+    }
+
+    private static boolean isParameterPrefix(char c) {
+        return c == ':' || c == '@' || c == '$';
     }
 }
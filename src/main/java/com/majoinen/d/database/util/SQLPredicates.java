@@ -0,0 +1,503 @@
+package com.majoinen.d.database.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The columns a query could find its rows with through an index: those it
+ * compares to a value with =, IS or IN, those it compares to a range with
+ * <, <=, >, >= or BETWEEN, the columns joined on, and the columns it orders
+ * by. Only the top level of the first statement is read, and a WHERE or ON
+ * clause containing OR is skipped, as SQLite can not search one index for
+ * both sides of an OR. Subqueries and common table expressions are not
+ * read, and expressions such as lower(name) = ? are not indexable columns.
+ *
+ * Names are lower cased, as SQLite compares them without case, and aliases
+ * are resolved to the tables they name.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 30/11/17
+ */
+public final class SQLPredicates {
+
+    // Words which can not be the alias of a table
+    private static final Set<String> NOT_ALIAS_KEYWORDS = new HashSet<>(
+      Arrays.asList("WHERE", "GROUP", "ORDER", "LIMIT", "UNION", "EXCEPT",
+        "INTERSECT", "HAVING", "WINDOW", "RETURNING", "JOIN", "INNER",
+        "LEFT", "RIGHT", "FULL", "OUTER", "CROSS", "NATURAL", "ON", "USING",
+        "INDEXED", "NOT", "SET"));
+
+    // Words which end a WHERE, ON, ORDER BY or SET clause
+    private static final Set<String> CLAUSE_END_KEYWORDS = new HashSet<>(
+      Arrays.asList("GROUP", "HAVING", "LIMIT", "WINDOW", "RETURNING",
+        "USING", "INNER", "LEFT", "RIGHT", "FULL", "CROSS", "NATURAL",
+        "JOIN", "WHERE", "ON", "ORDER", "FROM"));
+
+    // Words which carry on a FROM clause
+    private static final Set<String> JOIN_KEYWORDS = new HashSet<>(
+      Arrays.asList("INNER", "LEFT", "RIGHT", "FULL", "CROSS", "NATURAL",
+        "JOIN", "FROM"));
+
+    // Words which end a compound select, after which nothing is read
+    private static final Set<String> COMPOUND_KEYWORDS = new HashSet<>(
+      Arrays.asList("UNION", "EXCEPT", "INTERSECT"));
+
+    private static final SQLPredicates NONE = new SQLPredicates();
+
+    private final Set<String> tables = new LinkedHashSet<>();
+    private final Set<Column> equalityColumns = new LinkedHashSet<>();
+    private final Set<Column> rangeColumns = new LinkedHashSet<>();
+    private final List<Column> orderColumns = new ArrayList<>();
+    private String writtenTable;
+    private Set<String> writtenColumns;
+
+    // Each table by its name and alias, while parsing
+    private final Map<String, String> aliases = new HashMap<>();
+
+    private SQLPredicates() { }
+
+    /**
+     * Find the indexable columns of an sql query.
+     *
+     * @param sql The sql query, such as the shape of a query.
+     * @return The columns, which are empty if the query is not a SELECT,
+     * UPDATE, DELETE or INSERT.
+     */
+    public static SQLPredicates parse(String sql) {
+        List<String> tokens = SQLParameterParser.tokenise(sql);
+        if(tokens.isEmpty())
+            return NONE;
+        String first = keyword(tokens, 0);
+        if(!"SELECT".equals(first) && !"UPDATE".equals(first) &&
+          !"DELETE".equals(first) && !"INSERT".equals(first) &&
+          !"REPLACE".equals(first))
+            return NONE;
+        SQLPredicates predicates = new SQLPredicates();
+        predicates.read(tokens, first);
+        return predicates;
+    }
+
+    /* Split the top level into clauses, then read each clause */
+    private void read(List<String> tokens, String statement) {
+        int i = 1;
+        if("INSERT".equals(statement) || "REPLACE".equals(statement)) {
+            while(i < tokens.size() && !"INTO".equals(keyword(tokens, i)))
+                i++;
+            writtenTable = tableAt(tokens, i + 1);
+            return;
+        }
+        if("UPDATE".equals(statement)) {
+            if("OR".equals(keyword(tokens, i)))
+                i += 2;
+            writtenTable = tableAt(tokens, i);
+            i = readTable(tokens, i);
+        }
+        List<int[]> conditions = new ArrayList<>();
+        int[] order = null;
+        int[] set = null;
+        int[] clause = null;
+        boolean inFrom = false;
+        int depth = 0;
+        int end = tokens.size();
+        for(; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if("(".equals(token)) {
+                depth++;
+                continue;
+            } else if(")".equals(token)) {
+                depth = Math.max(0, depth - 1);
+                continue;
+            } else if(";".equals(token)) {
+                end = i;
+                break;
+            }
+            if(depth > 0)
+                continue;
+            String keyword = keyword(tokens, i);
+            if(keyword == null) {
+                if(",".equals(token) && inFrom)
+                    i = readTable(tokens, i + 1) - 1;
+                continue;
+            }
+            if(COMPOUND_KEYWORDS.contains(keyword)) {
+                end = i;
+                break;
+            }
+            if(CLAUSE_END_KEYWORDS.contains(keyword)) {
+                if(clause != null)
+                    clause[1] = i;
+                clause = null;
+                inFrom = JOIN_KEYWORDS.contains(keyword);
+            }
+            if("FROM".equals(keyword) || "JOIN".equals(keyword)) {
+                if("DELETE".equals(statement) && writtenTable == null)
+                    writtenTable = tableAt(tokens, i + 1);
+                i = readTable(tokens, i + 1) - 1;
+            } else if("WHERE".equals(keyword) || "ON".equals(keyword)) {
+                clause = new int[] { i + 1, -1 };
+                conditions.add(clause);
+            } else if("ORDER".equals(keyword) &&
+              "BY".equals(keyword(tokens, i + 1))) {
+                clause = order = new int[] { i + 2, -1 };
+            } else if("SET".equals(keyword) && "UPDATE".equals(statement) &&
+              set == null) {
+                clause = set = new int[] { i + 1, -1 };
+            }
+        }
+        if(clause != null)
+            clause[1] = end;
+        for(int[] condition : conditions)
+            readCondition(tokens, condition[0], condition[1]);
+        if(order != null)
+            readOrder(tokens, order[0], order[1]);
+        if(set != null)
+            readSet(tokens, set[0], set[1]);
+    }
+
+    /* Read a possibly schema qualified table and its alias at index,
+     * returning the index after them */
+    private int readTable(List<String> tokens, int index) {
+        String table = tableAt(tokens, index);
+        if(table == null)
+            return index;
+        index += ".".equals(token(tokens, index + 1)) ? 3 : 1;
+        tables.add(table);
+        aliases.put(table, table);
+        if("AS".equals(keyword(tokens, index)))
+            index++;
+        if(isName(tokens, index) && (tokens.get(index).charAt(0) ==
+          SQLParameterParser.QUOTED || !NOT_ALIAS_KEYWORDS.contains(
+            keyword(tokens, index))))
+            aliases.put(name(tokens.get(index++)), table);
+        return index;
+    }
+
+    /* The possibly schema qualified table at index, or null */
+    private static String tableAt(List<String> tokens, int index) {
+        if(!isName(tokens, index))
+            return null;
+        if(".".equals(token(tokens, index + 1)) && isName(tokens, index + 2))
+            index += 2;
+        return name(tokens.get(index));
+    }
+
+    /* Find each column compared to a value, range or column, unless the
+     * condition has an OR. Subqueries are skipped */
+    private void readCondition(List<String> tokens, int start, int end) {
+        for(int i = start; i < end; i++)
+            if("OR".equals(keyword(tokens, i)))
+                return;
+        for(int i = start; i < end; i++) {
+            String token = tokens.get(i);
+            if("(".equals(token) && "SELECT".equals(keyword(tokens, i + 1))) {
+                i = skipParentheses(tokens, i, end);
+                continue;
+            }
+            String previous = i == start ? null : tokens.get(i - 1);
+            if(previous != null && !"(".equals(previous) &&
+              !"AND".equalsIgnoreCase(previous))
+                continue;
+            Column column = readColumn(tokens, i, end);
+            if(column != null)
+                i = readComparison(tokens, column, columnEnd(tokens, i), end);
+            else if("?".equals(token))
+                i = readReversedComparison(tokens, i + 1, end);
+        }
+    }
+
+    /* Read the comparison after a column, returning the last index read */
+    private int readComparison(List<String> tokens, Column column, int index,
+      int end) {
+        String operator = token(tokens, index);
+        String keyword = keyword(tokens, index);
+        int value;
+        boolean range;
+        if("=".equals(operator)) {
+            value = "=".equals(token(tokens, index + 1)) ? index + 2 :
+              index + 1;
+            range = false;
+        } else if("IS".equals(keyword)) {
+            if("NOT".equals(keyword(tokens, index + 1)))
+                return index;
+            value = index + 1;
+            range = false;
+        } else if("IN".equals(keyword)) {
+            equalityColumns.add(column);
+            return index;
+        } else if("BETWEEN".equals(keyword)) {
+            rangeColumns.add(column);
+            return index;
+        } else if("<".equals(operator) || ">".equals(operator)) {
+            String next = token(tokens, index + 1);
+            if(">".equals(next))
+                return index;
+            value = "=".equals(next) ? index + 2 : index + 1;
+            range = true;
+        } else {
+            return index - 1;
+        }
+        if(value >= end)
+            return index;
+        if("?".equals(tokens.get(value))) {
+            (range ? rangeColumns : equalityColumns).add(column);
+            return value;
+        }
+        Column other = readColumn(tokens, value, end);
+        if(other == null || range)
+            return index;
+        equalityColumns.add(column);
+        equalityColumns.add(other);
+        return columnEnd(tokens, value) - 1;
+    }
+
+    /* Read a column compared to a value before it, such as ? < id,
+     * returning the last index read */
+    private int readReversedComparison(List<String> tokens, int index,
+      int end) {
+        String operator = token(tokens, index);
+        int column = index + 1;
+        boolean range = "<".equals(operator) || ">".equals(operator);
+        if(range && ">".equals(token(tokens, column)))
+            return index;
+        if(!range && !"=".equals(operator))
+            return index - 1;
+        if("=".equals(token(tokens, column)))
+            column++;
+        Column read = readColumn(tokens, column, end);
+        if(read == null)
+            return index;
+        (range ? rangeColumns : equalityColumns).add(read);
+        return columnEnd(tokens, column) - 1;
+    }
+
+    /* Read the columns of an ORDER BY, which are only kept if every term
+     * is a column */
+    private void readOrder(List<String> tokens, int start, int end) {
+        List<Column> columns = new ArrayList<>();
+        int i = start;
+        while(i < end) {
+            Column column = readColumn(tokens, i, end);
+            if(column == null)
+                return;
+            columns.add(column);
+            i = columnEnd(tokens, i);
+            while(i < end && !",".equals(tokens.get(i))) {
+                String keyword = keyword(tokens, i);
+                if(!"ASC".equals(keyword) && !"DESC".equals(keyword) &&
+                  !"NULLS".equals(keyword) && !"FIRST".equals(keyword) &&
+                  !"LAST".equals(keyword))
+                    return;
+                i++;
+            }
+            i++;
+        }
+        orderColumns.addAll(columns);
+    }
+
+    /* Read the columns an UPDATE sets, or every column if any are set as
+     * a row */
+    private void readSet(List<String> tokens, int start, int end) {
+        writtenColumns = new LinkedHashSet<>();
+        int depth = 0;
+        boolean assignment = true;
+        for(int i = start; i < end; i++) {
+            String token = tokens.get(i);
+            if("(".equals(token)) {
+                if(assignment) {
+                    writtenColumns = null;
+                    return;
+                }
+                depth++;
+            } else if(")".equals(token)) {
+                depth--;
+            } else if(depth == 0 && ",".equals(token)) {
+                assignment = true;
+            } else if(assignment && isName(tokens, i)) {
+                writtenColumns.add(name(token));
+                assignment = false;
+            }
+        }
+    }
+
+    /* Read a possibly table qualified column at index, or null if there is
+     * no column there */
+    private Column readColumn(List<String> tokens, int index, int end) {
+        if(index >= end || !isName(tokens, index) ||
+          "(".equals(token(tokens, index + 1)))
+            return null;
+        if(!".".equals(token(tokens, index + 1)))
+            return new Column(tables.size() == 1 ? tables.iterator().next() :
+              null, name(tokens.get(index)));
+        if(index + 2 >= end || !isName(tokens, index + 2))
+            return null;
+        String alias = name(tokens.get(index));
+        return new Column(aliases.containsKey(alias) ? aliases.get(alias) :
+          alias, name(tokens.get(index + 2)));
+    }
+
+    /* The index after the possibly table qualified column at index */
+    private static int columnEnd(List<String> tokens, int index) {
+        return ".".equals(token(tokens, index + 1)) ? index + 3 : index + 1;
+    }
+
+    /* The index of the parenthesis closing the one at index */
+    private static int skipParentheses(List<String> tokens, int index,
+      int end) {
+        int depth = 0;
+        for(int i = index; i < end; i++) {
+            if("(".equals(tokens.get(i)))
+                depth++;
+            else if(")".equals(tokens.get(i)) && --depth == 0)
+                return i;
+        }
+        return end;
+    }
+
+    private static boolean isName(List<String> tokens, int index) {
+        String token = token(tokens, index);
+        if(token == null || token.isEmpty())
+            return false;
+        if(token.charAt(0) == SQLParameterParser.QUOTED)
+            return true;
+        return SQLParameterParser.isIdentifierStart(token.charAt(0)) &&
+          !isOperatorKeyword(token.toUpperCase(Locale.ROOT));
+    }
+
+    private static boolean isOperatorKeyword(String keyword) {
+        return "AND".equals(keyword) || "OR".equals(keyword) ||
+          "NOT".equals(keyword) || "IS".equals(keyword) ||
+          "IN".equals(keyword) || "BETWEEN".equals(keyword) ||
+          "NULL".equals(keyword) || "LIKE".equals(keyword) ||
+          "EXISTS".equals(keyword) || "CASE".equals(keyword) ||
+          "SELECT".equals(keyword) || "ASC".equals(keyword) ||
+          "DESC".equals(keyword) || "COLLATE".equals(keyword) ||
+          NOT_ALIAS_KEYWORDS.contains(keyword);
+    }
+
+    private static String token(List<String> tokens, int index) {
+        return index < tokens.size() ? tokens.get(index) : null;
+    }
+
+    /* The upper cased word at index, or null if it is not an unquoted
+     * word */
+    private static String keyword(List<String> tokens, int index) {
+        String token = token(tokens, index);
+        if(token == null || token.isEmpty() ||
+          !SQLParameterParser.isIdentifierStart(token.charAt(0)))
+            return null;
+        return token.toUpperCase(Locale.ROOT);
+    }
+
+    private static String name(String token) {
+        if(token.charAt(0) == SQLParameterParser.QUOTED)
+            token = token.substring(1);
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return The tables the query reads or writes, outside of subqueries.
+     */
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(tables);
+    }
+
+    /**
+     * @return The columns compared to a value with =, IS or IN, or joined
+     * to another column, in the order they appear.
+     */
+    public Set<Column> getEqualityColumns() {
+        return Collections.unmodifiableSet(equalityColumns);
+    }
+
+    /**
+     * @return The columns compared to a range of values.
+     */
+    public Set<Column> getRangeColumns() {
+        return Collections.unmodifiableSet(rangeColumns);
+    }
+
+    /**
+     * @return The columns of the ORDER BY, or none if it orders by an
+     * expression.
+     */
+    public List<Column> getOrderColumns() {
+        return Collections.unmodifiableList(orderColumns);
+    }
+
+    public boolean isWrite() {
+        return writtenTable != null;
+    }
+
+    /**
+     * @return The table an INSERT, UPDATE or DELETE writes, or null if the
+     * query is not one.
+     */
+    public String getWrittenTable() {
+        return writtenTable;
+    }
+
+    /**
+     * @return The columns an UPDATE sets, or null if every column of the
+     * written table may change, as for an INSERT or DELETE.
+     */
+    public Set<String> getWrittenColumns() {
+        return writtenColumns == null ? null :
+          Collections.unmodifiableSet(writtenColumns);
+    }
+
+    /**
+     * A column of a query, and the table it belongs to if the query names
+     * it or reads a single table.
+     */
+    public static final class Column {
+
+        private final String table;
+        private final String name;
+
+        public Column(String table, String name) {
+            this.table = table;
+            this.name = name;
+        }
+
+        /**
+         * @return The table of the column, or null if it is not known.
+         */
+        public String getTable() {
+            return table;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o)
+                return true;
+            if(!(o instanceof Column))
+                return false;
+            Column column = (Column) o;
+            return Objects.equals(table, column.table) &&
+              name.equals(column.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(table, name);
+        }
+
+        @Override
+        public String toString() {
+            return table == null ? name : table + "." + name;
+        }
+    }
+}
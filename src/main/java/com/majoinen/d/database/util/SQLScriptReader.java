@@ -0,0 +1,271 @@
+package com.majoinen.d.database.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the statements of an sql script one at a time, so a script of any
+ * size is read in constant memory. Statements are separated by semicolons,
+ * except within string literals, quoted identifiers, comments and the body
+ * of a CREATE TRIGGER statement, which only ends with a semicolon after
+ * END. Comments are removed from the statements returned.
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 9/11/17
+ */
+public final class SQLScriptReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // A statement buffer grown beyond this is released after its statement
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final int EOF = -1;
+
+    // The kinds of token which decide whether a semicolon ends a trigger
+    private static final int OTHER = 0;
+    private static final int SEMICOLON = 1;
+    private static final int END = 2;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private StringBuilder statement = new StringBuilder();
+
+    // The line being read, and the line the last statement started on
+    private int line = 1;
+    private int statementLine;
+
+    // The start of the word being read in the statement, or -1
+    private int wordStart = -1;
+
+    // The number of tokens read in the statement, used to find a trigger
+    private int tokens;
+    private boolean create;
+    private boolean trigger;
+
+    // The kinds of the last two tokens read
+    private int lastToken;
+    private int tokenBeforeLast;
+
+    /**
+     * @param reader The script to read, which is closed when this is.
+     */
+    public SQLScriptReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read the next statement of the script.
+     *
+     * @return The statement without its terminating semicolon or any
+     * comments, or null if there are no more statements.
+     * @throws IOException If an IOException occurs reading the script.
+     */
+    public String next() throws IOException {
+        int c;
+        while((c = read()) != EOF) {
+            if(isWordChar(c)) {
+                if(wordStart < 0)
+                    wordStart = start();
+                statement.append((char) c);
+                continue;
+            }
+            endWord();
+            switch(c) {
+                case '\'':
+                case '"':
+                case '`':
+                    quoted(c, c);
+                    break;
+                case '[':
+                    quoted(c, ']');
+                    break;
+                case '-':
+                    if(peek() == '-') {
+                        skipLineComment();
+                        separate();
+                    } else {
+                        other(c);
+                    }
+                    break;
+                case '/':
+                    if(peek() == '*') {
+                        skipBlockComment();
+                        separate();
+                    } else {
+                        other(c);
+                    }
+                    break;
+                case ';':
+                    if(!trigger || (lastToken == END &&
+                      tokenBeforeLast == SEMICOLON)) {
+                        String next = finish();
+                        if(next != null)
+                            return next;
+                    } else {
+                        statement.append(';');
+                        token(SEMICOLON);
+                    }
+                    break;
+                default:
+                    if(Character.isWhitespace(c)) {
+                        if(statement.length() > 0)
+                            statement.append((char) c);
+                    } else {
+                        other(c);
+                    }
+            }
+        }
+        endWord();
+        return finish();
+    }
+
+    /**
+     * @return The line of the script the last statement returned by next()
+     * started on, counting from 1.
+     */
+    public int getStatementLine() {
+        return statementLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void other(int c) {
+        start();
+        statement.append((char) c);
+        token(OTHER);
+    }
+
+    /* Copy a string literal or quoted identifier, including its quotes. A
+     * doubled closing quote closes and reopens it, so is copied as is */
+    private void quoted(int open, int close) throws IOException {
+        start();
+        statement.append((char) open);
+        int c;
+        while((c = read()) != EOF) {
+            statement.append((char) c);
+            if(c == close)
+                break;
+        }
+        token(OTHER);
+    }
+
+    private void skipLineComment() throws IOException {
+        int c;
+        while((c = read()) != EOF && c != '\n') { }
+    }
+
+    private void skipBlockComment() throws IOException {
+        read();
+        int previous = 0;
+        int c;
+        while((c = read()) != EOF) {
+            if(previous == '*' && c == '/')
+                return;
+            previous = c;
+        }
+    }
+
+    /* A comment separates the tokens either side of it */
+    private void separate() {
+        int length = statement.length();
+        if(length > 0 && !Character.isWhitespace(statement.charAt(length - 1)))
+            statement.append(' ');
+    }
+
+    /* Note where a statement starts. Returns the position of the next char */
+    private int start() {
+        if(statement.length() == 0)
+            statementLine = line;
+        return statement.length();
+    }
+
+    private void endWord() {
+        if(wordStart < 0)
+            return;
+        int start = wordStart;
+        wordStart = -1;
+        if(tokens < 3) {
+            if(tokens == 0)
+                create = isWord(start, "CREATE");
+            else if(create && isWord(start, "TRIGGER"))
+                trigger = true;
+        }
+        token(isWord(start, "END") ? END : OTHER);
+    }
+
+    private void token(int kind) {
+        tokens++;
+        tokenBeforeLast = lastToken;
+        lastToken = kind;
+    }
+
+    private boolean isWord(int start, String keyword) {
+        if(statement.length() - start != keyword.length())
+            return false;
+        for(int i = 0; i < keyword.length(); i++)
+            if(Character.toUpperCase(statement.charAt(start + i)) !=
+              keyword.charAt(i))
+                return false;
+        return true;
+    }
+
+    /* Take the statement read so far, or null if it is blank */
+    private String finish() {
+        int length = statement.length();
+        while(length > 0 && Character.isWhitespace(
+          statement.charAt(length - 1)))
+            length--;
+        String finished = length == 0 ? null :
+          statement.substring(0, length);
+        if(statement.capacity() > MAX_RETAINED_CAPACITY)
+            statement = new StringBuilder();
+        else
+            statement.setLength(0);
+        wordStart = -1;
+        tokens = 0;
+        create = false;
+        trigger = false;
+        lastToken = OTHER;
+        tokenBeforeLast = OTHER;
+        return finished;
+    }
+
+    private int read() throws IOException {
+        if(position == limit && !fill())
+            return EOF;
+        char c = buffer[position++];
+        if(c == '\n')
+            line++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if(position == limit && !fill())
+            return EOF;
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while(read == 0);
+        if(read < 0)
+            return false;
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private static boolean isWordChar(int c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
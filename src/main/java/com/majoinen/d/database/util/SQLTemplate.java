@@ -0,0 +1,134 @@
+package com.majoinen.d.database.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, compiled form of an sql query with named parameters. Holds
+ * the sql rewritten with a ? in place of each named parameter, and which
+ * parameter key belongs at each position. Templates are created and cached by
+ * SQLParameterParser.compile().
+ *
+ * @author Daniel Majoinen
+ * @version 1.0, 18/9/17
+ */
+public final class SQLTemplate {
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final String sql;
+    private final String preparedSql;
+
+    // The key at each parameter position, or null for an anonymous ?
+    private final String[] parameterKeys;
+
+    // The 1-based positions of each named key
+    private final Map<String, int[]> positions;
+
+    // The normalised sql, computed the first time it is needed
+    private volatile String shape;
+
+    // The tables the sql uses, found the first time they are needed
+    private volatile Set<String> tables;
+
+    SQLTemplate(String sql, String preparedSql, String[] parameterKeys,
+      Map<String, int[]> positions) {
+        this.sql = sql;
+        this.preparedSql = preparedSql;
+        this.parameterKeys = parameterKeys;
+        this.positions = positions;
+    }
+
+    /**
+     * @return The sql this template was compiled from.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return The sql with every named parameter replaced by a ?, ready to
+     * be prepared.
+     */
+    public String getPreparedSql() {
+        return preparedSql;
+    }
+
+    /**
+     * Get the shape of the sql, which is the same for every query differing
+     * only in its literal values, comments or whitespace. Used to group
+     * executions of the same query in metrics.
+     *
+     * @return The normalised sql.
+     */
+    public String getShape() {
+        String normalised = shape;
+        if(normalised == null) {
+            normalised = SQLParameterParser.normalise(sql);
+            shape = normalised;
+        }
+        return normalised;
+    }
+
+    /**
+     * Get the tables the sql reads or writes, such as to find which cached
+     * results an update invalidates.
+     *
+     * @return The lower cased table names, which may be empty if none could
+     * be found.
+     */
+    public Set<String> getTables() {
+        Set<String> found = tables;
+        if(found == null) {
+            found = Collections.unmodifiableSet(
+              SQLParameterParser.tablesOf(sql));
+            tables = found;
+        }
+        return found;
+    }
+
+    /**
+     * @return The number of ? placeholders in the prepared sql.
+     */
+    public int getParameterCount() {
+        return parameterKeys.length;
+    }
+
+    /**
+     * Get the key of the parameter at the given position.
+     *
+     * @param index The 0-based position of the parameter.
+     * @return The key, such as :name, or null if the sql used an anonymous ?
+     * at this position.
+     */
+    public String getParameterKey(int index) {
+        return parameterKeys[index];
+    }
+
+    /**
+     * @return The parameter key at each position, in the order they appear.
+     */
+    public List<String> getParameterKeys() {
+        return Collections.unmodifiableList(Arrays.asList(parameterKeys));
+    }
+
+    /**
+     * Get every position a key appears in the prepared sql.
+     *
+     * @param key The parameter key, such as :name.
+     * @return The 1-based positions of the key, or an empty array if the key
+     * does not appear. The returned array must not be modified.
+     */
+    public int[] getPositions(String key) {
+        int[] keyPositions = positions.get(key);
+        return keyPositions == null ? NO_POSITIONS : keyPositions;
+    }
+
+    @Override
+    public String toString() {
+        return preparedSql;
+    }
+}
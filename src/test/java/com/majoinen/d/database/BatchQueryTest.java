@@ -6,9 +6,15 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -19,6 +25,9 @@ public class BatchQueryTest {
 
     private static final String SQL = "INSERT INTO table (key) VALUES (:value)";
 
+    private static final String OTHER_SQL =
+      "UPDATE table SET key = :value WHERE key = :key";
+
     private static final String KEY = "key";
 
     private static final String VALUE = ":value";
@@ -65,6 +74,8 @@ public class BatchQueryTest {
     public void prepareBatchQuery() throws Exception {
         when(connection.prepareStatement(anyString())).thenReturn(true);
         when(connection.executeUpdate()).thenReturn(EXPECTED_AFFECTED_ROWS);
+        when(connection.executeBatch()).thenReturn(
+          new int[] { EXPECTED_AFFECTED_ROWS, EXPECTED_AFFECTED_ROWS });
 
         query.setSql(SQL);
         assertEquals(query.setParameter(KEY, VALUE), query);
@@ -72,6 +83,50 @@ public class BatchQueryTest {
         assertEquals(query.executeUpdate(), EXPECTED_AFFECTED_ROWS * 2);
     }
 
+    @Test
+    public void sameSqlIsPreparedOnceAndBatched() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(true);
+        when(connection.executeBatch()).thenReturn(
+          new int[] { EXPECTED_AFFECTED_ROWS, EXPECTED_AFFECTED_ROWS });
+
+        query.setSql(SQL);
+        query.setParameter(VALUE, KEY).addBatch();
+        assertEquals(query.setParameter(VALUE, KEY).executeUpdate(),
+          EXPECTED_AFFECTED_ROWS * 2);
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(connection, times(2)).addBatch();
+        verify(connection, times(1)).executeBatch();
+    }
+
+    @Test
+    public void differentSqlFlushesPendingBatch() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(true);
+        when(connection.executeUpdate()).thenReturn(EXPECTED_AFFECTED_ROWS);
+        when(connection.executeBatch()).thenReturn(
+          new int[] { EXPECTED_AFFECTED_ROWS, EXPECTED_AFFECTED_ROWS });
+
+        query.setSql(SQL);
+        query.prepareBatchQuery(SQL).prepareBatchQuery(OTHER_SQL);
+        verify(connection, times(1)).executeBatch();
+        assertEquals(query.executeUpdate(), EXPECTED_AFFECTED_ROWS * 3);
+    }
+
+    @Test
+    public void executeBatchCommitsChunks() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(true);
+        when(connection.executeBatch()).thenReturn(
+          new int[] { EXPECTED_AFFECTED_ROWS, EXPECTED_AFFECTED_ROWS });
+        Map<String, Object> parameters = Collections.singletonMap(VALUE, KEY);
+
+        query.setSql(SQL);
+        int[] counts = query.executeBatch(
+          Collections.nCopies(4, parameters), 2);
+        assertArrayEquals(new int[] { 2, 2 }, counts);
+        verify(connection, times(4)).addBatch();
+        verify(connection).commit();
+        verify(connection).close();
+    }
+
     @Test(expected = DBUtilsException.class)
     public void executeUpdateThrowsException() throws Exception {
         when(connection.prepareStatement(anyString()))
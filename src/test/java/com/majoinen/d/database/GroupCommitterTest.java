@@ -0,0 +1,189 @@
+package com.majoinen.d.database;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.pool.ConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 28/9/17
+ */
+public class GroupCommitterTest {
+
+    private static final String INSERT =
+      "INSERT INTO test (name) VALUES (:name)";
+
+    private static final String COUNT = "SELECT count(*) FROM test";
+
+    private File database;
+
+    private ConnectionPool pool;
+
+    private GroupCommitter committer;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        database = File.createTempFile("dbutils-group", ".db");
+        pool = new ConnectionPool(this::openTestConnection, 0, 4, 0, 1000, 1,
+          8);
+        new Query(new DBUtilsConnection(pool),
+          "CREATE TABLE test (id INTEGER PRIMARY KEY, name TEXT UNIQUE)")
+          .executeUpdate();
+        committer = new GroupCommitter("test", pool, null, 16, 200);
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        committer.close();
+        pool.close();
+        database.delete();
+    }
+
+    private Connection openTestConnection() throws DBUtilsException {
+        try {
+            return DriverManager.getConnection("jdbc:sqlite:" +
+              database.getPath());
+        } catch(SQLException e) {
+            throw new DBUtilsException(e);
+        }
+    }
+
+    private CompletableFuture<Integer> insert(String name) {
+        return committer.submit(connection -> new Query(connection, INSERT)
+          .setParameter(":name", name).executeUpdate());
+    }
+
+    /* Occupy the flusher with an update of its own until the returned latch
+     * is released, so updates submitted meanwhile queue for the next group */
+    private CountDownLatch holdFlusher() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        committer.submit(connection -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                throw new DBUtilsException(e);
+            }
+            return 0;
+        });
+        started.await();
+        return release;
+    }
+
+    private int count() throws DBUtilsException {
+        return new Query(new DBUtilsConnection(pool), COUNT)
+          .executeAndMap(result -> result.getInt(1));
+    }
+
+    @Test
+    public void updatesAreCommittedTogether() throws Exception {
+        CountDownLatch release = holdFlusher();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            futures.add(insert("name" + i));
+        release.countDown();
+        for (CompletableFuture<Integer> future : futures)
+            assertEquals(1, (int) future.get());
+        assertEquals(2, committer.getGroupsCommitted());
+        assertEquals(11, committer.getUpdatesCommitted());
+        assertEquals(10, count());
+    }
+
+    @Test
+    public void groupsAreLimitedBySize() throws Exception {
+        CountDownLatch release = holdFlusher();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+            futures.add(insert("name" + i));
+        release.countDown();
+        for (CompletableFuture<Integer> future : futures)
+            future.get();
+        assertEquals(4, committer.getGroupsCommitted());
+        assertEquals(40, count());
+    }
+
+    @Test
+    public void failingUpdateDoesNotPoisonGroup() throws Exception {
+        CountDownLatch release = holdFlusher();
+        CompletableFuture<Integer> first = insert("duplicate");
+        CompletableFuture<Integer> failing = insert("duplicate");
+        CompletableFuture<Integer> last = insert("other");
+        release.countDown();
+        assertEquals(1, (int) first.get());
+        assertEquals(1, (int) last.get());
+        try {
+            failing.get();
+            fail("Expected duplicate insert to fail");
+        } catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof DBUtilsException);
+        }
+        assertEquals(2, committer.getGroupsCommitted());
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void queryExecuteUpdateWaitsForGroup() throws Exception {
+        DBUtilsConnection connection = new DBUtilsConnection(pool, committer);
+        assertEquals(1, new Query(connection, INSERT)
+          .setParameter(":name", "name").executeUpdate());
+        assertEquals(1, count());
+    }
+
+    @Test(expected = DBUtilsException.class)
+    public void closedCommitterRefusesUpdates() throws Throwable {
+        committer.close();
+        try {
+            insert("name").get();
+        } catch(ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void updatesSubmittedWhileClosingAreCompleted() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            GroupCommitter closing = new GroupCommitter("closing", pool, null,
+              16, 0);
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread submitter = new Thread(() -> {
+                try {
+                    start.await();
+                } catch(InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 200; i++)
+                    futures.add(closing.submit(connection -> 0));
+            });
+            submitter.start();
+            start.countDown();
+            closing.close();
+            submitter.join();
+            for (CompletableFuture<Integer> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                } catch(ExecutionException e) {
+                    assertTrue(e.getCause() instanceof DBUtilsException);
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.majoinen.d.database;
 
 import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.util.LongLongMap;
 import com.majoinen.d.database.util.ObjectMapper;
 import com.majoinen.d.database.util.ResultSetHandler;
 import org.junit.Before;
@@ -14,10 +15,24 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -116,6 +131,40 @@ public class QueryTest {
         query.executeUpdate();
     }
 
+    @Test
+    public void executeBatchInChunks() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(true);
+        when(connection.executeBatch())
+          .thenReturn(new int[] { 1, 1 })
+          .thenReturn(new int[] { 1 });
+        Map<String, Object> parameters = Collections.singletonMap(VALUE, KEY);
+
+        query.setSql(SQL);
+        int[] counts = query.executeBatch(Collections.nCopies(3, parameters),
+          2);
+        assertArrayEquals(new int[] { 2, 1 }, counts);
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(connection, times(3)).setObject(1, KEY);
+        verify(connection).disableAutoCommit();
+        verify(connection).commit();
+        verify(connection).close();
+    }
+
+    @Test(expected = DBUtilsException.class)
+    public void executeBatchRollsBackOnFailure() throws Exception {
+        when(connection.prepareStatement(anyString())).thenReturn(true);
+        when(connection.executeBatch()).thenThrow(DBUtilsException.class);
+        Map<String, Object> parameters = Collections.singletonMap(VALUE, KEY);
+
+        query.setSql(SQL);
+        try {
+            query.executeBatch(Collections.singletonList(parameters));
+        } finally {
+            verify(connection).rollback();
+            verify(connection).close();
+        }
+    }
+
     @Test
     public void executeAndMap() throws Exception {
         PowerMockito.mockStatic(ResultSetHandler.class);
@@ -163,4 +212,127 @@ public class QueryTest {
 
         query.executeAndMapAll(stringMapper);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void executeForLongs() throws Exception {
+        when(connection.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getLong(1)).thenReturn(3L, 4L);
+
+        assertArrayEquals(new long[] { 3, 4 }, query.executeForLongs());
+        verify(resultSet).close();
+        verify(connection).close();
+    }
+
+    @Test
+    public void executeForDoubles() throws Exception {
+        when(connection.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getDouble(1)).thenReturn(1.5);
+
+        assertArrayEquals(new double[] { 1.5 }, query.executeForDoubles(), 0);
+    }
+
+    @Test
+    public void executeForLongToLongMap() throws Exception {
+        when(connection.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getLong(1)).thenReturn(1L, 2L);
+        when(resultSet.getLong(2)).thenReturn(10L, 20L);
+
+        LongLongMap values = query.executeForLongToLongMap();
+        assertEquals(2, values.size());
+        assertEquals(20, values.get(2, -1));
+    }
+
+    @Test
+    public void streamMapsLazilyAndClosesWhenExhausted() throws Exception {
+        when(connection.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(stringMapper.map(resultSet)).thenReturn("a", "b");
+
+        try(Stream<String> stream = query.setFetchSize(10)
+          .stream(stringMapper)) {
+            verify(stringMapper, never()).map(resultSet);
+            assertEquals(stream.collect(Collectors.toList()),
+              Arrays.asList("a", "b"));
+        }
+        verify(connection).setFetchSize(10);
+        verify(resultSet).close();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    public void streamClosedEarlyReleasesConnection() throws Exception {
+        when(connection.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(stringMapper.map(resultSet)).thenReturn(EXPECTED_MAP);
+
+        try(Stream<String> stream = query.stream(stringMapper)) {
+            assertEquals(stream.findFirst().orElse(null), EXPECTED_MAP);
+        }
+        verify(connection, never()).setFetchSize(0);
+        verify(resultSet).close();
+        verify(connection, times(1)).close();
+    }
+
+    @Test(expected = DBUtilsException.class)
+    public void streamClosesConnectionWhenQueryFails() throws Exception {
+        when(connection.executeQuery()).thenThrow(DBUtilsException.class);
+        try {
+            query.stream(stringMapper);
+        } finally {
+            verify(connection).close();
+        }
+    }
+
+    @Test
+    public void executeUpdateAsyncRunsOnExecutor() throws Exception {
+        AtomicInteger executed = new AtomicInteger();
+        when(connection.executeUpdate()).thenReturn(EXPECTED_AFFECTED_ROWS);
+        CompletableFuture<Integer> future = query.setExecutor(task -> {
+            executed.incrementAndGet();
+            task.run();
+        }).executeUpdateAsync();
+        assertEquals(EXPECTED_AFFECTED_ROWS, (int) future.get());
+        assertEquals(1, executed.get());
+        verify(connection).close();
+    }
+
+    @Test
+    public void executeUpdateAsyncFailsWithDBUtilsException() throws Exception {
+        when(connection.executeUpdate()).thenThrow(DBUtilsException.class);
+        try {
+            query.executeUpdateAsync().get();
+            fail("Expected update to fail");
+        } catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof DBUtilsException);
+        }
+    }
+
+    @Test
+    public void executeAsyncTimeoutCancelsStatement() throws Exception {
+        when(connection.executeUpdate()).thenAnswer(invocation -> {
+            Thread.sleep(1000);
+            return EXPECTED_AFFECTED_ROWS;
+        });
+        try {
+            query.setTimeout(50, TimeUnit.MILLISECONDS).executeUpdateAsync()
+              .get();
+            fail("Expected update to time out");
+        } catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        verify(connection, timeout(1000)).cancel();
+    }
+
+    @Test
+    public void cancellingFutureCancelsStatement() throws Exception {
+        when(connection.executeUpdate()).thenAnswer(invocation -> {
+            Thread.sleep(1000);
+            return EXPECTED_AFFECTED_ROWS;
+        });
+        assertTrue(query.executeUpdateAsync().cancel(true));
+        verify(connection, timeout(1000)).cancel();
+    }
+}
@@ -0,0 +1,152 @@
+package com.majoinen.d.database;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 20/11/17
+ */
+public class ScatterGatherQueryTest {
+
+    private Path directory;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        directory = Files.createTempDirectory("dbutils-scatter");
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        try(Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile)
+              .forEach(File::delete);
+        }
+    }
+
+    /* A controller of a database holding the given ids */
+    private DatabaseController database(String name, int... ids)
+      throws Exception {
+        Path file = directory.resolve(name + ".db");
+        try(Connection connection = DriverManager.getConnection(
+          "jdbc:sqlite:" + file);
+          Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE t (id INTEGER)");
+            for(int id : ids)
+                statement.executeUpdate("INSERT INTO t VALUES (" + id + ")");
+        }
+        return controller(() -> {
+            try {
+                return DriverManager.getConnection("jdbc:sqlite:" + file);
+            } catch(SQLException e) {
+                throw new DBUtilsException("Error opening " + name, e);
+            }
+        });
+    }
+
+    private static DatabaseController controller(
+      DatabaseConnectionProvider provider) throws Exception {
+        DatabaseController controller = mock(DatabaseController.class);
+        when(controller.prepareQuery(anyString())).thenAnswer(invocation ->
+          new Query(new DBUtilsConnection(provider),
+            invocation.getArgument(0)));
+        return controller;
+    }
+
+    @Test
+    public void resultsOfEveryDatabaseAreGatheredInOrder() throws Exception {
+        List<DatabaseController> controllers = Arrays.asList(
+          database("a", 1, 2), database("b"), database("c", 3));
+        ScatterGatherResult<List<Integer>> result = new ScatterGatherQuery(
+          controllers, "SELECT id FROM t WHERE id > :min ORDER BY id")
+          .setParameter(":min", 0)
+          .executeAndMapAll(resultSet -> resultSet.getInt(1));
+        assertTrue(result.isComplete());
+        assertEquals(controllers, result.getSucceeded());
+        assertEquals(Arrays.asList(1, 2, 3), result.getResult());
+    }
+
+    @Test
+    public void aggregatesAreCombined() throws Exception {
+        List<DatabaseController> controllers = Arrays.asList(
+          database("a", 1, 2), database("b", 3), database("c"));
+        ScatterGatherResult<Long> count = new ScatterGatherQuery(controllers,
+          "SELECT count(*) FROM t").executeAndCombine(resultSet ->
+          resultSet.getLong(1), Long::sum);
+        assertEquals(3L, (long) count.getResult());
+        ScatterGatherResult<Integer> max = new ScatterGatherQuery(controllers,
+          "SELECT id FROM t ORDER BY id DESC LIMIT 1").executeAndCombine(
+          resultSet -> resultSet.getInt(1), Math::max);
+        assertEquals(3, (int) max.getResult());
+    }
+
+    @Test
+    public void orderedResultsAreMergedAsTheyAreRead() throws Exception {
+        List<DatabaseController> controllers = Arrays.asList(
+          database("a", 1, 4, 9), database("b", 2, 3, 10),
+          database("c"), database("d", 5));
+        ScatterGatherResult<Stream<Integer>> result = new ScatterGatherQuery(
+          controllers, "SELECT id FROM t ORDER BY id DESC").stream(
+          resultSet -> resultSet.getInt(1), Comparator.reverseOrder());
+        try(Stream<Integer> ids = result.getResult()) {
+            assertEquals(Arrays.asList(10, 9, 5, 4, 3, 2, 1),
+              ids.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void failedAndSlowDatabasesAreReported() throws Exception {
+        DatabaseController working = database("a", 1);
+        DatabaseController broken = controller(() -> {
+            throw new DBUtilsException("Unavailable");
+        });
+        DatabaseController slow = controller(() -> {
+            try {
+                Thread.sleep(2000);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new DBUtilsException("Too slow");
+        });
+        long start = System.nanoTime();
+        ScatterGatherResult<List<Integer>> result = new ScatterGatherQuery(
+          Arrays.asList(slow, working, broken), "SELECT id FROM t")
+          .setTimeout(100, TimeUnit.MILLISECONDS)
+          .executeAndMapAll(resultSet -> resultSet.getInt(1));
+        assertTrue(System.nanoTime() - start <
+          TimeUnit.MILLISECONDS.toNanos(1500));
+        assertFalse(result.isComplete());
+        assertEquals(Arrays.asList(1), result.getResult());
+        assertEquals(Arrays.asList(working), result.getSucceeded());
+        assertEquals(Arrays.asList(slow, broken),
+          Arrays.asList(result.getFailures().keySet().toArray()));
+        assertTrue(result.getFailures().get(slow) instanceof
+          TimeoutException);
+        assertTrue(result.getFailures().get(broken) instanceof
+          DBUtilsException);
+    }
+}
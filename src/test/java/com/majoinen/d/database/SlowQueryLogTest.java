@@ -0,0 +1,147 @@
+package com.majoinen.d.database;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.sqlite.SQLiteQueryPlan;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 27/11/17
+ */
+public class SlowQueryLogTest {
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private Path file;
+    private DatabaseConnectionProvider provider;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        file = Files.createTempFile("dbutils-slow", ".db");
+        try(Connection connection = DriverManager.getConnection(
+          "jdbc:sqlite:" + file);
+          Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY " +
+              "KEY, name TEXT)");
+        }
+        provider = () -> {
+            try {
+                return DriverManager.getConnection("jdbc:sqlite:" + file);
+            } catch(SQLException e) {
+                throw new DBUtilsException("Error opening connection", e);
+            }
+        };
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void fastQueriesAreNotLogged() {
+        SlowQueryLog log = new SlowQueryLog("db", 10, 0, provider);
+        assertNull(log.record("SELECT * FROM t", null, 0, 1000, 1000, 1000,
+          1));
+    }
+
+    @Test
+    public void slowQueryIsLoggedAndExplained() throws Exception {
+        SlowQueryLog log = new SlowQueryLog("db", 10, 0, provider);
+        SlowQuery query = log.record("SELECT * FROM t WHERE name = ? AND " +
+          "id > 5", new Class<?>[] { String.class }, 1, 1000, SLOW, SLOW, 7);
+        assertNotNull(query);
+        assertEquals("SELECT * FROM t WHERE name = ? AND id > ?",
+          query.getShape());
+        assertEquals(Collections.singletonList("String"),
+          query.getParameterTypes());
+        assertEquals(1000 + 2 * SLOW, query.getTotalNanos());
+        assertEquals(7, query.getRows());
+        SQLiteQueryPlan plan = query.getPlan().get(5, TimeUnit.SECONDS);
+        assertFalse(plan.hasFullTableScan());
+
+        SlowQuery scan = log.record("SELECT * FROM t WHERE name = ?",
+          new Class<?>[] { null }, 1, 0, SLOW, 0, 0);
+        plan = scan.getPlan().get(5, TimeUnit.SECONDS);
+        assertEquals(Collections.singleton("t"), plan.getFullTableScans());
+        assertTrue(plan.toString().contains("[FULL TABLE SCAN]"));
+        assertEquals(Arrays.asList((String) null), scan.getParameterTypes());
+    }
+
+    @Test
+    public void eachQueryIsSampled() throws Exception {
+        SlowQueryLog log = new SlowQueryLog("db", 10, 200, provider);
+        String sql = "SELECT name FROM t WHERE id = ?";
+        assertNotNull(log.record(sql, null, 0, 0, SLOW, 0, 0));
+        assertNull(log.record(sql, null, 0, 0, SLOW, 0, 0));
+        assertNull(log.record(sql, null, 0, 0, SLOW, 0, 0));
+        assertNotNull(log.record("SELECT id FROM t", null, 0, 0, SLOW, 0, 0));
+        Thread.sleep(250);
+        SlowQuery query = log.record(sql, null, 0, 0, SLOW, 0, 0);
+        assertNotNull(query);
+        assertEquals(2, query.getSuppressed());
+    }
+
+    @Test
+    public void tableScansAreFound() {
+        assertEquals("t", SQLiteQueryPlan.scannedTable("SCAN TABLE t"));
+        assertEquals("t", SQLiteQueryPlan.scannedTable("SCAN t"));
+        assertEquals("users", SQLiteQueryPlan.scannedTable(
+          "SCAN TABLE users AS u"));
+        assertNull(SQLiteQueryPlan.scannedTable(
+          "SCAN TABLE t USING COVERING INDEX t_name"));
+        assertNull(SQLiteQueryPlan.scannedTable(
+          "SEARCH TABLE t USING INTEGER PRIMARY KEY (rowid=?)"));
+        assertEquals("t", SQLiteQueryPlan.scannedTable("SEARCH TABLE t " +
+          "USING AUTOMATIC COVERING INDEX (name=?)"));
+        assertNull(SQLiteQueryPlan.scannedTable("SCAN SUBQUERY 1"));
+        assertNull(SQLiteQueryPlan.scannedTable("SCAN CONSTANT ROW"));
+    }
+
+    @Test
+    public void planIsFailedWhenExplainQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SlowQueryLog log = new SlowQueryLog("db", 10, 0, () -> {
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return provider.openConnection();
+        });
+        // One plan being read and 16 waiting fill the explainer
+        for(int i = 0; i < 17; i++)
+            log.record("SELECT * FROM t", null, 0, 0, SLOW, 0, 0);
+        SlowQuery rejected = log.record("SELECT * FROM t", null, 0, 0, SLOW,
+          0, 0);
+        try {
+            rejected.getPlan().get(5, TimeUnit.SECONDS);
+            fail("Expected the plan to fail");
+        } catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof DBUtilsException);
+        } finally {
+            release.countDown();
+        }
+    }
+}
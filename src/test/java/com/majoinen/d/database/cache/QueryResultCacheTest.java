@@ -0,0 +1,187 @@
+package com.majoinen.d.database.cache;
+
+import com.majoinen.d.database.BatchQuery;
+import com.majoinen.d.database.DBUtilsConnection;
+import com.majoinen.d.database.Query;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.pool.ConnectionPool;
+import com.majoinen.d.database.util.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 19/10/17
+ */
+public class QueryResultCacheTest {
+
+    private static final String SELECT_QUERY =
+      "SELECT name FROM test WHERE id = :id";
+
+    private File database;
+
+    private ConnectionPool pool;
+
+    private QueryResultCache cache;
+
+    // Counts the rows mapped, so only executions which were not cached
+    private final AtomicInteger mapped = new AtomicInteger();
+
+    private final ObjectMapper<String> mapper = resultSet -> {
+        mapped.incrementAndGet();
+        return resultSet.getString("name");
+    };
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        database = File.createTempFile("dbutils-cache", ".db");
+        pool = new ConnectionPool(() -> {
+            try {
+                return DriverManager.getConnection("jdbc:sqlite:" +
+                  database.getPath());
+            } catch(SQLException e) {
+                throw new DBUtilsException(e);
+            }
+        }, 0, 2, 0, 1000, 1, 8);
+        cache = new QueryResultCache(2, 0);
+        query("CREATE TABLE test (id INTEGER PRIMARY KEY, name TEXT)")
+          .executeUpdate();
+        query("INSERT INTO test (id, name) VALUES (1, 'one'), (2, 'two')")
+          .executeUpdate();
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        pool.close();
+        database.delete();
+    }
+
+    private Query query(String sql) {
+        return new Query(new DBUtilsConnection(pool), sql)
+          .setResultCache(cache);
+    }
+
+    private String select(int id) throws DBUtilsException {
+        return query(SELECT_QUERY).setCacheable(true).setParameter(":id", id)
+          .executeAndMap(mapper);
+    }
+
+    @Test
+    public void resultsAreCachedByParameters() throws Exception {
+        assertEquals("one", select(1));
+        assertEquals("one", select(1));
+        assertEquals("two", select(2));
+        assertEquals(2, mapped.get());
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(2, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void queriesAreOnlyCachedWhenCacheable() throws Exception {
+        query(SELECT_QUERY).setParameter(":id", 1).executeAndMap(mapper);
+        query(SELECT_QUERY).setParameter(":id", 1).executeAndMap(mapper);
+        assertEquals(2, mapped.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void updatesInvalidateTablesRead() throws Exception {
+        List<String> names = query("SELECT name FROM test ORDER BY id")
+          .setCacheable(true).executeAndMapAll(mapper);
+        assertEquals(Arrays.asList("one", "two"), names);
+        assertEquals("one", select(1));
+        query("UPDATE test SET name = 'uno' WHERE id = 1").executeUpdate();
+        assertEquals("uno", select(1));
+        assertEquals(1, cache.getStats().getInvalidations());
+    }
+
+    @Test
+    public void updatesToOtherTablesDoNotInvalidate() throws Exception {
+        query("CREATE TABLE other (id INTEGER)").executeUpdate();
+        assertEquals("one", select(1));
+        query("INSERT INTO other (id) VALUES (1)").executeUpdate();
+        assertEquals("one", select(1));
+        assertEquals(1, mapped.get());
+    }
+
+    @Test
+    public void batchQueriesInvalidateEveryTableWritten() throws Exception {
+        query("CREATE TABLE other (id INTEGER)").executeUpdate();
+        assertEquals("two", select(2));
+        BatchQuery batch = new BatchQuery(new DBUtilsConnection(pool),
+          "INSERT INTO other (id) VALUES (1)");
+        batch.setResultCache(cache);
+        batch.prepareBatchQuery("UPDATE test SET name = 'dos' WHERE id = 2");
+        batch.executeUpdate();
+        assertEquals("dos", select(2));
+    }
+
+    @Test
+    public void leastRecentlyUsedResultsAreEvicted() throws Exception {
+        query("INSERT INTO test (id, name) VALUES (3, 'three')")
+          .executeUpdate();
+        select(1);
+        select(2);
+        select(1);
+        select(3);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStats().getEvictions());
+        select(1);
+        assertEquals(3, mapped.get());
+    }
+
+    @Test
+    public void resultsExpire() throws Exception {
+        cache = new QueryResultCache(2, 1);
+        select(1);
+        Thread.sleep(5);
+        select(1);
+        assertEquals(2, mapped.get());
+        assertEquals(1, cache.getStats().getExpirations());
+    }
+
+    @Test
+    public void cachedListsAreUnmodifiable() throws Exception {
+        List<String> names = query("SELECT name FROM test").setCacheable(true)
+          .executeAndMapAll(mapper);
+        try {
+            names.add("three");
+        } catch(UnsupportedOperationException e) {
+            assertTrue(cache.getStats().getMisses() == 1);
+            return;
+        }
+        throw new AssertionError("Cached list was modifiable");
+    }
+
+    @Test
+    public void unknownTablesInvalidateEverything() throws Exception {
+        select(1);
+        cache.invalidate(Collections.<String>emptySet());
+        select(1);
+        assertEquals(2, mapped.get());
+    }
+
+    private String selectWithSuffix(String suffix) throws DBUtilsException {
+        return query(SELECT_QUERY).setCacheable(true).setParameter(":id", 1)
+          .executeAndMap(resultSet -> resultSet.getString("name") + suffix);
+    }
+
+    @Test
+    public void capturingMappersDoNotShareResults() throws Exception {
+        assertEquals("one!", selectWithSuffix("!"));
+        assertEquals("one?", selectWithSuffix("?"));
+        assertEquals(0, cache.getStats().getHits());
+    }
+}
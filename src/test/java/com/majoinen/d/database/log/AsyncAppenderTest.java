@@ -0,0 +1,91 @@
+package com.majoinen.d.database.log;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 9/10/17
+ */
+public class AsyncAppenderTest {
+
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+
+    private AsyncAppender appender;
+
+    @After
+    public void afterEachTest() throws Exception {
+        if(appender != null)
+            appender.close();
+    }
+
+    @Test
+    public void messagesAreWrittenInOrder() throws Exception {
+        appender = new AsyncAppender((level, source, message, throwable) ->
+          messages.add(message), 128);
+        for (int i = 0; i < 100; i++)
+            appender.append(LogLevel.INFO, getClass(), "message " + i, null);
+        appender.flush();
+        assertEquals(100, messages.size());
+        for (int i = 0; i < 100; i++)
+            assertEquals("message " + i, messages.get(i));
+    }
+
+    @Test
+    public void messagesAreDroppedWhenBufferIsFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        appender = new AsyncAppender((level, source, message, throwable) -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(message);
+        }, 2);
+        appender.append(LogLevel.INFO, getClass(), "first", null);
+        writing.await();
+        appender.append(LogLevel.INFO, getClass(), "second", null);
+        appender.append(LogLevel.INFO, getClass(), "dropped", null);
+        assertEquals(1, appender.getDropped());
+        release.countDown();
+        appender.flush();
+        assertEquals(3, messages.size());
+        assertEquals("first", messages.get(0));
+        assertTrue(messages.get(1).startsWith("Dropped 1 log messages"));
+        assertEquals("second", messages.get(2));
+    }
+
+    @Test
+    public void closeWritesBufferedMessages() throws Exception {
+        appender = new AsyncAppender((level, source, message, throwable) ->
+          messages.add(message), 1024);
+        for (int i = 0; i < 1000; i++)
+            appender.append(LogLevel.INFO, getClass(), "message " + i, null);
+        appender.close();
+        assertEquals(1000, messages.size());
+        appender.append(LogLevel.INFO, getClass(), "after close", null);
+        assertEquals(1000, messages.size());
+        appender = null;
+    }
+
+    @Test
+    public void idleWriterIsUnparkedByAppend() throws Exception {
+        CountDownLatch written = new CountDownLatch(2);
+        appender = new AsyncAppender((level, source, message, throwable) ->
+          written.countDown(), 16);
+        appender.append(LogLevel.INFO, getClass(), "first", null);
+        Thread.sleep(50);
+        appender.append(LogLevel.INFO, getClass(), "second", null);
+        assertTrue(written.await(1, TimeUnit.SECONDS));
+    }
+}
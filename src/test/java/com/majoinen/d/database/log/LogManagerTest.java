@@ -0,0 +1,75 @@
+package com.majoinen.d.database.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 9/10/17
+ */
+public class LogManagerTest {
+
+    private final List<String> messages = new ArrayList<>();
+
+    private Logger logger;
+    private LogLevel previousLevel;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        previousLevel = LogManager.getLevel();
+        LogManager.setAppender((level, source, message, throwable) ->
+          messages.add(level + " " + message));
+        logger = LogManager.getLogger(LogManagerTest.class);
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        LogManager.setLevel(previousLevel);
+        LogManager.setAppender(new ConsoleAppender());
+    }
+
+    @Test
+    public void messagesBelowLevelAreDiscarded() throws Exception {
+        LogManager.setLevel(LogLevel.INFO);
+        logger.debug("debug");
+        logger.info("info");
+        logger.error("error");
+        assertEquals(2, messages.size());
+        assertEquals("INFO info", messages.get(0));
+        assertEquals("ERROR error", messages.get(1));
+    }
+
+    @Test
+    public void disabledMessagesAreNotBuilt() throws Exception {
+        LogManager.setLevel(LogLevel.ERROR);
+        assertFalse(logger.isDebugEnabled());
+        logger.debug(() -> {
+            throw new AssertionError("Message should not be built");
+        });
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void offDiscardsEveryMessage() throws Exception {
+        LogManager.setLevel(LogLevel.OFF);
+        logger.fatal("fatal");
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void parameterisedMessagesAreFormatted() throws Exception {
+        LogManager.setLevel(LogLevel.DEBUG);
+        logger.debug("Opened {} of {}", 1, 2);
+        logger.info("Missing {}", "argument", "extra");
+        assertEquals("DEBUG Opened 1 of 2", messages.get(0));
+        assertEquals("INFO Missing argument", messages.get(1));
+    }
+}
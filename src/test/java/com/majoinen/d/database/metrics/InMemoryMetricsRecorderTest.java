@@ -0,0 +1,162 @@
+package com.majoinen.d.database.metrics;
+
+import com.majoinen.d.database.DBUtilsConnection;
+import com.majoinen.d.database.Query;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.pool.ConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public class InMemoryMetricsRecorderTest {
+
+    private static final String INSERT_SHAPE =
+      "INSERT INTO test (name) VALUES (?)";
+
+    private static final String SELECT_SHAPE =
+      "SELECT name FROM test WHERE id > ?";
+
+    private File database;
+
+    private ConnectionPool pool;
+
+    private InMemoryMetricsRecorder recorder;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        database = File.createTempFile("dbutils-metrics", ".db");
+        pool = new ConnectionPool(() -> {
+            try {
+                return DriverManager.getConnection("jdbc:sqlite:" +
+                  database.getPath());
+            } catch(SQLException e) {
+                throw new DBUtilsException(e);
+            }
+        }, 0, 2, 0, 1000, 1, 8);
+        recorder = new InMemoryMetricsRecorder("metrics-test");
+        query("CREATE TABLE test (id INTEGER PRIMARY KEY, name TEXT)")
+          .executeUpdate();
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        recorder.unregisterMBean();
+        pool.close();
+        database.delete();
+    }
+
+    private Query query(String sql) {
+        DBUtilsConnection connection = new DBUtilsConnection(pool);
+        connection.setMetricsRecorder(recorder);
+        return new Query(connection, sql);
+    }
+
+    @Test
+    public void executionsAreGroupedByShape() throws Exception {
+        for (int i = 0; i < 5; i++)
+            query("INSERT INTO test (name) VALUES ('name " + i + "')")
+              .executeUpdate();
+        for (int i = 0; i < 3; i++)
+            query("INSERT INTO test (name) VALUES (:name)")
+              .setParameter(":name", "bound")
+              .executeUpdate();
+        QueryShapeSnapshot insert = recorder.snapshot().getQuery(INSERT_SHAPE);
+
+        assertNotNull(insert);
+        assertEquals(8, insert.getExecutions());
+        assertEquals(8, insert.getRowsWritten());
+        assertEquals(8, insert.getPrepare().getCount());
+        assertTrue(insert.getExecute().getMax() > 0);
+    }
+
+    @Test
+    public void rowsReadAndMapTimesAreRecorded() throws Exception {
+        for (int i = 0; i < 10; i++)
+            query("INSERT INTO test (name) VALUES ('n')").executeUpdate();
+        List<String> names = query("SELECT name FROM test WHERE id > 0")
+          .executeAndMapAll(result -> result.getString(1));
+        try(Stream<String> streamed = query("SELECT name FROM test " +
+          "WHERE id > 5").stream(result -> result.getString(1))) {
+            assertEquals(5, streamed.count());
+        }
+        QueryShapeSnapshot select = recorder.snapshot().getQuery(SELECT_SHAPE);
+
+        assertEquals(10, names.size());
+        assertEquals(2, select.getExecutions());
+        assertEquals(15, select.getRowsRead());
+        assertEquals(2, select.getMap().getCount());
+    }
+
+    @Test
+    public void errorsAreRecorded() throws Exception {
+        try {
+            query("INSERT INTO missing (name) VALUES (:name)")
+              .setParameter(":name", "x")
+              .executeUpdate();
+            fail("Expected the table to be missing");
+        } catch(DBUtilsException e) {
+            assertEquals(1, recorder.snapshot().getErrors());
+        }
+    }
+
+    @Test
+    public void connectionsAndStatementCacheAreCounted() throws Exception {
+        for (int i = 0; i < 4; i++)
+            query("INSERT INTO test (name) VALUES (:name)")
+              .setParameter(":name", "cached")
+              .executeUpdate();
+        MetricsSnapshot snapshot = recorder.snapshot();
+
+        assertEquals(5, snapshot.getConnectionsOpened());
+        assertEquals(0, snapshot.getOpenConnections());
+        assertEquals(3, snapshot.getStatementCacheHits());
+        assertEquals(2, snapshot.getStatementCacheMisses());
+    }
+
+    @Test
+    public void shapesBeyondMaximumAreGroupedTogether() throws Exception {
+        recorder = new InMemoryMetricsRecorder("metrics-test", 1);
+        query("SELECT 1").executeAndMap(result -> result.getInt(1));
+        query("SELECT 1 FROM test").executeAndMap(result -> null);
+        query("SELECT 2 FROM test WHERE id = 1").executeAndMap(result -> null);
+
+        assertEquals(2, recorder.getQueries().size());
+        assertEquals(2, recorder.snapshot()
+          .getQuery(InMemoryMetricsRecorder.OTHER_SHAPE).getExecutions());
+    }
+
+    @Test
+    public void metricsArePublishedThroughJMX() throws Exception {
+        query("INSERT INTO test (name) VALUES ('jmx')").executeUpdate();
+        recorder.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(
+          "com.majoinen.d.database:type=Metrics,name=\"metrics-test\"");
+
+        assertEquals(2L, server.getAttribute(name, "Executions"));
+        assertEquals(1L, server.getAttribute(name, "RowsWritten"));
+        assertEquals(2, ((Object[]) server.getAttribute(name, "Queries"))
+          .length);
+        recorder.unregisterMBean();
+        assertFalse(server.isRegistered(name));
+    }
+}
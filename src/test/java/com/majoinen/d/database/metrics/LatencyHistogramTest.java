@@ -0,0 +1,62 @@
+package com.majoinen.d.database.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 12/10/17
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreWithinPrecision() throws Exception {
+        for (long value = 1; value < LatencyHistogram.MAX_VALUE; value =
+          value * 3 + 1) {
+            long highest = LatencyHistogram.highestEquivalentValue(
+              LatencyHistogram.indexOf(value));
+            assertTrue(highest >= value);
+            assertTrue((highest - value) * 64 <= value);
+        }
+    }
+
+    @Test
+    public void snapshotPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++)
+            histogram.record(value * 1000);
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500500, snapshot.getMean(), 0.001);
+        assertWithinPrecision(500000, snapshot.getP50());
+        assertWithinPrecision(990000, snapshot.getP99());
+        assertWithinPrecision(999000, snapshot.getP999());
+    }
+
+    @Test
+    public void valuesAreClampedToRange() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    public void emptySnapshot() throws Exception {
+        assertEquals(0, new LatencyHistogram().snapshot().getCount());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue("Expected " + expected + " but was " + actual,
+          actual >= expected && actual - expected <= expected / 64);
+    }
+}
@@ -0,0 +1,201 @@
+package com.majoinen.d.database.pool;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 11/9/17
+ */
+public class ConnectionPoolTest {
+
+    private static final long ACQUIRE_TIMEOUT = 50;
+
+    private static final String SELECT_ONE = "SELECT 1";
+
+    private static final String SELECT_TWO = "SELECT 2";
+
+    private int opened;
+
+    private ConnectionPool pool;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        opened = 0;
+        pool = new ConnectionPool(this::openTestConnection, 0, 2, 0,
+          ACQUIRE_TIMEOUT, 1);
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        pool.close();
+    }
+
+    private Connection openTestConnection() throws DBUtilsException {
+        try {
+            opened++;
+            return DriverManager.getConnection("jdbc:sqlite::memory:");
+        } catch(SQLException e) {
+            throw new DBUtilsException(e);
+        }
+    }
+
+    @Test
+    public void closeReturnsConnectionToPool() throws Exception {
+        Connection connection = pool.openConnection();
+        assertEquals(1, pool.getActiveCount());
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void idleConnectionIsReused() throws Exception {
+        pool.openConnection().close();
+        pool.openConnection().close();
+        assertEquals(1, opened);
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test(expected = SQLException.class)
+    public void closedHandleCannotBeUsed() throws Exception {
+        Connection connection = pool.openConnection();
+        connection.close();
+        connection.createStatement();
+    }
+
+    @Test
+    public void uncommittedWorkIsRolledBackOnRelease() throws Exception {
+        Connection connection = pool.openConnection();
+        connection.setAutoCommit(false);
+        connection.close();
+        assertTrue(pool.openConnection().getAutoCommit());
+    }
+
+    @Test(expected = DBUtilsException.class)
+    public void acquireTimesOutWhenPoolIsFull() throws Exception {
+        pool.openConnection();
+        pool.openConnection();
+        pool.openConnection();
+    }
+
+    @Test(expected = DBUtilsException.class)
+    public void closedPoolRefusesConnections() throws Exception {
+        pool.close();
+        pool.openConnection();
+    }
+
+    @Test
+    public void closingPoolClosesReturnedConnections() throws Exception {
+        Connection connection = pool.openConnection();
+        pool.close();
+        connection.close();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception {
+        pool.close();
+        pool = new ConnectionPool(this::openTestConnection, 0, 2, 1,
+          ACQUIRE_TIMEOUT, 1);
+        pool.openConnection().close();
+        long deadline = System.currentTimeMillis() + 2000;
+        while(pool.getSize() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void statementIsReusedAfterClose() throws Exception {
+        useStatementCache(2);
+        Connection connection = pool.openConnection();
+        connection.prepareStatement(SELECT_ONE).close();
+        connection.prepareStatement(SELECT_ONE).executeQuery();
+        assertEquals(1, pool.getStatementCacheStats().getHits());
+        assertEquals(1, pool.getStatementCacheStats().getMisses());
+    }
+
+    @Test
+    public void checkedOutStatementIsNotShared() throws Exception {
+        useStatementCache(2);
+        Connection connection = pool.openConnection();
+        connection.prepareStatement(SELECT_ONE);
+        connection.prepareStatement(SELECT_ONE);
+        assertEquals(0, pool.getStatementCacheStats().getHits());
+        assertEquals(2, pool.getStatementCacheStats().getMisses());
+    }
+
+    @Test
+    public void statementsSurviveReturningTheConnection() throws Exception {
+        useStatementCache(2);
+        Connection connection = pool.openConnection();
+        connection.prepareStatement(SELECT_ONE);
+        connection.close();
+        pool.openConnection().prepareStatement(SELECT_ONE).executeQuery();
+        assertEquals(1, pool.getStatementCacheStats().getHits());
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementIsEvicted() throws Exception {
+        useStatementCache(1);
+        Connection connection = pool.openConnection();
+        connection.prepareStatement(SELECT_ONE).close();
+        connection.prepareStatement(SELECT_TWO).close();
+        connection.prepareStatement(SELECT_ONE).close();
+        assertEquals(2, pool.getStatementCacheStats().getEvictions());
+        assertEquals(0, pool.getStatementCacheStats().getHits());
+    }
+
+    @Test(expected = SQLException.class)
+    public void returnedStatementCannotBeUsed() throws Exception {
+        useStatementCache(2);
+        Connection connection = pool.openConnection();
+        PreparedStatement statement = connection.prepareStatement(SELECT_ONE);
+        connection.close();
+        statement.executeQuery();
+    }
+
+    private void useStatementCache(int size) {
+        pool.close();
+        pool = new ConnectionPool(this::openTestConnection, 0, 2, 0,
+          ACQUIRE_TIMEOUT, 1, size);
+    }
+
+    @Test
+    public void connectionReleasedWhileClosingIsClosed() throws Exception {
+        for(int round = 0; round < 100; round++) {
+            ConnectionPool racing = new ConnectionPool(
+              this::openTestConnection, 0, 2, 0, ACQUIRE_TIMEOUT, 1);
+            Connection first = racing.openConnection();
+            Connection second = racing.openConnection();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread releaser = new Thread(() -> {
+                try {
+                    start.await();
+                    first.close();
+                    second.close();
+                } catch(InterruptedException | SQLException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            releaser.start();
+            start.countDown();
+            racing.close();
+            releaser.join();
+            assertEquals(0, racing.getSize());
+        }
+    }
+}
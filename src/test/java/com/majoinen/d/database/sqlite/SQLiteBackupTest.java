@@ -0,0 +1,142 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 6/11/17
+ */
+public class SQLiteBackupTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        directory = Files.createTempDirectory("dbutils-backup");
+        file = directory.resolve("source.db");
+        try(Connection connection = open(file);
+          Statement statement = connection.createStatement()) {
+            statement.executeUpdate("PRAGMA journal_mode = WAL");
+            statement.executeUpdate("CREATE TABLE t (id INTEGER PRIMARY KEY," +
+              " data BLOB)");
+            statement.executeUpdate("WITH RECURSIVE n(i) AS (SELECT 1 " +
+              "UNION ALL SELECT i + 1 FROM n WHERE i < 500) INSERT INTO t " +
+              "(data) SELECT randomblob(1000) FROM n");
+        }
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        try(Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile)
+              .forEach(File::delete);
+        }
+    }
+
+    private static Connection open(Path path) throws Exception {
+        return DriverManager.getConnection("jdbc:sqlite:" + path);
+    }
+
+    private static long count(Path path) throws Exception {
+        try(Connection connection = open(path);
+          Statement statement = connection.createStatement();
+          ResultSet result = statement.executeQuery(
+            "SELECT count(*) FROM t")) {
+            return result.getLong(1);
+        }
+    }
+
+    private BackupResult backup(Path target, BackupListener listener)
+      throws DBUtilsException {
+        try(Connection source = DriverManager.getConnection("jdbc:sqlite:" +
+          file)) {
+            return SQLiteBackup.backup(source, target, listener);
+        } catch(SQLException e) {
+            throw new DBUtilsException(e);
+        }
+    }
+
+    @Test
+    public void backupCopiesDatabaseAndReportsProgress() throws Exception {
+        Path target = directory.resolve("copy/target.db");
+        List<Integer> remaining = new ArrayList<>();
+        BackupResult result = backup(target, (pages, pageCount) ->
+          remaining.add(pages));
+        assertEquals(500, count(target));
+        assertEquals(Files.size(target), result.getBytes());
+        assertTrue(result.getPageCount() > 0);
+        assertEquals(result.getPageCount(), (int) remaining.get(0));
+        assertEquals(0, (int) remaining.get(remaining.size() - 1));
+        assertTrue(result.getThroughput() > 0);
+        try(Stream<Path> files = Files.list(target.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void pruneKeepsNewestBackups() throws Exception {
+        for(int i = 0; i < 5; i++)
+            Files.createFile(directory.resolve("db-2017110" + i + ".db"));
+        Files.createFile(directory.resolve("other.db"));
+        assertEquals(3, SQLiteBackup.prune(directory, "db-", ".db", 2));
+        assertTrue(Files.exists(directory.resolve("db-20171103.db")));
+        assertTrue(Files.exists(directory.resolve("db-20171104.db")));
+        assertTrue(Files.exists(directory.resolve("other.db")));
+        try(Stream<Path> files = Files.list(directory)) {
+            assertEquals(4, files.count());
+        }
+    }
+
+    @Test
+    public void executorRunsScheduledBackupsWithRetention() throws Exception {
+        Path backups = directory.resolve("backups");
+        SQLiteBackupExecutor executor = new SQLiteBackupExecutor("test",
+          this::backup);
+        try {
+            BackupResult result = executor.submit(backups.resolve(
+              "manual.db"), null).get(10, TimeUnit.SECONDS);
+            assertEquals(500, count(result.getTarget()));
+            executor.schedule(backups, "test-", ".db", 10, 2);
+            long deadline = System.currentTimeMillis() + 10000;
+            while(scheduledBackups(backups) < 3 &&
+              System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            executor.cancelSchedule();
+            // Let a backup which had already started finish and prune
+            Thread.sleep(100);
+            assertEquals(2, scheduledBackups(backups));
+        } finally {
+            executor.close();
+        }
+    }
+
+    private static long scheduledBackups(Path backups) throws Exception {
+        if(!Files.exists(backups))
+            return 0;
+        try(Stream<Path> files = Files.list(backups)) {
+            return files.filter(path -> path.getFileName().toString()
+              .startsWith("test-")).count();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.BatchQuery;
+import com.majoinen.d.database.DBUtilsConnection;
+import com.majoinen.d.database.Query;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 2/11/17
+ */
+public class SQLiteInMemoryDatabaseTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        directory = Files.createTempDirectory("dbutils-memory");
+        file = directory.resolve("memory.db");
+        try(Connection connection = DriverManager.getConnection(
+          "jdbc:sqlite:" + file);
+          Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE t (id INTEGER, name TEXT)");
+            statement.executeUpdate("INSERT INTO t VALUES (1, 'one')");
+        }
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        try(Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile)
+              .forEach(File::delete);
+        }
+    }
+
+    private SQLiteInMemoryDatabase open(long snapshotInterval)
+      throws Exception {
+        return open(snapshotInterval, false);
+    }
+
+    private SQLiteInMemoryDatabase open(long snapshotInterval,
+      boolean dirtyReads) throws Exception {
+        return new SQLiteInMemoryDatabase("memory", file, 1, 4, 0, 1000, 1, 0,
+          snapshotInterval, dirtyReads);
+    }
+
+    private static Query query(SQLiteInMemoryDatabase database, String sql) {
+        return new Query(new DBUtilsConnection(database.getReadProvider(),
+          database), sql);
+    }
+
+    /* Insert rows 2 and 3 in one transaction, a chunk each, and start
+     * counting the rows of t from another thread between the chunks */
+    private static CompletableFuture<Long> countDuringTransaction(
+      SQLiteInMemoryDatabase database, long waitMillis) throws Exception {
+        // The first read waits on the writer thread, so is done beforehand
+        assertEquals(1, count(database));
+        CompletableFuture<CompletableFuture<Long>> count =
+          new CompletableFuture<>();
+        Iterable<Map<String, Object>> rows = () ->
+          new Iterator<Map<String, Object>>() {
+              private int id = 1;
+
+              @Override
+              public boolean hasNext() {
+                  if(id == 2 && !count.isDone()) {
+                      CompletableFuture<Long> reading =
+                        CompletableFuture.supplyAsync(() -> count(database));
+                      try {
+                          reading.get(waitMillis, TimeUnit.MILLISECONDS);
+                      } catch(Exception e) {
+                          // Still waiting for the writer to commit
+                      }
+                      count.complete(reading);
+                  }
+                  return id < 3;
+              }
+
+              @Override
+              public Map<String, Object> next() {
+                  return Collections.singletonMap("id", ++id);
+              }
+          };
+        new BatchQuery(new DBUtilsConnection(database.getReadProvider(),
+          database), "INSERT INTO t VALUES (:id, 'row')").executeBatch(rows,
+          1);
+        return count.get();
+    }
+
+    private static long count(SQLiteInMemoryDatabase database) {
+        try {
+            return query(database, "SELECT count(*) FROM t").executeAndMap(
+              result -> result.getLong(1));
+        } catch(Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long countOnDisk() throws Exception {
+        try(Connection connection = DriverManager.getConnection(
+          "jdbc:sqlite:" + file);
+          Statement statement = connection.createStatement();
+          ResultSet result = statement.executeQuery(
+            "SELECT count(*) FROM t")) {
+            return result.getLong(1);
+        }
+    }
+
+    @Test
+    public void fileIsLoadedAndOnlyPersistedBySnapshots() throws Exception {
+        SQLiteInMemoryDatabase database = open(0);
+        try {
+            assertEquals("one", query(database,
+              "SELECT name FROM t WHERE id = 1").executeAndMap(result ->
+              result.getString(1)));
+            assertFalse(database.snapshot());
+            query(database, "INSERT INTO t VALUES (2, 'two')").executeUpdate();
+            assertTrue(database.isModified());
+            assertEquals(1, countOnDisk());
+            assertTrue(database.snapshot());
+            assertFalse(database.isModified());
+            assertEquals(2, countOnDisk());
+        } finally {
+            database.close();
+        }
+        try(Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void readsWaitForTheWriterToCommit() throws Exception {
+        SQLiteInMemoryDatabase database = open(0);
+        try {
+            CompletableFuture<Long> count =
+              countDuringTransaction(database, 100);
+            assertEquals(3L, (long) count.get(5, TimeUnit.SECONDS));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void dirtyReadsSeeUncommittedWrites() throws Exception {
+        SQLiteInMemoryDatabase database = open(0, true);
+        try {
+            CompletableFuture<Long> count =
+              countDuringTransaction(database, 5000);
+            assertEquals(2L, (long) count.get());
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void closeTakesFinalSnapshot() throws Exception {
+        SQLiteInMemoryDatabase database = open(0);
+        query(database, "DELETE FROM t").executeUpdate();
+        database.close();
+        assertEquals(0, countOnDisk());
+    }
+
+    @Test
+    public void backupCopiesWithoutTakingSnapshot() throws Exception {
+        SQLiteInMemoryDatabase database = open(0);
+        try {
+            query(database, "INSERT INTO t VALUES (2, 'two')").executeUpdate();
+            Path target = directory.resolve("backup.db");
+            BackupResult result = database.backup(target, null);
+            assertEquals(Files.size(target), result.getBytes());
+            assertTrue(database.isModified());
+            assertEquals(1, countOnDisk());
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void snapshotsAreTakenPeriodically() throws Exception {
+        SQLiteInMemoryDatabase database = open(20);
+        try {
+            query(database, "INSERT INTO t VALUES (2, 'two')").executeUpdate();
+            long deadline = System.currentTimeMillis() + 5000;
+            while(database.isModified() &&
+              System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertEquals(2, countOnDisk());
+        } finally {
+            database.close();
+        }
+    }
+}
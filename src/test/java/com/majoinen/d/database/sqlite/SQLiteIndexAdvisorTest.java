@@ -0,0 +1,168 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.DatabaseConnectionProvider;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.metrics.InMemoryMetricsRecorder;
+import com.majoinen.d.database.metrics.QueryPhase;
+import com.majoinen.d.database.util.SQLScriptReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 30/11/17
+ */
+public class SQLiteIndexAdvisorTest {
+
+    private static final String BY_EMAIL =
+      "SELECT * FROM user WHERE email = ?";
+    private static final String BY_EMAIL_AND_AGE =
+      "SELECT * FROM user WHERE age > ? AND email = ? ORDER BY id";
+    private static final String BY_CREATED =
+      "SELECT * FROM user WHERE created > ?";
+    private static final String ORDERS_OF_USER = "SELECT u.email, o.total " +
+      "FROM user u JOIN orders o ON o.user_id = u.id WHERE u.id = ?";
+    private static final String BY_TOTAL =
+      "SELECT * FROM orders WHERE total > ?";
+    private static final String INSERT_ORDER =
+      "INSERT INTO orders (user_id, total) VALUES (?, ?)";
+
+    private Path file;
+    private DatabaseConnectionProvider provider;
+    private InMemoryMetricsRecorder recorder;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        file = Files.createTempFile("dbutils-advisor", ".db");
+        try(Connection connection = DriverManager.getConnection(
+          "jdbc:sqlite:" + file);
+          Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE user (id INTEGER PRIMARY " +
+              "KEY, email TEXT, age INTEGER, created INTEGER)");
+            statement.executeUpdate("CREATE INDEX user_created ON " +
+              "user (created)");
+            statement.executeUpdate("CREATE TABLE orders (id INTEGER " +
+              "PRIMARY KEY, user_id INTEGER, total REAL)");
+            statement.executeUpdate("WITH RECURSIVE n(i) AS (SELECT 1 " +
+              "UNION ALL SELECT i + 1 FROM n WHERE i < 1000) INSERT INTO " +
+              "user SELECT i, 'user' || i, i % 90, i FROM n");
+            statement.executeUpdate("INSERT INTO orders SELECT id, id, " +
+              "age FROM user");
+        }
+        provider = () -> {
+            try {
+                return DriverManager.getConnection("jdbc:sqlite:" + file);
+            } catch(SQLException e) {
+                throw new DBUtilsException("Error opening connection", e);
+            }
+        };
+        recorder = new InMemoryMetricsRecorder("advisor");
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    private void run(String sql, int executions, long rowsRead,
+      long rowsWritten) {
+        for(int i = 0; i < executions; i++)
+            recorder.recordLatency(sql, QueryPhase.EXECUTE, 1000);
+        recorder.recordRowsRead(sql, rowsRead);
+        recorder.recordRowsWritten(sql, rowsWritten);
+    }
+
+    @Test
+    public void indexesAreAdvisedForScans() throws Exception {
+        run(BY_EMAIL, 500, 500, 0);
+        run(BY_EMAIL_AND_AGE, 200, 50, 0);
+        run(BY_CREATED, 100, 1000, 0);
+        run(ORDERS_OF_USER, 1000, 1000, 0);
+        run(BY_TOTAL, 1, 10, 0);
+        run(INSERT_ORDER, 10000, 0, 10000);
+        IndexAdvice advice = new SQLiteIndexAdvisor(provider).advise(
+          recorder.getQueries());
+        assertEquals(6, advice.getShapes());
+
+        assertEquals(2, advice.getRecommendations().size());
+        IndexRecommendation orders = advice.getRecommendations().get(0);
+        assertEquals("orders", orders.getTable());
+        assertEquals(Collections.singletonList("user_id"),
+          orders.getColumns());
+        assertEquals(Collections.singletonList(ORDERS_OF_USER),
+          orders.getQueries());
+        assertEquals(Collections.singletonList(INSERT_ORDER),
+          orders.getWriteQueries());
+        assertEquals(10000, orders.getIndexWrites());
+        assertEquals(2, orders.getWriteAmplification(), 0);
+
+        IndexRecommendation user = advice.getRecommendations().get(1);
+        assertEquals("idx_user_email_age", user.getName());
+        assertEquals(Arrays.asList("email", "age"), user.getColumns());
+        assertEquals(Arrays.asList(BY_EMAIL_AND_AGE, BY_EMAIL),
+          user.getQueries());
+        assertEquals(700, user.getExecutions());
+        assertEquals(1000, user.getTableRows());
+        assertTrue(user.getReadSpeedup() > 10);
+        assertTrue(user.getWriteQueries().isEmpty());
+
+        assertEquals(1, advice.getRejected().size());
+        IndexRecommendation total = advice.getRejected().get(0);
+        assertEquals(Collections.singletonList("total"), total.getColumns());
+        assertFalse(total.isAdvised());
+    }
+
+    @Test
+    public void scriptCreatesAdvisedIndexes() throws Exception {
+        run(BY_EMAIL, 10, 10, 0);
+        String script = new SQLiteIndexAdvisor(provider).advise(
+          recorder.getQueries()).toScript();
+        assertTrue(script.contains("CREATE INDEX IF NOT EXISTS " +
+          "idx_user_email ON user (email);"));
+        try(Connection connection = provider.openConnection();
+          Statement statement = connection.createStatement()) {
+            assertTrue(SQLiteQueryPlan.explain(connection, BY_EMAIL)
+              .hasFullTableScan());
+            try(SQLScriptReader reader = new SQLScriptReader(
+              new StringReader(script))) {
+                String sql;
+                while((sql = reader.next()) != null)
+                    statement.execute(sql);
+            }
+            assertFalse(SQLiteQueryPlan.explain(connection, BY_EMAIL)
+              .hasFullTableScan());
+        }
+    }
+
+    @Test
+    public void statisticsAreCopied() throws Exception {
+        try(Connection connection = provider.openConnection();
+          Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+            try(Connection copy = SQLiteIndexAdvisor.copySchema(connection);
+              Statement query = copy.createStatement()) {
+                assertTrue(query.executeQuery("SELECT count(*) FROM " +
+                  "sqlite_stat1 WHERE tbl = 'user'").getInt(1) > 0);
+                assertEquals(0, query.executeQuery("SELECT count(*) FROM " +
+                  "user").getInt(1));
+                assertFalse(SQLiteQueryPlan.explain(copy, BY_CREATED)
+                  .hasFullTableScan());
+            }
+        }
+    }
+}
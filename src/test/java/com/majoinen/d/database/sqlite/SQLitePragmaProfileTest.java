@@ -0,0 +1,62 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 23/11/17
+ */
+public class SQLitePragmaProfileTest {
+
+    @Test
+    public void profilesAreFoundByName() throws Exception {
+        assertEquals(SQLitePragmaProfile.BULK_LOAD,
+          SQLitePragmaProfile.fromName("bulk-load"));
+        assertEquals(SQLitePragmaProfile.READ_HEAVY,
+          SQLitePragmaProfile.fromName(" Read-Heavy "));
+        assertEquals(SQLitePragmaProfile.WRITE_HEAVY,
+          SQLitePragmaProfile.fromName("WRITE_HEAVY"));
+    }
+
+    @Test(expected = DBUtilsException.class)
+    public void unknownProfileThrows() throws Exception {
+        SQLitePragmaProfile.fromName("fast");
+    }
+
+    @Test
+    public void profileIsAppliedToConnectionProperties() {
+        Properties properties = new SQLiteConnectionProvider("db", "db")
+          .getProperties(SQLitePragmaProfile.BULK_LOAD);
+        assertEquals("MEMORY", properties.getProperty("journal_mode"));
+        assertEquals("OFF", properties.getProperty("synchronous"));
+        assertEquals("-262144", properties.getProperty("cache_size"));
+        assertEquals("MEMORY", properties.getProperty("temp_store"));
+        assertEquals("30000", properties.getProperty("busy_timeout"));
+        assertEquals("4096", properties.getProperty("page_size"));
+    }
+
+    @Test
+    public void walJournalModeIsKept() {
+        Properties properties = new SQLiteConnectionProvider("db", "db",
+          SQLiteWALExecutor.getWriterProperties())
+          .getProperties(SQLitePragmaProfile.BULK_LOAD);
+        assertEquals("WAL", properties.getProperty("journal_mode"));
+        assertEquals("OFF", properties.getProperty("synchronous"));
+    }
+
+    @Test
+    public void fileIsNotChangedByReadOnlyConnections() {
+        Properties properties = new SQLiteConnectionProvider("db", "db",
+          SQLiteWALExecutor.getReaderProperties())
+          .getProperties(SQLitePragmaProfile.DURABLE);
+        assertFalse(properties.containsKey("journal_mode"));
+        assertFalse(properties.containsKey("page_size"));
+        assertEquals("-8192", properties.getProperty("cache_size"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.exception.TableMismatchException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 13/11/17
+ */
+public class SQLiteSchemaVerifierTest {
+
+    private static final String USERS = "CREATE TABLE users (id INTEGER " +
+      "PRIMARY KEY, email TEXT NOT NULL UNIQUE)";
+
+    private Connection expected;
+    private Connection actual;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        expected = DriverManager.getConnection("jdbc:sqlite::memory:");
+        actual = DriverManager.getConnection("jdbc:sqlite::memory:");
+        execute(expected, USERS, "CREATE INDEX users_email ON users (email)");
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        expected.close();
+        actual.close();
+    }
+
+    private static void execute(Connection connection, String... sql)
+      throws Exception {
+        try(Statement statement = connection.createStatement()) {
+            for(String query : sql)
+                statement.executeUpdate(query);
+        }
+    }
+
+    @Test
+    public void identicalSchemasHaveEqualFingerprints() throws Exception {
+        execute(actual, USERS, "CREATE INDEX users_email ON users (email)");
+        assertEquals(
+          SQLiteSchemaVerifier.fingerprint(expected, Collections.emptySet()),
+          SQLiteSchemaVerifier.fingerprint(actual, Collections.emptySet()));
+        SQLiteSchemaVerifier.verify(actual, expected, Collections.emptyList());
+    }
+
+    @Test
+    public void differentlyWrittenSqlPassesTableComparison() throws Exception {
+        execute(actual, "create   table USERS (id integer primary key,\n" +
+          "  email text not null unique)",
+          "create index users_email on users(email)");
+        assertNotEquals(
+          SQLiteSchemaVerifier.fingerprint(expected, Collections.emptySet()),
+          SQLiteSchemaVerifier.fingerprint(actual, Collections.emptySet()));
+        SQLiteSchemaVerifier.verify(actual, expected, Collections.emptyList());
+    }
+
+    @Test
+    public void onlyListedTablesAreVerified() throws Exception {
+        execute(actual, USERS, "CREATE INDEX users_email ON users (email)",
+          "CREATE TABLE extra (id INTEGER)");
+        execute(expected, "CREATE TABLE other (id INTEGER)");
+        SQLiteSchemaVerifier.verify(actual, expected,
+          Collections.singletonList("Users"));
+    }
+
+    @Test
+    public void mismatchedTablesAreReported() throws Exception {
+        execute(expected, "CREATE TABLE orders (id INTEGER)");
+        execute(actual, "CREATE TABLE users (id INTEGER PRIMARY KEY, " +
+          "email TEXT)");
+        try {
+            SQLiteSchemaVerifier.verify(actual, expected,
+              Arrays.asList("users", "orders"));
+            fail("Expected a TableMismatchException");
+        } catch(TableMismatchException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(
+              "users has a different column email"));
+            assertTrue(e.getMessage(), e.getMessage().contains(
+              "users is missing index users_email"));
+            assertTrue(e.getMessage(), e.getMessage().contains(
+              "orders is missing"));
+        }
+    }
+
+    @Test
+    public void extraIndexesAndColumnsAreAccepted() throws Exception {
+        execute(actual, USERS, "CREATE INDEX users_email ON users (email)",
+          "ALTER TABLE users ADD COLUMN name TEXT",
+          "CREATE INDEX IF NOT EXISTS users_name ON users (name)");
+        SQLiteSchemaVerifier.verify(actual, expected, Collections.emptyList());
+    }
+}
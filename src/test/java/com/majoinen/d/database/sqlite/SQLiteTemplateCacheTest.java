@@ -0,0 +1,113 @@
+package com.majoinen.d.database.sqlite;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 30/10/17
+ */
+public class SQLiteTemplateCacheTest {
+
+    private Path directory;
+
+    private byte[] contents;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        directory = Files.createTempDirectory("dbutils-templates");
+        contents = new byte[3 * 1024 * 1024 + 17];
+        new Random(7).nextBytes(contents);
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        try(Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile)
+              .forEach(File::delete);
+        }
+    }
+
+    private URL jarWithTemplate(String name, long time) throws IOException {
+        Path jar = directory.resolve(name + ".jar");
+        try(JarOutputStream out = new JarOutputStream(
+          Files.newOutputStream(jar))) {
+            JarEntry entry = new JarEntry("databases/" + name);
+            entry.setTime(time);
+            out.putNextEntry(entry);
+            out.write(contents);
+            out.closeEntry();
+        }
+        return new URL("jar:" + jar.toUri() + "!/databases/" + name);
+    }
+
+    @Test
+    public void copyReplacesTargetWithoutTemporaryFiles() throws Exception {
+        Path source = directory.resolve("source.db");
+        Path target = directory.resolve("target.db");
+        Files.write(source, contents);
+        Files.write(target, new byte[] { 1 });
+        SQLiteTemplateCache.copy(source, target);
+        assertArrayEquals(contents, Files.readAllBytes(target));
+        try(Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void fileTemplatesAreUsedInPlace() throws Exception {
+        Path source = directory.resolve("source.db");
+        Files.write(source, contents);
+        Path cache = directory.resolve("cache");
+        assertEquals(source, SQLiteTemplateCache.getTemplate(
+          source.toUri().toURL(), cache));
+        assertFalse(Files.exists(cache));
+    }
+
+    @Test
+    public void jarTemplatesAreExtractedOnce() throws Exception {
+        Path cache = directory.resolve("cache");
+        URL url = jarWithTemplate("test.db", 1500000000000L);
+        Path template = SQLiteTemplateCache.getTemplate(url, cache);
+        assertEquals(cache.resolve("test.db"), template);
+        assertArrayEquals(contents, Files.readAllBytes(template));
+        FileTime extracted = Files.getLastModifiedTime(template);
+
+        // A cached copy of the same size and time is not extracted again
+        byte[] marked = contents.clone();
+        marked[0]++;
+        Files.write(template, marked);
+        Files.setLastModifiedTime(template, extracted);
+        assertEquals(template, SQLiteTemplateCache.getTemplate(url, cache));
+        assertArrayEquals(marked, Files.readAllBytes(template));
+    }
+
+    @Test
+    public void changedCachedTemplatesAreExtractedAgain() throws Exception {
+        Path cache = directory.resolve("cache");
+        Path template = SQLiteTemplateCache.getTemplate(
+          jarWithTemplate("first.db", 1500000000000L), cache);
+        Files.write(template, new byte[] { 1, 2, 3 });
+        SQLiteTemplateCache.getTemplate(
+          jarWithTemplate("first.db", 1500000000000L), cache);
+        assertArrayEquals(contents, Files.readAllBytes(template));
+    }
+}
@@ -0,0 +1,135 @@
+package com.majoinen.d.database.sqlite;
+
+import com.majoinen.d.database.BatchQuery;
+import com.majoinen.d.database.DBUtilsConnection;
+import com.majoinen.d.database.DatabaseConnectionProvider;
+import com.majoinen.d.database.Query;
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 25/9/17
+ */
+public class SQLiteWALExecutorTest {
+
+    private static final String CREATE_TABLE =
+      "CREATE TABLE test (id INTEGER PRIMARY KEY, name TEXT)";
+
+    private static final String INSERT = "INSERT INTO test (name) VALUES (:name)";
+
+    private static final String COUNT = "SELECT count(*) FROM test";
+
+    private File database;
+
+    private SQLiteWALExecutor executor;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        database = File.createTempFile("dbutils-wal", ".db");
+        executor = new SQLiteWALExecutor("test",
+          provider(SQLiteWALExecutor.getWriterProperties()),
+          provider(SQLiteWALExecutor.getReaderProperties()), 0, 4, 0, 1000, 1,
+          8);
+        query(CREATE_TABLE).executeUpdate();
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        executor.close();
+        new File(database.getPath() + "-wal").delete();
+        new File(database.getPath() + "-shm").delete();
+        database.delete();
+    }
+
+    private DatabaseConnectionProvider provider(Properties properties) {
+        return () -> {
+            try {
+                return DriverManager.getConnection("jdbc:sqlite:" +
+                  database.getPath(), properties);
+            } catch(SQLException e) {
+                throw new DBUtilsException(e);
+            }
+        };
+    }
+
+    private Query query(String sql) {
+        return new Query(new DBUtilsConnection(executor.getReadProvider(),
+          executor), sql);
+    }
+
+    @Test
+    public void enablesWAL() throws Exception {
+        assertEquals("wal", query("PRAGMA journal_mode")
+          .executeAndMap(result -> result.getString(1)));
+    }
+
+    @Test
+    public void updatesRunOnWriterThread() throws Exception {
+        String thread = executor.execute(connection ->
+          Thread.currentThread().getName());
+        assertEquals("DBUtils-writer-test", thread);
+        assertEquals(1, query(INSERT).setParameter(":name", "a")
+          .executeUpdate());
+        assertEquals(1, (int) query(COUNT).executeAndMap(
+          result -> result.getInt(1)));
+        assertEquals(1, executor.getWriterPool().getSize());
+    }
+
+    @Test(expected = DBUtilsException.class)
+    public void readersAreReadOnly() throws Exception {
+        query(COUNT).executeAndMap(result -> result.getInt(1));
+        DBUtilsConnection reader =
+          new DBUtilsConnection(executor.getReadProvider());
+        new Query(reader, "DELETE FROM test").executeUpdate();
+    }
+
+    @Test
+    public void batchQueryIsReplayedOnWriter() throws Exception {
+        DBUtilsConnection connection =
+          new DBUtilsConnection(executor.getReadProvider(), executor);
+        int affectedRows = new BatchQuery(connection, INSERT)
+          .setParameter(":name", "a")
+          .addBatch()
+          .setParameter(":name", "b")
+          .prepareBatchQuery("DELETE FROM test WHERE name = :name")
+          .setParameter(":name", "a")
+          .executeUpdate();
+        assertEquals(3, affectedRows);
+        assertEquals("b", query("SELECT name FROM test")
+          .executeAndMap(result -> result.getString(1)));
+    }
+
+    @Test
+    public void concurrentWritersAreSerialised() throws Exception {
+        Thread[] threads = new Thread[4];
+        DBUtilsException[] failure = new DBUtilsException[1];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 50; j++)
+                        query(INSERT).setParameter(":name", "x")
+                          .executeUpdate();
+                } catch(DBUtilsException e) {
+                    failure[0] = e;
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(failure[0] == null);
+        assertEquals(200, (int) query(COUNT).executeAndMap(
+          result -> result.getInt(1)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.majoinen.d.database.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 16/11/17
+ */
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 100000;
+
+    private static ConsistentHashRing<String> ring(int nodes) {
+        Map<String, String> byName = new LinkedHashMap<>();
+        for(int i = 0; i < nodes; i++)
+            byName.put("shard-" + i, "shard-" + i);
+        return new ConsistentHashRing<>(byName,
+          ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    @Test
+    public void keysAreSpreadEvenly() {
+        ConsistentHashRing<String> ring = ring(4);
+        Map<String, Integer> counts = new HashMap<>();
+        for(int i = 0; i < KEYS; i++)
+            counts.merge(ring.get(i), 1, Integer::sum);
+        assertEquals(4, counts.size());
+        for(int count : counts.values())
+            assertTrue("Uneven: " + counts, Math.abs(count - KEYS / 4) <
+              KEYS / 4 / 5);
+    }
+
+    @Test
+    public void addingANodeOnlyMovesItsKeys() {
+        ConsistentHashRing<String> before = ring(4);
+        ConsistentHashRing<String> after = ring(5);
+        int moved = 0;
+        for(int i = 0; i < KEYS; i++) {
+            String node = after.get("customer-" + i);
+            if(!node.equals(before.get("customer-" + i))) {
+                assertEquals("shard-4", node);
+                moved++;
+            }
+        }
+        assertTrue("Moved " + moved, moved > KEYS / 5 * 0.8 &&
+          moved < KEYS / 5 * 1.2);
+    }
+
+    @Test
+    public void keysAreHashedByValue() {
+        ConsistentHashRing<String> ring = ring(8);
+        assertEquals(ring.get(42L), ring.get("42"));
+        assertEquals(ring.get(new StringBuilder("a")), ring.get("a"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.majoinen.d.database.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 26/10/17
+ */
+public class LongLongMapTest {
+
+    @Test
+    public void putReplacesValues() throws Exception {
+        LongLongMap map = new LongLongMap();
+        map.put(7, 1);
+        map.put(7, 2);
+        assertEquals(1, map.size());
+        assertEquals(2, map.get(7, -1));
+        assertEquals(-1, map.get(8, -1));
+        assertFalse(map.containsKey(8));
+    }
+
+    @Test
+    public void zeroIsAKey() throws Exception {
+        LongLongMap map = new LongLongMap();
+        assertFalse(map.containsKey(0));
+        map.put(0, 5);
+        map.put(1, 6);
+        assertTrue(map.containsKey(0));
+        assertEquals(5, map.get(0, -1));
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new long[] { 0, 1 }, keys);
+    }
+
+    @Test
+    public void matchesHashMapWhileGrowing() throws Exception {
+        LongLongMap map = new LongLongMap(1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long key = i % 3 == 0 ? random.nextLong() : random.nextInt(5000);
+            map.put(key, i);
+            expected.put(key, (long) i);
+        }
+        assertEquals(expected.size(), map.size());
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+    }
+}
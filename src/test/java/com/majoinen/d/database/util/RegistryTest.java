@@ -0,0 +1,83 @@
+package com.majoinen.d.database.util;
+
+import com.majoinen.d.database.exception.DBUtilsException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 5/10/17
+ */
+public class RegistryTest {
+
+    private static final String KEY = "key";
+
+    private Registry<String, Object> registry;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        registry = new Registry<>();
+    }
+
+    @Test
+    public void getOrCreateReturnsRegisteredInstance() throws Exception {
+        Object created = registry.getOrCreate(KEY, key -> new Object());
+        assertSame(created, registry.getOrCreate(KEY, key -> new Object()));
+        assertSame(created, registry.get(KEY));
+    }
+
+    @Test
+    public void concurrentGetOrCreateCreatesOnce() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Object[] results = new Object[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    results[index] = registry.getOrCreate(KEY, key -> {
+                        created.incrementAndGet();
+                        return new Object();
+                    });
+                } catch(InterruptedException | DBUtilsException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(1, created.get());
+        for (Object result : results)
+            assertSame(results[0], result);
+    }
+
+    @Test(expected = DBUtilsException.class)
+    public void getOrCreateThrowsFactoryException() throws Exception {
+        try {
+            registry.getOrCreate(KEY, key -> {
+                throw new DBUtilsException("Expected");
+            });
+        } finally {
+            assertNull(registry.get(KEY));
+        }
+    }
+
+    @Test
+    public void removeAllEmptiesRegistry() throws Exception {
+        registry.getOrCreate(KEY, key -> new Object());
+        registry.computeIfAbsent("other", key -> new Object());
+        assertEquals(2, registry.removeAll().size());
+        assertEquals(0, registry.size());
+    }
+}
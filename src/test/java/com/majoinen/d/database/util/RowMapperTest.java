@@ -0,0 +1,148 @@
+package com.majoinen.d.database.util;
+
+import com.majoinen.d.database.DBUtilsConnection;
+import com.majoinen.d.database.Query;
+import com.majoinen.d.database.exception.DBUtilsException;
+import com.majoinen.d.database.pool.ConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 23/10/17
+ */
+public class RowMapperTest {
+
+    private static final String SELECT_QUERY =
+      "SELECT id, user_name, score, status FROM test ORDER BY id";
+
+    private File database;
+
+    private ConnectionPool pool;
+
+    @Before
+    public void beforeEachTest() throws Exception {
+        database = File.createTempFile("dbutils-mapper", ".db");
+        pool = new ConnectionPool(() -> {
+            try {
+                return DriverManager.getConnection("jdbc:sqlite:" +
+                  database.getPath());
+            } catch(SQLException e) {
+                throw new DBUtilsException(e);
+            }
+        }, 0, 2, 0, 1000, 1, 8);
+        query("CREATE TABLE test (id INTEGER PRIMARY KEY, user_name TEXT, " +
+          "score INTEGER, status TEXT)").executeUpdate();
+        query("INSERT INTO test VALUES (1, 'one', 10, 'ACTIVE'), " +
+          "(2, 'two', NULL, NULL)").executeUpdate();
+    }
+
+    @After
+    public void afterEachTest() throws Exception {
+        pool.close();
+        database.delete();
+    }
+
+    private Query query(String sql) {
+        return new Query(new DBUtilsConnection(pool), sql);
+    }
+
+    @Test
+    public void mapsToSettersAndFields() throws Exception {
+        List<User> users = query(SELECT_QUERY)
+          .executeAndMapAll(RowMapper.of(User.class));
+        assertEquals(2, users.size());
+        assertEquals(1, users.get(0).id);
+        assertEquals("one", users.get(0).name);
+        assertEquals(Integer.valueOf(10), users.get(0).score);
+        assertEquals(Status.ACTIVE, users.get(0).status);
+        assertNull(users.get(1).score);
+        assertNull(users.get(1).status);
+        assertTrue(users.get(0).setterCalled);
+    }
+
+    @Test
+    public void mapsToConstructor() throws Exception {
+        RowMapper<Account> mapper = RowMapper.of(Account.class
+          .getDeclaredConstructor(long.class, String.class, int.class),
+          "id", "userName", "score");
+        List<Account> accounts = query(SELECT_QUERY).executeAndMapAll(mapper);
+        assertEquals("one", accounts.get(0).name);
+        assertEquals(10, accounts.get(0).score);
+        assertEquals(0, accounts.get(1).score);
+    }
+
+    @Test
+    public void columnsAreResolvedForEachShape() throws Exception {
+        RowMapper<User> mapper = RowMapper.of(User.class);
+        User user = query("SELECT score, id FROM test WHERE id = 1")
+          .executeAndMap(mapper);
+        assertEquals(1, user.id);
+        assertEquals(Integer.valueOf(10), user.score);
+        assertNull(user.name);
+        assertEquals("two", query("SELECT user_name AS name FROM test " +
+          "WHERE id = 2").executeAndMap(mapper).name);
+    }
+
+    @Test
+    public void mappersAreSharedByClass() throws Exception {
+        assertTrue(RowMapper.of(User.class) == RowMapper.of(User.class));
+    }
+
+    @Test
+    public void missingConstructorColumnFails() throws Exception {
+        RowMapper<Account> mapper = RowMapper.of(Account.class
+          .getDeclaredConstructor(long.class, String.class, int.class),
+          "id", "missing", "score");
+        try {
+            query(SELECT_QUERY).executeAndMapAll(mapper);
+            fail("Expected DBUtilsException");
+        } catch(DBUtilsException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownParameterNamesFail() throws Exception {
+        RowMapper.of(Account.class);
+    }
+
+    private enum Status { ACTIVE }
+
+    private static class Person {
+        long id;
+    }
+
+    private static final class User extends Person {
+        private String name;
+        private Integer score;
+        private Status status;
+        private boolean setterCalled;
+
+        public void setUserName(String name) {
+            this.name = name;
+            this.setterCalled = true;
+        }
+    }
+
+    private static final class Account {
+        private final String name;
+        private final int score;
+
+        private Account(long id, String name, int score) {
+            this.name = name;
+            this.score = score;
+        }
+    }
+}
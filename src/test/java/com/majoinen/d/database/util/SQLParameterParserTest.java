@@ -3,10 +3,16 @@ package com.majoinen.d.database.util;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -44,4 +50,100 @@ public class SQLParameterParserTest {
         assertTrue(parameterKeys.get(0).equals(":id"));
         assertTrue(parameterKeys.get(1).equals(":name"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compileKeyAtStartOfSql() throws Exception {
+        SQLTemplate template = SQLParameterParser.compile(":id");
+
+        assertEquals("?", template.getPreparedSql());
+        assertEquals(":id", template.getParameterKey(0));
+    }
+
+    @Test
+    public void compileRepeatedKey() throws Exception {
+        SQLTemplate template = SQLParameterParser.compile(
+          "SELECT * FROM t WHERE a = :id OR b = :other OR c = :id");
+
+        assertEquals(3, template.getParameterCount());
+        assertArrayEquals(new int[] { 1, 3 }, template.getPositions(":id"));
+        assertArrayEquals(new int[] { 2 }, template.getPositions(":other"));
+        assertEquals(0, template.getPositions(":missing").length);
+    }
+
+    @Test
+    public void compileSkipsLiteralsAndComments() throws Exception {
+        String sql = "SELECT ':a', \":b\", `:c`, [:d] -- :e\n" +
+          "FROM t /* :f */ WHERE x = @x AND y = $y AND z = ?";
+        String expected = "SELECT ':a', \":b\", `:c`, [:d] -- :e\n" +
+          "FROM t /* :f */ WHERE x = ? AND y = ? AND z = ?";
+        SQLTemplate template = SQLParameterParser.compile(sql);
+
+        assertEquals(expected, template.getPreparedSql());
+        assertEquals("@x", template.getParameterKey(0));
+        assertEquals("$y", template.getParameterKey(1));
+        assertNull(template.getParameterKey(2));
+    }
+
+    @Test
+    public void compileKeysAreNotRegularExpressions() throws Exception {
+        SQLTemplate template = SQLParameterParser.compile(
+          "SELECT * FROM t WHERE name = :name AND time = '12:30'");
+
+        assertEquals("SELECT * FROM t WHERE name = ? AND time = '12:30'",
+          template.getPreparedSql());
+        assertEquals(1, template.getParameterCount());
+    }
+
+    @Test
+    public void shapeReplacesValuesAndCollapsesWhitespace() throws Exception {
+        String sql = "SELECT  name FROM t1 -- comment\n" +
+          "WHERE id = 42 AND name = 'x''y' AND amount > 1.5e-3 AND a = :a";
+
+        assertEquals("SELECT name FROM t1 WHERE id = ? AND name = ? AND " +
+          "amount > ? AND a = ?", SQLParameterParser.compile(sql).getShape());
+    }
+
+    @Test
+    public void shapeCollapsesInLists() throws Exception {
+        assertEquals("SELECT * FROM t WHERE id IN (?)", SQLParameterParser
+          .compile("SELECT * FROM t WHERE id IN (1, 2,3)").getShape());
+        assertEquals("SELECT * FROM t WHERE id IN (?)", SQLParameterParser
+          .compile("SELECT * FROM t WHERE id IN (?)").getShape());
+    }
+
+    @Test
+    public void tablesAreFoundInJoinsAndLists() throws Exception {
+        assertEquals(Arrays.asList("user", "orders", "items", "t3"),
+          new ArrayList<>(SQLParameterParser.compile("SELECT * FROM `user` u " +
+            "JOIN main.orders AS o ON o.uid = u.id, items i, (SELECT * FROM " +
+            "t3) s WHERE u.name = 'FROM other' -- JOIN other").getTables()));
+    }
+
+    @Test
+    public void tablesAreFoundInUpdates() throws Exception {
+        assertEquals(Collections.singleton("items"), SQLParameterParser
+          .compile("INSERT OR REPLACE INTO \"Items\" (a) VALUES (:a)")
+          .getTables());
+        assertEquals(Collections.singleton("my table"), SQLParameterParser
+          .compile("UPDATE OR IGNORE [My Table] SET a = 1").getTables());
+        assertEquals(Collections.singleton("t"), SQLParameterParser
+          .compile("CREATE TABLE IF NOT EXISTS t (id INTEGER)").getTables());
+    }
+
+    @Test
+    public void compileIsCached() throws Exception {
+        assertTrue(SQLParameterParser.compile(SQL) ==
+          SQLParameterParser.compile(SQL));
+    }
+
+    @Test
+    public void queriesInUseSurviveDynamicSql() throws Exception {
+        SQLTemplate hot = SQLParameterParser.compile(SQL);
+        for (int i = 0; i < 10000; i++) {
+            SQLParameterParser.compile("SELECT * FROM t WHERE id = " + i);
+            if(i % 500 == 0)
+                assertTrue(hot == SQLParameterParser.compile(SQL));
+        }
+        assertTrue(hot == SQLParameterParser.compile(SQL));
+    }
+}
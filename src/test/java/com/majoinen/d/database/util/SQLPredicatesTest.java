@@ -0,0 +1,94 @@
+package com.majoinen.d.database.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 30/11/17
+ */
+public class SQLPredicatesTest {
+
+    private static SQLPredicates.Column column(String table, String name) {
+        return new SQLPredicates.Column(table, name);
+    }
+
+    @Test
+    public void comparisonsAreFound() {
+        SQLPredicates predicates = SQLPredicates.parse("SELECT * FROM user " +
+          "WHERE Email = ? AND ? < age AND status IN (?) AND created " +
+          "BETWEEN ? AND ? AND deleted IS ? AND lower(name) = ? " +
+          "ORDER BY age DESC, id");
+        assertEquals(Collections.singleton("user"), predicates.getTables());
+        assertEquals(new LinkedHashSet<>(Arrays.asList(column("user",
+          "email"), column("user", "status"), column("user", "deleted"))),
+          predicates.getEqualityColumns());
+        assertEquals(new LinkedHashSet<>(Arrays.asList(column("user", "age"),
+          column("user", "created"))), predicates.getRangeColumns());
+        assertEquals(Arrays.asList(column("user", "age"), column("user",
+          "id")), predicates.getOrderColumns());
+        assertFalse(predicates.isWrite());
+    }
+
+    @Test
+    public void joinsAreResolvedThroughAliases() {
+        SQLPredicates predicates = SQLPredicates.parse("SELECT u.name, " +
+          "o.total FROM user AS u LEFT JOIN \"order\" o ON o.user_id = u.id " +
+          "WHERE u.email = ? AND total >= ? GROUP BY u.name");
+        assertEquals(new LinkedHashSet<>(Arrays.asList("user", "order")),
+          predicates.getTables());
+        assertEquals(new LinkedHashSet<>(Arrays.asList(column("order",
+          "user_id"), column("user", "id"), column("user", "email"))),
+          predicates.getEqualityColumns());
+        assertEquals(Collections.singleton(column(null, "total")),
+          predicates.getRangeColumns());
+    }
+
+    @Test
+    public void unindexableConditionsAreSkipped() {
+        SQLPredicates predicates = SQLPredicates.parse("SELECT * FROM t " +
+          "WHERE a = ? OR b = ? ORDER BY length(c)");
+        assertTrue(predicates.getEqualityColumns().isEmpty());
+        assertTrue(predicates.getOrderColumns().isEmpty());
+
+        predicates = SQLPredicates.parse("SELECT * FROM t WHERE a <> ? AND " +
+          "b IS NOT ? AND c + d = ? AND e IN (SELECT f FROM u WHERE g = ? " +
+          "AND h = ?)");
+        assertEquals(Collections.singleton(column("t", "e")),
+          predicates.getEqualityColumns());
+        assertTrue(predicates.getRangeColumns().isEmpty());
+    }
+
+    @Test
+    public void writesAreFound() {
+        SQLPredicates update = SQLPredicates.parse("UPDATE OR IGNORE user " +
+          "SET name = ?, visits = visits + ? WHERE id = ?");
+        assertEquals("user", update.getWrittenTable());
+        assertEquals(new HashSet<>(Arrays.asList("name", "visits")),
+          update.getWrittenColumns());
+        assertEquals(Collections.singleton(column("user", "id")),
+          update.getEqualityColumns());
+
+        SQLPredicates delete = SQLPredicates.parse("DELETE FROM main.user " +
+          "WHERE created < ?");
+        assertEquals("user", delete.getWrittenTable());
+        assertNull(delete.getWrittenColumns());
+        assertEquals(Collections.singleton(column("user", "created")),
+          delete.getRangeColumns());
+
+        SQLPredicates insert = SQLPredicates.parse("INSERT OR REPLACE INTO " +
+          "user (id, name) VALUES (?, ?)");
+        assertEquals("user", insert.getWrittenTable());
+        assertNull(insert.getWrittenColumns());
+        assertFalse(SQLPredicates.parse("PRAGMA user_version").isWrite());
+    }
+}
@@ -0,0 +1,84 @@
+package com.majoinen.d.database.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Daniel Majoinen
+ * @version 1.0, 9/11/17
+ */
+public class SQLScriptReaderTest {
+
+    private static List<String> read(String script) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try(SQLScriptReader reader = new SQLScriptReader(
+          new StringReader(script))) {
+            String statement;
+            while((statement = reader.next()) != null)
+                statements.add(statement);
+        }
+        return statements;
+    }
+
+    @Test
+    public void semicolonsInLiteralsAndIdentifiersDoNotSplit()
+      throws Exception {
+        assertEquals(Arrays.asList(
+          "INSERT INTO t VALUES ('a;b', 'it''s;')",
+          "SELECT \"c;d\", `e;f`, [g;h] FROM t"),
+          read("INSERT INTO t VALUES ('a;b', 'it''s;');\n" +
+            "SELECT \"c;d\", `e;f`, [g;h] FROM t;"));
+    }
+
+    @Test
+    public void commentsAreRemoved() throws Exception {
+        assertEquals(Arrays.asList("SELECT 1 - 2", "SELECT 3 / 4 FROM t"),
+          read("-- a comment; with a semicolon\n" +
+            "SELECT 1 - 2; /* another; comment */\n" +
+            "SELECT 3 / 4/* inline */FROM t;\n;;  \n-- trailing"));
+    }
+
+    @Test
+    public void triggerBodiesAreNotSplit() throws Exception {
+        String trigger = "CREATE TEMP TRIGGER log AFTER INSERT ON t BEGIN\n" +
+          "  INSERT INTO audit VALUES (CASE WHEN new.id > 0 THEN 'a' END);\n" +
+          "  UPDATE counts SET n = n + 1;\n" +
+          "END";
+        assertEquals(Arrays.asList(trigger, "SELECT 'end'"),
+          read(trigger + ";\nSELECT 'end';"));
+    }
+
+    @Test
+    public void lastStatementNeedsNoSemicolon() throws Exception {
+        try(SQLScriptReader reader = new SQLScriptReader(
+          new StringReader("\n\nSELECT 1;\n  -- next\n  SELECT\n2"))) {
+            assertEquals("SELECT 1", reader.next());
+            assertEquals(3, reader.getStatementLine());
+            assertEquals("SELECT\n2", reader.next());
+            assertEquals(5, reader.getStatementLine());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void statementsLongerThanTheBufferAreRead() throws Exception {
+        StringBuilder script = new StringBuilder();
+        StringBuilder values = new StringBuilder("INSERT INTO t VALUES ");
+        for(int i = 0; i < 5000; i++)
+            values.append(i == 0 ? "" : ", ").append("('").append(i)
+              .append(";')");
+        for(int i = 0; i < 3; i++)
+            script.append(values).append(";\n");
+        List<String> statements = read(script.toString());
+        assertEquals(3, statements.size());
+        assertEquals(values.toString(), statements.get(2));
+    }
+}